@@ -35,6 +35,7 @@ import dk.dma.epd.common.prototype.service.StrategicRouteHandlerCommon;
 import dk.dma.epd.common.prototype.service.VoctHandlerCommon;
 import dk.dma.epd.common.prototype.settings.SensorSettings;
 import dk.dma.epd.common.prototype.settings.Settings;
+import dk.dma.epd.common.prototype.task.TaskManager;
 import dk.dma.epd.common.prototype.voct.VOCTManagerCommon;
 import net.maritimecloud.core.id.MaritimeId;
 
@@ -182,7 +183,7 @@ public abstract class EPD implements ISettingsListener {
     protected abstract void propertyLoadError(String msg, IOException e);
 
     /**
-     * Function used to create a thread
+     * Function used to create a dedicated thread, registered with the {@linkplain TaskManager}
      * 
      * @param t
      *            - class to create thread on
@@ -190,10 +191,7 @@ public abstract class EPD implements ISettingsListener {
      *            - Thread name
      */
     public static Thread startThread(Runnable t, String name) {
-        Thread thread = new Thread(t);
-        thread.setName(name);
-        thread.start();
-        return thread;
+        return TaskManager.getInstance().startThread(name, t);
     }
 
     /**
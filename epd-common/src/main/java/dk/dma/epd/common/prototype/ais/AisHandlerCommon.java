@@ -16,11 +16,11 @@ package dk.dma.epd.common.prototype.ais;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -31,6 +31,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.slf4j.Logger;
@@ -54,8 +57,9 @@ import dk.dma.epd.common.prototype.settings.AisSettings;
 import dk.dma.epd.common.prototype.status.AisStatus;
 import dk.dma.epd.common.prototype.status.ComponentStatus;
 import dk.dma.epd.common.prototype.status.IStatusComponent;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
 import dk.dma.epd.common.util.Converter;
-import dk.dma.epd.common.util.Util;
 
 public abstract class AisHandlerCommon extends MapHandlerChild implements Runnable, IAisSensorListener, IStatusComponent {
 
@@ -70,8 +74,17 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     protected ConcurrentHashMap<Long, VesselTarget> vesselTargets = new ConcurrentHashMap<>();
     protected ConcurrentHashMap<Long, SarTarget> sarTargets = new ConcurrentHashMap<>();
 
+    /** Spatial index of the positions of all vessel, SAR and AtoN targets */
+    protected final AisTargetGrid targetGrid = new AisTargetGrid();
+
+    /** Traffic density of the vessel position reports, or null if not accumulated */
+    protected volatile TrafficDensityGrid densityGrid;
+
     protected CopyOnWriteArrayList<IAisTargetListener> listeners = new CopyOnWriteArrayList<>();
 
+    /** Coalesces target updates and dispatches them to the listeners in batches */
+    protected final AisTargetDispatcher dispatcher;
+
     protected AisStatus aisStatus = new AisStatus();
     protected final boolean strictAisMode;
     protected final String sartMmsiPrefix;
@@ -79,6 +92,12 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     protected final int pastTrackMaxTime; // NB: In minutes
     protected final int pastTrackDisplayTime; // NB: In minutes
     protected final int pastTrackMinDist; // NB: In meters
+    protected final int snapshotInterval; // NB: In minutes
+    private ScheduledFuture<?> publishFuture;
+    private ScheduledFuture<?> maintenanceFuture;
+    private volatile long lastSnapshot;
+    protected final boolean snapshotCompressed;
+    private final Object snapshotLock = new Object();
 
     private IntendedRouteHandlerCommon intendedRouteHandlerCommon;
 
@@ -94,6 +113,9 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         this.pastTrackMaxTime = aisSettings.getPastTrackMaxTime();
         this.pastTrackDisplayTime = aisSettings.getPastTrackDisplayTime();
         this.pastTrackMinDist = aisSettings.getPastTrackMinDist();
+        this.snapshotInterval = aisSettings.getSnapshotInterval();
+        this.snapshotCompressed = aisSettings.isSnapshotCompressed();
+        this.dispatcher = new AisTargetDispatcher(listeners, aisSettings.getUpdateDispatchWindow());
     }
 
     /**
@@ -139,6 +161,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         atonTargets.clear();
         vesselTargets.clear();
         sarTargets.clear();
+        targetGrid.clear();
         publishAll();
     }
 
@@ -167,6 +190,8 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         }
         // Update target
         atonTarget.update(msg21);
+        // Update spatial index
+        indexTarget(atonTarget.getMmsi(), atonTarget.getPos());
         // Update last received
         atonTarget.setLastReceived(PntTime.getDate());
         // Update status
@@ -255,8 +280,21 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         // Update past-track
         mobileTarget.addPastTrackPosition(positionData.getPos());
 
+        // Update spatial index
+        indexTarget(mobileTarget.getMmsi(), positionData.getPos());
+
+        Date now = PntTime.getDate();
+
+        // Update traffic density
+        TrafficDensityGrid grid = this.densityGrid;
+        if (grid != null && mobileTarget instanceof VesselTarget) {
+            Date previous = mobileTarget.getLastReceived();
+            grid.addReport(positionData.getPos().getLatitude(), positionData.getPos().getLongitude(),
+                    (previous != null) ? previous.getTime() : 0L, now.getTime());
+        }
+
         // Update last received
-        mobileTarget.setLastReceived(PntTime.getDate());
+        mobileTarget.setLastReceived(now);
 
         // Update status
         mobileTarget.setStatus(AisTarget.Status.OK);
@@ -413,6 +451,81 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         return mobileTargets;
     }
 
+    /**
+     * Returns the vessel, SAR and AtoN targets within the given bounding box.
+     * <p>
+     * If {@code minLon} is greater than {@code maxLon}, the bounding box is assumed to cross the date line.
+     * 
+     * @param minLat
+     *            the southern boundary
+     * @param minLon
+     *            the western boundary
+     * @param maxLat
+     *            the northern boundary
+     * @param maxLon
+     *            the eastern boundary
+     * @return the targets within the bounding box
+     */
+    public final List<AisTarget> getTargetsWithin(double minLat, double minLon, double maxLat, double maxLon) {
+        return resolveTargets(targetGrid.getWithin(minLat, minLon, maxLat, maxLon));
+    }
+
+    /**
+     * Returns the vessel, SAR and AtoN targets within the given radius of a position
+     * 
+     * @param center
+     *            the center position
+     * @param radius
+     *            the radius in meters
+     * @return the targets within the radius
+     */
+    public final List<AisTarget> getTargetsWithinRadius(Position center, double radius) {
+        return resolveTargets(targetGrid.getWithinRadius(center.getLatitude(), center.getLongitude(), radius));
+    }
+
+    /**
+     * Returns the MMSI's of the vessel, SAR and AtoN targets within the given bounding box.
+     * <p>
+     * Unlike {@linkplain #getTargetsWithin(double, double, double, double)} this does not resolve the targets.
+     * 
+     * @param minLat
+     *            the southern boundary
+     * @param minLon
+     *            the western boundary
+     * @param maxLat
+     *            the northern boundary
+     * @param maxLon
+     *            the eastern boundary
+     * @return the MMSI's of the targets within the bounding box
+     */
+    public final List<Long> getMmsisWithin(double minLat, double minLon, double maxLat, double maxLon) {
+        return targetGrid.getWithin(minLat, minLon, maxLat, maxLon);
+    }
+
+    /**
+     * Resolves the list of MMSI's to the current vessel, SAR and AtoN targets
+     * 
+     * @param mmsis
+     *            the MMSI's to resolve
+     * @return the resolved targets
+     */
+    private List<AisTarget> resolveTargets(List<Long> mmsis) {
+        List<AisTarget> result = new ArrayList<>(mmsis.size());
+        for (Long mmsi : mmsis) {
+            AisTarget target = vesselTargets.get(mmsi);
+            if (target == null) {
+                target = sarTargets.get(mmsi);
+            }
+            if (target == null) {
+                target = atonTargets.get((int) mmsi.longValue());
+            }
+            if (target != null) {
+                result.add(target);
+            }
+        }
+        return result;
+    }
+
     public final ComponentStatus getStatus() {
         return aisStatus;
     }
@@ -514,6 +627,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
             LOG.debug("Dead target " + mmsi);
             // cater with atonTargets, which use Integer as a key
             aisTargets.remove(intKey ? Integer.valueOf((int) mmsi.longValue()) : mmsi);
+            targetGrid.remove(mmsi);
         }
 
         deadTargets.clear();
@@ -576,14 +690,15 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Publish the update of a target to all listeners
+     * Publish the update of a target to all listeners.
+     * <p>
+     * The update is coalesced with other updates of the same target within the dispatch window, and delivered to the listeners
+     * in a batch by the {@linkplain AisTargetDispatcher}.
      * 
      * @param aisTarget
      */
     public final void publishUpdate(AisTarget aisTarget) {
-        for (IAisTargetListener listener : listeners) {
-            listener.targetUpdated(aisTarget);
-        }
+        dispatcher.publish(aisTarget);
     }
 
     protected final void publishAll() {
@@ -594,9 +709,25 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     protected final void publishAll(Collection<? extends AisTarget> targets) {
-        for (AisTarget aisTarget : targets) {
-            publishUpdate((AisTarget) aisTarget);
-        }
+        dispatcher.publishAll(targets);
+    }
+
+    /**
+     * Returns the traffic density grid accumulated from the vessel position reports
+     * 
+     * @return the traffic density grid, or null if not accumulated
+     */
+    public TrafficDensityGrid getDensityGrid() {
+        return densityGrid;
+    }
+
+    /**
+     * Returns the dispatcher used for publishing target updates to the listeners
+     * 
+     * @return the dispatcher
+     */
+    public final AisTargetDispatcher getDispatcher() {
+        return dispatcher;
     }
 
     public final void addListener(IAisTargetListener targetListener) {
@@ -642,16 +773,26 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Try to load AIS view from disk
+     * Try to load AIS view from disk.
+     * <p>
+     * The view is stored as an {@linkplain AisSnapshot}, but a view serialized by previous versions is still loaded
      */
     public void loadView() {
         AisStore aisStore = null;
-
-        try (FileInputStream fileIn = new FileInputStream(AIS_VIEW_FILE);
-                ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
-            aisStore = (AisStore) objectIn.readObject();
-        } catch (FileNotFoundException e) {
-            // Not an error
+        Path file = Paths.get(AIS_VIEW_FILE);
+        long t0 = System.currentTimeMillis();
+
+        try {
+            if (!Files.exists(file)) {
+                // Not an error
+            } else if (AisSnapshot.isSnapshot(file)) {
+                aisStore = AisSnapshot.read(file);
+            } else {
+                try (FileInputStream fileIn = new FileInputStream(AIS_VIEW_FILE);
+                        ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
+                    aisStore = (AisStore) objectIn.readObject();
+                }
+            }
         } catch (Exception e) {
             LOG.error("Failed to load AIS view file: " + e.getMessage());
             // Delete possible corrupted or old file
@@ -673,7 +814,11 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
             sarTargets = new ConcurrentHashMap<>(aisStore.getSarTargets());
         }
 
-        LOG.info("AIS handler loaded total targets: " + (vesselTargets.size() + atonTargets.size() + sarTargets.size()));
+        LOG.info("AIS handler loaded total targets: " + (vesselTargets.size() + atonTargets.size() + sarTargets.size())
+                + " in " + (System.currentTimeMillis() - t0) + " ms");
+
+        // Rebuild the spatial index
+        rebuildTargetGrid();
 
         // Update status to update old and gone (twice for old and gone)
         updateStatus();
@@ -682,7 +827,39 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Save AIS view to file
+     * Re-registers the positions of all targets in the spatial index
+     */
+    protected final void rebuildTargetGrid() {
+        targetGrid.clear();
+        for (VesselTarget vesselTarget : vesselTargets.values()) {
+            indexTarget(vesselTarget.getMmsi(), vesselTarget.getPositionData() != null ? vesselTarget.getPositionData().getPos() : null);
+        }
+        for (SarTarget sarTarget : sarTargets.values()) {
+            indexTarget(sarTarget.getMmsi(), sarTarget.getPositionData() != null ? sarTarget.getPositionData().getPos() : null);
+        }
+        for (AtoNTarget atonTarget : atonTargets.values()) {
+            indexTarget(atonTarget.getMmsi(), atonTarget.getPos());
+        }
+    }
+
+    /**
+     * Registers the position of a target in the spatial index, if defined
+     * 
+     * @param mmsi
+     *            the MMSI of the target
+     * @param pos
+     *            the position of the target
+     */
+    private void indexTarget(long mmsi, Position pos) {
+        if (pos != null) {
+            targetGrid.update(mmsi, pos.getLatitude(), pos.getLongitude());
+        }
+    }
+
+    /**
+     * Save AIS view to file.
+     * <p>
+     * Called at shutdown, and periodically from the AIS handler thread according to the snapshot interval
      */
     public void saveView() {
         AisStore aisStore = new AisStore();
@@ -690,25 +867,71 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         aisStore.setAtonTargets(atonTargets);
         aisStore.setSarTargets(sarTargets);
 
-        try (FileOutputStream fileOut = new FileOutputStream(AIS_VIEW_FILE);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
-            objectOut.writeObject(aisStore);
-        } catch (IOException e) {
-            e.printStackTrace();
-            LOG.error("Failed to save Ais view file: " + e.getMessage());
+        synchronized (snapshotLock) {
+            long t0 = System.currentTimeMillis();
+            try {
+                AisSnapshot.write(Paths.get(AIS_VIEW_FILE), aisStore, snapshotCompressed);
+                LOG.debug("Saved AIS view in " + (System.currentTimeMillis() - t0) + " ms");
+            } catch (IOException e) {
+                LOG.error("Failed to save Ais view file: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Starts the maintenance of the AIS handler.
+     * <p>
+     * The loaded targets are published after two seconds, after which {@linkplain #run()} is run every 10 seconds by the
+     * {@linkplain TaskManager}
+     */
+    public synchronized void start() {
+        TaskManager taskManager = TaskManager.getInstance();
+        lastSnapshot = System.currentTimeMillis();
+        publishFuture = taskManager.schedule("AisHandler publish", new Runnable() {
+            @Override
+            public void run() {
+                publishAll();
+            }
+        }, 2, TimeUnit.SECONDS);
+        maintenanceFuture = taskManager.scheduleWithFixedDelay("AisHandler", this, 12, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the maintenance of the AIS handler and the dispatching of target updates
+     */
+    public synchronized void stop() {
+        if (publishFuture != null) {
+            publishFuture.cancel(false);
+            publishFuture = null;
+        }
+        if (maintenanceFuture != null) {
+            maintenanceFuture.cancel(false);
+            maintenanceFuture = null;
         }
+        dispatcher.shutdown();
     }
 
+    /**
+     * Periodic maintenance of the AIS handler
+     */
     @Override
     public void run() {
-        // Publish loaded targets
-        Util.sleep(2000);
-        publishAll();
+        // Update status on targets
+        updateStatus();
 
-        while (true) {
-            Util.sleep(10000);
-            // Update status on targets
-            updateStatus();
+        // Save a snapshot of the AIS view in the background, so that little is lost on a crash
+        if (snapshotInterval > 0 && System.currentTimeMillis() - lastSnapshot >= snapshotInterval * 60000L) {
+            lastSnapshot = System.currentTimeMillis();
+            try {
+                TaskManager.getInstance().submit(Pool.IO, "AisHandler snapshot", new Runnable() {
+                    @Override
+                    public void run() {
+                        saveView();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Failed saving AIS snapshot: " + e.getMessage());
+            }
         }
     }
 
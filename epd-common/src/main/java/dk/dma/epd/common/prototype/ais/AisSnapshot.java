@@ -0,0 +1,649 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dk.dma.ais.message.ShipTypeCargo;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.voyage.NavigationalStatus;
+import dk.dma.epd.common.util.Compressor;
+
+/**
+ * Compact, versioned binary snapshot of the AIS view.
+ * <p>
+ * The file consists of a header (magic number, format version, flags, save time and payload length) followed by the
+ * payload, which is optionally compressed with the {@linkplain Compressor}. Within the payload, the vessel, SAR and
+ * AtoN targets are stored in sections, and each section stores its fields column by column as primitives, followed by
+ * the past-track points of each target. Strings are stored as length-prefixed UTF-8.
+ * <p>
+ * Snapshots are read into memory in one go, and uncompressed snapshots are decoded directly from the read buffer. The
+ * file is not memory-mapped, as a mapping keeps the file from being replaced on Windows until it is garbage
+ * collected. Snapshots are written to a temporary file first, and then moved into place, so that a snapshot written
+ * in the background never leaves a partial file behind.
+ * <p>
+ * Bump {@linkplain #VERSION} when changing the format. Snapshots of other versions are rejected rather than
+ * misread.
+ */
+public final class AisSnapshot {
+
+    /** The current format version */
+    static final int VERSION = 1;
+
+    /** "EPDA" */
+    private static final int MAGIC = 0x45504441;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4;
+    private static final int FLAG_COMPRESSED = 1;
+
+    // Flags of the mobile target columns
+    private static final int HAS_POSITION = 1;
+    private static final int HAS_STATIC = 2;
+    private static final int SHOW_INTENDED_ROUTE = 4;
+    private static final int HIDE = 8;
+    private static final int SHOW_PAST_TRACK = 16;
+    private static final int CLASS_A = 32;
+    private static final int CLASS_B = 64;
+    private static final int SAR_OLD = 128;
+
+    private AisSnapshot() {
+    }
+
+    /**
+     * Returns if the file starts with the snapshot magic number
+     *
+     * @param file
+     *            the file
+     * @return if the file is a snapshot
+     */
+    public static boolean isSnapshot(Path file) throws IOException {
+        byte[] magic = new byte[4];
+        try (InputStream in = Files.newInputStream(file)) {
+            int len = 0;
+            while (len < magic.length) {
+                int read = in.read(magic, len, magic.length - len);
+                if (read < 0) {
+                    return false;
+                }
+                len += read;
+            }
+        }
+        return ByteBuffer.wrap(magic).getInt() == MAGIC;
+    }
+
+    /**
+     * Writes the targets of the AIS store to the snapshot file
+     *
+     * @param file
+     *            the snapshot file
+     * @param aisStore
+     *            the AIS store
+     * @param compress
+     *            whether to compress the payload
+     */
+    public static void write(Path file, AisStore aisStore, boolean compress) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeMobileTargets(out, aisStore.getVesselTargets() != null ? aisStore.getVesselTargets().values()
+                : new ArrayList<VesselTarget>());
+        writeMobileTargets(out, aisStore.getSarTargets() != null ? aisStore.getSarTargets().values()
+                : new ArrayList<SarTarget>());
+        writeAtonTargets(out, aisStore.getAtonTargets() != null ? aisStore.getAtonTargets().values()
+                : new ArrayList<AtoNTarget>());
+        out.flush();
+
+        byte[] payload = bytes.toByteArray();
+        if (compress) {
+            payload = Compressor.compress(payload);
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                fileOut.writeInt(MAGIC);
+                fileOut.writeInt(VERSION);
+                fileOut.writeInt(compress ? FLAG_COMPRESSED : 0);
+                fileOut.writeLong(System.currentTimeMillis());
+                fileOut.writeInt(payload.length);
+                fileOut.write(payload);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads the targets of the snapshot file into a new AIS store
+     *
+     * @param file
+     *            the snapshot file
+     * @return the AIS store
+     */
+    public static AisStore read(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException("Not an AIS snapshot: " + file);
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported AIS snapshot version " + version);
+        }
+        int flags = buf.getInt();
+        buf.getLong(); // Save time
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            throw new IOException("Truncated AIS snapshot: " + file);
+        }
+
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            byte[] payload = new byte[length];
+            buf.get(payload);
+            buf = ByteBuffer.wrap(Compressor.decompress(payload));
+        } else {
+            buf = buf.slice();
+            buf.limit(length);
+        }
+
+        AisStore aisStore = new AisStore();
+        Map<Long, VesselTarget> vesselTargets = new HashMap<>();
+        for (MobileTarget target : readMobileTargets(buf, false)) {
+            vesselTargets.put(target.getMmsi(), (VesselTarget) target);
+        }
+        Map<Long, SarTarget> sarTargets = new HashMap<>();
+        for (MobileTarget target : readMobileTargets(buf, true)) {
+            sarTargets.put(target.getMmsi(), (SarTarget) target);
+        }
+        Map<Integer, AtoNTarget> atonTargets = new HashMap<>();
+        for (AtoNTarget target : readAtonTargets(buf)) {
+            atonTargets.put((int) target.getMmsi(), target);
+        }
+        aisStore.setVesselTargets(vesselTargets);
+        aisStore.setSarTargets(sarTargets);
+        aisStore.setAtonTargets(atonTargets);
+        return aisStore;
+    }
+
+    /**
+     * Writes a section of mobile targets
+     */
+    private static void writeMobileTargets(DataOutputStream out, Iterable<? extends MobileTarget> values) throws IOException {
+        // Take a reference to the current data objects of each target first, so that
+        // all the columns are written from the same state of the target
+        List<MobileTarget> targets = new ArrayList<>();
+        for (MobileTarget target : values) {
+            targets.add(target);
+        }
+        int n = targets.size();
+        VesselPositionData[] positions = new VesselPositionData[n];
+        VesselStaticData[] statics = new VesselStaticData[n];
+        VesselTargetSettings[] settings = new VesselTargetSettings[n];
+        int[] flags = new int[n];
+        int staticCount = 0;
+        for (int i = 0; i < n; i++) {
+            MobileTarget target = targets.get(i);
+            positions[i] = target.getPositionData();
+            statics[i] = target.getStaticData();
+            settings[i] = target.getSettings();
+            flags[i] = (positions[i] != null ? HAS_POSITION : 0) | (statics[i] != null ? HAS_STATIC : 0);
+            if (settings[i] != null) {
+                flags[i] |= (settings[i].isHide() ? HIDE : 0) | (settings[i].isShowPastTrack() ? SHOW_PAST_TRACK : 0);
+            }
+            if (target instanceof VesselTarget) {
+                VesselTarget vesselTarget = (VesselTarget) target;
+                flags[i] |= vesselTarget.isShowIntendedRoute() ? SHOW_INTENDED_ROUTE : 0;
+                flags[i] |= vesselTarget.getAisClass() == VesselTarget.AisClass.A ? CLASS_A : 0;
+                flags[i] |= vesselTarget.getAisClass() == VesselTarget.AisClass.B ? CLASS_B : 0;
+            } else if (target instanceof SarTarget) {
+                flags[i] |= ((SarTarget) target).isOld() ? SAR_OLD : 0;
+            }
+            if (statics[i] != null) {
+                staticCount++;
+            }
+        }
+
+        out.writeInt(n);
+        for (MobileTarget target : targets) {
+            out.writeLong(target.getMmsi());
+        }
+        for (MobileTarget target : targets) {
+            out.writeLong(toTime(target.getLastReceived()));
+        }
+        for (MobileTarget target : targets) {
+            out.writeByte(target.getStatus() != null ? target.getStatus().ordinal() : -1);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeByte(flags[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeInt(settings[i] != null ? settings[i].getPastTrackDisplayTime() : 0);
+            out.writeInt(settings[i] != null ? settings[i].getPastTrackMinDist() : 0);
+        }
+        for (MobileTarget target : targets) {
+            out.writeLong(target instanceof SarTarget ? toTime(((SarTarget) target).getFirstReceived()) : Long.MIN_VALUE);
+        }
+
+        // Position data columns
+        for (VesselPositionData pos : positions) {
+            out.writeDouble(pos != null && pos.getPos() != null ? pos.getPos().getLatitude() : Double.NaN);
+        }
+        for (VesselPositionData pos : positions) {
+            out.writeDouble(pos != null && pos.getPos() != null ? pos.getPos().getLongitude() : Double.NaN);
+        }
+        for (VesselPositionData pos : positions) {
+            out.writeByte(pos != null ? pos.getNavStatus() : -1);
+        }
+        for (VesselPositionData pos : positions) {
+            out.writeFloat(pos != null ? pos.getRot() : 0f);
+        }
+        for (VesselPositionData pos : positions) {
+            out.writeFloat(pos != null ? pos.getSog() : 0f);
+        }
+        for (VesselPositionData pos : positions) {
+            out.writeFloat(pos != null ? pos.getCog() : 0f);
+        }
+        for (VesselPositionData pos : positions) {
+            out.writeFloat(pos != null ? pos.getTrueHeading() : 0f);
+        }
+        for (VesselPositionData pos : positions) {
+            out.writeByte(pos != null ? pos.getPosAcc() : 0);
+        }
+
+        // Static data columns, only for the targets with static data
+        out.writeInt(staticCount);
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                out.writeLong(data.getImo());
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                writeString(out, data.getCallsign());
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                writeString(out, data.getName());
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                out.writeInt(data.getShipType() != null ? data.getShipType().getIntShipType() : -1);
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                out.writeShort(data.getDimBow());
+                out.writeShort(data.getDimStern());
+                out.writeShort(data.getDimPort());
+                out.writeShort(data.getDimStarboard());
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                out.writeByte(data.getPosType());
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                out.writeLong(data.getEta());
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                out.writeFloat(data.getDraught());
+            }
+        }
+        for (VesselStaticData data : statics) {
+            if (data != null) {
+                writeString(out, data.getDestination());
+            }
+        }
+
+        // Past-tracks, each stored as columns of times, latitudes, longitudes and gone flags
+        PastTrackWindow window = new PastTrackWindow();
+        for (MobileTarget target : targets) {
+            target.getPastTrackData().copyPointsNewerThan(Long.MIN_VALUE, window);
+            int size = window.size();
+            out.writeInt(size);
+            for (int j = 0; j < size; j++) {
+                out.writeLong(window.getTime(j));
+            }
+            for (int j = 0; j < size; j++) {
+                out.writeDouble(window.getLatitude(j));
+            }
+            for (int j = 0; j < size; j++) {
+                out.writeDouble(window.getLongitude(j));
+            }
+            for (int j = 0; j < size; j++) {
+                out.writeBoolean(window.hasGone(j));
+            }
+        }
+    }
+
+    /**
+     * Reads a section of mobile targets
+     */
+    private static List<MobileTarget> readMobileTargets(ByteBuffer buf, boolean sar) {
+        int n = buf.getInt();
+        List<MobileTarget> targets = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            MobileTarget target = sar ? new SarTarget() : new VesselTarget();
+            target.setMmsi(buf.getLong());
+            targets.add(target);
+        }
+        for (MobileTarget target : targets) {
+            target.setLastReceived(fromTime(buf.getLong()));
+        }
+        AisTarget.Status[] statuses = AisTarget.Status.values();
+        byte[] status = new byte[n];
+        for (int i = 0; i < n; i++) {
+            status[i] = buf.get();
+        }
+        int[] flags = new int[n];
+        for (int i = 0; i < n; i++) {
+            flags[i] = buf.get() & 0xFF;
+        }
+        for (int i = 0; i < n; i++) {
+            MobileTarget target = targets.get(i);
+            VesselTargetSettings settings = new VesselTargetSettings();
+            settings.setHide((flags[i] & HIDE) != 0);
+            settings.setShowPastTrack((flags[i] & SHOW_PAST_TRACK) != 0);
+            settings.setPastTrackDisplayTime(buf.getInt());
+            settings.setPastTrackMinDist(buf.getInt());
+            target.setSettings(settings);
+            if (target instanceof VesselTarget) {
+                VesselTarget vesselTarget = (VesselTarget) target;
+                vesselTarget.setShowIntendedRoute((flags[i] & SHOW_INTENDED_ROUTE) != 0);
+                if ((flags[i] & CLASS_A) != 0) {
+                    vesselTarget.setAisClass(VesselTarget.AisClass.A);
+                } else if ((flags[i] & CLASS_B) != 0) {
+                    vesselTarget.setAisClass(VesselTarget.AisClass.B);
+                }
+            } else {
+                ((SarTarget) target).setOld((flags[i] & SAR_OLD) != 0);
+            }
+        }
+        for (MobileTarget target : targets) {
+            long firstReceived = buf.getLong();
+            if (target instanceof SarTarget) {
+                ((SarTarget) target).setFirstReceived(fromTime(firstReceived));
+            }
+        }
+
+        // Position data columns
+        VesselPositionData[] positions = new VesselPositionData[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = (flags[i] & HAS_POSITION) != 0 ? new VesselPositionData() : null;
+            lats[i] = buf.getDouble();
+        }
+        for (int i = 0; i < n; i++) {
+            double lon = buf.getDouble();
+            if (positions[i] != null && !Double.isNaN(lats[i]) && !Double.isNaN(lon)) {
+                positions[i].setPos(Position.create(lats[i], lon));
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int navStatus = buf.get();
+            if (positions[i] != null) {
+                positions[i].setNavStatus(navStatus);
+                if (navStatus >= 0) {
+                    positions[i].setEnumNavStatus(NavigationalStatus.fromAIS(navStatus));
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            float rot = buf.getFloat();
+            if (positions[i] != null) {
+                positions[i].setRot(rot);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            float sog = buf.getFloat();
+            if (positions[i] != null) {
+                positions[i].setSog(sog);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            float cog = buf.getFloat();
+            if (positions[i] != null) {
+                positions[i].setCog(cog);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            float trueHeading = buf.getFloat();
+            if (positions[i] != null) {
+                positions[i].setTrueHeading(trueHeading);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int posAcc = buf.get();
+            if (positions[i] != null) {
+                positions[i].setPosAcc(posAcc);
+                targets.get(i).setPositionData(positions[i]);
+            }
+        }
+
+        // Static data columns
+        int staticCount = buf.getInt();
+        VesselStaticData[] statics = new VesselStaticData[staticCount];
+        for (int i = 0, j = 0; i < n; i++) {
+            if ((flags[i] & HAS_STATIC) != 0) {
+                statics[j] = new VesselStaticData();
+                targets.get(i).setStaticData(statics[j++]);
+            }
+        }
+        for (VesselStaticData data : statics) {
+            data.setImo(buf.getLong());
+        }
+        for (VesselStaticData data : statics) {
+            data.setCallsign(readString(buf));
+        }
+        for (VesselStaticData data : statics) {
+            data.setName(readString(buf));
+        }
+        for (VesselStaticData data : statics) {
+            data.setShipType(new ShipTypeCargo(buf.getInt()));
+        }
+        for (VesselStaticData data : statics) {
+            data.setDimBow(buf.getShort());
+            data.setDimStern(buf.getShort());
+            data.setDimPort(buf.getShort());
+            data.setDimStarboard(buf.getShort());
+        }
+        for (VesselStaticData data : statics) {
+            data.setPosType(buf.get());
+        }
+        for (VesselStaticData data : statics) {
+            data.setEta(buf.getLong());
+        }
+        for (VesselStaticData data : statics) {
+            data.setDraught(buf.getFloat());
+        }
+        for (VesselStaticData data : statics) {
+            data.setDestination(readString(buf));
+        }
+
+        // Past-tracks
+        PastTrackWindow window = new PastTrackWindow();
+        for (MobileTarget target : targets) {
+            int size = buf.getInt();
+            int start = buf.position();
+            window.clear();
+            for (int j = 0; j < size; j++) {
+                int idx = start + j * 8;
+                window.add(buf.getLong(idx), buf.getDouble(idx + size * 8), buf.getDouble(idx + size * 16),
+                        buf.get(start + size * 24 + j) != 0);
+            }
+            buf.position(start + size * 25);
+            target.setPastTrackData(new PastTrackRingBuffer(window));
+        }
+
+        // Set the status last, as flagging a target gone updates the past-track
+        for (int i = 0; i < n; i++) {
+            targets.get(i).setStatus(status[i] >= 0 && status[i] < statuses.length ? statuses[status[i]] : AisTarget.Status.OK);
+        }
+        return targets;
+    }
+
+    /**
+     * Writes a section of AtoN targets
+     */
+    private static void writeAtonTargets(DataOutputStream out, Iterable<AtoNTarget> values) throws IOException {
+        List<AtoNTarget> targets = new ArrayList<>();
+        for (AtoNTarget target : values) {
+            targets.add(target);
+        }
+
+        out.writeInt(targets.size());
+        for (AtoNTarget target : targets) {
+            out.writeLong(target.getMmsi());
+        }
+        for (AtoNTarget target : targets) {
+            out.writeLong(toTime(target.getLastReceived()));
+        }
+        for (AtoNTarget target : targets) {
+            out.writeByte(target.getStatus() != null ? target.getStatus().ordinal() : -1);
+        }
+        for (AtoNTarget target : targets) {
+            Position pos = target.getPos();
+            out.writeDouble(pos != null ? pos.getLatitude() : Double.NaN);
+            out.writeDouble(pos != null ? pos.getLongitude() : Double.NaN);
+        }
+        for (AtoNTarget target : targets) {
+            out.writeByte(target.getAtonType() != null ? target.getAtonType().getAtoNTypeCode() : -1);
+        }
+        for (AtoNTarget target : targets) {
+            writeString(out, target.getName());
+        }
+        for (AtoNTarget target : targets) {
+            writeString(out, target.getNameExt());
+        }
+        for (AtoNTarget target : targets) {
+            out.writeShort(target.getDimBow());
+            out.writeShort(target.getDimStern());
+            out.writeShort(target.getDimPort());
+            out.writeShort(target.getDimStarboard());
+        }
+        for (AtoNTarget target : targets) {
+            out.writeByte(target.getPosAcc());
+            out.writeByte(target.getPosType());
+            out.writeByte(target.getOffPosition());
+            out.writeByte(target.getRegional());
+            out.writeByte(target.getRaim());
+            out.writeByte(target.getVirtual());
+            out.writeByte(target.getAssigned());
+        }
+    }
+
+    /**
+     * Reads a section of AtoN targets
+     */
+    private static List<AtoNTarget> readAtonTargets(ByteBuffer buf) {
+        int n = buf.getInt();
+        List<AtoNTarget> targets = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            AtoNTarget target = new AtoNTarget();
+            target.setMmsi(buf.getLong());
+            targets.add(target);
+        }
+        for (AtoNTarget target : targets) {
+            target.setLastReceived(fromTime(buf.getLong()));
+        }
+        AisTarget.Status[] statuses = AisTarget.Status.values();
+        for (AtoNTarget target : targets) {
+            int status = buf.get();
+            target.setStatus(status >= 0 && status < statuses.length ? statuses[status] : AisTarget.Status.OK);
+        }
+        for (AtoNTarget target : targets) {
+            double lat = buf.getDouble();
+            double lon = buf.getDouble();
+            if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+                target.setPos(Position.create(lat, lon));
+            }
+        }
+        for (AtoNTarget target : targets) {
+            int type = buf.get();
+            target.setAtonType(type >= 0 ? AtoNTargetType.getAtoNTargetTypeFromTypeCode(type) : null);
+        }
+        for (AtoNTarget target : targets) {
+            target.setName(readString(buf));
+        }
+        for (AtoNTarget target : targets) {
+            target.setNameExt(readString(buf));
+        }
+        for (AtoNTarget target : targets) {
+            target.setDimBow(buf.getShort());
+            target.setDimStern(buf.getShort());
+            target.setDimPort(buf.getShort());
+            target.setDimStarboard(buf.getShort());
+        }
+        for (AtoNTarget target : targets) {
+            target.setPosAcc(buf.get());
+            target.setPosType(buf.get());
+            target.setOffPosition(buf.get());
+            target.setRegional(buf.get());
+            target.setRaim(buf.get());
+            target.setVirtual(buf.get());
+            target.setAssigned(buf.get());
+        }
+        return targets;
+    }
+
+    private static long toTime(Date date) {
+        return (date != null) ? date.getTime() : Long.MIN_VALUE;
+    }
+
+    private static Date fromTime(long time) {
+        return (time != Long.MIN_VALUE) ? new Date(time) : null;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(bytes.length, Short.MAX_VALUE);
+        out.writeShort(len);
+        out.write(bytes, 0, len);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getShort();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,214 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+
+/**
+ * Dispatches AIS target updates to a list of {@linkplain IAisTargetListener} listeners in batches.
+ * <p>
+ * Updates published within the dispatch window are coalesced per MMSI, and delivered as a single call to
+ * {@linkplain IAisTargetListener#targetsUpdated(Collection)} when the window expires. Since the targets are mutable, the
+ * listeners will see the most recent state of each target.
+ * <p>
+ * If the dispatch window is zero or less, each update is delivered immediately in the publishing thread. Otherwise the
+ * end of the window is timed by the periodic pool of the {@linkplain TaskManager}, and the batch is delivered in the
+ * CPU pool, so that slow listeners do not hold up the other periodic tasks.
+ */
+@ThreadSafe
+public class AisTargetDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AisTargetDispatcher.class);
+
+    private final List<IAisTargetListener> listeners;
+    private final long window;
+
+    /** Pending updates keyed by MMSI, in order of first publication. Guarded by this */
+    private Map<Long, AisTarget> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushFuture;
+    private boolean stopped;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable triggerTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                TaskManager.getInstance().submit(Pool.CPU, "AisTargetDispatcher", flushTask);
+            } catch (RejectedExecutionException e) {
+                // Keep the pending updates and try again after another window
+                LOG.warn("AIS target updates not dispatched: " + e.getMessage());
+                synchronized (AisTargetDispatcher.this) {
+                    flushFuture = null;
+                    if (!stopped && !pending.isEmpty()) {
+                        try {
+                            scheduleFlush();
+                        } catch (RejectedExecutionException ex) {
+                            // The task manager has been shut down
+                            pending.clear();
+                        }
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param listeners
+     *            the listeners to dispatch to. Must be safe to iterate while being modified
+     * @param window
+     *            the dispatch window in milliseconds
+     */
+    public AisTargetDispatcher(List<IAisTargetListener> listeners, long window) {
+        this.listeners = listeners;
+        this.window = window;
+    }
+
+    /**
+     * Returns the dispatch window in milliseconds
+     *
+     * @return the dispatch window in milliseconds
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * Publishes the update of a target.
+     *
+     * @param aisTarget
+     *            the updated target
+     */
+    public void publish(AisTarget aisTarget) {
+        if (window <= 0) {
+            deliver(Collections.singletonList(aisTarget));
+            return;
+        }
+
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            pending.put(aisTarget.getMmsi(), aisTarget);
+            if (flushFuture == null) {
+                scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * Schedules the flush of the pending updates at the end of the dispatch window. Must be called holding the lock
+     */
+    private void scheduleFlush() {
+        flushFuture = TaskManager.getInstance().schedule("AisTargetDispatcher trigger", triggerTask, window,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes the update of a collection of targets.
+     *
+     * @param aisTargets
+     *            the updated targets
+     */
+    public void publishAll(Collection<? extends AisTarget> aisTargets) {
+        if (window <= 0) {
+            if (!aisTargets.isEmpty()) {
+                deliver(new ArrayList<AisTarget>(aisTargets));
+            }
+            return;
+        }
+
+        for (AisTarget aisTarget : aisTargets) {
+            publish(aisTarget);
+        }
+    }
+
+    /**
+     * Delivers all pending updates immediately in the calling thread
+     */
+    public void flush() {
+        Map<Long, AisTarget> batch;
+        synchronized (this) {
+            flushFuture = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        deliver(new ArrayList<>(batch.values()));
+    }
+
+    /**
+     * Returns the number of pending updates
+     *
+     * @return the number of pending updates
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops the dispatcher. Pending and subsequent updates are discarded.
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        pending.clear();
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+    }
+
+    /**
+     * Delivers the batch of targets to all listeners
+     *
+     * @param batch
+     *            the batch of targets
+     */
+    private void deliver(List<AisTarget> batch) {
+        Collection<AisTarget> targets = Collections.unmodifiableList(batch);
+        for (IAisTargetListener listener : listeners) {
+            try {
+                listener.targetsUpdated(targets);
+            } catch (RuntimeException e) {
+                LOG.error("Failed dispatching AIS target updates to " + listener, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Spatial index of AIS targets based on a fixed lat/lon grid.
+ * <p>
+ * Each target is registered in the cell containing its most recent position. Updates are serialized, whereas queries are
+ * lock-free and may run concurrently with updates, in which case a target moving between cells may be reported in either
+ * its old or its new cell, but never both.
+ * <p>
+ * The index only holds MMSI's and positions. It is up to the owner (i.e. the {@linkplain AisHandlerCommon}) to resolve
+ * the MMSI's to the actual targets.
+ */
+@ThreadSafe
+public class AisTargetGrid {
+
+    /** Default cell size in degrees */
+    public static final double DEFAULT_CELL_SIZE = 0.25;
+
+    private static final double EARTH_RADIUS = 6371008.8; // meters
+
+    private final double cellSize;
+    private final int lonCells;
+    private final int latCells;
+
+    /** Maps a cell index to the entries within the cell */
+    private final ConcurrentHashMap<Integer, Set<Entry>> cells = new ConcurrentHashMap<>();
+
+    /** Maps an MMSI to its entry */
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     */
+    public AisTargetGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param cellSize
+     *            the size of the grid cells in degrees
+     */
+    public AisTargetGrid(double cellSize) {
+        if (cellSize <= 0.0 || cellSize > 90.0) {
+            throw new IllegalArgumentException("Invalid cell size " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.lonCells = (int) Math.ceil(360.0 / cellSize);
+        this.latCells = (int) Math.ceil(180.0 / cellSize);
+    }
+
+    /**
+     * Registers or moves the target with the given MMSI to the given position
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     * @param lat
+     *            the latitude of the target
+     * @param lon
+     *            the longitude of the target
+     */
+    public synchronized void update(long mmsi, double lat, double lon) {
+        int cell = cellIndex(latIndex(lat), lonIndex(lon));
+        Entry entry = entries.get(mmsi);
+        if (entry == null) {
+            entry = new Entry(mmsi, lat, lon, cell);
+            entries.put(mmsi, entry);
+            cellEntries(cell).add(entry);
+            return;
+        }
+
+        entry.lat = lat;
+        entry.lon = lon;
+        if (entry.cell != cell) {
+            removeFromCell(entry);
+            entry.cell = cell;
+            cellEntries(cell).add(entry);
+        }
+    }
+
+    /**
+     * Removes the target with the given MMSI from the index
+     *
+     * @param mmsi
+     *            the MMSI of the target to remove
+     */
+    public synchronized void remove(long mmsi) {
+        Entry entry = entries.remove(mmsi);
+        if (entry != null) {
+            removeFromCell(entry);
+        }
+    }
+
+    /**
+     * Removes all targets from the index
+     */
+    public synchronized void clear() {
+        entries.clear();
+        cells.clear();
+    }
+
+    /**
+     * Returns the number of indexed targets
+     *
+     * @return the number of indexed targets
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns if the target with the given MMSI is indexed
+     *
+     * @param mmsi
+     *            the MMSI to check
+     * @return if the target is indexed
+     */
+    public boolean contains(long mmsi) {
+        return entries.containsKey(mmsi);
+    }
+
+    /**
+     * Returns the MMSI's of all targets within the given bounding box.
+     * <p>
+     * If {@code minLon} is greater than {@code maxLon}, the bounding box is assumed to cross the date line.
+     *
+     * @param minLat
+     *            the southern boundary
+     * @param minLon
+     *            the western boundary
+     * @param maxLat
+     *            the northern boundary
+     * @param maxLon
+     *            the eastern boundary
+     * @return the MMSI's of all targets within the bounding box
+     */
+    public List<Long> getWithin(double minLat, double minLon, double maxLat, double maxLon) {
+        List<Long> result = new ArrayList<>();
+        if (minLat > maxLat || entries.isEmpty()) {
+            return result;
+        }
+        if (minLon > maxLon) {
+            // Crosses the date line
+            collectWithin(minLat, minLon, maxLat, 180.0, result);
+            collectWithin(minLat, -180.0, maxLat, maxLon, result);
+        } else {
+            collectWithin(minLat, minLon, maxLat, maxLon, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the MMSI's of all targets within the given radius of the given position
+     *
+     * @param lat
+     *            the latitude of the center
+     * @param lon
+     *            the longitude of the center
+     * @param radius
+     *            the radius in meters
+     * @return the MMSI's of all targets within the radius
+     */
+    public List<Long> getWithinRadius(double lat, double lon, double radius) {
+        List<Long> result = new ArrayList<>();
+        if (radius < 0.0 || entries.isEmpty()) {
+            return result;
+        }
+
+        // Compute the bounding box of the circle
+        double dLat = Math.toDegrees(radius / EARTH_RADIUS);
+        double minLat = Math.max(-90.0, lat - dLat);
+        double maxLat = Math.min(90.0, lat + dLat);
+        double minLon = -180.0;
+        double maxLon = 180.0;
+        double cosLat = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        if (maxLat < 90.0 && minLat > -90.0 && cosLat > 0.0) {
+            double dLon = dLat / cosLat;
+            if (dLon < 180.0) {
+                minLon = normalizeLon(lon - dLon);
+                maxLon = normalizeLon(lon + dLon);
+            }
+        }
+
+        // Filter the bounding box candidates by their actual distance
+        for (Long mmsi : getWithin(minLat, minLon, maxLat, maxLon)) {
+            Entry entry = entries.get(mmsi);
+            if (entry != null && distance(lat, lon, entry.lat, entry.lon) <= radius) {
+                result.add(mmsi);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects the MMSI's of the targets within the given bounding box, which must not cross the date line.
+     * <p>
+     * If the bounding box spans more cells than there are occupied cells, the occupied cells are traversed instead.
+     */
+    private void collectWithin(double minLat, double minLon, double maxLat, double maxLon, List<Long> result) {
+        int minLatIdx = latIndex(minLat);
+        int maxLatIdx = latIndex(maxLat);
+        int minLonIdx = lonIndex(minLon);
+        int maxLonIdx = lonIndex(maxLon);
+        long spanned = (long) (maxLatIdx - minLatIdx + 1) * (maxLonIdx - minLonIdx + 1);
+
+        if (spanned > cells.size()) {
+            for (Map.Entry<Integer, Set<Entry>> cell : cells.entrySet()) {
+                int latIdx = cell.getKey() / lonCells;
+                int lonIdx = cell.getKey() % lonCells;
+                if (latIdx >= minLatIdx && latIdx <= maxLatIdx && lonIdx >= minLonIdx && lonIdx <= maxLonIdx) {
+                    collectCell(cell.getValue(), minLat, minLon, maxLat, maxLon, result);
+                }
+            }
+        } else {
+            for (int latIdx = minLatIdx; latIdx <= maxLatIdx; latIdx++) {
+                for (int lonIdx = minLonIdx; lonIdx <= maxLonIdx; lonIdx++) {
+                    Set<Entry> cell = cells.get(cellIndex(latIdx, lonIdx));
+                    if (cell != null) {
+                        collectCell(cell, minLat, minLon, maxLat, maxLon, result);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the MMSI's of the entries of the cell that are within the given bounding box
+     */
+    private void collectCell(Set<Entry> cell, double minLat, double minLon, double maxLat, double maxLon, List<Long> result) {
+        for (Entry entry : cell) {
+            double lat = entry.lat;
+            double lon = entry.lon;
+            if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+                result.add(entry.mmsi);
+            }
+        }
+    }
+
+    /**
+     * Returns the entries of the given cell, creating the cell if it does not exist
+     */
+    private Set<Entry> cellEntries(int cell) {
+        Set<Entry> cellEntries = cells.get(cell);
+        if (cellEntries == null) {
+            cellEntries = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+            cells.put(cell, cellEntries);
+        }
+        return cellEntries;
+    }
+
+    /**
+     * Removes the entry from its current cell, and removes the cell if it is empty
+     */
+    private void removeFromCell(Entry entry) {
+        Set<Entry> cellEntries = cells.get(entry.cell);
+        if (cellEntries != null) {
+            cellEntries.remove(entry);
+            if (cellEntries.isEmpty()) {
+                cells.remove(entry.cell);
+            }
+        }
+    }
+
+    private int latIndex(double lat) {
+        int idx = (int) Math.floor((lat + 90.0) / cellSize);
+        return Math.max(0, Math.min(latCells - 1, idx));
+    }
+
+    private int lonIndex(double lon) {
+        int idx = (int) Math.floor((normalizeLon(lon) + 180.0) / cellSize);
+        return Math.max(0, Math.min(lonCells - 1, idx));
+    }
+
+    private int cellIndex(int latIdx, int lonIdx) {
+        return latIdx * lonCells + lonIdx;
+    }
+
+    private static double normalizeLon(double lon) {
+        if (lon < -180.0 || lon > 180.0) {
+            lon = ((lon + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+        }
+        return lon;
+    }
+
+    /**
+     * Returns the great circle distance in meters between the two positions
+     */
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * An indexed target
+     */
+    private static final class Entry {
+        final long mmsi;
+        volatile double lat;
+        volatile double lon;
+        volatile int cell;
+
+        Entry(long mmsi, double lat, double lon, int cell) {
+            this.mmsi = mmsi;
+            this.lat = lat;
+            this.lon = lon;
+            this.cell = cell;
+        }
+    }
+}
@@ -14,7 +14,7 @@
  */
 package dk.dma.epd.common.prototype.ais;
 
-
+import java.util.Collection;
 
 /**
  * Interface to implement for classes wanting to receive AIS target updates
@@ -27,4 +27,13 @@ public interface IAisTargetListener {
      */
     void targetUpdated(AisTarget aisTarget);
 
+    /**
+     * Called by the {@linkplain AisTargetDispatcher} with a batch of updated targets.
+     * <p>
+     * The batch contains each target at most once, and implementations should
+     * only repaint or hop onto the EDT once per batch.
+     * @param aisTargets the updated targets
+     */
+    void targetsUpdated(Collection<AisTarget> aisTargets);
+
 }
@@ -0,0 +1,317 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Past-track storage backed by a primitive ring buffer.
+ * <p>
+ * Each point takes up a time stamp in epoch milliseconds, a latitude, a longitude and a gone flag, rather than a
+ * {@linkplain PastTrackPoint} with its {@code Date} and {@code Position} objects.
+ * <p>
+ * The buffer grows by doubling up to {@linkplain #MAX_CAPACITY} points, after which the oldest points are overwritten.
+ * Updates are serialized by a {@code StampedLock}, which is uncontended in the normal case of a single AIS writer.
+ * Readers use optimistic reads, and only fall back to the read lock if the buffer was modified while being copied.
+ */
+@ThreadSafe
+public class PastTrackRingBuffer implements IPastTrack {
+
+    /** The maximum number of points kept per target */
+    public static final int MAX_CAPACITY = 1 << 14;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+
+    @GuardedBy("lock") private long[] times;
+    @GuardedBy("lock") private double[] lats;
+    @GuardedBy("lock") private double[] lons;
+    @GuardedBy("lock") private boolean[] gone;
+    /** Index of the oldest point */
+    @GuardedBy("lock") private int head;
+    @GuardedBy("lock") private int size;
+
+    private volatile long lastChangeTime;
+
+    /**
+     * No-arg constructor
+     */
+    public PastTrackRingBuffer() {
+        allocate(INITIAL_CAPACITY);
+        lastChangeTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Copy-constructor
+     * @param pastTrack the past-track to copy
+     */
+    public PastTrackRingBuffer(PastTrackRingBuffer pastTrack) {
+        PastTrackWindow window = new PastTrackWindow();
+        pastTrack.copyPointsNewerThan(Long.MIN_VALUE, window);
+        init(window);
+        lastChangeTime = pastTrack.getLastChangeTime();
+    }
+
+    /**
+     * Constructor used for restoring a past-track from the points of the window, oldest first.
+     * At most the {@linkplain #MAX_CAPACITY} newest points are kept.
+     * @param window the points of the past-track
+     */
+    PastTrackRingBuffer(PastTrackWindow window) {
+        init(window);
+        lastChangeTime = System.currentTimeMillis();
+    }
+
+    private void init(PastTrackWindow window) {
+        int count = Math.min(window.size(), MAX_CAPACITY);
+        int offset = window.size() - count;
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < count) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        for (int i = 0; i < count; i++) {
+            times[i] = window.getTime(offset + i);
+            lats[i] = window.getLatitude(offset + i);
+            lons[i] = window.getLongitude(offset + i);
+            gone[i] = window.hasGone(offset + i);
+        }
+        size = count;
+    }
+
+    /**
+     * Returns the last change time
+     * @return the last change time
+     */
+    public long getLastChangeTime() {
+        return lastChangeTime;
+    }
+
+    /**
+     * Returns the number of points
+     * @return the number of points
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds a past-track position, if it is further away
+     * from the last point than minDist
+     *
+     * @param vesselPosition the new position to add
+     * @param minDist the minimum distance required to add the position
+     */
+    @Override
+    public void addPosition(Position vesselPosition, int minDist) {
+        long stamp = lock.writeLock();
+        try {
+            if (size > 0) {
+                int last = index(size - 1);
+                Position lastPosition = Position.create(lats[last], lons[last]);
+                if (lastPosition.distanceTo(vesselPosition, CoordinateSystem.CARTESIAN) <= minDist) {
+                    return;
+                }
+            }
+
+            if (size == times.length) {
+                if (times.length < MAX_CAPACITY) {
+                    grow();
+                } else {
+                    // Overwrite the oldest point
+                    head = index(1);
+                    size--;
+                }
+            }
+            int idx = index(size);
+            times[idx] = System.currentTimeMillis();
+            lats[idx] = vesselPosition.getLatitude();
+            lons[idx] = vesselPosition.getLongitude();
+            gone[idx] = false;
+            size++;
+            lastChangeTime = System.currentTimeMillis();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Cleans up old past-track points that have timed out according to the TTL parameter
+     * @param ttl the time to live in seconds
+     */
+    @Override
+    public void cleanup(int ttl) {
+        long limit = System.currentTimeMillis() - ttl * 1000L;
+        long stamp = lock.writeLock();
+        try {
+            int removed = 0;
+            while (size > 0 && times[head] < limit) {
+                head = index(1);
+                size--;
+                removed++;
+            }
+            if (removed > 0) {
+                if (times.length > INITIAL_CAPACITY && size < times.length / 4) {
+                    resize(times.length / 2);
+                }
+                lastChangeTime = System.currentTimeMillis();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Flags that the mobile target was gone.
+     * Updates the last past-track point with this state.
+     */
+    public void flagGone() {
+        long stamp = lock.writeLock();
+        try {
+            if (size > 0) {
+                gone[index(size - 1)] = true;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copies the points newer than the given {@code time} into the window, oldest first.
+     * The window is cleared first.
+     *
+     * @param time the time in epoch milliseconds
+     * @param window the window to copy the points into
+     */
+    public void copyPointsNewerThan(long time, PastTrackWindow window) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L && copy(time, window) && lock.validate(stamp)) {
+            return;
+        }
+
+        // Modified while copying
+        stamp = lock.readLock();
+        try {
+            copy(time, window);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a copy of the points as {@linkplain PastTrackPoint}'s, oldest first.
+     * <p>
+     * Allocates a point per entry, so prefer {@linkplain #copyPointsNewerThan(long, PastTrackWindow)}
+     */
+    @Override
+    public Collection<PastTrackPoint> getPoints() {
+        PastTrackWindow window = new PastTrackWindow();
+        copyPointsNewerThan(Long.MIN_VALUE, window);
+        List<PastTrackPoint> points = new ArrayList<>(window.size());
+        for (int i = 0; i < window.size(); i++) {
+            PastTrackPoint point = new PastTrackPoint(new Date(window.getTime(i)), Position.create(window.getLatitude(i),
+                    window.getLongitude(i)));
+            if (window.hasGone(i)) {
+                point.flagGone();
+            }
+            points.add(point);
+        }
+        return points;
+    }
+
+    /**
+     * Copies the points newer than the given time into the window.
+     * <p>
+     * May be called during an optimistic read, in which case the fields may be inconsistent.
+     * Returns false if an inconsistency is detected.
+     */
+    private boolean copy(long time, PastTrackWindow window) {
+        window.clear();
+        long[] t = times;
+        double[] la = lats;
+        double[] lo = lons;
+        boolean[] g = gone;
+        int h = head;
+        int n = size;
+        int capacity = t.length;
+        if (la.length != capacity || lo.length != capacity || g.length != capacity || n > capacity || h >= capacity) {
+            return false;
+        }
+        int mask = capacity - 1;
+        for (int i = 0; i < n; i++) {
+            int idx = (h + i) & mask;
+            if (t[idx] > time) {
+                window.add(t[idx], la[idx], lo[idx], g[idx]);
+            }
+        }
+        return true;
+    }
+
+    private int index(int offset) {
+        return (head + offset) & (times.length - 1);
+    }
+
+    private void allocate(int capacity) {
+        times = new long[capacity];
+        lats = new double[capacity];
+        lons = new double[capacity];
+        gone = new boolean[capacity];
+        head = 0;
+    }
+
+    private void grow() {
+        resize(times.length * 2);
+    }
+
+    /**
+     * Moves the points to new arrays of the given capacity, starting at index 0
+     */
+    private void resize(int capacity) {
+        long[] t = times;
+        double[] la = lats;
+        double[] lo = lons;
+        boolean[] g = gone;
+        int h = head;
+        int mask = t.length - 1;
+        allocate(capacity);
+        for (int i = 0; i < size; i++) {
+            int idx = (h + i) & mask;
+            times[i] = t[idx];
+            lats[i] = la[idx];
+            lons[i] = lo[idx];
+            gone[i] = g[idx];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PastTrackRingBuffer [size=" + size() + "]";
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A reusable buffer holding a window of past-track points copied from a {@linkplain PastTrackRingBuffer}.
+ * <p>
+ * The owner, e.g. a past-track graphic, keeps a single instance and refills it on every update, so that iterating the
+ * past-track does not allocate once the buffer has grown to the size of the window.
+ */
+@NotThreadSafe
+public final class PastTrackWindow {
+
+    private long[] times = new long[16];
+    private double[] lats = new double[16];
+    private double[] lons = new double[16];
+    private boolean[] gone = new boolean[16];
+    private int size;
+
+    /**
+     * Returns the number of points in the window
+     * @return the number of points in the window
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the time of the point with the given index in epoch milliseconds
+     * @param index the index of the point
+     * @return the time of the point
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Returns the latitude of the point with the given index
+     * @param index the index of the point
+     * @return the latitude of the point
+     */
+    public double getLatitude(int index) {
+        return lats[index];
+    }
+
+    /**
+     * Returns the longitude of the point with the given index
+     * @param index the index of the point
+     * @return the longitude of the point
+     */
+    public double getLongitude(int index) {
+        return lons[index];
+    }
+
+    /**
+     * Returns if the target was gone while the point with the given index was the active past-track point
+     * @param index the index of the point
+     * @return if the target was gone
+     */
+    public boolean hasGone(int index) {
+        return gone[index];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(long time, double lat, double lon, boolean hasGone) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            lats = Arrays.copyOf(lats, capacity);
+            lons = Arrays.copyOf(lons, capacity);
+            gone = Arrays.copyOf(gone, capacity);
+        }
+        times[size] = time;
+        lats[size] = lat;
+        lons[size] = lon;
+        gone[size] = hasGone;
+        size++;
+    }
+}
@@ -0,0 +1,295 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Accumulates the traffic density within a fixed lat/lon area as a primitive grid of time-decayed vessel presence.
+ * <p>
+ * Each position report adds the time elapsed since the previous report of the vessel, capped at
+ * {@linkplain #MAX_PRESENCE} seconds, to the cell containing the new position. Thus the value of a cell approximates the
+ * number of vessel-seconds spent within it, regardless of the reporting rates of the vessels.
+ * <p>
+ * The values decay exponentially with the configured half-life. Rather than decaying every cell continuously, the
+ * weights of new reports are scaled up relative to a reference time, and the cells are only rescaled when the scale
+ * factor grows too large. Hence adding a report is O(1).
+ */
+@ThreadSafe
+public class TrafficDensityGrid {
+
+    /** The maximum presence in seconds attributed to a single report */
+    public static final double MAX_PRESENCE = 180.0;
+
+    /** The presence in seconds attributed to the first report of a vessel */
+    public static final double DEFAULT_PRESENCE = 10.0;
+
+    /** The cells are rescaled when the scale of new reports exceeds e^this */
+    private static final double MAX_EXPONENT = 20.0;
+
+    /** Rescaled values below this are flushed to zero */
+    private static final float MIN_VALUE = 1e-6f;
+
+    private final double minLat;
+    private final double minLon;
+    private final double cellSize;
+    private final int rows;
+    private final int cols;
+    /** The decay rate per millisecond */
+    private final double decayRate;
+
+    @GuardedBy("this")
+    private final float[] cells;
+    /** The time at which the stored values are unscaled */
+    @GuardedBy("this")
+    private long epoch;
+
+    @GuardedBy("this")
+    private volatile long version;
+
+    /**
+     * Constructor
+     * 
+     * @param minLat
+     *            the southern boundary
+     * @param minLon
+     *            the western boundary
+     * @param maxLat
+     *            the northern boundary
+     * @param maxLon
+     *            the eastern boundary
+     * @param cellSize
+     *            the size of the cells in degrees
+     * @param halfLife
+     *            the half-life of the density in milliseconds. Zero or less disables decay
+     */
+    public TrafficDensityGrid(double minLat, double minLon, double maxLat, double maxLon, double cellSize, long halfLife) {
+        if (cellSize <= 0.0 || maxLat <= minLat || maxLon <= minLon) {
+            throw new IllegalArgumentException("Invalid density grid " + minLat + "," + minLon + "," + maxLat + ","
+                    + maxLon + " / " + cellSize);
+        }
+        long count = (long) Math.ceil((maxLat - minLat) / cellSize) * (long) Math.ceil((maxLon - minLon) / cellSize);
+        if (count > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Too many density grid cells: " + count);
+        }
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.cellSize = cellSize;
+        this.rows = (int) Math.ceil((maxLat - minLat) / cellSize);
+        this.cols = (int) Math.ceil((maxLon - minLon) / cellSize);
+        this.decayRate = (halfLife > 0) ? Math.log(2.0) / halfLife : 0.0;
+        this.cells = new float[rows * cols];
+    }
+
+    /**
+     * Adds a position report of a vessel
+     * 
+     * @param lat
+     *            the latitude of the reported position
+     * @param lon
+     *            the longitude of the reported position
+     * @param previousTime
+     *            the time of the previous report of the vessel in epoch milliseconds, or zero or less if none
+     * @param time
+     *            the time of the report in epoch milliseconds
+     * @return if the position is within the grid
+     */
+    public boolean addReport(double lat, double lon, long previousTime, long time) {
+        double presence = (previousTime > 0) ? Math.min(MAX_PRESENCE, Math.max(0.0, (time - previousTime) / 1000.0))
+                : DEFAULT_PRESENCE;
+        return add(lat, lon, presence, time);
+    }
+
+    /**
+     * Adds the given weight to the cell containing the position
+     * 
+     * @param lat
+     *            the latitude
+     * @param lon
+     *            the longitude
+     * @param weight
+     *            the weight to add
+     * @param time
+     *            the time of the weight in epoch milliseconds
+     * @return if the position is within the grid
+     */
+    public boolean add(double lat, double lon, double weight, long time) {
+        int row = getRow(lat);
+        int col = getCol(lon);
+        if (row < 0 || col < 0 || weight <= 0.0) {
+            return false;
+        }
+        synchronized (this) {
+            double exponent = decayRate * (time - epoch);
+            if (Math.abs(exponent) > MAX_EXPONENT) {
+                rescale(time);
+                exponent = 0.0;
+            }
+            cells[row * cols + col] += (float) (weight * Math.exp(exponent));
+            version++;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the decayed values of a block of cells into the destination array, row by row from the south-west
+     * 
+     * @param row
+     *            the southern row of the block
+     * @param col
+     *            the western column of the block
+     * @param rowCount
+     *            the number of rows of the block
+     * @param colCount
+     *            the number of columns of the block
+     * @param dest
+     *            the destination array, of at least rowCount * colCount elements
+     * @param time
+     *            the time to decay the values to in epoch milliseconds
+     * @return the maximum value of the block
+     */
+    public float copyCells(int row, int col, int rowCount, int colCount, float[] dest, long time) {
+        if (row < 0 || col < 0 || row + rowCount > rows || col + colCount > cols) {
+            throw new IndexOutOfBoundsException("Block outside density grid");
+        }
+        float max = 0f;
+        synchronized (this) {
+            float scale = (float) Math.exp(-decayRate * (time - epoch));
+            for (int r = 0; r < rowCount; r++) {
+                int src = (row + r) * cols + col;
+                int dst = r * colCount;
+                for (int c = 0; c < colCount; c++) {
+                    float value = cells[src + c] * scale;
+                    dest[dst + c] = value;
+                    if (value > max) {
+                        max = value;
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the decayed value of a cell
+     * 
+     * @param row
+     *            the row of the cell
+     * @param col
+     *            the column of the cell
+     * @param time
+     *            the time to decay the value to in epoch milliseconds
+     * @return the value of the cell
+     */
+    public synchronized float getValue(int row, int col, long time) {
+        return cells[row * cols + col] * (float) Math.exp(-decayRate * (time - epoch));
+    }
+
+    /**
+     * Clears the grid
+     */
+    public void clear() {
+        synchronized (this) {
+            Arrays.fill(cells, 0f);
+            version++;
+        }
+    }
+
+    /**
+     * Returns the row containing the latitude, or -1 if outside the grid
+     * 
+     * @param lat
+     *            the latitude
+     * @return the row
+     */
+    public int getRow(double lat) {
+        int row = (int) Math.floor((lat - minLat) / cellSize);
+        return (row >= 0 && row < rows) ? row : -1;
+    }
+
+    /**
+     * Returns the column containing the longitude, or -1 if outside the grid
+     * 
+     * @param lon
+     *            the longitude
+     * @return the column
+     */
+    public int getCol(double lon) {
+        int col = (int) Math.floor((lon - minLon) / cellSize);
+        return (col >= 0 && col < cols) ? col : -1;
+    }
+
+    /**
+     * Returns the southern latitude of the given row
+     * 
+     * @param row
+     *            the row
+     * @return the southern latitude of the row
+     */
+    public double getLatitude(int row) {
+        return minLat + row * cellSize;
+    }
+
+    /**
+     * Returns the western longitude of the given column
+     * 
+     * @param col
+     *            the column
+     * @return the western longitude of the column
+     */
+    public double getLongitude(int col) {
+        return minLon + col * cellSize;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns the version of the grid, which changes whenever reports are added
+     * 
+     * @return the version of the grid
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Rescales the stored values to be unscaled at the given time
+     */
+    @GuardedBy("this")
+    private void rescale(long time) {
+        float scale = (float) Math.exp(-decayRate * (time - epoch));
+        for (int i = 0; i < cells.length; i++) {
+            float value = cells[i];
+            if (value != 0f) {
+                value *= scale;
+                cells[i] = (value < MIN_VALUE) ? 0f : value;
+            }
+        }
+        epoch = time;
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.communication.webservice;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+
+/**
+ * Registry of shared {@code HttpClient}'s backed by pools of keep-alive connections.
+ * <p>
+ * Creating a client per request means that every request pays the TCP setup, which is expensive over the satellite
+ * links used at sea. Instead, each named pool keeps up to {@linkplain #MAX_CONNECTIONS_PER_HOST} connections per host
+ * open between requests. Connections idle for longer than {@linkplain #IDLE_TIMEOUT} are closed by a periodic task of
+ * the {@linkplain TaskManager}, and stale connections are detected before being reused.
+ * <p>
+ * The settings of a pool are fixed when it is created and never changed by later callers. The connection timeout is
+ * only read from the connection manager by {@code HttpClient}, so a pool is created per name and connection timeout.
+ * The socket read timeout should be set on the individual HTTP methods using their {@code HttpMethodParams}.
+ */
+@ThreadSafe
+public final class HttpClientPool {
+
+    /** The maximum number of connections per host and pool */
+    public static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    /** The time in milliseconds after which idle connections are closed */
+    public static final long IDLE_TIMEOUT = 60000L;
+
+    private static final int MAX_TOTAL_CONNECTIONS = 16;
+
+    private static final ConcurrentHashMap<String, HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    static {
+        TaskManager.getInstance().scheduleWithFixedDelay("HttpClientPool idle connections", new Runnable() {
+            @Override
+            public void run() {
+                for (HttpClient client : CLIENTS.values()) {
+                    client.getHttpConnectionManager().closeIdleConnections(IDLE_TIMEOUT);
+                }
+            }
+        }, IDLE_TIMEOUT / 4, IDLE_TIMEOUT / 4, TimeUnit.MILLISECONDS);
+    }
+
+    private HttpClientPool() {
+    }
+
+    /**
+     * Returns the shared client of the pool with the given name and connection timeout
+     * 
+     * @param name
+     *            the name of the pool
+     * @param connectionTimeout
+     *            the connection timeout in milliseconds, also bounding the wait for a free connection of the pool
+     * @return the shared client
+     */
+    public static HttpClient getClient(String name, int connectionTimeout) {
+        String key = name + "@" + connectionTimeout;
+        HttpClient client = CLIENTS.get(key);
+        if (client == null) {
+            MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+            params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+            params.setStaleCheckingEnabled(true);
+            params.setConnectionTimeout(connectionTimeout);
+            HttpClient newClient = new HttpClient(connectionManager);
+            newClient.getParams().setConnectionManagerTimeout(connectionTimeout);
+            client = CLIENTS.putIfAbsent(key, newClient);
+            if (client == null) {
+                client = newClient;
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,170 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.communication.webservice;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Registry of shared {@code JAXBContext}'s along with pools of marshallers and unmarshallers.
+ * <p>
+ * Creating a {@code JAXBContext} is very expensive, whereas the context itself is thread-safe, so a context is created
+ * once per context path or class and kept for the lifetime of the application. Marshallers and unmarshallers are not
+ * thread-safe, and are borrowed from the pool of the context and returned after use:
+ * 
+ * <pre>
+ * Unmarshaller u = JaxbContextRegistry.acquireUnmarshaller(contextPath);
+ * try {
+ *     obj = u.unmarshal(in);
+ * } finally {
+ *     JaxbContextRegistry.releaseUnmarshaller(contextPath, u);
+ * }
+ * </pre>
+ */
+@ThreadSafe
+public final class JaxbContextRegistry {
+
+    /** The maximum number of idle marshallers and unmarshallers kept per context */
+    private static final int MAX_POOL_SIZE = 8;
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final ConcurrentHashMap<String, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, JAXBContext> CLASS_CONTEXTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Queue<Unmarshaller>> UNMARSHALLERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Queue<Marshaller>> MARSHALLERS = new ConcurrentHashMap<>();
+
+    private JaxbContextRegistry() {
+    }
+
+    /**
+     * Returns the shared context for the given context path
+     * 
+     * @param contextPath
+     *            the context path
+     * @return the shared context
+     */
+    public static JAXBContext getContext(String contextPath) throws JAXBException {
+        JAXBContext context = CONTEXTS.get(contextPath);
+        if (context == null) {
+            // Two threads may race to create the context, in which case one of them is discarded
+            JAXBContext newContext = JAXBContext.newInstance(contextPath);
+            context = CONTEXTS.putIfAbsent(contextPath, newContext);
+            if (context == null) {
+                context = newContext;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Returns the shared context for the given class
+     * 
+     * @param type
+     *            the class
+     * @return the shared context
+     */
+    public static JAXBContext getContext(Class<?> type) throws JAXBException {
+        JAXBContext context = CLASS_CONTEXTS.get(type);
+        if (context == null) {
+            JAXBContext newContext = JAXBContext.newInstance(type);
+            context = CLASS_CONTEXTS.putIfAbsent(type, newContext);
+            if (context == null) {
+                context = newContext;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Borrows an unmarshaller for the given context path from the pool
+     * 
+     * @param contextPath
+     *            the context path
+     * @return the unmarshaller, which should be returned with {@linkplain #releaseUnmarshaller(String, Unmarshaller)}
+     */
+    public static Unmarshaller acquireUnmarshaller(String contextPath) throws JAXBException {
+        Unmarshaller unmarshaller = pool(UNMARSHALLERS, contextPath).poll();
+        return (unmarshaller != null) ? unmarshaller : getContext(contextPath).createUnmarshaller();
+    }
+
+    /**
+     * Returns an unmarshaller to the pool
+     * 
+     * @param contextPath
+     *            the context path
+     * @param unmarshaller
+     *            the unmarshaller
+     */
+    public static void releaseUnmarshaller(String contextPath, Unmarshaller unmarshaller) {
+        release(pool(UNMARSHALLERS, contextPath), unmarshaller);
+    }
+
+    /**
+     * Borrows a marshaller for the given context path from the pool. The marshaller formats the output using UTF-8
+     * 
+     * @param contextPath
+     *            the context path
+     * @return the marshaller, which should be returned with {@linkplain #releaseMarshaller(String, Marshaller)}
+     */
+    public static Marshaller acquireMarshaller(String contextPath) throws JAXBException {
+        Marshaller marshaller = pool(MARSHALLERS, contextPath).poll();
+        if (marshaller == null) {
+            marshaller = getContext(contextPath).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
+        }
+        return marshaller;
+    }
+
+    /**
+     * Returns a marshaller to the pool
+     * 
+     * @param contextPath
+     *            the context path
+     * @param marshaller
+     *            the marshaller
+     */
+    public static void releaseMarshaller(String contextPath, Marshaller marshaller) {
+        release(pool(MARSHALLERS, contextPath), marshaller);
+    }
+
+    private static <T> Queue<T> pool(ConcurrentHashMap<String, Queue<T>> pools, String contextPath) {
+        Queue<T> pool = pools.get(contextPath);
+        if (pool == null) {
+            Queue<T> newPool = new ConcurrentLinkedQueue<>();
+            pool = pools.putIfAbsent(contextPath, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        return pool;
+    }
+
+    private static <T> void release(Queue<T> pool, T item) {
+        // The size is approximate, which is fine for bounding the pool
+        if (item != null && pool.size() < MAX_POOL_SIZE) {
+            pool.offer(item);
+        }
+    }
+}
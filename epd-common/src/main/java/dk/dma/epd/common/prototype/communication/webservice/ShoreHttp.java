@@ -14,12 +14,16 @@
  */
 package dk.dma.epd.common.prototype.communication.webservice;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
@@ -29,7 +33,6 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +40,9 @@ import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.util.Compressor;
 
 /**
- * Encapsulation of HTTP connection to shore. 
+ * Encapsulation of HTTP connection to shore.
+ * <p>
+ * Requests are made on the shared keep-alive connections of the {@linkplain HttpClientPool}.
  */
 public class ShoreHttp {
 
@@ -45,6 +50,10 @@ public class ShoreHttp {
 
     private static final String USER_AGENT = "EPD";
     private static final String ENCODING = "UTF-8";
+    private static final String POOL = "shore";
+
+    /** Request bodies smaller than this are not worth compressing */
+    private static final int MIN_GZIP_SIZE = 512;
 
     private String uri;
     private String url;
@@ -52,10 +61,18 @@ public class ShoreHttp {
     private int port = 80;
     private int readTimeout = 60000; // 60 sec
     private int connectionTimeout = 30000; // 30 sec
+    private boolean gzipRequest;
 
     private HttpClient httpClient;
     private PostMethod method;
-    private byte[] responseBody;
+    private byte[] requestBody;
+
+    // Metrics of the last request
+    private long requestStart;
+    private long responseTime;
+    private long totalTime;
+    private long responseSize;
+    private CountingInputStream responseIn;
 
     public ShoreHttp() {
 
@@ -67,10 +84,19 @@ public class ShoreHttp {
         this.port = enavSettings.getHttpPort();
         this.connectionTimeout = enavSettings.getConnectTimeout();
         this.readTimeout = enavSettings.getReadTimeout();
+        this.gzipRequest = enavSettings.isGzipRequests();
         setUri(uri);
     }
 
+    /**
+     * Executes the request.
+     * <p>
+     * The response body is not read until {@linkplain #getXmlUnmarshalledContent(String)} is called, which streams it
+     * directly into the unmarshaller and releases the connection.
+     */
     public void makeRequest() throws ShoreServiceException {
+        requestStart = System.currentTimeMillis();
+
         // Make the request
         int resCode = -1;
         try {
@@ -81,81 +107,185 @@ public class ShoreHttp {
         } catch (IOException e) {
             LOG.error("Failed to make HTTP connection: " + e.getMessage());
             throw new ShoreServiceException(ShoreServiceErrorCode.NO_CONNECTION_TO_SERVER);
+        } finally {
+            responseTime = System.currentTimeMillis() - requestStart;
         }
 
         if (resCode != 200) {
             method.releaseConnection();
             throw new ShoreServiceException(ShoreServiceErrorCode.SERVER_ERROR);
         }
-
-        try {
-            responseBody = method.getResponseBody();
-            int rawResSize = responseBody.length;
-
-            // Check for GZip content encoding
-            Header contentEncoding = method.getResponseHeader("Content-Encoding");
-            if (contentEncoding != null && contentEncoding.getValue().toUpperCase().indexOf("GZIP") >= 0) {
-                responseBody = Compressor.decompress(responseBody);
-            }        
-            LOG.debug("Received XML: " + new String(responseBody));
-            LOG.debug("Received XML size    : " + responseBody.length);
-            LOG.debug("Received raw XML size: " + rawResSize);
-        } catch (IOException e) {
-            LOG.error("Failed to read response body: " + e.getMessage());
-            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
-        }
-
-        method.releaseConnection();
     }
 
     public void init() {
-        httpClient = new HttpClient();
+        httpClient = HttpClientPool.getClient(POOL, connectionTimeout);
         method = new PostMethod(url);
-        HttpConnectionManagerParams params = httpClient.getHttpConnectionManager().getParams();
-        params.setSoTimeout(readTimeout);
-        params.setConnectionTimeout(connectionTimeout);
+        method.getParams().setSoTimeout(readTimeout);
         method.setRequestHeader("User-Agent", USER_AGENT);
-        method.setRequestHeader("Connection", "close");
-        method.addRequestHeader("Accept", "text/*");    
+        method.addRequestHeader("Accept", "text/*");
         
         // TODO if compress response
         method.addRequestHeader("Accept-Encoding", "gzip");
     }
 
-    public Object getXmlUnmarshalledContent(String contextPath) throws JAXBException {
-        JAXBContext jc = JAXBContext.newInstance(contextPath);
-        Unmarshaller u = jc.createUnmarshaller();
-        return u.unmarshal(new ByteArrayInputStream(responseBody));
+    /**
+     * Unmarshals the response body, streamed from the (possibly GZip compressed) response, using a pooled unmarshaller
+     * of the shared context for the given context path. The connection is released afterwards.
+     * 
+     * @param contextPath
+     *            the JAXB context path
+     * @return the unmarshalled response
+     */
+    public Object getXmlUnmarshalledContent(String contextPath) throws JAXBException, IOException {
+        Unmarshaller u = JaxbContextRegistry.acquireUnmarshaller(contextPath);
+        try {
+            return u.unmarshal(new BufferedInputStream(openResponseBody(), 8192));
+        } finally {
+            JaxbContextRegistry.releaseUnmarshaller(contextPath, u);
+            closeResponseBody();
+        }
+    }
+
+    /**
+     * Reads the (possibly GZip compressed) response body into an array of uncompressed bytes, e.g. for sharing the
+     * response between several callers. The connection is released afterwards.
+     * 
+     * @return the uncompressed response body
+     */
+    public byte[] getResponseBody() throws IOException {
+        try (InputStream in = openResponseBody()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            closeResponseBody();
+        }
+    }
+
+    private InputStream openResponseBody() throws IOException {
+        InputStream body = method.getResponseBodyAsStream();
+        if (body == null) {
+            throw new IOException("No response body");
+        }
+        responseIn = new CountingInputStream(body);
+        InputStream in = responseIn;
+
+        // Check for GZip content encoding
+        Header contentEncoding = method.getResponseHeader("Content-Encoding");
+        if (contentEncoding != null && contentEncoding.getValue().toUpperCase().indexOf("GZIP") >= 0) {
+            in = new GZIPInputStream(in, 8192);
+        }
+        return in;
+    }
+
+    private void closeResponseBody() {
+        method.releaseConnection();
+        totalTime = System.currentTimeMillis() - requestStart;
+        if (responseIn != null) {
+            responseSize = responseIn.getCount();
+            responseIn = null;
+        }
+        LOG.debug("Received raw XML size: " + responseSize + " in " + totalTime + " ms");
     }
 
+    /**
+     * Unmarshals the given XML using a pooled unmarshaller of the shared context for the given context path
+     * 
+     * @param contextPath
+     *            the JAXB context path
+     * @param xml
+     *            the XML
+     * @return the unmarshalled object
+     */
+    public static Object unmarshal(String contextPath, byte[] xml) throws JAXBException {
+        Unmarshaller u = JaxbContextRegistry.acquireUnmarshaller(contextPath);
+        try {
+            return u.unmarshal(new ByteArrayInputStream(xml));
+        } finally {
+            JaxbContextRegistry.releaseUnmarshaller(contextPath, u);
+        }
+    }
+
+    /**
+     * Marshals the given object using a pooled marshaller of the shared context for the given context path
+     * 
+     * @param contextPath
+     *            the JAXB context path
+     * @param obj
+     *            the object
+     * @return the XML
+     */
+    public static byte[] marshal(String contextPath, Object obj) throws JAXBException {
+        Marshaller m = JaxbContextRegistry.acquireMarshaller(contextPath);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            m.marshal(obj, out);
+        } finally {
+            JaxbContextRegistry.releaseMarshaller(contextPath, m);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Marshals the request body using a pooled marshaller of the shared context for the given context path
+     * 
+     * @param contextPath
+     *            the JAXB context path
+     * @param obj
+     *            the request
+     */
     public void setXmlMarshalContent(String contextPath, Object obj) throws JAXBException, UnsupportedEncodingException {
-        JAXBContext jc = JAXBContext.newInstance(contextPath);
-        Marshaller m = jc.createMarshaller();
-        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-        m.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
-        StringWriter sw = new StringWriter();        
-        m.marshal(obj, sw);
-        String req = sw.toString();
-        LOG.debug("XML request: " + req);
-        setRequestBody(sw.toString().getBytes(ENCODING), ENCODING);
+        setXmlContent(marshal(contextPath, obj));
+    }
+
+    /**
+     * Sets the already marshalled request body
+     * 
+     * @param xml
+     *            the marshalled request
+     */
+    public void setXmlContent(byte[] xml) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("XML request: " + new String(xml, StandardCharsets.UTF_8));
+        }
+        setRequestBody(xml, ENCODING);
     }
 
     public void setRequestBody(byte[] body, String contentType) {
-        // TODO if Gzip Compress request
-        byte[] compressed = {};
-        try {            
-            compressed = Compressor.compress(body);                        
-            //body = compressed;
-            //method.addRequestHeader("Content-Encoding", "gzip");
-        } catch (IOException e) {
-            LOG.error("Failed to GZip request: " + e.getMessage());
-        }        
+        requestBody = body;
         LOG.debug("XML req size           : " + body.length);
-        LOG.debug("XML req compressed size: " + compressed.length);
+        if (gzipRequest && body.length >= MIN_GZIP_SIZE) {
+            try {
+                byte[] compressed = Compressor.compress(body);
+                LOG.debug("XML req compressed size: " + compressed.length);
+                if (compressed.length < body.length) {
+                    body = compressed;
+                    method.addRequestHeader("Content-Encoding", "gzip");
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to GZip request: " + e.getMessage());
+            }
+        }
         ByteArrayRequestEntity requestEntity = new ByteArrayRequestEntity(body, contentType);
         method.setRequestEntity(requestEntity);
     }
 
+    /**
+     * Returns the uncompressed request body
+     * @return the uncompressed request body
+     */
+    public byte[] getRequestBody() {
+        return requestBody;
+    }
+
+    public void setGzipRequest(boolean gzipRequest) {
+        this.gzipRequest = gzipRequest;
+    }
+
     public String getUri() {
         return uri;
     }
@@ -181,6 +311,71 @@ public class ShoreHttp {
         return port;
     }
 
+    /**
+     * Returns the time in milliseconds from sending the request until the response headers were received
+     * @return the response time in milliseconds
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Returns the time in milliseconds from sending the request until the response was unmarshalled
+     * @return the total time in milliseconds
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Returns the size in bytes of the response body as received, i.e. before decompression
+     * @return the size in bytes of the response body
+     */
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * Input stream counting the bytes read
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
     public void setPort(int port) {
         this.port = port;
     }
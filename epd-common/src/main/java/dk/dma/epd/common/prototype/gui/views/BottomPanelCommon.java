@@ -48,6 +48,7 @@ import dk.dma.epd.common.prototype.gui.notification.NotificationPanel.Notificati
 import dk.dma.epd.common.prototype.notification.Notification;
 import dk.dma.epd.common.prototype.notification.NotificationAlert;
 import dk.dma.epd.common.prototype.notification.NotificationType;
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaSensor;
 import dk.dma.epd.common.prototype.service.MaritimeCloudService;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
 import dk.dma.epd.common.prototype.status.IStatusComponent;
@@ -175,6 +176,8 @@ public class BottomPanelCommon extends OMComponentPanel implements MouseListener
         } else if (obj instanceof MaritimeCloudService) {
             maritimeCloudService = (MaritimeCloudService) obj;
             statusComponents.add(maritimeCloudService);
+        } else if (obj instanceof NmeaSensor) {
+            statusComponents.add(((NmeaSensor) obj).getIngestStatusComponent());
         } else if (obj instanceof NotificationCenterCommon) {
             addNotificationCenter((NotificationCenterCommon) obj);
         }
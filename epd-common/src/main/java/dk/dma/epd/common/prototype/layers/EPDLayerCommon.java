@@ -22,7 +22,9 @@ import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.JPanel;
@@ -30,7 +32,6 @@ import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 import com.bbn.openmap.MapBean;
-import com.bbn.openmap.event.MapEventUtils;
 import com.bbn.openmap.event.MapMouseListener;
 import com.bbn.openmap.layer.OMGraphicHandlerLayer;
 import com.bbn.openmap.omGraphics.OMGraphic;
@@ -42,6 +43,7 @@ import dk.dma.epd.common.prototype.gui.MainFrameCommon;
 import dk.dma.epd.common.prototype.gui.MapMenuCommon;
 import dk.dma.epd.common.prototype.gui.util.InfoPanel;
 import dk.dma.epd.common.prototype.gui.util.InfoPanel.InfoPanelBinding;
+import dk.dma.epd.common.prototype.layers.util.GraphicHitIndex;
 import dk.dma.epd.common.prototype.layers.util.LayerVisiblityListener;
 
 /**
@@ -58,6 +60,10 @@ import dk.dma.epd.common.prototype.layers.util.LayerVisiblityListener;
  * {@code EPDLayerCommon} also provides standardized ways of binding {@code InfoPanel} panels to {@linkplain OMGraphic} classes, as
  * well as container managed handling of left- and right-button mouse clicks, for mouse selection and displaying the context menu
  * respectively.
+ * <p>
+ * The graphics under the mouse are looked up in a {@linkplain GraphicHitIndex} per searched graphics list, which is
+ * invalidated every time the layer has been prepared. Sub-classes that change their graphics without preparing the layer
+ * may call {@linkplain #invalidateHitIndex()}.
  */
 public abstract class EPDLayerCommon extends OMGraphicHandlerLayer implements MapMouseListener {
 
@@ -82,7 +88,10 @@ public abstract class EPDLayerCommon extends OMGraphicHandlerLayer implements Ma
 
     protected OMGraphic closest;
 
+    private final Map<OMGraphicList, GraphicHitIndex> hitIndexes = new IdentityHashMap<>();
+
     private Timer timer;
+    private RepaintScheduler repaintScheduler;
     private CopyOnWriteArrayList<LayerVisiblityListener> visibilityListener = new CopyOnWriteArrayList<>();
     private CopyOnWriteArrayList<EPDLayerCommon> visibilityMangedLayers = new CopyOnWriteArrayList<>();
 
@@ -154,6 +163,9 @@ public abstract class EPDLayerCommon extends OMGraphicHandlerLayer implements Ma
         synchronized (graphics) {
             graphics.clear();
         }
+        synchronized (hitIndexes) {
+            hitIndexes.clear();
+        }
         synchronized (this) {
             if (timer != null) {
                 timer.stop();
@@ -216,6 +228,48 @@ public abstract class EPDLayerCommon extends OMGraphicHandlerLayer implements Ma
     protected void timerAction() {
     }
 
+    /***************************************/
+    /** Repaint scheduling functionality **/
+    /***************************************/
+
+    /**
+     * Returns the repaint scheduler of the layer, which caps the rate of prepares requested through
+     * {@linkplain #requestPrepare()} to the maximum layer frame rate of the map settings.
+     * <p>
+     * Sub-classes that mark their changed graphics dirty should project their graphics using
+     * {@linkplain RepaintScheduler#project(OMGraphicList, com.bbn.openmap.proj.Projection)} in {@code prepare()}.
+     * 
+     * @return the repaint scheduler of the layer
+     */
+    protected synchronized RepaintScheduler getRepaintScheduler() {
+        if (repaintScheduler == null) {
+            repaintScheduler = new RepaintScheduler(new Runnable() {
+                @Override
+                public void run() {
+                    doPrepare();
+                }
+            }, EPD.getInstance().getSettings().getMapSettings().getMaxLayerFrameRate());
+        }
+        return repaintScheduler;
+    }
+
+    /**
+     * Marks the graphic dirty, so that it gets re-projected at the next prepare
+     * 
+     * @param graphic
+     *            the graphic that has changed
+     */
+    protected void markDirty(OMGraphic graphic) {
+        getRepaintScheduler().markDirty(graphic);
+    }
+
+    /**
+     * Requests a prepare of the layer, throttled to the maximum layer frame rate
+     */
+    protected void requestPrepare() {
+        getRepaintScheduler().requestPrepare();
+    }
+
     /***************************************/
     /** Mouse handling functionality **/
     /***************************************/
@@ -449,7 +503,42 @@ public abstract class EPDLayerCommon extends OMGraphicHandlerLayer implements Ma
      * @return the first matching graphics element
      */
     public final OMGraphic getSelectedGraphic(OMGraphicList graphicsList, MouseEvent evt, Class<?>... types) {
-        return MapEventUtils.getSelectedGraphic(graphicsList, evt, getMouseSelectTolerance(), types);
+        // Sanity check
+        if (graphicsList == null) {
+            return null;
+        }
+
+        GraphicHitIndex hitIndex;
+        synchronized (hitIndexes) {
+            hitIndex = hitIndexes.get(graphicsList);
+            if (hitIndex == null) {
+                hitIndex = new GraphicHitIndex(graphicsList);
+                hitIndexes.put(graphicsList, hitIndex);
+            }
+        }
+        return hitIndex.getSelectedGraphic(evt.getX(), evt.getY(), getMouseSelectTolerance(), getProjection(), types);
+    }
+
+    /**
+     * Flags that the graphics have changed, and that the hit-test indexes must be rebuilt before the next mouse look-up
+     */
+    protected void invalidateHitIndex() {
+        synchronized (hitIndexes) {
+            for (GraphicHitIndex hitIndex : hitIndexes.values()) {
+                hitIndex.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Called with the result of {@code prepare()}.
+     * <p>
+     * Invalidates the hit-test indexes, since the graphics may have changed or been re-projected
+     */
+    @Override
+    public void setList(OMGraphicList omgl) {
+        super.setList(omgl);
+        invalidateHitIndex();
     }
 
     /***************************************/
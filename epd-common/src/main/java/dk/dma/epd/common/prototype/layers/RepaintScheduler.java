@@ -0,0 +1,213 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.epd.common.prototype.task.TaskManager;
+
+/**
+ * Schedules the preparation of a layer that is updated at a high rate, e.g. by AIS messages.
+ * <p>
+ * Rather than preparing the layer for every update, the graphics that have changed are marked dirty, and a prepare is
+ * requested through {@linkplain #requestPrepare()}, which coalesces the requests so that the layer is prepared at most
+ * {@code maxFrameRate} times per second. Delayed prepares are run in the periodic pool of the {@linkplain TaskManager}.
+ * <p>
+ * When the layer is prepared, {@linkplain #project(OMGraphicList, Projection)} only projects all graphics if the
+ * projection has changed since the last time, or if {@linkplain #invalidate()} has been called. Otherwise only the
+ * dirty graphics are generated, so graphics that are changed, added or made visible between prepares must be marked
+ * dirty.
+ */
+@ThreadSafe
+public class RepaintScheduler {
+
+    private final Runnable prepare;
+    private final long minInterval;
+
+    private final Runnable pendingPrepare = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RepaintScheduler.this) {
+                pending = false;
+                lastPrepare = System.currentTimeMillis();
+            }
+            prepare.run();
+        }
+    };
+
+    @GuardedBy("this") private final Set<OMGraphic> dirty = Collections
+            .newSetFromMap(new IdentityHashMap<OMGraphic, Boolean>());
+    @GuardedBy("this") private boolean invalid = true;
+    @GuardedBy("this") private long lastPrepare;
+    @GuardedBy("this") private boolean pending;
+
+    @GuardedBy("this") private float scale;
+    @GuardedBy("this") private Point2D center;
+    @GuardedBy("this") private int width;
+    @GuardedBy("this") private int height;
+
+    /**
+     * Constructor
+     *
+     * @param prepare
+     *            prepares the layer, typically by calling {@code doPrepare()}
+     * @param maxFrameRate
+     *            the maximum number of prepares per second caused by {@linkplain #requestPrepare()}
+     */
+    public RepaintScheduler(Runnable prepare, int maxFrameRate) {
+        this.prepare = prepare;
+        this.minInterval = 1000L / Math.max(1, maxFrameRate);
+    }
+
+    /**
+     * Marks the graphic dirty, i.e. it is generated at the next prepare even if the projection is unchanged
+     *
+     * @param graphic
+     *            the graphic that has changed
+     */
+    public void markDirty(OMGraphic graphic) {
+        if (graphic != null) {
+            synchronized (this) {
+                dirty.add(graphic);
+            }
+        }
+    }
+
+    /**
+     * Flags that all graphics should be projected at the next prepare
+     */
+    public synchronized void invalidate() {
+        invalid = true;
+        dirty.clear();
+    }
+
+    /**
+     * Requests that the layer is prepared. The layer is prepared immediately if it has not been prepared within the
+     * last frame, and otherwise at the end of the frame. Requests made while a prepare is pending are ignored.
+     */
+    public void requestPrepare() {
+        long delay;
+        synchronized (this) {
+            if (pending) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            delay = lastPrepare + minInterval - now;
+            if (delay > 0) {
+                pending = true;
+            } else {
+                lastPrepare = now;
+            }
+        }
+
+        if (delay > 0) {
+            try {
+                TaskManager.getInstance().schedule("RepaintScheduler", pendingPrepare, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                synchronized (this) {
+                    pending = false;
+                }
+            }
+        } else {
+            prepare.run();
+        }
+    }
+
+    /**
+     * Projects the graphics for the given projection. All graphics are projected if the projection has changed or the
+     * scheduler has been invalidated, and otherwise only the changed graphics.
+     *
+     * @param graphics
+     *            the graphics of the layer
+     * @param proj
+     *            the current projection
+     * @return if all graphics were projected
+     */
+    public boolean project(OMGraphicList graphics, Projection proj) {
+        if (needsFullProjection(proj)) {
+            synchronized (graphics) {
+                graphics.project(proj, true);
+            }
+            return true;
+        }
+        projectChanged(graphics, proj);
+        return false;
+    }
+
+    /**
+     * Returns if all graphics must be projected, i.e. if the projection differs from the one of the last call, or if
+     * the scheduler has been invalidated. In that case the dirty graphics are cleared, since the caller is expected to
+     * project all graphics.
+     *
+     * @param proj
+     *            the current projection
+     * @return if all graphics must be projected
+     */
+    public synchronized boolean needsFullProjection(Projection proj) {
+        Point2D newCenter = proj.getCenter();
+        boolean full = invalid || proj.getScale() != scale || proj.getWidth() != width || proj.getHeight() != height
+                || center == null || !center.equals(newCenter);
+        invalid = false;
+        scale = proj.getScale();
+        center = newCenter;
+        width = proj.getWidth();
+        height = proj.getHeight();
+        if (full) {
+            dirty.clear();
+        }
+        return full;
+    }
+
+    /**
+     * Generates the dirty graphics for the unchanged projection
+     *
+     * @param graphics
+     *            the graphics of the layer
+     * @param proj
+     *            the current projection
+     */
+    public void projectChanged(OMGraphicList graphics, Projection proj) {
+        List<OMGraphic> changed;
+        synchronized (this) {
+            changed = new ArrayList<>(dirty);
+            dirty.clear();
+        }
+
+        synchronized (graphics) {
+            for (OMGraphic graphic : changed) {
+                if (graphic instanceof OMGraphicList) {
+                    ((OMGraphicList) graphic).project(proj, true);
+                } else {
+                    graphic.generate(proj);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.Point2D;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.bbn.openmap.omGraphics.OMCircle;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMText;
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.VesselPositionData;
+import dk.dma.epd.common.prototype.ais.VesselTarget;
+
+/**
+ * Level-of-detail graphic used by the {@linkplain AisLayerCommon} when the map is zoomed out beyond the cluster scale.
+ * <p>
+ * Vessels are binned into a lat/lon grid whose cells are approximately {@code cellSize} pixels wide at the current
+ * scale, and each occupied cell is rendered as a single circle, located at the mean position of its vessels and labelled
+ * with the vessel count.
+ * <p>
+ * Since the cells are anchored to lat/lon rather than to the screen, the clusters remain valid when the map is panned,
+ * and are only rebuilt when the scale changes, or when the targets have changed and the refresh interval has passed.
+ */
+@SuppressWarnings("serial")
+public class AisClusterGraphic extends OMGraphicList {
+
+    /** The minimum interval between rebuilds caused by target updates */
+    private static final long REFRESH_INTERVAL = 2000L;
+
+    private static final Color CLUSTER_FILL = new Color(0, 70, 160, 110);
+    private static final Color CLUSTER_LINE = new Color(0, 70, 160, 200);
+    private static final Font CLUSTER_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 10);
+
+    private float scale = -1f;
+    private int cellSize = -1;
+    private volatile boolean dirty = true;
+    private long lastBuild;
+
+    /**
+     * Returns if vessels should be rendered as clusters at the scale of the given projection
+     *
+     * @param proj
+     *            the projection
+     * @param clusterScale
+     *            the scale beyond which vessels are clustered, or 0 if clustering is disabled
+     * @return if vessels should be clustered
+     */
+    public static boolean isClusterScale(Projection proj, float clusterScale) {
+        return clusterScale > 0 && proj.getScale() > clusterScale;
+    }
+
+    /**
+     * Flags that the targets have changed, and that the clusters should be rebuilt at the next refresh
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Returns if the clusters need to be rebuilt for the given projection
+     *
+     * @param proj
+     *            the current projection
+     * @param cellSize
+     *            the cell size in pixels
+     * @return if the clusters need to be rebuilt
+     */
+    public synchronized boolean needsRebuild(Projection proj, int cellSize) {
+        if (proj.getScale() != scale || cellSize != this.cellSize) {
+            return true;
+        }
+        return dirty && System.currentTimeMillis() - lastBuild >= REFRESH_INTERVAL;
+    }
+
+    /**
+     * Rebuilds the clusters from the given vessel targets
+     *
+     * @param proj
+     *            the current projection
+     * @param cellSize
+     *            the cell size in pixels
+     * @param vesselTargets
+     *            the vessel targets to cluster
+     */
+    public synchronized void rebuild(Projection proj, int cellSize, Collection<VesselTarget> vesselTargets) {
+        this.scale = proj.getScale();
+        this.cellSize = cellSize;
+        this.dirty = false;
+        this.lastBuild = System.currentTimeMillis();
+
+        // Compute the cell size in degrees from the current degrees per pixel
+        Point2D ul = proj.getUpperLeft();
+        Point2D lr = proj.getLowerRight();
+        double lonSpan = lr.getX() - ul.getX();
+        if (lonSpan <= 0) {
+            lonSpan += 360.0;
+        }
+        double lonCell = Math.max(1e-6, lonSpan / Math.max(1, proj.getWidth()) * cellSize);
+        double latCell = Math.max(1e-6, (ul.getY() - lr.getY()) / Math.max(1, proj.getHeight()) * cellSize);
+
+        Collection<double[]> clusters = computeClusters(vesselTargets, latCell, lonCell);
+
+        clear();
+        for (double[] cluster : clusters) {
+            int count = (int) cluster[0];
+            double lat = cluster[1];
+            double lon = cluster[2];
+            int diameter = (int) Math.min(cellSize, 10 + 4 * Math.log(count) / Math.log(2));
+
+            OMCircle circle = new OMCircle(lat, lon, diameter, diameter);
+            circle.setFillPaint(CLUSTER_FILL);
+            circle.setLinePaint(CLUSTER_LINE);
+            add(circle);
+
+            if (count > 1) {
+                OMText label = new OMText(lat, lon, 0, 4, Integer.toString(count), CLUSTER_FONT, OMText.JUSTIFY_CENTER);
+                label.setLinePaint(Color.WHITE);
+                add(label);
+            }
+        }
+    }
+
+    /**
+     * Bins the given vessel targets into a lat/lon grid with the given cell size. Gone vessels and vessels without a
+     * position are skipped.
+     *
+     * @param vesselTargets
+     *            the vessel targets to cluster
+     * @param latCell
+     *            the cell height in degrees
+     * @param lonCell
+     *            the cell width in degrees
+     * @return the occupied cells as {count, mean latitude, mean longitude}
+     */
+    static Collection<double[]> computeClusters(Collection<VesselTarget> vesselTargets, double latCell, double lonCell) {
+        Map<Long, double[]> cells = new HashMap<>();
+        for (VesselTarget vesselTarget : vesselTargets) {
+            if (vesselTarget.isGone()) {
+                continue;
+            }
+            VesselPositionData posData = vesselTarget.getPositionData();
+            Position pos = (posData != null) ? posData.getPos() : null;
+            if (pos == null) {
+                continue;
+            }
+            long latIdx = (long) Math.floor((pos.getLatitude() + 90.0) / latCell);
+            long lonIdx = (long) Math.floor((pos.getLongitude() + 180.0) / lonCell);
+            Long key = (latIdx << 32) | (lonIdx & 0xFFFFFFFFL);
+            double[] cell = cells.get(key);
+            if (cell == null) {
+                // {count, latitude sum, longitude sum}
+                cell = new double[3];
+                cells.put(key, cell);
+            }
+            cell[0]++;
+            cell[1] += pos.getLatitude();
+            cell[2] += pos.getLongitude();
+        }
+
+        for (double[] cell : cells.values()) {
+            cell[1] /= cell[0];
+            cell[2] /= cell[0];
+        }
+        return cells.values();
+    }
+}
@@ -15,9 +15,13 @@
 package dk.dma.epd.common.prototype.layers.ais;
 
 import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
@@ -25,13 +29,16 @@ import org.slf4j.LoggerFactory;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
 
+import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.graphics.ISelectableGraphic;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
 import dk.dma.epd.common.prototype.ais.AisTarget;
 import dk.dma.epd.common.prototype.ais.AtoNTarget;
 import dk.dma.epd.common.prototype.ais.IAisTargetListener;
+import dk.dma.epd.common.prototype.ais.MobileTarget;
 import dk.dma.epd.common.prototype.ais.SarTarget;
 import dk.dma.epd.common.prototype.ais.VesselTarget;
 import dk.dma.epd.common.prototype.layers.LazyLayerCommon;
@@ -48,6 +55,13 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
     private static final Logger LOG = LoggerFactory
             .getLogger(AisLayerCommon.class);
 
+    /**
+     * The fraction of the viewport width and height added to each side of the
+     * viewport when culling targets. Ensures that speed vectors and labels of
+     * targets just outside the viewport are still rendered.
+     */
+    private static final double VIEWPORT_MARGIN = 0.25;
+
     /**
      * The AIS handler that provides AIS data for this layer.
      */
@@ -74,6 +88,36 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
     private final NavSettings navSettings;
 
     protected final PastTrackInfoPanel pastTrackInfoPanel = new PastTrackInfoPanel();
+
+    /**
+     * The culling bounding box, i.e. the current viewport including margins, as
+     * {minLat, minLon, maxLat, maxLon}. Null until the first projection.
+     */
+    private volatile double[] viewport;
+
+    /**
+     * Renders clustered vessel density cells when the map is zoomed out beyond
+     * the cluster scale of the AIS settings.
+     */
+    private final AisClusterGraphic clusterGraphic = new AisClusterGraphic();
+
+    /**
+     * Whether vessels are currently rendered as clusters.
+     */
+    private volatile boolean clustered;
+
+    /**
+     * The MMSI's of the targets within the viewport at the last prepare, and
+     * whether vessels were clustered then. Guarded by this.
+     */
+    private Set<Long> visibleMmsis = new HashSet<>();
+    private boolean visibleClustered;
+
+    /**
+     * Spare set swapped with {@linkplain #visibleMmsis} on each prepare, so
+     * that the viewport query is not copied into a new set. Guarded by this.
+     */
+    private Set<Long> nextVisibleMmsis = new HashSet<>();
     
     public AisLayerCommon(int repaintIntervalMillis) {
         super(repaintIntervalMillis);
@@ -96,10 +140,22 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         super.findAndInit(obj);
         if (obj instanceof AisHandlerCommon) {
             this.aisHandler = (AISHANDLER) obj;
-            this.aisHandler.addListener(this);
+            this.addAisTargetListener(this.aisHandler);
         }
     }
 
+    /**
+     * Registers this layer to receive target updates from the given AIS
+     * handler. Sub classes may override this to receive the updates through
+     * a shared model instead.
+     * 
+     * @param handler
+     *            the AIS handler
+     */
+    protected void addAisTargetListener(AISHANDLER handler) {
+        handler.addListener(this);
+    }
+
     @Override
     public void findAndUndo(Object obj) {
         if (obj == this.aisHandler) {
@@ -156,10 +212,12 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         if (this.selectedGraphic != null) {
             // remove current selection
             this.selectedGraphic.setSelectionStatus(false);
+            markSelectionDirty(this.selectedGraphic);
         }
         if (newSelection != null) {
             // mark new selection
             newSelection.setSelectionStatus(true);
+            markSelectionDirty(newSelection);
         }
         // keep reference to new selection
         this.selectedGraphic = newSelection;
@@ -168,6 +226,12 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         }
     }
 
+    private void markSelectionDirty(ISelectableGraphic graphic) {
+        if (graphic instanceof OMGraphic) {
+            markDirty((OMGraphic) graphic);
+        }
+    }
+
     /**
      * Add a graphical representation of an AIS target to this layers set of
      * graphics.
@@ -225,6 +289,7 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
             graphics.clear();
         }
         selectedGraphic = null;
+        getRepaintScheduler().invalidate();
         doPrepare();
     }
     
@@ -250,6 +315,39 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         if (aisTarget == null) {
             return;
         }
+        TargetGraphic targetGraphic = this.updateTargetGraphic(aisTarget);
+        if (targetGraphic == null) {
+            return;
+        }
+
+        // The graphic is changed without the layer being prepared
+        invalidateHitIndex();
+
+        // Vessels are represented by the clusters when zoomed out
+        if (this.clustered && targetGraphic instanceof VesselGraphicComponentSelector) {
+            targetGraphic.setVisible(false);
+            this.clusterGraphic.invalidate();
+            return;
+        }
+
+        // Only project targets within the current viewport
+        boolean inViewport = isInViewport(aisTarget);
+        targetGraphic.setVisible(inViewport);
+        if (inViewport) {
+            targetGraphic.project(getProjection());
+        }
+    }
+
+    /**
+     * Creates, updates or removes the graphical representation of the given
+     * target, without projecting it.
+     * 
+     * @param aisTarget
+     *            the updated target
+     * @return the updated graphic, or null if the target is gone or of an
+     *         unknown type
+     */
+    protected TargetGraphic updateTargetGraphic(AisTarget aisTarget) {
         long mmsi = aisTarget.getMmsi();
         TargetGraphic targetGraphic = this.getTargetGraphic(mmsi);
         float mapScale = (this.getProjection() == null) ? 0 : this
@@ -260,7 +358,7 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
                 // Remove target from map of graphics + graphics list
                 this.removeTargetGraphic(mmsi);
             }
-            return;
+            return null;
         }
 
         // Create and insert
@@ -273,7 +371,7 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
                 targetGraphic = new AtonTargetGraphic();
             } else {
                 LOG.error("Unknown target type");
-                return;
+                return null;
             }
             // add to map of graphics + graphics list
             this.addTargetGraphic(mmsi, targetGraphic);
@@ -281,9 +379,249 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
 
         // Send the new location data to the graphic representing the AisTarget
         targetGraphic.update(aisTarget, this.aisSettings, this.navSettings, mapScale);
-        targetGraphic.project(getProjection());
+        return targetGraphic;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The graphics of the targets are updated, and will be rendered by the
+     * next timer-triggered repaint.
+     */
+    @Override
+    public void targetsUpdated(Collection<AisTarget> aisTargets) {
+        for (AisTarget aisTarget : aisTargets) {
+            targetUpdated(aisTarget);
+        }
+    }
+
+    /**
+     * Returns if the given target is within the current viewport, including
+     * margins. Returns true if the viewport or the position of the target is
+     * undefined.
+     * 
+     * @param aisTarget
+     *            the target to check
+     * @return if the target is within the current viewport
+     */
+    protected boolean isInViewport(AisTarget aisTarget) {
+        double[] bounds = this.viewport;
+        Position pos = getTargetPosition(aisTarget);
+        if (bounds == null || pos == null) {
+            return true;
+        }
+        double lat = pos.getLatitude();
+        double lon = pos.getLongitude();
+        if (lat < bounds[0] || lat > bounds[2]) {
+            return false;
+        }
+        if (bounds[1] > bounds[3]) {
+            // Crosses the date line
+            return lon >= bounds[1] || lon <= bounds[3];
+        }
+        return lon >= bounds[1] && lon <= bounds[3];
+    }
+
+    /**
+     * Returns the position of the given target or null if undefined
+     * 
+     * @param aisTarget
+     *            the target
+     * @return the position of the target
+     */
+    private static Position getTargetPosition(AisTarget aisTarget) {
+        if (aisTarget instanceof MobileTarget) {
+            MobileTarget mobileTarget = (MobileTarget) aisTarget;
+            return mobileTarget.getPositionData() != null ? mobileTarget.getPositionData().getPos() : null;
+        } else if (aisTarget instanceof AtoNTarget) {
+            return ((AtoNTarget) aisTarget).getPos();
+        }
+        return null;
+    }
+
+    /**
+     * Computes the culling bounding box for the given projection, i.e. the
+     * viewport extended with {@linkplain #VIEWPORT_MARGIN} on each side.
+     * 
+     * @param proj
+     *            the projection
+     * @return the bounding box as {minLat, minLon, maxLat, maxLon}
+     */
+    private static double[] computeViewport(Projection proj) {
+        Point2D ul = proj.getUpperLeft();
+        Point2D lr = proj.getLowerRight();
+        double latSpan = ul.getY() - lr.getY();
+        double lonSpan = lr.getX() - ul.getX();
+        if (lonSpan < 0) {
+            // Crosses the date line
+            lonSpan += 360.0;
+        }
+        double minLat = Math.max(-90.0, lr.getY() - latSpan * VIEWPORT_MARGIN);
+        double maxLat = Math.min(90.0, ul.getY() + latSpan * VIEWPORT_MARGIN);
+        double lonMargin = lonSpan * VIEWPORT_MARGIN;
+        if (lonSpan + 2 * lonMargin >= 360.0) {
+            return new double[] { minLat, -180.0, maxLat, 180.0 };
+        }
+        double minLon = ul.getX() - lonMargin;
+        double maxLon = lr.getX() + lonMargin;
+        if (minLon < -180.0) {
+            minLon += 360.0;
+        }
+        if (maxLon > 180.0) {
+            maxLon -= 360.0;
+        }
+        return new double[] { minLat, minLon, maxLat, maxLon };
+    }
+
+    /**
+     * Returns if vessels should be rendered as clusters at the scale of the
+     * given projection
+     * 
+     * @param proj
+     *            the projection
+     * @return if vessels should be clustered
+     */
+    protected boolean isClusterScale(Projection proj) {
+        return AisClusterGraphic.isClusterScale(proj, this.aisSettings.getClusterScale());
+    }
+
+    /**
+     * Adds or removes the cluster graphic depending on the scale of the given
+     * projection, and rebuilds the clusters if needed. The cluster graphic is
+     * kept as the first graphic, so that it is rendered below the individual
+     * targets.
+     * 
+     * @param proj
+     *            the projection
+     * @param handler
+     *            the AIS handler providing the vessel targets
+     */
+    private void updateClusters(Projection proj, AISHANDLER handler) {
+        boolean cluster = handler != null && isClusterScale(proj);
+        this.clustered = cluster;
+        synchronized (graphics) {
+            boolean added = !graphics.isEmpty() && graphics.get(0) == this.clusterGraphic;
+            if (cluster && !added) {
+                graphics.add(0, this.clusterGraphic);
+            } else if (!cluster && added) {
+                graphics.remove(0);
+            }
+        }
+        if (cluster) {
+            int cellSize = this.aisSettings.getClusterCellSize();
+            if (this.clusterGraphic.needsRebuild(proj, cellSize)) {
+                this.clusterGraphic.rebuild(proj, cellSize, handler.getVesselTargets().values());
+                markDirty(this.clusterGraphic);
+            }
+        }
+    }
+
+    /**
+     * Projects the target graphics within the viewport of the given
+     * projection, as looked up in the spatial index of the AIS handler, and
+     * hides the rest. Graphics that do not represent an AIS target are always
+     * projected.
+     * <p>
+     * Only the targets entering or leaving the viewport since the last
+     * prepare change visibility here. Targets updated meanwhile have had their
+     * visibility set in {@linkplain #targetUpdated(AisTarget)}.
+     * <p>
+     * Beyond the cluster scale, vessel graphics are hidden and the clusters
+     * are projected instead.
+     * 
+     * @param proj
+     *            the projection
+     */
+    private void projectVisibleTargets(Projection proj) {
+        double[] bounds = computeViewport(proj);
+        this.viewport = bounds;
+
+        AISHANDLER handler = this.aisHandler;
+        Set<Long> visible = this.nextVisibleMmsis;
+        if (handler != null) {
+            visible.clear();
+            visible.addAll(handler.getMmsisWithin(bounds[0], bounds[1], bounds[2], bounds[3]));
+            updateVisibleTargets(visible, isClusterScale(proj));
+        }
+        updateClusters(proj, handler);
+        if (handler == null) {
+            synchronized (graphics) {
+                graphics.project(proj);
+            }
+            return;
+        }
+
+        boolean cluster = this.clustered;
+        for (Long mmsi : this.visibleMmsis) {
+            if (!visible.contains(mmsi)) {
+                TargetGraphic tg = this.targets.get(mmsi);
+                if (tg != null) {
+                    tg.setVisible(false);
+                }
+            }
+        }
+        // All visible vessels change when switching to or from the clusters
+        boolean clusterChanged = cluster != this.visibleClustered;
+        for (Long mmsi : visible) {
+            if (clusterChanged || !this.visibleMmsis.contains(mmsi)) {
+                TargetGraphic tg = this.targets.get(mmsi);
+                if (tg != null) {
+                    boolean show = !(cluster && tg instanceof VesselGraphicComponentSelector);
+                    tg.setVisible(show);
+                    if (show) {
+                        // Hidden targets are not projected when updated
+                        markDirty(tg);
+                    }
+                }
+            }
+        }
+        this.nextVisibleMmsis = this.visibleMmsis;
+        this.visibleMmsis = visible;
+        this.visibleClustered = cluster;
+
+        // Targets updated since the last prepare have already been projected
+        // in targetUpdated(), so unless the projection has changed, only the
+        // graphics marked dirty, e.g. the targets entering the viewport, are
+        // generated
+        if (!getRepaintScheduler().needsFullProjection(proj)) {
+            getRepaintScheduler().projectChanged(graphics, proj);
+            return;
+        }
+        synchronized (graphics) {
+            for (OMGraphic graphic : graphics) {
+                if (graphic instanceof TargetGraphic && !graphic.isVisible()) {
+                    continue;
+                }
+                if (graphic instanceof OMGraphicList) {
+                    ((OMGraphicList) graphic).project(proj);
+                } else {
+                    graphic.generate(proj);
+                }
+            }
+        }
     }
     
+    /**
+     * Called before the targets within the viewport are projected, allowing
+     * sub classes that do not receive target updates directly to bring the
+     * graphics of the visible targets up to date. Does nothing by default.
+     * 
+     * @param visibleMmsis
+     *            the MMSI's of the targets within the viewport
+     * @param cluster
+     *            if vessels are rendered as clusters
+     */
+    protected void updateVisibleTargets(Set<Long> visibleMmsis, boolean cluster) {
+    }
+
+    /**
+     * Flags that the vessel targets have changed, and that the clusters
+     * should be rebuilt.
+     */
+    protected void invalidateClusters() {
+        this.clusterGraphic.invalidate();
+    }
+
     /**
      * Invoked when a change occurs in the {@code AisSettings} object that this {@code AisLayerCommon} is registered with.
      */
@@ -306,6 +644,7 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
             }
         }
         // do a repaint
+        getRepaintScheduler().invalidate();
         this.doPrepare();
     }
 
@@ -314,9 +653,11 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
      */
     @Override
     public synchronized OMGraphicList prepare() {
-        synchronized (graphics) {
-            graphics.project(getProjection());
+        if (getProjection() == null) {
+            return graphics;
         }
+        // Only project the targets within the current viewport
+        projectVisibleTargets(getProjection());
         // Was a vessel selected?
         if(this.selectedGraphic instanceof VesselGraphic) {
             VesselGraphic vg = (VesselGraphic) this.selectedGraphic;
@@ -393,6 +734,7 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
             }
         }
         // repaint
+        getRepaintScheduler().invalidate();
         this.doPrepare();
     }
 
@@ -20,14 +20,14 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.bbn.openmap.omGraphics.OMGraphicList;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.ais.MobileTarget;
-import dk.dma.epd.common.prototype.ais.PastTrackPoint;
+import dk.dma.epd.common.prototype.ais.PastTrackWindow;
 
 /**
  * Graphic for past-track route
@@ -51,6 +51,7 @@ public class PastTrackGraphic extends OMGraphicList {
 
     private List<PastTrackLegGraphic> routeLegs = new ArrayList<>();
     private List<PastTrackWpCircle> routeWps = new ArrayList<>();
+    private final PastTrackWindow pastTrackWindow = new PastTrackWindow();
 
     /**
      * No-arg constructor
@@ -87,38 +88,50 @@ public class PastTrackGraphic extends OMGraphicList {
     }
     
     /**
-     * Adds a new past track leg line
+     * Adds a past track leg line, re-using a previously created leg if possible
      * @param index index of leg in list of past track records
-     * @param start start point of leg
-     * @param end end point of leg
+     * @param i1 the past-track window index of the start point
      */
-    private void makeLegLine(int index, PastTrackPoint start, PastTrackPoint end) {
-    
-        Color legColor = start.hasGone() ? GONE_LEG_COLOR : LEG_COLOR;
-        
-        PastTrackLegGraphic leg = new PastTrackLegGraphic(
-                index, 
-                this,
-                false, 
-                start.getPosition(), 
-                end.getPosition(), 
-                legColor);
-        routeLegs.add(leg);
+    private void addLegLine(int index, int i1) {
+        int i2 = i1 + 1;
+        Color legColor = pastTrackWindow.hasGone(i1) ? GONE_LEG_COLOR : LEG_COLOR;
+        double startLat = pastTrackWindow.getLatitude(i1);
+        double startLon = pastTrackWindow.getLongitude(i1);
+        double endLat = pastTrackWindow.getLatitude(i2);
+        double endLon = pastTrackWindow.getLongitude(i2);
+
+        PastTrackLegGraphic leg;
+        if (i1 < routeLegs.size()) {
+            leg = routeLegs.get(i1);
+            leg.setLeg(index, startLat, startLon, endLat, endLon, legColor);
+        } else {
+            leg = new PastTrackLegGraphic(index, this, startLat, startLon, endLat, endLon, legColor);
+            leg.setArrows(arrowsVisible);
+            routeLegs.add(leg);
+        }
         add(leg);
     }
 
     /**
-     * Adds a new past track circle
+     * Adds a past track circle, re-using a previously created circle if possible
      * @param index the index of the circle in list of past track records
-     * @param p the past track point
+     * @param i the past-track window index of the point
      */
-    private void makeWpCircle(int index, PastTrackPoint p) {
-        PastTrackWpCircle wpCircle = new PastTrackWpCircle(this, index,
-                p.getPosition().getLatitude(), p.getPosition().getLongitude(), 0, 0, 2, 2, p.getDate());
-        wpCircle.setStroke(new BasicStroke(3));
-        wpCircle.setLinePaint(LEG_COLOR);
-        
-        routeWps.add(wpCircle);
+    private void addWpCircle(int index, int i) {
+        double lat = pastTrackWindow.getLatitude(i);
+        double lon = pastTrackWindow.getLongitude(i);
+        long time = pastTrackWindow.getTime(i);
+
+        PastTrackWpCircle wpCircle;
+        if (i < routeWps.size()) {
+            wpCircle = routeWps.get(i);
+            wpCircle.setPoint(index, lat, lon, time);
+        } else {
+            wpCircle = new PastTrackWpCircle(this, index, lat, lon, 0, 0, 2, 2, time);
+            wpCircle.setStroke(new BasicStroke(3));
+            wpCircle.setLinePaint(LEG_COLOR);
+            routeWps.add(wpCircle);
+        }
         add(wpCircle);
     }
 
@@ -206,10 +219,8 @@ public class PastTrackGraphic extends OMGraphicList {
         lastPastTrackTargetPosition = targetPostion;
         setMmsi(mobileTarget.getMmsi());
         
-        // Clear old data
+        // Clear old data. The leg and circle graphics are kept for re-use
         clear();
-        routeLegs.clear();
-        routeWps.clear();
         
         // If the past track is not visible, return
         if (!pastTrackVisible) {
@@ -217,32 +228,28 @@ public class PastTrackGraphic extends OMGraphicList {
         }
         
         // Compute how long back we want to display the past-track route
-        Calendar pastTrackDisplayTime = Calendar.getInstance();
-        pastTrackDisplayTime.add(Calendar.MINUTE, -mobileTarget.getSettings().getPastTrackDisplayTime());
-                
-        // Build the graphics
-        PastTrackPoint lastPoint = null;
-        int count = 0;            
-        for (PastTrackPoint point : mobileTarget.getPastTrackData().getPointsNewerThan(pastTrackDisplayTime.getTime())) {
+        long pastTrackDisplayTime = System.currentTimeMillis() 
+                - TimeUnit.MINUTES.toMillis(mobileTarget.getSettings().getPastTrackDisplayTime());
                 
-            // Add the graphics
-            count++;
-            makeWpCircle(count, point);
-            if (lastPoint != null) {
-                makeLegLine(count, lastPoint, point);
+        // Build the graphics directly from the primitive past-track window
+        mobileTarget.getPastTrackData().copyPointsNewerThan(pastTrackDisplayTime, pastTrackWindow);
+        int size = pastTrackWindow.size();
+        for (int i = 0; i < size; i++) {
+            int count = i + 1;
+            addWpCircle(count, i);
+            if (i > 0) {
+                addLegLine(count, i - 1);
             }
-            lastPoint = point;
         }
 
         // Create the line from the latest past-track point to the targets current position
-        if (lastPoint != null) {
-            double[] activePastTrackLineLL = new double[] {
+        if (size > 0) {
+            activePastTrackLine.setLeg(0, 
                     lastPastTrackTargetPosition.getLatitude(),
                     lastPastTrackTargetPosition.getLongitude(),
-                    lastPoint.getPosition().getLatitude(),
-                    lastPoint.getPosition().getLongitude(),
-            };
-            activePastTrackLine.setLL(activePastTrackLineLL);
+                    pastTrackWindow.getLatitude(size - 1),
+                    pastTrackWindow.getLongitude(size - 1),
+                    LEG_COLOR);
             add(activePastTrackLine);
         }
     }
@@ -34,14 +34,24 @@ public class PastTrackLegGraphic extends OMLine {
     private PastTrackGraphic pastTrackGraphic;
     private OMArrowHead arrow = new OMArrowHead(OMArrowHead.ARROWHEAD_DIRECTION_FORWARD, 55, 5, 15);
     private int index;
+    private final double[] ll = new double[4];
 
     /**
      * Constructor
      */
     public PastTrackLegGraphic(int index, PastTrackGraphic pastTrackGraphic, boolean activeWaypoint, Position start,
             Position end, Color legColor) {
+        this(index, pastTrackGraphic, start.getLatitude(), start.getLongitude(), end.getLatitude(), end.getLongitude(),
+                legColor);
+    }
+
+    /**
+     * Constructor
+     */
+    public PastTrackLegGraphic(int index, PastTrackGraphic pastTrackGraphic, double startLat, double startLon,
+            double endLat, double endLon, Color legColor) {
         
-        super(start.getLatitude(), start.getLongitude(), end.getLatitude(), end.getLongitude(), LINETYPE_RHUMB);
+        super(startLat, startLon, endLat, endLon, LINETYPE_RHUMB);
         this.index = index;
         this.pastTrackGraphic = pastTrackGraphic;
  
@@ -50,6 +60,25 @@ public class PastTrackLegGraphic extends OMLine {
     }
 
     
+    /**
+     * Moves this leg to new end points
+     * @param index the past-track point index
+     * @param startLat the latitude of the start point
+     * @param startLon the longitude of the start point
+     * @param endLat the latitude of the end point
+     * @param endLon the longitude of the end point
+     * @param legColor the leg color
+     */
+    void setLeg(int index, double startLat, double startLon, double endLat, double endLon, Color legColor) {
+        this.index = index;
+        ll[0] = startLat;
+        ll[1] = startLon;
+        ll[2] = endLat;
+        ll[3] = endLon;
+        setLL(ll);
+        setLinePaint(legColor);
+    }
+
     /**
      * Return the parent PastTrackGraphic object
      * @return the parent PastTrackGraphic object
@@ -27,8 +27,8 @@ public class PastTrackWpCircle extends OMCircle {
     private static final long serialVersionUID = 1L;
 
     private PastTrackGraphic pastTrackGraphic;
-    private final int index;
-    private final Date date;
+    private int index;
+    private long time;
     
     /**
      * No-arg constructor
@@ -36,17 +36,29 @@ public class PastTrackWpCircle extends OMCircle {
     public PastTrackWpCircle(){
         super(0, 0, 0.1);
         index = -1;
-        date = new Date(0);
     }
 
     /**
      * Constructor
      */
-    public PastTrackWpCircle(PastTrackGraphic pastTrackGraphic, int index, double latitude, double longitude, int offX1, int offY1, int w, int h, Date date) {
+    public PastTrackWpCircle(PastTrackGraphic pastTrackGraphic, int index, double latitude, double longitude, int offX1, int offY1, int w, int h, long time) {
         super(latitude, longitude, offX1, offY1, w, h);
         this.index = index;
         this.pastTrackGraphic = pastTrackGraphic;
-        this.date = date;
+        this.time = time;
+    }
+
+    /**
+     * Moves this circle to a new past-track point
+     * @param index the past-track point index
+     * @param latitude the latitude of the point
+     * @param longitude the longitude of the point
+     * @param time the time of the point
+     */
+    void setPoint(int index, double latitude, double longitude, long time) {
+        this.index = index;
+        this.time = time;
+        setLatLon(latitude, longitude);
     }
 
     /**
@@ -61,7 +73,7 @@ public class PastTrackWpCircle extends OMCircle {
      * Get the date of this PastTrackWpCircle
      */
     public Date getDate() {
-        return date;
+        return new Date(time);
     }
 
     /**
@@ -17,12 +17,14 @@ package dk.dma.epd.common.prototype.layers.intendedroute;
 import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.bbn.openmap.event.ProjectionEvent;
 import com.bbn.openmap.event.ProjectionListener;
 import com.bbn.openmap.omGraphics.OMCircle;
 import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
 
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
@@ -92,31 +94,64 @@ public class IntendedRouteLayerCommon extends EPDLayerCommon implements IAisTarg
      */
     @Override
     public void targetUpdated(AisTarget aisTarget) {
+        if (updateVessel(aisTarget)) {
+            requestPrepare();
+        }
+    }
+
+    /**
+     * Called with a batch of updated AIS targets. The layer is repainted at most once per batch, and no more often than
+     * the maximum layer frame rate.
+     * 
+     * @param aisTargets
+     *            the AIS targets that have been updated
+     */
+    @Override
+    public void targetsUpdated(Collection<AisTarget> aisTargets) {
+        boolean updated = false;
+        for (AisTarget aisTarget : aisTargets) {
+            updated |= updateVessel(aisTarget);
+        }
+        if (updated) {
+            requestPrepare();
+        }
+    }
+
+    /**
+     * Updates the vessel name and position of the intended route graphic of the given AIS target, and marks the graphic
+     * dirty, so that only the updated intended route is re-projected
+     * 
+     * @param aisTarget
+     *            the AIS target that has been updated
+     * @return if an intended route graphic was updated
+     */
+    private boolean updateVessel(AisTarget aisTarget) {
         // Sanity checks
         if (aisHandler == null || intendedRouteHandler == null || !(aisTarget instanceof VesselTarget)) {
-            return;
+            return false;
         }
 
         // Look up the intended route
         IntendedRoute intendedRoute = intendedRouteHandler.getIntendedRoute(aisTarget.getMmsi());
         IntendedRouteGraphic intendedRouteGraphic = intendedRoutes.get(aisTarget.getMmsi());
         if (intendedRoute == null || intendedRouteGraphic == null) {
-            return;
+            return false;
         }
 
         // Update the intended route name and vessel position from the
         // VesselTarget
         VesselTarget vessel = aisHandler.getVesselTarget(intendedRoute.getMmsi());
-        if (vessel != null) {
-            if (vessel.getStaticData() != null) {
-                intendedRouteGraphic.setName(vessel.getStaticData().getTrimmedName());
-            }
-
-            // Update the graphics
-            intendedRouteGraphic.updateVesselPosition(vessel.getPositionData().getPos());
-            doPrepare();
-
+        if (vessel == null) {
+            return false;
+        }
+        if (vessel.getStaticData() != null) {
+            intendedRouteGraphic.setName(vessel.getStaticData().getTrimmedName());
         }
+
+        // Update the graphics
+        intendedRouteGraphic.updateVesselPosition(vessel.getPositionData().getPos());
+        markDirty(intendedRouteGraphic);
+        return true;
     }
 
     private void removeIntendedRoute(IntendedRouteGraphic intendedRouteGraphics, long mmsi) {
@@ -165,6 +200,7 @@ public class IntendedRouteLayerCommon extends EPDLayerCommon implements IAisTarg
 
                         // Update the graphics
                         intendedRouteGraphic.updateIntendedRoute(intendedRoute);
+                        markDirty(intendedRouteGraphic);
 
                         // Cause imminent repaint
                         restartTimer();
@@ -194,6 +230,7 @@ public class IntendedRouteLayerCommon extends EPDLayerCommon implements IAisTarg
                     intendedRouteGraphic.showArrowHeads(showArrowHeads());
 
                     intendedRouteGraphic.setVisible(intendedRoute.isVisible());
+                    markDirty(intendedRouteGraphic);
 
                     // Cause imminent repaint
                     restartTimer();
@@ -214,9 +251,24 @@ public class IntendedRouteLayerCommon extends EPDLayerCommon implements IAisTarg
             intendedRouteGraphic.updateIntendedRoute();
         }
 
+        getRepaintScheduler().invalidate();
         doPrepare();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only re-projects the intended routes that have changed, unless the projection has changed
+     */
+    @Override
+    public synchronized OMGraphicList prepare() {
+        if (getProjection() == null) {
+            return graphics;
+        }
+        getRepaintScheduler().project(graphics, getProjection());
+        return graphics;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -307,6 +359,7 @@ public class IntendedRouteLayerCommon extends EPDLayerCommon implements IAisTarg
             if (highlightedGraphics != null) {
 
                 highlightedGraphics.unHightlightRoute();
+                markDirty(highlightedGraphics);
 
                 if (aisLayer != null) {
 
@@ -372,10 +425,12 @@ public class IntendedRouteLayerCommon extends EPDLayerCommon implements IAisTarg
 
         if (highlightedGraphics != null) {
             highlightedGraphics.unHightlightRoute();
+            markDirty(highlightedGraphics);
         }
 
         highlightedGraphics = intendedRouteGraphics;
         highlightedGraphics.highlightRoute();
+        markDirty(highlightedGraphics);
 
         if (aisLayer != null) {
             aisLayer.setSelectedTarget(highlightedGraphics.getIntendedRoute().getMmsi(), true);
@@ -17,7 +17,9 @@ package dk.dma.epd.common.prototype.layers.nogo;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.layers.EPDLayerCommon;
@@ -26,6 +28,9 @@ import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
 
 /**
  * No-go layer
+ * <p>
+ * The slices are rasterised in the background by a {@linkplain NogoRasterCache}, and the selected slice is shown as
+ * its cached image once available, and as vector graphics until then.
  */
 public class NogoLayer extends EPDLayerCommon {
 
@@ -37,6 +42,16 @@ public class NogoLayer extends EPDLayerCommon {
 
     int currentSelected;
 
+    // The graphic of the selected slice currently in the graphics list
+    private OMGraphic shownSlice;
+
+    private final NogoRasterCache rasterCache = new NogoRasterCache(new Runnable() {
+        @Override
+        public void run() {
+            doPrepare();
+        }
+    });
+
     /**
      * Constructor
      */
@@ -44,9 +59,11 @@ public class NogoLayer extends EPDLayerCommon {
         super();
     }
 
-    public void initializeNoGoStorage(int count) {
+    public synchronized void initializeNoGoStorage(int count) {
         // System.out.println("Initialize storage");
         cleanUp();
+        currentSelected = 0;
+        rasterCache.reset(count);
         for (int i = 0; i < count; i++) {
             multipleNoGo.add(null);
         }
@@ -54,38 +71,61 @@ public class NogoLayer extends EPDLayerCommon {
 
     /**
      * Called by the {@linkplain NogoHandler} with status updates. Updates the graphics with the no-go elements
+     * <p>
+     * Slices may arrive in any order, and the graphics are only updated if the slice is the one currently shown
      * 
      * @param dataEntry
      * @param id
      */
-    public void addResultFromMultipleRequest(NoGoDataEntry dataEntry, int id) {
+    public synchronized void addResultFromMultipleRequest(NoGoDataEntry dataEntry, int id) {
 
         // System.out.println("Adding result from multiple at id " + id);
 
-        multipleNoGo.add(id, createNoGoGraphics(dataEntry));
+        if (id >= multipleNoGo.size()) {
+            return;
+        }
+        multipleNoGo.set(id, createNoGoGraphics(dataEntry));
+        rasterCache.setSlice(id, dataEntry.getNogoPolygons());
 
-        if (id == 0) {
-            drawSpecificResult(0);
+        if (id == currentSelected) {
+            doPrepare();
         }
     }
 
-    public void drawSpecificResult(int id) {
+    public synchronized void drawSpecificResult(int id) {
         // System.out.println("Drawing " + id);
         if (multipleNoGo.size() >= id + 1) {
-            graphics.remove(multipleNoGo.get(currentSelected));
-
-            if (multipleNoGo.get(id) != null) {
-                graphics.add(multipleNoGo.get(id));
-                currentSelected = id;
-            } else {
-//                System.out.println("Value is null");
-            }
+            // Remember the selection, so that the slice is shown when it arrives
+            currentSelected = id;
         }
 
         doPrepare();
 
     }
 
+    /**
+     * Swaps in the graphic of the selected slice, i.e. the cached image for the current scale if available
+     */
+    @Override
+    public synchronized OMGraphicList prepare() {
+        Projection proj = getProjection();
+        OMGraphic slice = null;
+        if (proj != null && currentSelected < multipleNoGo.size() && multipleNoGo.get(currentSelected) != null) {
+            slice = rasterCache.getRaster(currentSelected, proj);
+            if (slice == null) {
+                slice = multipleNoGo.get(currentSelected);
+            }
+        }
+        if (slice != shownSlice) {
+            graphics.remove(shownSlice);
+            if (slice != null) {
+                graphics.add(slice);
+            }
+            shownSlice = slice;
+        }
+        return super.prepare();
+    }
+
     private OMGraphicList createNoGoGraphics(NoGoDataEntry dataEntry) {
         OMGraphicList nogoPolygon = new OMGraphicList();
         List<NogoPolygon> polygons = dataEntry.getNogoPolygons();
@@ -99,9 +139,8 @@ public class NogoLayer extends EPDLayerCommon {
 
     private void cleanUp() {
         // System.out.println("Cleanup");
-        for (int i = 0; i < multipleNoGo.size(); i++) {
-            graphics.remove(multipleNoGo.get(i));
-        }
+        graphics.remove(shownSlice);
+        shownSlice = null;
 
         multipleNoGo.clear();
     }
@@ -111,16 +150,15 @@ public class NogoLayer extends EPDLayerCommon {
      * 
      * @param dataEntry
      */
-    public void singleResultCompleted(NoGoDataEntry dataEntry) {
+    public synchronized void singleResultCompleted(NoGoDataEntry dataEntry) {
         cleanUp();
         currentSelected = 0;
-        multipleNoGo.add(0, createNoGoGraphics(dataEntry));
-
-        graphics.add(multipleNoGo.get(0));
+        rasterCache.reset(1);
+        multipleNoGo.add(createNoGoGraphics(dataEntry));
+        rasterCache.setSlice(0, dataEntry.getNogoPolygons());
 
         doPrepare();
     }
-
     /**
      * {@inheritDoc}
      */
@@ -148,12 +186,15 @@ public class NogoLayer extends EPDLayerCommon {
      *            the error code
      */
     public void addFrame(Position northWest, Position southEast) {
-        graphics.clear();
-        // NogoGraphic nogoGraphic = new NogoGraphic(null, validFrom, validTo, draught, message, nogoHandler.getNorthWestPoint(),
-        // nogoHandler.getSouthEastPoint(), errorCode, true, Color.RED);
-
-        NoGoGraphicsFrame graphicsFrame = new NoGoGraphicsFrame(northWest, southEast);
-        graphics.add(graphicsFrame);
+        synchronized (this) {
+            graphics.clear();
+            shownSlice = null;
+            // NogoGraphic nogoGraphic = new NogoGraphic(null, validFrom, validTo, draught, message, nogoHandler.getNorthWestPoint(),
+            // nogoHandler.getSouthEastPoint(), errorCode, true, Color.RED);
+
+            NoGoGraphicsFrame graphicsFrame = new NoGoGraphicsFrame(northWest, southEast);
+            graphics.add(graphicsFrame);
+        }
 
         this.setVisible(true);
         
@@ -0,0 +1,280 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.nogo;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.swing.ImageIcon;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import com.bbn.openmap.omGraphics.OMRaster;
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
+import dk.frv.enav.common.xml.nogo.types.NogoPoint;
+
+/**
+ * Cache of the NoGo time slices rasterised at the current map scale.
+ * <p>
+ * Each slice is rendered once, in the CPU pool of the {@linkplain TaskManager}, into a 1-bit image covering the bounds of its polygons, and
+ * anchored at the north-west corner of the bounds. Since the map uses a Mercator projection, panning only translates the
+ * images, so they are kept until the scale changes. Stepping through the slices is then a matter of swapping images.
+ * <p>
+ * The slice currently shown is rendered first, and the listener is notified when it is ready. Slices whose image would
+ * exceed {@linkplain #MAX_IMAGE_PIXELS} are not rasterised, and should be drawn as vector graphics.
+ */
+@ThreadSafe
+public class NogoRasterCache {
+
+    /** The maximum number of pixels of a slice image, i.e. 2 MB at 1 bit per pixel */
+    static final int MAX_IMAGE_PIXELS = 4096 * 4096;
+
+    /** Transparent and the 20% red of the {@linkplain NogoGraphic} */
+    private static final IndexColorModel COLOR_MODEL = new IndexColorModel(1, 2, new byte[] { 0, (byte) 255 },
+            new byte[] { 0, 0 }, new byte[] { 0, 0 }, new byte[] { 0, 51 });
+
+    /** The name of the render task in the task manager */
+    private static final String RENDER_TASK = "NoGo raster";
+
+    private final Runnable listener;
+
+    @GuardedBy("this") private final List<List<NogoPolygon>> slices = new ArrayList<>();
+    @GuardedBy("this") private OMRaster[] rasters = new OMRaster[0];
+    @GuardedBy("this") private boolean[] rendered = new boolean[0];
+    @GuardedBy("this") private Projection projection;
+    @GuardedBy("this") private float scale = -1f;
+    @GuardedBy("this") private int selected;
+    /** Incremented whenever the rendered images are invalidated */
+    @GuardedBy("this") private int generation;
+    @GuardedBy("this") private boolean rendering;
+
+    /**
+     * Constructor
+     *
+     * @param listener
+     *            called from the render task when the selected slice has been rendered
+     */
+    public NogoRasterCache(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Clears the cache and prepares it for the given number of slices
+     *
+     * @param count
+     *            the number of slices
+     */
+    public synchronized void reset(int count) {
+        slices.clear();
+        for (int i = 0; i < count; i++) {
+            slices.add(null);
+        }
+        rasters = new OMRaster[count];
+        rendered = new boolean[count];
+        generation++;
+    }
+
+    /**
+     * Sets the polygons of a slice, and starts rendering it if the projection is known
+     *
+     * @param index
+     *            the index of the slice
+     * @param polygons
+     *            the polygons of the slice
+     */
+    public synchronized void setSlice(int index, List<NogoPolygon> polygons) {
+        if (index < 0 || index >= slices.size()) {
+            return;
+        }
+        slices.set(index, polygons);
+        rasters[index] = null;
+        rendered[index] = false;
+        scheduleRendering();
+    }
+
+    /**
+     * Returns the rasterised slice for the scale of the given projection. If the slice has not been rendered yet,
+     * rendering is started and null is returned.
+     *
+     * @param index
+     *            the index of the slice
+     * @param proj
+     *            the current projection
+     * @return the rasterised slice, or null if not available
+     */
+    public synchronized OMRaster getRaster(int index, Projection proj) {
+        if (proj.getScale() != scale) {
+            scale = proj.getScale();
+            Arrays.fill(rasters, null);
+            Arrays.fill(rendered, false);
+            generation++;
+        }
+        projection = proj;
+        selected = index;
+        if (index < 0 || index >= slices.size()) {
+            return null;
+        }
+        if (!rendered[index]) {
+            scheduleRendering();
+        }
+        return rasters[index];
+    }
+
+    @GuardedBy("this")
+    private void scheduleRendering() {
+        if (!rendering && projection != null && nextSlice() >= 0) {
+            rendering = true;
+            try {
+                TaskManager.getInstance().submit(Pool.CPU, RENDER_TASK, new Runnable() {
+                    @Override
+                    public void run() {
+                        renderSlices();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                rendering = false;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the next slice to render, the selected slice first, or -1 if all slices have been rendered
+     */
+    @GuardedBy("this")
+    private int nextSlice() {
+        if (selected >= 0 && selected < slices.size() && !rendered[selected] && slices.get(selected) != null) {
+            return selected;
+        }
+        for (int i = 0; i < slices.size(); i++) {
+            if (!rendered[i] && slices.get(i) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Renders the pending slices one at a time. Called from the render task
+     */
+    private void renderSlices() {
+        while (true) {
+            int index;
+            int gen;
+            List<NogoPolygon> polygons;
+            Projection proj;
+            synchronized (this) {
+                index = nextSlice();
+                if (index < 0) {
+                    rendering = false;
+                    return;
+                }
+                gen = generation;
+                polygons = slices.get(index);
+                proj = projection;
+            }
+
+            OMRaster raster = rasterize(polygons, proj);
+
+            boolean notify;
+            synchronized (this) {
+                if (gen != generation || slices.get(index) != polygons) {
+                    continue;
+                }
+                rasters[index] = raster;
+                rendered[index] = true;
+                notify = index == selected;
+            }
+            if (notify) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Renders the polygons into an image anchored at the north-west corner of their bounds
+     *
+     * @param polygons
+     *            the polygons to render
+     * @param proj
+     *            the projection defining the scale
+     * @return the raster, or null if there is nothing to render or the image would be too large
+     */
+    static OMRaster rasterize(List<NogoPolygon> polygons, Projection proj) {
+        double minLat = Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (NogoPolygon polygon : polygons) {
+            for (NogoPoint point : polygon.getPolygon()) {
+                minLat = Math.min(minLat, point.getLat());
+                minLon = Math.min(minLon, point.getLon());
+                maxLat = Math.max(maxLat, point.getLat());
+                maxLon = Math.max(maxLon, point.getLon());
+            }
+        }
+        if (minLat > maxLat) {
+            return null;
+        }
+
+        Point2D pt = new Point2D.Double();
+        proj.forward(maxLat, minLon, pt);
+        double x0 = pt.getX();
+        double y0 = pt.getY();
+        proj.forward(minLat, maxLon, pt);
+        int width = (int) Math.ceil(pt.getX() - x0) + 1;
+        int height = (int) Math.ceil(pt.getY() - y0) + 1;
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_IMAGE_PIXELS) {
+            return null;
+        }
+
+        Path2D path = new Path2D.Double();
+        for (NogoPolygon polygon : polygons) {
+            List<NogoPoint> points = polygon.getPolygon();
+            for (int i = 0; i < points.size(); i++) {
+                proj.forward(points.get(i).getLat(), points.get(i).getLon(), pt);
+                if (i == 0) {
+                    path.moveTo(pt.getX() - x0, pt.getY() - y0);
+                } else {
+                    path.lineTo(pt.getX() - x0, pt.getY() - y0);
+                }
+            }
+            path.closePath();
+        }
+
+        // Render into a black and white mask, and share its raster with an image using the NoGo colors
+        BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = mask.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fill(path);
+        g.dispose();
+        BufferedImage image = new BufferedImage(COLOR_MODEL, mask.getRaster(), false, null);
+
+        return new OMRaster(maxLat, minLon, new ImageIcon(image));
+    }
+}
@@ -0,0 +1,237 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.util;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
+
+/**
+ * Screen-space spatial index of the graphics of an {@linkplain OMGraphicList}, used for resolving the graphics under
+ * the mouse without walking and computing the distance to every graphic of the list.
+ * <p>
+ * The visible leaf graphics of the (possibly nested) list are registered in the cells of a fixed pixel grid covered by
+ * the bounds of their projected shapes. Vague lists are treated as leaves. Graphics without a projected shape, and
+ * graphics covering more than {@linkplain #MAX_CELLS_PER_GRAPHIC} cells, are not indexed spatially, but always
+ * checked.
+ * <p>
+ * The index is rebuilt lazily upon the first look-up after it has been invalidated, typically after the layer has
+ * been prepared, or when the projection has changed. Graphics that are changed or re-projected without the layer
+ * being prepared are not seen until the index has been {@linkplain #invalidate() invalidated}.
+ * <p>
+ * Look-ups return the same graphics as {@code MapEventUtils.getSelectedGraphic()}, i.e. the first graphic in list
+ * order within the limit of the mouse position, matching the first possible type.
+ */
+@ThreadSafe
+public class GraphicHitIndex {
+
+    /** The size of the grid cells in pixels */
+    static final int CELL_SIZE = 32;
+
+    /** Graphics covering more cells than this are not indexed spatially, but always checked */
+    static final int MAX_CELLS_PER_GRAPHIC = 256;
+
+    private final OMGraphicList graphicList;
+
+    @GuardedBy("this")
+    private boolean valid;
+    @GuardedBy("this")
+    private Projection projection;
+    @GuardedBy("this")
+    private final List<OMGraphic> leaves = new ArrayList<>();
+    @GuardedBy("this")
+    private final Map<Long, int[]> cells = new HashMap<>();
+    @GuardedBy("this")
+    private int[] unbounded = new int[0];
+
+    /**
+     * Constructor
+     *
+     * @param graphicList
+     *            the graphics list to index
+     */
+    public GraphicHitIndex(OMGraphicList graphicList) {
+        this.graphicList = graphicList;
+    }
+
+    /**
+     * Flags that the index must be rebuilt before the next look-up
+     */
+    public synchronized void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Returns the first graphics element placed within the limit of the given screen location that matches any of the
+     * types passed along. If no types are specified, the first graphics element within the limit is returned.
+     *
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @param limit
+     *            the max distance from the point
+     * @param proj
+     *            the current projection
+     * @param types
+     *            the possible types
+     * @return the first matching graphics element, or null if none
+     */
+    public synchronized OMGraphic getSelectedGraphic(int x, int y, float limit, Projection proj, Class<?>... types) {
+        if (!valid || proj != projection) {
+            rebuild();
+            projection = proj;
+            valid = true;
+        }
+
+        // Collect the candidate graphics in list order
+        int[] candidates = unbounded;
+        int count = unbounded.length;
+        int minCol = cellIndex(x - limit);
+        int maxCol = cellIndex(x + limit);
+        int minRow = cellIndex(y - limit);
+        int maxRow = cellIndex(y + limit);
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                int[] cell = cells.get(cellKey(col, row));
+                if (cell != null) {
+                    if (candidates == unbounded) {
+                        candidates = Arrays.copyOf(unbounded, unbounded.length + cell[0]);
+                    } else if (count + cell[0] > candidates.length) {
+                        candidates = Arrays.copyOf(candidates, Math.max(count + cell[0], candidates.length * 2));
+                    }
+                    System.arraycopy(cell, 1, candidates, count, cell[0]);
+                    count += cell[0];
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+
+        // Find the graphics within the limit, skipping duplicates from graphics spanning several cells
+        List<OMGraphic> allClosest = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && candidates[i] == candidates[i - 1]) {
+                continue;
+            }
+            OMGraphic graphic = leaves.get(candidates[i]);
+            if (graphic.isVisible() && graphic.distance(x, y) <= limit) {
+                allClosest.add(graphic);
+            }
+        }
+
+        if (allClosest.size() > 0 && types.length == 0) {
+            return allClosest.get(0);
+        }
+        for (Class<?> type : types) {
+            for (OMGraphic g : allClosest) {
+                if (type.isAssignableFrom(g.getClass())) {
+                    return g;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Re-registers the visible leaf graphics of the graphics list
+     */
+    private void rebuild() {
+        leaves.clear();
+        cells.clear();
+        synchronized (graphicList) {
+            addLeaves(graphicList);
+        }
+
+        int[] unboundedIdx = new int[16];
+        int unboundedCount = 0;
+        for (int i = 0; i < leaves.size(); i++) {
+            Shape shape = leaves.get(i).getShape();
+            Rectangle bounds = (shape != null) ? shape.getBounds() : null;
+            int minCol = 0, maxCol = -1, minRow = 0, maxRow = -1;
+            if (bounds != null) {
+                minCol = cellIndex(bounds.x);
+                maxCol = cellIndex(bounds.x + bounds.width);
+                minRow = cellIndex(bounds.y);
+                maxRow = cellIndex(bounds.y + bounds.height);
+            }
+            if (bounds == null || (long) (maxCol - minCol + 1) * (maxRow - minRow + 1) > MAX_CELLS_PER_GRAPHIC) {
+                if (unboundedCount == unboundedIdx.length) {
+                    unboundedIdx = Arrays.copyOf(unboundedIdx, unboundedCount * 2);
+                }
+                unboundedIdx[unboundedCount++] = i;
+                continue;
+            }
+            for (int col = minCol; col <= maxCol; col++) {
+                for (int row = minRow; row <= maxRow; row++) {
+                    addToCell(cellKey(col, row), i);
+                }
+            }
+        }
+        unbounded = Arrays.copyOf(unboundedIdx, unboundedCount);
+    }
+
+    /**
+     * Adds the visible leaf graphics of the list in list order, recursing into nested, non-vague lists
+     */
+    private void addLeaves(OMGraphicList list) {
+        for (OMGraphic graphic : list) {
+            if (graphic == null || !graphic.isVisible()) {
+                continue;
+            }
+            if (graphic instanceof OMGraphicList && !((OMGraphicList) graphic).isVague()) {
+                OMGraphicList nested = (OMGraphicList) graphic;
+                synchronized (nested) {
+                    addLeaves(nested);
+                }
+            } else {
+                leaves.add(graphic);
+            }
+        }
+    }
+
+    /**
+     * Appends the leaf index to the cell, which is stored as {count, index...}
+     */
+    private void addToCell(Long key, int index) {
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[4];
+            cells.put(key, cell);
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+            cells.put(key, cell);
+        }
+        cell[++cell[0]] = index;
+    }
+
+    private static int cellIndex(float pixels) {
+        return (int) Math.floor(pixels / CELL_SIZE);
+    }
+
+    private static Long cellKey(int col, int row) {
+        return ((long) col << 32) | (row & 0xFFFFFFFFL);
+    }
+}
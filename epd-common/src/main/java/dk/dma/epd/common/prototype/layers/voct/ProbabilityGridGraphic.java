@@ -0,0 +1,80 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.voct;
+
+import java.awt.Color;
+
+import com.bbn.openmap.omGraphics.OMGraphicConstants;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRect;
+
+import dk.dma.epd.common.prototype.model.voct.ProbabilityGrid;
+
+/**
+ * Graphic for the probability map of a drift simulation. Each cell is filled with a color whose opacity is
+ * proportional to the probability of the cell relative to the most probable cell. Cells below
+ * {@linkplain #MIN_RELATIVE_PROBABILITY} of the most probable cell are not drawn.
+ */
+public class ProbabilityGridGraphic extends OMGraphicList {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Cells with a lower probability relative to the most probable cell are not drawn */
+    public static final double MIN_RELATIVE_PROBABILITY = 0.01;
+
+    private static final int MAX_ALPHA = 160;
+
+    private final ProbabilityGrid grid;
+
+    public ProbabilityGridGraphic(ProbabilityGrid grid) {
+        this(grid, Color.red);
+    }
+
+    public ProbabilityGridGraphic(ProbabilityGrid grid, Color color) {
+        super();
+        this.grid = grid;
+
+        double max = grid.getMaxProbability();
+        if (max <= 0.0) {
+            return;
+        }
+
+        for (int row = 0; row < grid.getRows(); row++) {
+            double south = grid.getMinLat() + row * grid.getLatStep();
+            for (int col = 0; col < grid.getCols(); col++) {
+                double relative = grid.getProbability(row, col) / max;
+                if (relative < MIN_RELATIVE_PROBABILITY) {
+                    continue;
+                }
+                double west = grid.getMinLon() + col * grid.getLonStep();
+
+                OMRect cell = new OMRect(south + grid.getLatStep(), west, south, west + grid.getLonStep(),
+                        OMGraphicConstants.LINETYPE_RHUMB);
+                Color fill = new Color(color.getRed(), color.getGreen(), color.getBlue(),
+                        (int) Math.round(relative * MAX_ALPHA));
+                cell.setFillPaint(fill);
+                cell.setLinePaint(fill);
+                add(cell);
+            }
+        }
+    }
+
+    /**
+     * @return the probability grid
+     */
+    public ProbabilityGrid getGrid() {
+        return grid;
+    }
+}
@@ -19,7 +19,11 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.concurrent.Callable;
 
 import javax.imageio.ImageIO;
@@ -41,6 +45,8 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
         Callable<OMGraphicList> {
     private static final Logger LOG = LoggerFactory.getLogger(SingleWMSService.class);
     private Projection projection;
+    private WMSTileCache cache;
+    private String cacheKey;
 
     public SingleWMSService(String wmsQuery, Projection p) {
         super(wmsQuery, p);
@@ -59,19 +65,31 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
         super(wmsQuery);
     }
 
-    public OMGraphicList getWmsList(Projection p) {
-        java.net.URL url = null;
+    /**
+     * Sets the tile cache used for looking up and storing the image of this tile
+     * 
+     * @param cache
+     *            the tile cache
+     * @param cacheKey
+     *            the key of this tile
+     */
+    public void setCache(WMSTileCache cache, String cacheKey) {
+        this.cache = cache;
+        this.cacheKey = cacheKey;
+    }
 
-        OMGraphicList wmsList = new OMGraphicList();
-        
-        try {
+    public String getCacheKey() {
+        return cacheKey;
+    }
 
-            url = new java.net.URL(getQueryString());
+    public OMGraphicList getWmsList(Projection p) {
+        OMGraphicList wmsList = new OMGraphicList();
 
-            BufferedImage image = ImageIO.read(url);
+        try {
+            Image image = loadImage();
 
             if (image == null) {
-                System.out.println("Unable to retrieve image from URL, check the WMS URL");
+                LOG.warn("Unable to retrieve image from URL, check the WMS URL");
                 Image noImage = EPD.res().getCachedImageIcon("images/noWMSAvailable.png").getImage();
                 BufferedImage bi = new BufferedImage(noImage.getWidth(null), noImage.getHeight(null), BufferedImage.TYPE_INT_ARGB);
                 Graphics g = bi.createGraphics();
@@ -81,11 +99,8 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
                         this.wmsHeight, noImageIcon));
 
             } else {
-                status.markContactSuccess();
-                
-                Image maskedImage = transformWhiteToTransparent(image);
                 wmsList.add(new CenterRaster(getProjection().getCenter().getY(), getProjection().getCenter().getX(), this.wmsWidth,
-                        this.wmsHeight, new ImageIcon(maskedImage)));
+                        this.wmsHeight, new ImageIcon(image)));
             }
 
         } catch (IOException ex) {
@@ -97,7 +112,55 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
         return wmsList;
     }
 
-    private Image transformWhiteToTransparent(BufferedImage image) {
+    /**
+     * Returns the masked tile image from the tile cache, if set, or downloads it.
+     * <p>
+     * Downloaded images are added to the cache along with the raw image data for the disk cache.
+     * 
+     * @return the masked tile image, or null if the WMS did not return a valid image
+     */
+    private Image loadImage() throws IOException {
+        if (cache != null) {
+            BufferedImage cached = cache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] data = (cache != null) ? cache.readFromDisk(cacheKey) : null;
+        boolean downloaded = data == null;
+        if (downloaded) {
+            data = download(new URL(getQueryString()));
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        if (image == null) {
+            return null;
+        }
+        if (downloaded) {
+            status.markContactSuccess();
+        }
+
+        BufferedImage maskedImage = transformWhiteToTransparent(image);
+        if (cache != null) {
+            cache.put(cacheKey, maskedImage, downloaded ? data : null);
+        }
+        return maskedImage;
+    }
+
+    private static byte[] download(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private BufferedImage transformWhiteToTransparent(BufferedImage image) {
 
         BufferedImage dest = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2 = dest.createGraphics();
@@ -14,59 +14,103 @@
  */
 package dk.dma.epd.common.prototype.layers.wms;
 
-import java.util.Collection;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.swing.ImageIcon;
+
+import net.jcip.annotations.GuardedBy;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Proj;
 import com.bbn.openmap.proj.Projection;
 
+import dk.dma.epd.common.graphics.CenterRaster;
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+
+/**
+ * Asynchronous tiled WMS service.
+ * <p>
+ * Queued projections are handled by a service thread, which submits the tiles missing from the in-memory cache to the
+ * I/O pool of the {@linkplain TaskManager}, and fires a WMS event whenever a tile has been loaded. {@linkplain #getWmsList(Projection)}
+ * only returns the tiles that are already in memory, and never blocks on the network.
+ * <p>
+ * Once the tiles of a view have been submitted, the service prefetches the next row or column of tiles in the pan
+ * direction, along with the tiles of the next zoom level centered ahead of the view. Prefetching is skipped whenever
+ * the I/O pool is busy, so that it never delays the tiles of the current view, and prefetch requests that have not
+ * started by the time the view changes again are dropped. The disk cache is only checked by the prefetch tasks
+ * themselves, never by the service thread.
+ */
 public class StreamingTiledWmsService extends TiledWMSService implements
         Runnable, AsyncWMSService {
 
-    private boolean shouldRun = true;
-    ConcurrentHashMap<String, OMGraphicList> cache = new ConcurrentHashMap<String, OMGraphicList>();
-    ConcurrentHashMap<String, OMGraphicList> tmpCache = new ConcurrentHashMap<String, OMGraphicList>();
+    /** Prefetching is skipped while this many tiles are waiting to be downloaded */
+    private static final int PREFETCH_QUEUE_LIMIT = 32;
+
+    /** The scale factor of the next zoom level, as used by the zoom buttons */
+    private static final float ZOOM_IN_FACTOR = 0.5f;
+
+    private volatile boolean shouldRun = true;
     LinkedBlockingDeque<Projection> projectionJobs = new LinkedBlockingDeque<>(
             1);
 
+    /** The task name of tile prefetches */
+    private static final String PREFETCH_TASK = "WMS tile prefetch";
+
+    /** The keys of the tiles submitted to the I/O pool and not yet loaded */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /** The rasters of the tiles of the last requested view, re-used so that the layer can recognize them */
+    @GuardedBy("this")
+    private Map<String, OMGraphic> rasters = new HashMap<>();
+
+    /** The last projection handled by the service thread */
+    private Projection lastJob;
+
+    /** Incremented for every projection handled, so that prefetch requests for older views can be dropped */
+    private volatile int generation;
+
     private Thread t;
-    private ExecutorService handOffPool = Executors.newFixedThreadPool(1);
 
-    public StreamingTiledWmsService(String wmsQuery, int tileNumber) {
-        super(wmsQuery, tileNumber);
+    public StreamingTiledWmsService(String wmsQuery) {
+        super(wmsQuery);
 
-        this.t = new Thread(this);
-        this.t.start();
-    }
-    
-    public StreamingTiledWmsService(String wmsQuery, int tileNumber, ConcurrentHashMap<String, OMGraphicList> sharedCache) {
-        super(wmsQuery, tileNumber);
-        this.cache = sharedCache;
-        
-        this.t = new Thread(this);
-        this.t.start();
+        this.t = EPD.startThread(this, "StreamingTiledWmsService");
     }
 
     @Override
-    public OMGraphicList getWmsList(Projection p) {
+    public synchronized OMGraphicList getWmsList(Projection p) {
         final OMGraphicList result = new OMGraphicList();
-        final String key = getID(p);
-        if (cache.containsKey(key)) {
-            // LOG.debug("CACHE HIT");
-            tmpCache.remove(key);
-            result.addAll(cache.get(key));
-        } else if (tmpCache.containsKey(key)) {
-            // LOG.debug("TMPCACHE HIT");
-            result.addAll(tmpCache.get(key));
+        Map<String, OMGraphic> viewRasters = new HashMap<>();
+
+        for (SingleWMSService tile : getTiles(p)) {
+            String key = tile.getCacheKey();
+            OMGraphic raster = rasters.get(key);
+            if (raster == null) {
+                BufferedImage image = cache.get(key);
+                if (image != null) {
+                    Point2D center = tile.getProjection().getCenter();
+                    raster = new CenterRaster(center.getY(), center.getX(), TILE_SIZE + 1, TILE_SIZE + 1,
+                            new ImageIcon(image));
+                }
+            }
+            if (raster != null) {
+                viewRasters.put(key, raster);
+                result.add(raster);
+            }
         }
 
+        rasters = viewRasters;
         return result;
     }
 
@@ -75,6 +119,7 @@ public class StreamingTiledWmsService extends TiledWMSService implements
      */
     public void stop() {
         shouldRun = false;
+        t.interrupt();
     }
 
     @Override
@@ -85,109 +130,113 @@ public class StreamingTiledWmsService extends TiledWMSService implements
                 // blocks until projection bbox job ready
                 job = projectionJobs.takeLast();
 
-                Thread.sleep(1000); // only take jobs every second
-                // LOG.debug("JOB TAKEN");
+                // Wait for the map to settle, and use the latest projection
+                Thread.sleep(250);
+                Projection newer = projectionJobs.pollLast();
+                if (newer != null) {
+                    job = newer;
+                }
             } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                continue;
             }
 
-            if (cache.containsKey(getID(job))) {
-                clearCache();
-            } else {
-                asyncDownload(job);
-                
+            generation++;
+            for (SingleWMSService tile : getTiles(job)) {
+                if (cache.get(tile.getCacheKey()) == null) {
+                    submit(tile, false);
+                }
             }
-        }
-    }
-    
-    
-
-    private void clearCache() {
-        if (cache.keySet().size() > 128) {
-            LOG.debug("pruning cache (memory concern)");
-            cache.clear();
-            tmpCache.clear();
+            // Display the tiles that were already in memory
+            fireWMSEvent();
+
+            prefetch(job);
+            lastJob = job;
         }
     }
 
     /**
-     * Complete asynchronous download and update of caches
+     * Prefetches the tiles next to the view in the pan direction, and the tiles of the next zoom level
      * 
      * @param job
+     *            the current projection
      */
-    public void asyncDownload(final Projection job) {
-        handOffPool.execute(new Runnable() {
+    private void prefetch(Projection job) {
+        int dirX = 0;
+        int dirY = 0;
+        if (lastJob != null && lastJob.getScale() == job.getScale()) {
+            // The previous center moves opposite to the pan direction
+            Point2D prevCenter = job.forward(lastJob.getCenter().getY(), lastJob.getCenter().getX());
+            dirX = (int) Math.signum(job.getWidth() / 2.0 - prevCenter.getX());
+            dirY = (int) Math.signum(job.getHeight() / 2.0 - prevCenter.getY());
+        }
 
-            @Override
-            public void run() {
-                Collection<SingleWMSService> workers = getTiles(job);
-                OMGraphicList result = new OMGraphicList();
+        if (dirX != 0 || dirY != 0) {
+            prefetch(getTiles(job, dirX, dirY, 0));
+        }
 
-                ExecutorService pool = Executors.newFixedThreadPool(Math.max(workers.size(),4));
-                ExecutorCompletionService<OMGraphicList> completionService = new ExecutorCompletionService<>(
-                        pool);
+        Proj zoomed = (Proj) job.makeClone();
+        Point2D ahead = job.inverse(job.getWidth() / 2.0 + dirX * job.getWidth() / 4.0, job.getHeight() / 2.0 + dirY
+                * job.getHeight() / 4.0);
+        zoomed.setCenter(ahead.getY(), ahead.getX());
+        zoomed.setScale(job.getScale() * ZOOM_IN_FACTOR);
+        prefetch(getTiles(zoomed));
+    }
 
-                for (SingleWMSService w : workers) {
-                    completionService.submit(w);
-                }
+    private void prefetch(List<SingleWMSService> tiles) {
+        TaskManager taskManager = TaskManager.getInstance();
+        for (SingleWMSService tile : tiles) {
+            if (taskManager.getQueueSize(Pool.IO) >= PREFETCH_QUEUE_LIMIT) {
+                return;
+            }
+            if (cache.get(tile.getCacheKey()) == null) {
+                submit(tile, true);
+            }
+        }
+    }
 
-                boolean allSuccess = true;
-                for (int i = 0; i < workers.size(); i++) {
-                    Future<OMGraphicList> future;
+    /**
+     * Submits the tile to the I/O pool, unless already pending
+     * 
+     * @param tile
+     *            the tile to load
+     * @param prefetch
+     *            if the tile is prefetched, in which case it is skipped if already in the disk cache, or if the view
+     *            has changed before the task starts
+     */
+    private void submit(final SingleWMSService tile, final boolean prefetch) {
+        final String key = tile.getCacheKey();
+        if (!pending.add(key)) {
+            return;
+        }
+        final int submitted = generation;
+        try {
+            TaskManager.getInstance().submit(Pool.IO, prefetch ? PREFETCH_TASK : TILE_TASK, new Runnable() {
+                @Override
+                public void run() {
                     try {
-                        future = completionService.poll(Math.max(100,5000/(i+1)),
-                                TimeUnit.MILLISECONDS);
-                        OMGraphicList tile = future.get();
-                        result.addAll(tile);
-                        tmpCache.putIfAbsent(getID(job), new OMGraphicList());
-                        tmpCache.get(getID(job)).addAll(tile);
-                        fireWMSEvent();
-                    } catch (InterruptedException | ExecutionException
-                            | NullPointerException e) {
-                        allSuccess = false;
-                        //LOG.debug("A Tile failed to download within the alotted time. (~5000ms)");
+                        if (prefetch && (submitted != generation || cache.contains(key))) {
+                            return;
+                        }
+                        tile.getWmsList(tile.getProjection());
+                    } finally {
+                        pending.remove(key);
                     }
-                }
-
-                if (allSuccess) {
-                    tmpCache.remove(getID(job));
-                    cache.put(getID(job), result);
                     fireWMSEvent();
-                } else {
-                    LOG.debug("A Tile failed to download, resubmitting job");
-                    queue(job);
                 }
-            }
-        });
-
-
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+        }
     }
 
     public void queue(Projection p) {
-        //p = normalizeProjection(p);
         if (this.projectionJobs.offer(p)) {
 
         } else {
             LOG.debug("Queue is full, kicking old job in favor of new");
-            try {
-                this.projectionJobs.takeFirst();
-            } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+            this.projectionJobs.pollFirst();
             this.projectionJobs.offer(p);
         }
 
     }
-
-    // meh!
-    public String getBbox(Projection p) {
-        String meh = (new SingleWMSService(wmsQuery, p)).getBbox();
-        return meh;
-    }
-
-    public String getID(Projection p) {
-        return getBbox(p)+Math.round(p.getScale());
-    }
 }
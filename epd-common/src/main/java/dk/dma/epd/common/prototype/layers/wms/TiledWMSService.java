@@ -14,146 +14,105 @@
  */
 package dk.dma.epd.common.prototype.layers.wms;
 
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Proj;
 import com.bbn.openmap.proj.Projection;
 
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+
+/**
+ * WMS service that splits the map into a grid of fixed-size tiles.
+ * <p>
+ * The tile grid is anchored to the projected position of (0, 0) at the current scale, so the same tiles, and hence
+ * the same cache keys, are used as the map is panned. Tiles are looked up in and added to the shared
+ * {@linkplain WMSTileCache}, and downloaded in the I/O pool of the {@linkplain TaskManager}.
+ */
 public class TiledWMSService extends AbstractWMSService {
 
-    protected int root;
-    protected int sqrRoot;
+    /** The width and height of a tile in pixels */
+    protected static final int TILE_SIZE = 512;
+
+    /** The task name of tile downloads */
+    protected static final String TILE_TASK = "WMS tile";
+
+    /** The maximum time to wait for the tiles of a view in seconds */
+    private static final long TILE_TIMEOUT = 10;
 
-    @SuppressWarnings("unused")
-    private Projection projection;
+    protected final WMSTileCache cache;
 
-    public TiledWMSService(String wmsQuery, int tileNumber) {
+    public TiledWMSService(String wmsQuery) {
+        this(wmsQuery, WMSTileCache.getInstance());
+    }
+
+    public TiledWMSService(String wmsQuery, WMSTileCache cache) {
         super(wmsQuery);
-        this.root = tileNumber;
-        this.sqrRoot = (int) Math.sqrt(root);
+        this.cache = cache;
     }
+
     /**
-     * get a single tile if width < 1500 otherwise, get four tiles
-     * @param p projection
+     * Returns the tiles covering the projection
+     * 
+     * @param p
+     *            projection
      * @return list of rasterizable image tiles
      */
-    protected final Collection<SingleWMSService> getTiles(Projection p) {
-        
-        if (p.getWidth() > 2000 || p.getHeight() > 1400) {
-            return getTiles(p,sqrRoot);
-        }
-        
-        LinkedList<SingleWMSService> l = new LinkedList<>();
-        l.add(new SingleWMSService(wmsQuery, p.makeClone()));
-        return l;
+    protected final List<SingleWMSService> getTiles(Projection p) {
+        return getTiles(p, 0, 0, 0);
     }
-    
-    protected final Collection<SingleWMSService> getTiles(Projection p, int sqrRoot) {
-        super.setWMSPosition(p);
-        super.setZoomLevel(p.getScale());
-        this.setProjection(p);
-
-        // TODO: there is certainly an issue here since i'm overlaying tiles
-        // based on 2D geometry. I really should use projection geometry
-        Double rectWidth = (lowerRightLon - upperLeftLon) / sqrRoot;
-        Double rectHeight = (lowerRightLat - upperLeftLat) / sqrRoot;
-
-        // Double meanRectWidth =
-        // CoordinateSystem.GEODETIC.distanceBetween(Position.create(upperLeftLat,upperLeftLon),
-        // Position.create(upperLeftLat,lowerRightLon))/sqrRoot;
-        // Double meanRectHeight =
-        // CoordinateSystem.GEODETIC.distanceBetween(Position.create(upperLeftLat,upperLeftLon),
-        // Position.create(lowerRightLat, upperLeftLon))/sqrRoot;
-
-        int rectW = (int) Math.round(wmsWidth / sqrRoot);
-        int rectH = (int) Math.round(wmsHeight / sqrRoot);
-        
-        //rectW = 20;
-        //rectH = 20;
-
-        Collection<SingleWMSService> wmsInstances = new ArrayList<>();
-        for (int i = 0; i < root; i++) {
-            wmsInstances.add(new SingleWMSService(wmsQuery, p));
-        }
-
-        Iterator<SingleWMSService> it = wmsInstances.iterator();
-
-        for (int i = 0; i < sqrRoot; i++) {
-            Double lonOffset = rectWidth * i;
-            for (int j = 0; j < sqrRoot; j++) {
-                Double latOffset = rectHeight * j;
 
-                SingleWMSService s = it.next();
-
-                Double minLon = wmsullon + lonOffset;
-                //Double maxLon = wmsullon + lonOffset + rectWidth;
-                Double minLat = wmsullat + latOffset;
-                //Double maxLat = wmsullat + latOffset + rectHeight;
-                
+    /**
+     * Returns the tiles covering the projection, extended by the given number of tiles to the right and down (positive)
+     * or to the left and up (negative)
+     * 
+     * @param p
+     *            projection
+     * @param dx
+     *            the number of tile columns to extend the view by
+     * @param dy
+     *            the number of tile rows to extend the view by
+     * @param border
+     *            the number of tiles to extend the view by in all directions
+     * @return list of rasterizable image tiles
+     */
+    protected final List<SingleWMSService> getTiles(Projection p, int dx, int dy, int border) {
+        Point2D origin = p.forward(0.0, 0.0);
+        double ox = origin.getX();
+        double oy = origin.getY();
+
+        int minCol = (int) Math.floor(-ox / TILE_SIZE) + Math.min(dx, 0) - border;
+        int maxCol = (int) Math.floor((p.getWidth() - 1 - ox) / TILE_SIZE) + Math.max(dx, 0) + border;
+        int minRow = (int) Math.floor(-oy / TILE_SIZE) + Math.min(dy, 0) - border;
+        int maxRow = (int) Math.floor((p.getHeight() - 1 - oy) / TILE_SIZE) + Math.max(dy, 0) + border;
+        long scale = Math.round(p.getScale());
+
+        List<SingleWMSService> tiles = new ArrayList<>((maxCol - minCol + 1) * (maxRow - minRow + 1));
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                Point2D center = p.inverse(ox + (col + 0.5) * TILE_SIZE, oy + (row + 0.5) * TILE_SIZE);
+
+                // Overlap the neighbouring tiles by one pixel
                 Proj pCurrent = (Proj) p.makeClone();
-                
-                pCurrent.setWidth(rectW+1); //overlap one pixel
-                pCurrent.setHeight(rectH+1);
-                pCurrent.setCenter(minLat+rectHeight/2,minLon+rectWidth/2);
-                
-                s.setProjection(pCurrent);
-                s.setWMSPosition(pCurrent);
-                s.setZoomLevel(pCurrent);
-
-                // TODO: we cheat here, we add 1 pixel to width and height to
-                // overlap all tiles, but we really should change the projection
-                // as well
-                /*
-                s.setWMSPosition(minLon, minLat, minLon, minLat, maxLon, maxLat, rectW -10,
-                        rectH -10);
-
-                s.setZoomLevel(p.getScale());
-                */
-            }
-        }
+                pCurrent.setWidth(TILE_SIZE + 1);
+                pCurrent.setHeight(TILE_SIZE + 1);
+                pCurrent.setCenter(center.getY(), center.getX());
 
-        return wmsInstances;
-        
-    } 
-    
-    
-    /*
-     * Experimented with various pre-fetching strategies
-     */
-    /*
-    protected final Collection<SingleWMSService> getTiles(Projection p) {
-        
-        LinkedList<SingleWMSService> l = new LinkedList<>();
-        
-        Projection pCurrent = p.makeClone();
-        
-        
-        int degrees = 45;
-        for (int i=0; i<8; i++) {
-            pCurrent = p.makeClone();
-            Proj pC = (Proj)pCurrent;
-            pCurrent.pan(degrees*i);
-            
-            l.add(new SingleWMSService(wmsQuery, pCurrent.makeClone()));
+                SingleWMSService s = new SingleWMSService(wmsQuery, pCurrent);
+                s.setCache(cache, wmsQuery + "|" + scale + "|" + col + "|" + row);
+                tiles.add(s);
+            }
         }
-        
-        return l;
-    }*/
-    
-    private void setProjection(final Projection p) {
-        this.projection = p;
-
+        return tiles;
     }
 
     @Override
@@ -161,36 +120,33 @@ public class TiledWMSService extends AbstractWMSService {
 
         OMGraphicList result = new OMGraphicList();
 
-        // why not make this a field? because we want total separation between
-        // results
-        ExecutorService es = Executors.newCachedThreadPool();
-
-        Collection<SingleWMSService> wmsInstances = this.getTiles(p);
-
+        List<Future<OMGraphicList>> futures = new ArrayList<>();
         try {
-            List<Future<OMGraphicList>> futures = es.invokeAll(wmsInstances,
-                    10, TimeUnit.SECONDS);
+            for (SingleWMSService tile : getTiles(p)) {
+                futures.add(TaskManager.getInstance().submit(Pool.IO, TILE_TASK, tile));
+            }
 
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TILE_TIMEOUT);
             for (Future<OMGraphicList> f : futures) {
                 try {
-                    result.addAll(f.get());
-//                    System.out.println("added tile");
-                } catch (CancellationException e) {
+                    result.addAll(f.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (CancellationException | TimeoutException e) {
                     LOG.debug("WMS TILE CANCELLED");
+                } catch (ExecutionException e) {
+                    LOG.debug("WMS TILE FAILED: " + e.getMessage());
                 }
-
             }
 
-        } catch (InterruptedException | ExecutionException e) {
-
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            LOG.debug("WMS TILE REJECTED: " + e.getMessage());
+        } finally {
+            for (Future<OMGraphicList> f : futures) {
+                f.cancel(true);
+            }
         }
 
-        // Singlethreaded alternative
-        /*
-         * for (SingleWMSService s: wmsInstances) {
-         * result.addAll(s.getWmsList(p)); }
-         */
-
         return result;
 
     }
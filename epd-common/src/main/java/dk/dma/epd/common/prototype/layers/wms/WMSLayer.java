@@ -15,7 +15,6 @@
 package dk.dma.epd.common.prototype.layers.wms;
 
 import java.awt.image.BufferedImage;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
@@ -27,6 +26,7 @@ import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Projection;
 
 import dk.dma.epd.common.graphics.CenterRaster;
+import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.event.WMSEvent;
 import dk.dma.epd.common.prototype.event.WMSEventListener;
 import dk.dma.epd.common.prototype.layers.EPDLayerCommon;
@@ -65,29 +65,15 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
     public WMSLayer(String query, MapSettings mapSettings) {
         LOG.info("WMS Layer inititated");
 
-        wmsService = new StreamingTiledWmsService(query, 4);
+        wmsService = new StreamingTiledWmsService(query);
         wmsService.addWMSEventListener(this);
 
         this.mapSettings = mapSettings;
 
-        new Thread(this).start();
+        EPD.startThread(this, "WMSLayer");
 
     }
 
-    /**
-     * Constructor that starts the WMS layer in a separate thread
-     * 
-     * @param query
-     *            the WMS query
-     * @param sharedCache
-     *            the shared cache to use
-     */
-    public WMSLayer(String query, ConcurrentHashMap<String, OMGraphicList> sharedCache) {
-        wmsService = new StreamingTiledWmsService(query, 4, sharedCache);
-        wmsService.addWMSEventListener(this);
-        new Thread(this).start();
-    }
-
     /**
      * Returns a reference to the WMS service
      * 
@@ -0,0 +1,329 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.settings.MapSettings;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+
+/**
+ * Two-level cache of WMS tiles.
+ * <p>
+ * The first level is an in-memory LRU cache of the decoded tile images, bounded by the approximate number of bytes
+ * held by the images. The second level is a persistent cache of the downloaded image data, stored in the
+ * {@code .wmscache} folder of the EPD home. Files older than the time-to-live are considered expired, and the disk
+ * cache is pruned to its maximum size, oldest files first.
+ * <p>
+ * Tiles are identified by a key which must be stable across panning, i.e. based on the WMS query, scale and tile grid
+ * position rather than on the exact bounding box.
+ */
+@ThreadSafe
+public class WMSTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WMSTileCache.class);
+
+    /** The default maximum size of the disk cache */
+    public static final long DEFAULT_MAX_DISK_BYTES = 512L * 1024L * 1024L;
+
+    /** The disk cache is pruned for every this many tiles written */
+    private static final int PRUNE_INTERVAL = 500;
+
+    private static WMSTileCache instance;
+
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final long ttl;
+    private final Path dir;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(64, 0.75f, true);
+    @GuardedBy("this")
+    private long memoryBytes;
+    @GuardedBy("this")
+    private int writes;
+
+    /**
+     * Constructor
+     *
+     * @param dir
+     *            the disk cache folder, or null for a memory-only cache
+     * @param maxMemoryBytes
+     *            the maximum number of bytes held by the in-memory images
+     * @param maxDiskBytes
+     *            the maximum size of the disk cache
+     * @param ttl
+     *            the time-to-live of the disk cache entries in milliseconds
+     */
+    public WMSTileCache(Path dir, long maxMemoryBytes, long maxDiskBytes, long ttl) {
+        this.dir = dir;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.ttl = ttl;
+
+        if (dir != null) {
+            try {
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                LOG.error("Failed creating WMS tile cache folder " + dir, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the shared tile cache, located in the EPD home and sized according to the map settings
+     *
+     * @return the shared tile cache
+     */
+    public static synchronized WMSTileCache getInstance() {
+        if (instance == null) {
+            MapSettings mapSettings = EPD.getInstance().getSettings().getMapSettings();
+            instance = new WMSTileCache(EPD.getInstance().getHomePath().resolve(".wmscache"),
+                    mapSettings.getWmsCacheSize() * 1024L * 1024L, DEFAULT_MAX_DISK_BYTES,
+                    mapSettings.getWmsCacheTtl() * 60L * 60L * 1000L);
+
+            // Get rid of expired tiles from previous sessions
+            final WMSTileCache cache = instance;
+            try {
+                TaskManager.getInstance().submit(Pool.IO, "WMSTileCache prune", new Runnable() {
+                    @Override
+                    public void run() {
+                        cache.pruneDisk();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Failed pruning the WMS tile cache: " + e.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the tile image from the in-memory cache
+     *
+     * @param key
+     *            the tile key
+     * @return the tile image, or null if not cached in memory
+     */
+    public synchronized BufferedImage get(String key) {
+        return memory.get(key);
+    }
+
+    /**
+     * Returns if the tile is cached, either in memory or on disk
+     *
+     * @param key
+     *            the tile key
+     * @return if the tile is cached
+     */
+    public boolean contains(String key) {
+        synchronized (this) {
+            if (memory.containsKey(key)) {
+                return true;
+            }
+        }
+        File file = getFile(key);
+        return file != null && file.exists() && !isExpired(file);
+    }
+
+    /**
+     * Reads the downloaded image data of the tile from the disk cache
+     *
+     * @param key
+     *            the tile key
+     * @return the image data, or null if not cached on disk or expired
+     */
+    public byte[] readFromDisk(String key) {
+        File file = getFile(key);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        if (isExpired(file)) {
+            file.delete();
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            LOG.warn("Failed reading cached WMS tile " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds the tile to the cache
+     *
+     * @param key
+     *            the tile key
+     * @param image
+     *            the decoded tile image
+     * @param data
+     *            the downloaded image data to store on disk, or null if already stored on disk
+     */
+    public void put(String key, BufferedImage image, byte[] data) {
+        boolean prune = false;
+        synchronized (this) {
+            BufferedImage old = memory.put(key, image);
+            if (old != null) {
+                memoryBytes -= sizeOf(old);
+            }
+            memoryBytes += sizeOf(image);
+            Iterator<BufferedImage> it = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                BufferedImage eldest = it.next();
+                if (eldest == image) {
+                    break;
+                }
+                memoryBytes -= sizeOf(eldest);
+                it.remove();
+            }
+            if (data != null && dir != null) {
+                prune = ++writes % PRUNE_INTERVAL == 0;
+            }
+        }
+
+        if (data != null && dir != null) {
+            writeToDisk(key, data);
+            if (prune) {
+                pruneDisk();
+            }
+        }
+    }
+
+    /**
+     * Clears the in-memory cache
+     */
+    public synchronized void clearMemory() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * Returns the approximate number of bytes held by the in-memory images
+     *
+     * @return the approximate number of bytes held by the in-memory images
+     */
+    public synchronized long getMemorySize() {
+        return memoryBytes;
+    }
+
+    /**
+     * Deletes expired tiles from the disk cache, and the oldest tiles if the cache exceeds its maximum size
+     */
+    public void pruneDisk() {
+        File[] files = (dir != null) ? dir.toFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File folder, String name) {
+                return name.endsWith(".tile");
+            }
+        }) : null;
+        if (files == null) {
+            return;
+        }
+
+        long total = 0L;
+        int deleted = 0;
+        for (File file : files) {
+            if (isExpired(file) && file.delete()) {
+                deleted++;
+            } else {
+                total += file.length();
+            }
+        }
+
+        if (total > maxDiskBytes) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.compare(f1.lastModified(), f2.lastModified());
+                }
+            });
+            for (int i = 0; i < files.length && total > maxDiskBytes; i++) {
+                long length = files[i].length();
+                if (files[i].delete()) {
+                    total -= length;
+                    deleted++;
+                }
+            }
+        }
+
+        if (deleted > 0) {
+            LOG.info("Pruned " + deleted + " tiles from the WMS tile cache");
+        }
+    }
+
+    private void writeToDisk(String key, byte[] data) {
+        File file = getFile(key);
+        try {
+            // Write to a temporary file first, so that readers never see a partial tile
+            Path tmp = Files.createTempFile(dir, "tile", ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("Failed writing cached WMS tile " + file + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isExpired(File file) {
+        return System.currentTimeMillis() - file.lastModified() > ttl;
+    }
+
+    private File getFile(String key) {
+        return (dir != null) ? dir.resolve(hash(key) + ".tile").toFile() : null;
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Returns the hex-encoded SHA-1 digest of the key, which is used as the file name of the tile
+     */
+    static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
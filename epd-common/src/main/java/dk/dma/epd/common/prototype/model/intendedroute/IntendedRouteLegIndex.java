@@ -0,0 +1,229 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.intendedroute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Spatial index of the legs of the intended routes, used for pruning the route pairs that are compared when computing
+ * TCPA's.
+ * <p>
+ * The legs from the leg leading to the active way point and onwards are registered in the cells of a fixed lat/lon grid
+ * covered by their bounding boxes. Candidates for a route are the routes with a leg in a cell covered by the
+ * margin-expanded bounding box of one of its legs, which are then checked with
+ * {@linkplain IntendedRouteTimeline#mayApproach(IntendedRouteTimeline, double, long, long)} for legs being sailed at
+ * overlapping times within the time window.
+ * <p>
+ * The index is keyed by MMSI, and a route is re-indexed when a new intended route is received for the MMSI.
+ */
+@ThreadSafe
+public class IntendedRouteLegIndex {
+
+    /** The size of the grid cells in degrees */
+    static final double CELL_SIZE = 0.5;
+
+    /** Legs covering more cells than this are not indexed spatially, but always considered candidates */
+    static final int MAX_CELLS_PER_LEG = 4096;
+
+    @GuardedBy("this")
+    private final Map<Long, IntendedRouteTimeline> timelines = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<Long, Set<Long>> cells = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<Long, Set<Long>> cellsByMmsi = new HashMap<>();
+    @GuardedBy("this")
+    private final Set<Long> unbounded = new HashSet<>();
+
+    /**
+     * Adds the route to the index, replacing any route previously indexed for the MMSI
+     * 
+     * @param timeline
+     *            the route to add
+     */
+    public synchronized void put(IntendedRouteTimeline timeline) {
+        Long mmsi = timeline.getMmsi();
+        remove(mmsi);
+
+        timelines.put(mmsi, timeline);
+        Set<Long> routeCells = new HashSet<>();
+        for (int leg = timeline.getFirstLeg(); leg < timeline.getLegCount(); leg++) {
+            if (!addCells(timeline, leg, 0.0, routeCells)) {
+                unbounded.add(mmsi);
+            }
+        }
+        for (Long cell : routeCells) {
+            Set<Long> mmsis = cells.get(cell);
+            if (mmsis == null) {
+                mmsis = new HashSet<>();
+                cells.put(cell, mmsis);
+            }
+            mmsis.add(mmsi);
+        }
+        cellsByMmsi.put(mmsi, routeCells);
+    }
+
+    /**
+     * Removes the route of the given MMSI from the index
+     * 
+     * @param mmsi
+     *            the MMSI
+     * @return the removed route, or null if not indexed
+     */
+    public synchronized IntendedRouteTimeline remove(Long mmsi) {
+        IntendedRouteTimeline timeline = timelines.remove(mmsi);
+        Set<Long> routeCells = cellsByMmsi.remove(mmsi);
+        if (routeCells != null) {
+            for (Long cell : routeCells) {
+                Set<Long> mmsis = cells.get(cell);
+                if (mmsis != null) {
+                    mmsis.remove(mmsi);
+                    if (mmsis.isEmpty()) {
+                        cells.remove(cell);
+                    }
+                }
+            }
+        }
+        unbounded.remove(mmsi);
+        return timeline;
+    }
+
+    /**
+     * Returns the indexed route of the given MMSI
+     * 
+     * @param mmsi
+     *            the MMSI
+     * @return the indexed route, or null if not indexed
+     */
+    public synchronized IntendedRouteTimeline get(Long mmsi) {
+        return timelines.get(mmsi);
+    }
+
+    /**
+     * Returns a copy of the indexed routes
+     * 
+     * @return a copy of the indexed routes
+     */
+    public synchronized Collection<IntendedRouteTimeline> values() {
+        return new ArrayList<>(timelines.values());
+    }
+
+    /**
+     * Returns the number of indexed routes
+     * 
+     * @return the number of indexed routes
+     */
+    public synchronized int size() {
+        return timelines.size();
+    }
+
+    /**
+     * Removes all routes from the index
+     */
+    public synchronized void clear() {
+        timelines.clear();
+        cells.clear();
+        cellsByMmsi.clear();
+        unbounded.clear();
+    }
+
+    /**
+     * Returns the indexed routes, other than the route itself, that may come within the margin of the given route
+     * within the time window
+     * 
+     * @param timeline
+     *            the route, which need not be indexed
+     * @param marginNm
+     *            the margin in nautical miles
+     * @param from
+     *            the start of the time window in epoch milliseconds
+     * @param to
+     *            the end of the time window in epoch milliseconds
+     * @return the candidate routes
+     */
+    public List<IntendedRouteTimeline> findCandidates(IntendedRouteTimeline timeline, double marginNm, long from, long to) {
+        List<IntendedRouteTimeline> result = new ArrayList<>();
+        synchronized (this) {
+            Set<Long> queryCells = new HashSet<>();
+            Set<Long> mmsis = new HashSet<>(unbounded);
+            boolean queryAll = false;
+            for (int leg = timeline.getFirstLeg(); leg < timeline.getLegCount() && !queryAll; leg++) {
+                if (timeline.getLegStartTime(leg) <= to && timeline.getLegEndTime(leg) >= from) {
+                    queryAll = !addCells(timeline, leg, marginNm, queryCells);
+                }
+            }
+
+            if (queryAll) {
+                mmsis.addAll(timelines.keySet());
+            } else {
+                for (Long cell : queryCells) {
+                    Set<Long> cellMmsis = cells.get(cell);
+                    if (cellMmsis != null) {
+                        mmsis.addAll(cellMmsis);
+                    }
+                }
+            }
+            mmsis.remove(timeline.getMmsi());
+
+            for (Long mmsi : mmsis) {
+                result.add(timelines.get(mmsi));
+            }
+        }
+
+        // Check the times and bounding boxes of the individual legs
+        for (int i = result.size() - 1; i >= 0; i--) {
+            if (!timeline.mayApproach(result.get(i), marginNm, from, to)) {
+                result.remove(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the cells covered by the margin-expanded bounding box of the leg.
+     * <p>
+     * Returns false, without adding any cells, if the leg covers more than {@linkplain #MAX_CELLS_PER_LEG} cells
+     */
+    private static boolean addCells(IntendedRouteTimeline timeline, int leg, double marginNm, Set<Long> result) {
+        double latMargin = IntendedRouteTimeline.latMargin(marginNm);
+        double lonMargin = IntendedRouteTimeline.lonMargin(marginNm, timeline.getLegMinLat(leg), timeline.getLegMaxLat(leg));
+        int minLatIdx = cellIndex(timeline.getLegMinLat(leg) - latMargin);
+        int maxLatIdx = cellIndex(timeline.getLegMaxLat(leg) + latMargin);
+        int minLonIdx = cellIndex(timeline.getLegMinLon(leg) - lonMargin);
+        int maxLonIdx = cellIndex(timeline.getLegMaxLon(leg) + lonMargin);
+
+        if ((long) (maxLatIdx - minLatIdx + 1) * (maxLonIdx - minLonIdx + 1) > MAX_CELLS_PER_LEG) {
+            return false;
+        }
+        for (int latIdx = minLatIdx; latIdx <= maxLatIdx; latIdx++) {
+            for (int lonIdx = minLonIdx; lonIdx <= maxLonIdx; lonIdx++) {
+                result.add(((long) latIdx << 32) | (lonIdx & 0xFFFFFFFFL));
+            }
+        }
+        return true;
+    }
+
+    private static int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / CELL_SIZE);
+    }
+}
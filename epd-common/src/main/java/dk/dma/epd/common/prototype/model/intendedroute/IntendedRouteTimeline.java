@@ -0,0 +1,334 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.intendedroute;
+
+import java.util.Date;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.prototype.model.route.ActiveRoute;
+import dk.dma.epd.common.prototype.model.route.IntendedRoute;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.util.Calculator;
+import dk.dma.epd.common.util.Converter;
+
+/**
+ * A snapshot of the way point ETA's, positions and legs of a route, used when computing the TCPA's between routes.
+ * <p>
+ * ETA's are kept as epoch milliseconds, and the ETA's of the way points before the active way point are calculated
+ * backwards from the active way point once, when the snapshot is created. The leg at a given time is found by a
+ * binary search of the ETA's.
+ * <p>
+ * Each leg also has a lat/lon bounding box, used by the {@linkplain IntendedRouteLegIndex} and by
+ * {@linkplain #mayApproach(IntendedRouteTimeline, double, long, long)} to rule out route pairs that cannot come close
+ * to each other.
+ */
+@Immutable
+public class IntendedRouteTimeline {
+
+    /** Legs with a speed below this, in knots, are considered to take no time */
+    static final double MIN_SPEED = 0.000000001;
+
+    private final Long mmsi;
+    private final Route route;
+    private final int activeWp;
+    private final int firstLeg;
+
+    // Way points
+    private final long[] etas;
+    private final Position[] positions;
+
+    // Legs
+    private final double[] speeds;
+    private final double[] bearings;
+    private final boolean[] rhumbLine;
+    private final double[] minLat;
+    private final double[] maxLat;
+    private final double[] minLon;
+    private final double[] maxLon;
+
+    /**
+     * Constructor
+     * 
+     * @param mmsi
+     *            the MMSI associated with the route
+     * @param route
+     *            the route
+     */
+    public IntendedRouteTimeline(Long mmsi, Route route) {
+        this(mmsi, route, getActiveWpIndex(route));
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param mmsi
+     *            the MMSI associated with the route
+     * @param route
+     *            the route
+     * @param activeWpIndex
+     *            the index of the active way point, before which the ETA's of the route are not used
+     */
+    public IntendedRouteTimeline(Long mmsi, Route route, int activeWpIndex) {
+        this.mmsi = mmsi;
+        this.route = route;
+
+        List<RouteWaypoint> waypoints = route.getWaypoints();
+        List<Date> routeEtas = route.getEtas();
+        int wpCount = waypoints.size();
+        int legCount = Math.max(0, wpCount - 1);
+
+        activeWp = Math.max(0, Math.min(activeWpIndex, wpCount - 1));
+        firstLeg = Math.max(0, activeWp - 1);
+
+        etas = new long[wpCount];
+        positions = new Position[wpCount];
+        speeds = new double[legCount];
+        bearings = new double[legCount];
+        rhumbLine = new boolean[legCount];
+        minLat = new double[legCount];
+        maxLat = new double[legCount];
+        minLon = new double[legCount];
+        maxLon = new double[legCount];
+
+        for (int i = 0; i < wpCount; i++) {
+            RouteWaypoint wp = waypoints.get(i);
+            positions[i] = wp.getPos();
+            if (i < legCount) {
+                speeds[i] = wp.getOutLeg().getSpeed();
+                bearings[i] = wp.calcBrg();
+                rhumbLine[i] = wp.getHeading() == Heading.RL;
+            }
+            if (i >= activeWp) {
+                etas[i] = routeEtas.get(i).getTime();
+            }
+        }
+
+        // Calculate backwards from the active way point. Legs with a speed of (approximately) zero take no time
+        for (int i = activeWp - 1; i >= 0; i--) {
+            long duration = 0L;
+            if (speeds[i] >= MIN_SPEED) {
+                double hours = waypoints.get(i).getOutLeg().calcRng() / speeds[i];
+                duration = (long) (hours * 60.0 * 60.0 * 1000.0);
+            }
+            etas[i] = etas[i + 1] - duration;
+        }
+
+        for (int i = 0; i < legCount; i++) {
+            minLat[i] = Math.min(positions[i].getLatitude(), positions[i + 1].getLatitude());
+            maxLat[i] = Math.max(positions[i].getLatitude(), positions[i + 1].getLatitude());
+            minLon[i] = Math.min(positions[i].getLongitude(), positions[i + 1].getLongitude());
+            maxLon[i] = Math.max(positions[i].getLongitude(), positions[i + 1].getLongitude());
+        }
+    }
+
+    /**
+     * Returns the index of the active way point of an intended or active route, and 0 for other routes
+     */
+    private static int getActiveWpIndex(Route route) {
+        if (route instanceof IntendedRoute) {
+            return ((IntendedRoute) route).getActiveWpIndex();
+        } else if (route instanceof ActiveRoute) {
+            return ((ActiveRoute) route).getActiveWaypointIndex();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the MMSI associated with the route
+     * @return the MMSI associated with the route
+     */
+    public Long getMmsi() {
+        return mmsi;
+    }
+
+    /**
+     * Returns the route
+     * @return the route
+     */
+    public Route getRoute() {
+        return route;
+    }
+
+    /**
+     * Returns the number of legs of the route
+     * @return the number of legs of the route
+     */
+    public int getLegCount() {
+        return speeds.length;
+    }
+
+    /**
+     * Returns the index of the first leg considered, i.e. the leg leading to the active way point
+     * @return the index of the first leg considered
+     */
+    public int getFirstLeg() {
+        return firstLeg;
+    }
+
+    /**
+     * Returns the ETA of the active way point in epoch milliseconds
+     * @return the ETA of the active way point
+     */
+    public long getStartTime() {
+        return etas[activeWp];
+    }
+
+    /**
+     * Returns the ETA of the last way point in epoch milliseconds
+     * @return the ETA of the last way point
+     */
+    public long getEndTime() {
+        return etas[etas.length - 1];
+    }
+
+    /**
+     * Returns the start time of the given leg in epoch milliseconds
+     * @param leg the leg index
+     * @return the start time of the leg
+     */
+    public long getLegStartTime(int leg) {
+        return etas[leg];
+    }
+
+    /**
+     * Returns the end time of the given leg in epoch milliseconds
+     * @param leg the leg index
+     * @return the end time of the leg
+     */
+    public long getLegEndTime(int leg) {
+        return etas[leg + 1];
+    }
+
+    public double getLegMinLat(int leg) {
+        return minLat[leg];
+    }
+
+    public double getLegMaxLat(int leg) {
+        return maxLat[leg];
+    }
+
+    public double getLegMinLon(int leg) {
+        return minLon[leg];
+    }
+
+    public double getLegMaxLon(int leg) {
+        return maxLon[leg];
+    }
+
+    /**
+     * Returns the index of the leg sailed at the given time, clamped to the legs considered
+     * 
+     * @param time
+     *            the time in epoch milliseconds
+     * @return the leg index
+     */
+    public int findLeg(long time) {
+        int lo = firstLeg;
+        int hi = speeds.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (etas[mid] <= time) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the planned position at the given time, by traversing the leg sailed at the time
+     * 
+     * @param time
+     *            the time in epoch milliseconds
+     * @return the planned position
+     */
+    public Position getPosition(long time) {
+        int leg = findLeg(time);
+        double dist = Converter.nmToMeters(speeds[leg] * (time - etas[leg]) / (60.0 * 60.0 * 1000.0));
+        if (rhumbLine[leg]) {
+            return Calculator.findPosition(positions[leg], bearings[leg], dist);
+        } else {
+            return Calculator.findPosition(positions[leg], positions[leg + 1], dist);
+        }
+    }
+
+    /**
+     * Returns if a leg of this route and a leg of the other route are sailed at overlapping times within the given
+     * time window, and their bounding boxes are within the given margin of each other.
+     * <p>
+     * If this is not the case, the two routes cannot come within the margin of each other within the time window.
+     * 
+     * @param other
+     *            the other route
+     * @param marginNm
+     *            the margin in nautical miles
+     * @param from
+     *            the start of the time window in epoch milliseconds
+     * @param to
+     *            the end of the time window in epoch milliseconds
+     * @return if the routes may come within the margin of each other
+     */
+    public boolean mayApproach(IntendedRouteTimeline other, double marginNm, long from, long to) {
+        for (int i = firstLeg; i < getLegCount(); i++) {
+            long start = Math.max(from, etas[i]);
+            long end = Math.min(to, etas[i + 1]);
+            if (start > end) {
+                continue;
+            }
+            double latMargin = latMargin(marginNm);
+            double lonMargin = lonMargin(marginNm, minLat[i], maxLat[i]);
+            for (int j = other.firstLeg; j < other.getLegCount(); j++) {
+                if (other.etas[j] <= end && other.etas[j + 1] >= start
+                        && other.minLat[j] <= maxLat[i] + latMargin && other.maxLat[j] >= minLat[i] - latMargin
+                        && other.minLon[j] <= maxLon[i] + lonMargin && other.maxLon[j] >= minLon[i] - lonMargin) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the given margin in degrees of latitude
+     * 
+     * @param marginNm
+     *            the margin in nautical miles
+     * @return the margin in degrees of latitude
+     */
+    static double latMargin(double marginNm) {
+        return marginNm / 60.0;
+    }
+
+    /**
+     * Returns the given margin in degrees of longitude at the latitude furthest from equator
+     * 
+     * @param marginNm
+     *            the margin in nautical miles
+     * @param lat1
+     *            the first latitude
+     * @param lat2
+     *            the second latitude
+     * @return the margin in degrees of longitude
+     */
+    static double lonMargin(double marginNm, double lat1, double lat2) {
+        double lat = Math.min(89.0, Math.max(Math.abs(lat1), Math.abs(lat2)) + latMargin(marginNm));
+        return marginNm / (60.0 * Math.cos(Math.toRadians(lat)));
+    }
+}
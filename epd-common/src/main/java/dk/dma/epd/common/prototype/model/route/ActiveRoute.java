@@ -26,7 +26,6 @@ import dk.dma.epd.common.util.Converter;
 import dk.frv.enav.common.xml.metoc.MetocForecast;
 import dma.route.IntendedRouteBroadcast;
 import net.maritimecloud.util.Timestamp;
-import org.joda.time.DateTime;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -101,6 +100,21 @@ public class ActiveRoute extends Route {
 
     private Route originalRoute;
 
+    /**
+     * Sums of the DTG's of the legs from each waypoint to the end of the route
+     */
+    private transient double[] dtgSuffix;
+    /**
+     * Sums of the planned TTG's of the legs from each waypoint to the end of
+     * the route
+     */
+    private transient long[] plannedTtgSuffix;
+    /**
+     * If the per-leg TTG's and remaining ETA's lag behind the latest update.
+     * They are brought up to date when read.
+     */
+    private transient boolean legValuesStale;
+
     private boolean searchPattern;
 
     public ActiveRoute(Route route, PntData pntData) {
@@ -142,7 +156,8 @@ public class ActiveRoute extends Route {
      * Performs a deep copy of a route.
      */
     @Override
-    public Route copy() {
+    public synchronized Route copy() {
+        ensureLegValues();
         Route newRoute = super.copy();
 
         newRoute.starttime = origStarttime;
@@ -331,9 +346,10 @@ public class ActiveRoute extends Route {
         }
         speedActiveWpTtg = Math.round(activeWpRng / speed * 60 * 60 * 1000);
 
-        // Update ttg, dtg and eta
-        calcValues(true);
-
+        // Update the totals of the remaining route. The per-leg TTG's and
+        // ETA's are updated when read.
+        calcTotals();
+        legValuesStale = true;
     }
 
     @Override
@@ -341,6 +357,10 @@ public class ActiveRoute extends Route {
         // Do not recalculate eta for an active route
     }
 
+    /**
+     * Recalculates the values of the legs that have been edited, followed by
+     * the TTG's, DTG's and ETA's of the remaining route.
+     */
     @Override
     public synchronized void calcValues(boolean force) {
         if (!force && ttgs != null && etas != null) {
@@ -351,28 +371,128 @@ public class ActiveRoute extends Route {
             return;
         }
 
+        // Pick up edited legs
+        if (calcLegValues() || dtgSuffix == null) {
+            calcLegSums();
+        }
+        calcTotals();
+        calcRemainingLegTtgs();
+        reCalcRemainingWpEta();
+    }
+
+    /**
+     * Updates the total TTG and DTG of the remaining route from the active
+     * waypoint values and the precomputed leg sums, without iterating the
+     * legs. Edited legs are picked up by {@linkplain #calcValues(boolean)}.
+     */
+    private void calcTotals() {
+        if (dtgSuffix == null) {
+            // E.g. after deserialization
+            calcLegValues();
+            calcLegSums();
+        }
+
         // Determine TTG to active waypoint
         long ttg = (this.etaCalculationType == EtaCalculationType.PLANNED_SPEED) ? plannedActiveWpTtg
                 : speedActiveWpTtg;
 
-        totalTtg = ttg;
-        totalDtg = activeWpRng;
+        int aw = Math.min(this.activeWaypointIndex, dtgs.length);
+        long remainingTtg;
+        if (aw == dtgs.length) {
+            remainingTtg = 0L;
+        } else if (this.etaCalculationType == EtaCalculationType.DYNAMIC_SPEED) {
+            remainingTtg = calcTtg(dtgSuffix[aw], this.speed);
+        } else if (this.etaCalculationType == EtaCalculationType.HYBRID) {
+            remainingTtg = calcTtg(dtgs[aw], this.speed) + plannedTtgSuffix[aw + 1];
+        } else {
+            remainingTtg = plannedTtgSuffix[aw];
+        }
+
+        totalTtg = ttg + remainingTtg;
+        totalDtg = activeWpRng + dtgSuffix[aw];
+    }
+
+    /**
+     * Computes the sums of the leg DTG's and planned TTG's from each
+     * waypoint to the end of the route
+     */
+    private void calcLegSums() {
+        int legs = dtgs.length;
+        dtgSuffix = new double[legs + 1];
+        plannedTtgSuffix = new long[legs + 1];
+        for (int i = legs - 1; i >= 0; i--) {
+            dtgSuffix[i] = dtgSuffix[i + 1] + dtgs[i];
+            plannedTtgSuffix[i] = plannedTtgSuffix[i + 1] + plannedTtgs[i];
+        }
+    }
 
-        for (int i = this.activeWaypointIndex; i < this.waypoints.size() - 1; i++) {
+    /**
+     * Updates the TTG's of the legs from the active waypoint to the end of the
+     * route according to the ETA calculation type
+     */
+    private void calcRemainingLegTtgs() {
+        legValuesStale = false;
+        if (plannedActiveWpTtg == null || speedActiveWpTtg == null || plannedTtgs == null) {
+            return;
+        }
+        if (ttgs == null || ttgs.length != dtgs.length) {
+            ttgs = plannedTtgs.clone();
+        }
+        for (int i = this.activeWaypointIndex; i < dtgs.length; i++) {
             // Dynamic speed
             if (this.etaCalculationType == EtaCalculationType.DYNAMIC_SPEED
                     || ((this.etaCalculationType == EtaCalculationType.HYBRID) && i == this.activeWaypointIndex)) {
-                this.ttgs[i] = this.waypoints.get(i).getOutLeg()
-                        .calcTtg(this.speed);
+                this.ttgs[i] = calcTtg(dtgs[i], this.speed);
             } else {
                 // Planned speed
-                this.ttgs[i] = this.waypoints.get(i).getOutLeg().calcTtg();
+                this.ttgs[i] = plannedTtgs[i];
             }
-            totalDtg += dtgs[i];
-            totalTtg += ttgs[i];
         }
+    }
 
-        reCalcRemainingWpEta();
+    /**
+     * Brings the per-leg TTG's and remaining ETA's up to date, if they lag
+     * behind the latest update
+     */
+    private void ensureLegValues() {
+        if (legValuesStale) {
+            reCalcRemainingWpEta();
+        }
+    }
+
+    /**
+     * Returns the TTG of a leg of the given length at the given speed. Same
+     * as {@linkplain RouteLeg#calcTtg(double)}, but from the cached DTG.
+     */
+    private static long calcTtg(double dtg, double speed) {
+        if (speed < 0.1) {
+            speed = 0.1;
+        }
+        return Math.round(dtg * 3600.0 / speed * 1000.0);
+    }
+
+    @Override
+    public synchronized Long getWpTtg(int index) {
+        ensureLegValues();
+        return super.getWpTtg(index);
+    }
+
+    @Override
+    public synchronized Date getWpEta(int index) {
+        ensureLegValues();
+        return super.getWpEta(index);
+    }
+
+    @Override
+    public synchronized List<Date> getEtas() {
+        ensureLegValues();
+        return super.getEtas();
+    }
+
+    @Override
+    public synchronized long[] getTtgs() {
+        ensureLegValues();
+        return super.getTtgs();
     }
 
     @Override
@@ -453,26 +573,34 @@ public class ActiveRoute extends Route {
         } else {
             this.currentLeg = waypoints.get(index).getInLeg();
         }
+        legValuesStale = true;
         reCalcRemainingWpEta();
     }
 
     public synchronized Date getActiveWaypointEta() {
+        long eta = getActiveWaypointEtaTime();
+        return (eta == Long.MIN_VALUE) ? null : new Date(eta);
+    }
+
+    /**
+     * Returns the ETA of the active waypoint in epoch milliseconds, or
+     * {@code Long.MIN_VALUE} if undefined
+     */
+    private long getActiveWaypointEtaTime() {
         Long ttg = (this.etaCalculationType == EtaCalculationType.PLANNED_SPEED) ? plannedActiveWpTtg
                 : speedActiveWpTtg;
         if (ttg == null) {
-            return null;
+            return Long.MIN_VALUE;
         }
 
         // If we have just activated the route ie. wp 0, and the route start
         // date is in the future do not recalculate the first eta
-        if (getActiveWaypointIndex() == 0) {
-            DateTime start = new DateTime(origStarttime);
-            if (start.isAfterNow()) {
-                return origStarttime;
-            }
+        if (activeWaypointIndex == 0 && origStarttime != null
+                && origStarttime.getTime() > System.currentTimeMillis()) {
+            return origStarttime.getTime();
         }
 
-        return new Date(PntTime.getDate().getTime() + ttg);
+        return PntTime.getDate().getTime() + ttg;
     }
 
     @Override
@@ -494,19 +622,22 @@ public class ActiveRoute extends Route {
     }
 
     public synchronized boolean reCalcRemainingWpEta() {
+        if (legValuesStale) {
+            calcRemainingLegTtgs();
+        }
         int aw = getActiveWaypointIndex();
-        Date eta = getActiveWaypointEta();
+        long etaTime = getActiveWaypointEtaTime();
 
-        if (eta == null) {
+        if (etaTime == Long.MIN_VALUE) {
             return false;
         }
 
         // Set eta at active waypoint
-        etas.set(aw, eta);
-        long etaTime = eta.getTime();
+        EtaList etaList = etaList(waypoints.size());
+        etaList.setTime(aw, etaTime);
         for (int i = aw; i < waypoints.size() - 1; i++) {
             etaTime += ttgs[i];
-            etas.set(i + 1, new Date(etaTime));
+            etaList.setTime(i + 1, etaTime);
         }
         return true;
     }
@@ -559,6 +690,7 @@ public class ActiveRoute extends Route {
     }
 
     public synchronized dk.dma.enav.model.voyage.Route getFullRouteData() {
+        ensureLegValues();
 
         dk.dma.enav.model.voyage.Route voyageRoute = new dk.dma.enav.model.voyage.Route();
 
@@ -611,6 +743,7 @@ public class ActiveRoute extends Route {
      */
     public synchronized IntendedRouteBroadcast getPartialRouteData(
             PartialRouteFilter filter) {
+        ensureLegValues();
 
         dk.dma.enav.model.voyage.Route voyageRoute = new dk.dma.enav.model.voyage.Route();
         List<Date> originalEtas = new ArrayList<>();
@@ -0,0 +1,175 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.route;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.RandomAccess;
+
+/**
+ * List of waypoint ETA's backed by a primitive array of epoch milliseconds.
+ * <p>
+ * The route updates the ETA's in place through {@linkplain #setTime(int, long)}, so recomputing the ETA's of a route
+ * does not allocate a {@code Date} per waypoint. A {@code Date} is only created when an ETA is read through
+ * {@linkplain #get(int)}, and the returned instance is not backed by the list.
+ */
+public final class EtaList extends AbstractList<Date> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Marks a null ETA */
+    private static final long NONE = Long.MIN_VALUE;
+
+    private long[] times;
+    private int size;
+
+    /**
+     * Creates an empty list
+     */
+    public EtaList() {
+        times = new long[16];
+    }
+
+    /**
+     * Creates a list holding the given ETA's
+     * 
+     * @param etas
+     *            the ETA's to copy
+     */
+    public EtaList(Collection<? extends Date> etas) {
+        times = new long[Math.max(16, etas.size())];
+        for (Date eta : etas) {
+            times[size++] = (eta == null) ? NONE : eta.getTime();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date get(int index) {
+        long time = getTime(index);
+        return (time == NONE) ? null : new Date(time);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date set(int index, Date eta) {
+        Date old = get(index);
+        times[index] = (eta == null) ? NONE : eta.getTime();
+        return old;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(int index, Date eta) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(times, index, times, index + 1, size - index);
+        times[index] = (eta == null) ? NONE : eta.getTime();
+        size++;
+        modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date remove(int index) {
+        Date old = get(index);
+        System.arraycopy(times, index + 1, times, index, size - index - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ETA with the given index in epoch milliseconds
+     * 
+     * @param index
+     *            the index of the ETA
+     * @return the ETA, or {@code Long.MIN_VALUE} if undefined
+     */
+    public long getTime(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return times[index];
+    }
+
+    /**
+     * Sets the ETA with the given index without allocating a {@code Date}
+     * 
+     * @param index
+     *            the index of the ETA
+     * @param time
+     *            the ETA in epoch milliseconds
+     */
+    public void setTime(int index, long time) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        times[index] = time;
+    }
+
+    /**
+     * Grows or shrinks the list to the given size. Added ETA's are undefined.
+     * 
+     * @param newSize
+     *            the new size of the list
+     */
+    public void setSize(int newSize) {
+        if (newSize != size) {
+            ensureCapacity(newSize);
+            if (newSize > size) {
+                Arrays.fill(times, size, newSize, NONE);
+            }
+            size = newSize;
+            modCount++;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > times.length) {
+            times = Arrays.copyOf(times, Math.max(capacity, times.length * 2));
+        }
+    }
+}
@@ -14,101 +14,204 @@
  */
 package dk.dma.epd.common.prototype.model.route;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
-import de.micromata.opengis.kml.v_2_2_0.Coordinate;
-import de.micromata.opengis.kml.v_2_2_0.Document;
-import de.micromata.opengis.kml.v_2_2_0.Feature;
-import de.micromata.opengis.kml.v_2_2_0.Folder;
-import de.micromata.opengis.kml.v_2_2_0.Geometry;
-import de.micromata.opengis.kml.v_2_2_0.Kml;
-import de.micromata.opengis.kml.v_2_2_0.LineString;
-import de.micromata.opengis.kml.v_2_2_0.MultiGeometry;
-import de.micromata.opengis.kml.v_2_2_0.Placemark;
-import de.micromata.opengis.kml.v_2_2_0.Point;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.settings.NavSettings;
 
 /**
  * Parser for KML waypoints and route files
+ * <p>
+ * The file is read with a streaming parser, which only keeps the name and coordinates of the placemarks of the
+ * top-level document or folder, rather than unmarshalling the full KML object model.
  */
 public class KmlParser {
 
     private final NavSettings navSettings;
-    private final Kml kml;
+
+    // The feature of the KML file
+    private String featureType;
+    private String documentName;
+    private boolean documentHasFolder;
+    private final List<KmlPlacemark> documentPlacemarks = new ArrayList<>();
+    private final List<KmlPlacemark> folderPlacemarks = new ArrayList<>();
 
     public KmlParser(File file, NavSettings navSettings) throws RouteLoadException {
         this.navSettings = navSettings;
-        try {
-            kml = Kml.unmarshal(new FileInputStream(file));
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            read(in);
         } catch (IOException e) {
             throw new RouteLoadException("Could not load KML file: " + e.getMessage());
-        }
-        if (kml == null) {
+        } catch (XMLStreamException | NumberFormatException e) {
             throw new RouteLoadException("Unable to parse KML");
         }
     }
 
+    /**
+     * Reads the placemarks of the top-level document or folder
+     */
+    private void read(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = RouteLoader.XML_INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            // The local names of the open elements
+            Deque<String> path = new ArrayDeque<>();
+            // The folder of the document whose placemarks are read, i.e. the first one
+            boolean inFirstFolder = false;
+            KmlPlacemark placemark = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    String parent = path.peek();
+                    int depth = path.size();
+
+                    if (depth == 1 && featureType == null && !name.equals("NetworkLinkControl")) {
+                        featureType = name;
+                    } else if (depth == 2 && name.equals("name") && "Document".equals(featureType)
+                            && "Document".equals(parent)) {
+                        documentName = reader.getElementText();
+                        continue;
+                    } else if (depth == 2 && name.equals("Folder") && "Document".equals(parent) && !documentHasFolder) {
+                        documentHasFolder = true;
+                        inFirstFolder = true;
+                    } else if (name.equals("Placemark") && isFeatureChild(depth, parent, inFirstFolder)) {
+                        placemark = new KmlPlacemark();
+                        if (depth == 3) {
+                            folderPlacemarks.add(placemark);
+                        } else {
+                            documentPlacemarks.add(placemark);
+                        }
+                    } else if (placemark != null) {
+                        if (name.equals("name") && "Placemark".equals(parent)) {
+                            placemark.name = reader.getElementText();
+                            continue;
+                        } else if ("Placemark".equals(parent)
+                                && (name.equals("Point") || name.equals("LineString") || name.equals("MultiGeometry"))) {
+                            placemark.geometry = name;
+                        } else if (name.equals("coordinates") && isGeometryCoordinates(path)) {
+                            parseCoordinates(reader.getElementText(), placemark.coordinates);
+                            continue;
+                        }
+                    }
+                    path.push(name);
+
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = path.pop();
+                    if (name.equals("Placemark")) {
+                        placemark = null;
+                    } else if (name.equals("Folder") && path.size() == 2) {
+                        inFirstFolder = false;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns if an element at the given depth is a direct child of the top-level document or folder, or of the first
+     * folder of the document
+     */
+    private boolean isFeatureChild(int depth, String parent, boolean inFirstFolder) {
+        if (depth == 2) {
+            return parent.equals(featureType) && (parent.equals("Document") || parent.equals("Folder"));
+        }
+        return depth == 3 && inFirstFolder && parent.equals("Folder");
+    }
+
+    /**
+     * Returns if a coordinates element with the given parents belongs to the geometry of a placemark, i.e. a point or
+     * line string of the placemark, or a line string of a multi-geometry of the placemark
+     */
+    private static boolean isGeometryCoordinates(Deque<String> path) {
+        List<String> parents = new ArrayList<>(path);
+        if (parents.size() < 2) {
+            return false;
+        }
+        String geometry = parents.get(0);
+        String owner = parents.get(1);
+        if (owner.equals("Placemark")) {
+            return geometry.equals("Point") || geometry.equals("LineString");
+        }
+        return geometry.equals("LineString") && owner.equals("MultiGeometry") && parents.size() > 2
+                && parents.get(2).equals("Placemark");
+    }
+
+    /**
+     * Parses the KML coordinate tuples, "lon,lat[,alt]" separated by white space
+     */
+    private static void parseCoordinates(String text, List<Position> coordinates) {
+        int len = text.length();
+        int i = 0;
+        while (i < len) {
+            while (i < len && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < len && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            String tuple = text.substring(start, i);
+            int comma = tuple.indexOf(',');
+            if (comma < 0) {
+                continue;
+            }
+            int comma2 = tuple.indexOf(',', comma + 1);
+            double lon = Double.parseDouble(tuple.substring(0, comma));
+            double lat = Double.parseDouble(comma2 < 0 ? tuple.substring(comma + 1) : tuple.substring(comma + 1, comma2));
+            coordinates.add(Position.create(lat, lon));
+        }
+    }
+
     public Route parse() throws RouteLoadException {
         String routeName = "Imported from KML";
         Route route = new Route();
-        Feature feature = kml.getFeature();
-        if (feature == null) {
+        if (featureType == null) {
             throw new RouteLoadException("No feature in KML file");
         }
-        Folder folder = null;
-        // Find the folder
-        if (feature instanceof Folder) {
-            folder = (Folder) feature;
-        }
-        Document doc = null;
-        if (feature instanceof Document) {
-            doc = (Document) feature;
-            if (doc.getName() != null) {
-                routeName = doc.getName();
-            }
-            for (Feature docFeature : doc.getFeature()) {
-                if (docFeature instanceof Folder && folder == null) {
-                    folder = (Folder) docFeature;
-                }
+        boolean doc = featureType.equals("Document");
+        if (doc) {
+            if (documentName != null) {
+                routeName = documentName;
             }
-        }
-        if (doc == null && folder == null) {
+        } else if (!featureType.equals("Folder")) {
             throw new RouteLoadException("No document or folder in KML file");
         }
-        List<Feature> features = null;
-        if (folder != null) {
-            features = folder.getFeature();
-        } else {
-            features = doc.getFeature();
-        }
+        List<KmlPlacemark> features = (doc && documentHasFolder) ? folderPlacemarks : documentPlacemarks;
         List<String> wpNames = new ArrayList<>();
         List<Position> positions = new ArrayList<>();
 
-        for (Feature folderFeature : features) {
-            if (!(folderFeature instanceof Placemark)) {
-                continue;
-            }
-            Placemark plMark = (Placemark) folderFeature;
-            Geometry geometry = plMark.getGeometry();
-            if (geometry instanceof Point) {
-                List<Coordinate> coords = ((Point) geometry).getCoordinates();
+        for (KmlPlacemark plMark : features) {
+            if ("Point".equals(plMark.geometry)) {
+                List<Position> coords = plMark.coordinates;
                 if (coords.size() != 1) {
                     throw new RouteLoadException("Waypoint has more than one coordinate");
                 }
-                wpNames.add(plMark.getName() != null ? plMark.getName() : RouteLoader.makeWpName(wpNames.size() + 1));
-                positions.add(Position.create(coords.get(0).getLatitude(), coords.get(0).getLongitude()));
-            } else if (geometry instanceof LineString) {
-                routeName = plMark.getName();
-                List<Coordinate> coords = ((LineString) geometry).getCoordinates();
-                for (Coordinate coordinate : coords) {
+                wpNames.add(plMark.name != null ? plMark.name : RouteLoader.makeWpName(wpNames.size() + 1));
+                positions.add(coords.get(0));
+            } else if ("LineString".equals(plMark.geometry)) {
+                routeName = plMark.name;
+                for (Position coordinate : plMark.coordinates) {
                     wpNames.add(RouteLoader.makeWpName(wpNames.size() + 1));
-                    positions.add(Position.create(coordinate.getLatitude(), coordinate.getLongitude()));
+                    positions.add(coordinate);
                 }
             }
         }
@@ -116,33 +219,16 @@ public class KmlParser {
         // If no positions were found it's possible that it only contains a LineString inside a MultiGeometry object (Special AU case)
         if (positions.size() == 0) {
 
-            for (Feature folderFeature : features) {
-                if (!(folderFeature instanceof Placemark)) {
-                    continue;
-                }
-                Placemark plMark = (Placemark) folderFeature;
-
-                Geometry geometry = plMark.getGeometry();
-
-                if (geometry instanceof MultiGeometry) {
-
-                    MultiGeometry multiGeo = (MultiGeometry) geometry;
-                    List<Geometry> subGeometry = multiGeo.getGeometry();
-
-                    for (int i = 0; i < subGeometry.size(); i++) {
-                        if (subGeometry.get(i) instanceof LineString) {
-                            routeName = plMark.getName();
-                            List<Coordinate> coords = ((LineString) subGeometry.get(i)).getCoordinates();
-                            for (Coordinate coordinate : coords) {
-                                wpNames.add(RouteLoader.makeWpName(wpNames.size() + 1));
-                                positions.add(Position.create(coordinate.getLatitude(), coordinate.getLongitude()));
-                            }
-                        }
+            for (KmlPlacemark plMark : features) {
+                if ("MultiGeometry".equals(plMark.geometry) && plMark.coordinates.size() > 0) {
+                    routeName = plMark.name;
+                    for (Position coordinate : plMark.coordinates) {
+                        wpNames.add(RouteLoader.makeWpName(wpNames.size() + 1));
+                        positions.add(coordinate);
                     }
                 }
             }
         }
-        System.out.println("Positions Size is " + positions.size());
 
         RouteLeg lastLeg = null;
         for (int i = 0; i < positions.size(); i++) {
@@ -180,4 +266,12 @@ public class KmlParser {
         return route;
     }
 
+    /**
+     * The name and geometry of a placemark
+     */
+    private static final class KmlPlacemark {
+        String name;
+        String geometry;
+        final List<Position> coordinates = new ArrayList<>();
+    }
 }
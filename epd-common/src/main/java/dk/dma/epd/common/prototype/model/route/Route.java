@@ -18,6 +18,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -80,9 +81,19 @@ public class Route implements Serializable {
      */
     protected Double totalDtg;
     /**
-     * 
+     * ETA's for each waypoint, as an {@linkplain EtaList} once calculated
      */
     protected List<Date> etas;
+    /**
+     * Planned TTG's for each leg, i.e. based on the leg speeds
+     */
+    protected transient long[] plannedTtgs;
+    /**
+     * The start and end latitude and longitude, speed and heading of each
+     * leg, as used for the current DTG's and planned TTG's. Used for only
+     * recalculating the legs that have been edited.
+     */
+    private transient double[] legInputs;
     /**
      * METOC forecast for the route
      */
@@ -125,11 +136,12 @@ public class Route implements Serializable {
         this.destination = orig.destination;
         this.visible = orig.visible;
         this.starttime = orig.starttime;
-        this.ttgs = orig.ttgs;
-        this.dtgs = orig.dtgs;
+        // The leg values and ETA's are updated in place, so they cannot be shared
+        this.ttgs = (orig.ttgs != null) ? orig.ttgs.clone() : null;
+        this.dtgs = (orig.dtgs != null) ? orig.dtgs.clone() : null;
         this.totalTtg = orig.totalTtg;
         this.totalDtg = orig.totalDtg;
-        this.etas = orig.etas;
+        this.etas = (orig.etas instanceof EtaList) ? new EtaList(orig.etas) : orig.etas;
         this.metocForecast = orig.metocForecast;
         this.metocStarttime = orig.metocStarttime;
         this.metocEta = orig.metocEta;
@@ -532,25 +544,95 @@ public class Route implements Serializable {
             return;
         }
 
-        totalTtg = 0L;
-        totalDtg = 0.0;
+        long ttgSum = 0L;
+        double dtgSum = 0.0;
 
         if (waypoints.size() > 0) {
 
-            // Create array TTG's and DTG's array
-            ttgs = new long[waypoints.size() - 1];
-            dtgs = new double[waypoints.size() - 1];
-            // Iterate through legs
-            for (int i = 0; i < waypoints.size() - 1; i++) {
-                ttgs[i] = waypoints.get(i).getOutLeg().calcTtg();
-                totalTtg += ttgs[i];
-                dtgs[i] = waypoints.get(i).getOutLeg().calcRng();
-                totalDtg += dtgs[i];
+            // Update the DTG's and planned TTG's of the edited legs
+            calcLegValues();
+            if (ttgs == null || ttgs.length != dtgs.length) {
+                ttgs = new long[dtgs.length];
+            }
+            for (int i = 0; i < dtgs.length; i++) {
+                ttgs[i] = plannedTtgs[i];
+                ttgSum += ttgs[i];
+                dtgSum += dtgs[i];
             }
+            totalTtg = ttgSum;
+            totalDtg = dtgSum;
             // Calculate ETA for each waypoint
             calcAllWpEta();
 
+        } else {
+            totalTtg = ttgSum;
+            totalDtg = dtgSum;
+        }
+    }
+
+    /**
+     * Updates the DTG's and planned TTG's of the legs that have been edited
+     * since the last call, i.e. whose positions, speed or heading have
+     * changed. The arrays are only reallocated when the number of legs
+     * changes.
+     * 
+     * @return if any leg values were recalculated
+     */
+    protected final boolean calcLegValues() {
+        int legs = Math.max(0, waypoints.size() - 1);
+        boolean all = false;
+        if (dtgs == null || dtgs.length != legs || plannedTtgs == null || plannedTtgs.length != legs
+                || legInputs == null || legInputs.length != legs * 6) {
+            dtgs = new double[legs];
+            plannedTtgs = new long[legs];
+            legInputs = new double[legs * 6];
+            all = true;
+        }
+
+        boolean changed = all;
+        Iterator<RouteWaypoint> it = waypoints.iterator();
+        for (int i = 0; i < legs; i++) {
+            RouteLeg leg = it.next().getOutLeg();
+            Position start = leg.getStartWp().getPos();
+            Position end = leg.getEndWp().getPos();
+            double heading = (leg.getHeading() == Heading.GC) ? 1.0 : 0.0;
+            int k = i * 6;
+            if (!all && legInputs[k] == start.getLatitude() && legInputs[k + 1] == start.getLongitude()
+                    && legInputs[k + 2] == end.getLatitude() && legInputs[k + 3] == end.getLongitude()
+                    && legInputs[k + 4] == leg.getSpeed() && legInputs[k + 5] == heading) {
+                continue;
+            }
+            legInputs[k] = start.getLatitude();
+            legInputs[k + 1] = start.getLongitude();
+            legInputs[k + 2] = end.getLatitude();
+            legInputs[k + 3] = end.getLongitude();
+            legInputs[k + 4] = leg.getSpeed();
+            legInputs[k + 5] = heading;
+            dtgs[i] = leg.calcRng();
+            plannedTtgs[i] = leg.calcTtg();
+            changed = true;
         }
+        return changed;
+    }
+
+    /**
+     * Returns the ETA list of the route with the given size, converting the
+     * current ETA's to an {@linkplain EtaList} if needed
+     * 
+     * @param size
+     *            the number of ETA's
+     * @return the ETA list
+     */
+    protected final EtaList etaList(int size) {
+        EtaList etaList;
+        if (etas instanceof EtaList) {
+            etaList = (EtaList) etas;
+        } else {
+            etaList = (etas != null) ? new EtaList(etas) : new EtaList();
+            etas = etaList;
+        }
+        etaList.setSize(size);
+        return etaList;
     }
 
     protected void calcValues() {
@@ -558,16 +640,12 @@ public class Route implements Serializable {
     }
 
     public void calcAllWpEta() {
-        etas = new ArrayList<>();
-        Date etaStart = starttime;
-        if (etaStart == null) {
-            etaStart = PntTime.getDate();
-        }
-        long eta = etaStart.getTime();
-        etas.add(new Date(eta));
+        EtaList etaList = etaList(Math.max(1, waypoints.size()));
+        long eta = (starttime != null) ? starttime.getTime() : PntTime.getDate().getTime();
+        etaList.setTime(0, eta);
         for (int i = 0; i < waypoints.size() - 1; i++) {
             eta += ttgs[i];
-            etas.add(new Date(eta));
+            etaList.setTime(i + 1, eta);
         }
     }
 
@@ -888,6 +966,7 @@ public class Route implements Serializable {
 
     public void setTtgs(long[] ttgs) {
         this.ttgs = ttgs;
+        this.legInputs = null;
     }
 
     public double[] getDtgs() {
@@ -896,6 +975,7 @@ public class Route implements Serializable {
 
     public void setDtgs(double[] dtgs) {
         this.dtgs = dtgs;
+        this.legInputs = null;
     }
 
     public Long geRouteTtg() {
@@ -14,27 +14,38 @@
  */
 package dk.dma.epd.common.prototype.model.route;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.FormatException;
 import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.settings.NavSettings;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
 import dk.dma.epd.common.text.Formatter;
 import dk.dma.epd.common.util.ParseUtils;
 
@@ -45,6 +56,14 @@ public class RouteLoader {
 
     private static final Logger LOG = LoggerFactory.getLogger(RouteLoader.class);
 
+    /** Shared by the streaming parsers. Creating readers from a configured factory is thread-safe */
+    static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
     public static Route loadRou(File file, NavSettings navSettings) throws RouteLoadException {
         Route route = null;
         try {
@@ -186,131 +205,81 @@ public class RouteLoader {
         return kmlParser.parse();
     }
 
+    /**
+     * Loads a Navisailor 3000 route.
+     * <p>
+     * The file is read with a streaming parser, i.e. without building a DOM of the file.
+     */
     public static Route loadRt3(File file, NavSettings navSettings) throws RouteLoadException {
         Route route = new Route();
 
-        try {
-            DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-            Document doc = docBuilder.parse(file);
-            // Normalize text representation
-            doc.getDocumentElement().normalize();
-
-            // Get name
-            route.setName(doc.getDocumentElement().getAttribute("RtName"));
-            if (route.getName() == null) {
-                route.setName("NO NAME");
-            }
-
-            // Get waypoints
-            NodeList waypointsList = doc.getElementsByTagName("WayPoints");
-            if (waypointsList == null || waypointsList.getLength() < 1) {
-                throw new RouteLoadException("Failed to parse RT3, no WayPoints node");
-            }
-            Element waypointsNode = (Element) waypointsList.item(0);
-            NodeList waypoints = waypointsNode.getElementsByTagName("WayPoint");
-            if (waypoints == null || waypoints.getLength() == 0) {
-                throw new RouteLoadException("Failed to parse RT3, no WayPoint nodes");
-            }
-
-            RouteLeg lastLeg = null;
-
-            // Iterate thorugh waypoints
-            for (int i = 0; i < waypoints.getLength(); i++) {
-                // Get waypoint element
-                Element wpElem = (Element) waypoints.item(i);
-
-                // Create route objects
-                RouteWaypoint wp = new RouteWaypoint();
-                RouteLeg outLeg = new RouteLeg();
-                wp.setInLeg(lastLeg);
-                wp.setOutLeg(outLeg);
-                outLeg.setStartWp(wp);
-                if (lastLeg != null) {
-                    lastLeg.setEndWp(wp);
-                }
-                lastLeg = outLeg;
-
-                // Set defaults
-                wp.setSpeed(navSettings.getDefaultSpeed());
-                wp.setTurnRad(navSettings.getDefaultTurnRad());
-                outLeg.setXtdPort(navSettings.getDefaultXtd());
-                outLeg.setXtdStarboard(navSettings.getDefaultXtd());
-                wp.setName(makeWpName(i + 1));
-
-                // Wp name
-                String name = wpElem.getAttribute("WPName");
-                if (name != null && name.length() > 0) {
-                    wp.setName(name);
-                }
-
-                // Lat and lon
-                Double lat = ParseUtils.parseDouble(wpElem.getAttribute("Lat"));
-                Double lon = ParseUtils.parseDouble(wpElem.getAttribute("Lon"));
-                if (lat == null || lon == null) {
-                    throw new RouteLoadException("Missing latitude/longitude for WP " + wp.getName());
-                }
-                lat /= 60.0;
-                lon /= 60.0;
-                wp.setPos(Position.create(lat, lon));
-
-                // Turn rad
-                String turnRad = wpElem.getAttribute("TurnRadius");
-                if (turnRad != null && turnRad.length() > 0) {
-                    wp.setTurnRad(ParseUtils.parseDouble(turnRad));
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                boolean root = true;
+                // The waypoints and speeds are read from the first WayPoints and Calculations nodes
+                int wayPointsState = 0;
+                int calculationsState = 0;
+                List<Double> speeds = null;
+                RouteLeg lastLeg = null;
+
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (root) {
+                            // Get name
+                            route.setName(attribute(reader, "RtName"));
+                            root = false;
+                        } else if (name.equals("WayPoints") && wayPointsState == 0) {
+                            wayPointsState = 1;
+                        } else if (name.equals("WayPoint") && wayPointsState == 1) {
+                            lastLeg = parseRt3WayPoint(reader, route, lastLeg, navSettings);
+                        } else if (name.equals("Calculations") && calculationsState == 0) {
+                            calculationsState = 1;
+                        } else if (name.equals("Calculation") && calculationsState == 1) {
+                            // The speeds of the last calculation are used
+                            speeds = new ArrayList<>();
+                        } else if (name.equals("WayPointEx") && calculationsState == 1 && speeds != null) {
+                            speeds.add(ParseUtils.parseDouble(attribute(reader, "Speed")));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("WayPoints") && wayPointsState == 1) {
+                            wayPointsState = 2;
+                        } else if (name.equals("Calculations") && calculationsState == 1) {
+                            calculationsState = 2;
+                        }
+                    }
                 }
 
-                // XTE
-                String xte = wpElem.getAttribute("PortXTE");
-                if (xte != null && xte.length() > 0) {
-                    outLeg.setXtdPort(ParseUtils.parseDouble(xte));
+                if (wayPointsState == 0) {
+                    throw new RouteLoadException("Failed to parse RT3, no WayPoints node");
                 }
-                xte = wpElem.getAttribute("StbXTE");
-                if (xte != null && xte.length() > 0) {
-                    outLeg.setXtdStarboard(ParseUtils.parseDouble(xte));
+                if (route.getWaypoints().isEmpty()) {
+                    throw new RouteLoadException("Failed to parse RT3, no WayPoint nodes");
                 }
+                route.getWaypoints().getLast().setOutLeg(null);
 
-                // Leg type
-                String legType = wpElem.getAttribute("LegType");
-                if (legType != null && !legType.equals("0")) {
-                    outLeg.setHeading(Heading.GC);
-                } else {
-                    outLeg.setHeading(Heading.RL);
-                }
-
-                wp.setSpeed(outLeg.getSpeed());
-                route.getWaypoints().add(wp);
-            }
-
-            route.getWaypoints().getLast().setOutLeg(null);
-            
-            NodeList wpsExList = null;
-            NodeList calculationsList = doc.getElementsByTagName("Calculations");
-            if (calculationsList != null && calculationsList.getLength() >= 1) {
-                Element calculationsNode = (Element) calculationsList.item(0);
-                NodeList calculationList = calculationsNode.getElementsByTagName("Calculation");
-                if (calculationList != null) {
-                    for (int i = 0; i < calculationList.getLength(); i++) {
-                        Element calculationElem = (Element) calculationList.item(i);
-                        wpsExList = calculationElem.getElementsByTagName("WayPointEx");
+                if (speeds != null && speeds.size() > 0) {
+                    if (speeds.size() != route.getWaypoints().size()) {
+                        throw new RouteLoadException("Wrong number of WayPointEx entries: " + speeds.size());
                     }
-                }
-            }
-
-            if (wpsExList != null && wpsExList.getLength() > 0) {
-                if (wpsExList.getLength() != route.getWaypoints().size()) {
-                    throw new RouteLoadException("Wrong number of WayPointEx entries: " + wpsExList.getLength());
-                }
-                for (int i = 0; i < wpsExList.getLength() - 1; i++) {
-                    Element wpExElem = (Element) wpsExList.item(i);
-                    // Get speed
-                    Double speed = ParseUtils.parseDouble(wpExElem.getAttribute("Speed"));
-                    if (speed != null && speed > 0) {
-                        route.getWaypoints().get(i).getOutLeg().setSpeed(speed);
+                    for (int i = 0; i < speeds.size() - 1; i++) {
+                        // Get speed
+                        Double speed = speeds.get(i);
+                        if (speed != null && speed > 0) {
+                            route.getWaypoints().get(i).getOutLeg().setSpeed(speed);
+                        }
                     }
                 }
-            }            
+            } finally {
+                reader.close();
+            }
 
+        } catch (RouteLoadException e) {
+            LOG.error("Failed to parse RT3 route file: " + e.getMessage());
+            throw e;
         } catch (IOException e) {
             LOG.error("Failed to load RT3 route file: " + e.getMessage());
             throw new RouteLoadException("Error reading route file");
@@ -322,6 +291,182 @@ public class RouteLoader {
         return route;
     }
 
+    /**
+     * Adds the RT3 waypoint at the current position of the reader to the route
+     *
+     * @return the out leg of the new waypoint
+     */
+    private static RouteLeg parseRt3WayPoint(XMLStreamReader wpElem, Route route, RouteLeg lastLeg, NavSettings navSettings)
+            throws RouteLoadException, FormatException {
+        // Create route objects
+        RouteWaypoint wp = new RouteWaypoint();
+        RouteLeg outLeg = new RouteLeg();
+        wp.setInLeg(lastLeg);
+        wp.setOutLeg(outLeg);
+        outLeg.setStartWp(wp);
+        if (lastLeg != null) {
+            lastLeg.setEndWp(wp);
+        }
+
+        // Set defaults
+        wp.setSpeed(navSettings.getDefaultSpeed());
+        wp.setTurnRad(navSettings.getDefaultTurnRad());
+        outLeg.setXtdPort(navSettings.getDefaultXtd());
+        outLeg.setXtdStarboard(navSettings.getDefaultXtd());
+        wp.setName(makeWpName(route.getWaypoints().size() + 1));
+
+        // Wp name
+        String name = attribute(wpElem, "WPName");
+        if (name.length() > 0) {
+            wp.setName(name);
+        }
+
+        // Lat and lon
+        Double lat = ParseUtils.parseDouble(attribute(wpElem, "Lat"));
+        Double lon = ParseUtils.parseDouble(attribute(wpElem, "Lon"));
+        if (lat == null || lon == null) {
+            throw new RouteLoadException("Missing latitude/longitude for WP " + wp.getName());
+        }
+        lat /= 60.0;
+        lon /= 60.0;
+        wp.setPos(Position.create(lat, lon));
+
+        // Turn rad
+        String turnRad = attribute(wpElem, "TurnRadius");
+        if (turnRad.length() > 0) {
+            wp.setTurnRad(ParseUtils.parseDouble(turnRad));
+        }
+
+        // XTE
+        String xte = attribute(wpElem, "PortXTE");
+        if (xte.length() > 0) {
+            outLeg.setXtdPort(ParseUtils.parseDouble(xte));
+        }
+        xte = attribute(wpElem, "StbXTE");
+        if (xte.length() > 0) {
+            outLeg.setXtdStarboard(ParseUtils.parseDouble(xte));
+        }
+
+        // Leg type
+        String legType = attribute(wpElem, "LegType");
+        if (!legType.equals("0")) {
+            outLeg.setHeading(Heading.GC);
+        } else {
+            outLeg.setHeading(Heading.RL);
+        }
+
+        wp.setSpeed(outLeg.getSpeed());
+        route.getWaypoints().add(wp);
+        return outLeg;
+    }
+
+    /**
+     * Returns the value of the attribute of the current element, or an empty string if not present
+     */
+    static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return (value != null) ? value : "";
+    }
+
+    /**
+     * Loads a route from the given file. The format is determined by the file extension:
+     * <ul>
+     * <li>.txt: Simple text based format</li>
+     * <li>.rou: ECDIS900 V3 route format</li>
+     * <li>.rt3: Navisailor 3000 route</li>
+     * <li>.kml: KML route or waypoint list</li>
+     * <li>Otherwise: pertinacious format</li>
+     * </ul>
+     *
+     * @param file
+     *            the route file
+     * @param navSettings
+     *            the navigation settings providing the defaults
+     * @return the route
+     * @throws RouteLoadException
+     */
+    public static Route load(File file, NavSettings navSettings) throws RouteLoadException {
+        String ext = "";
+        int mid = file.getName().lastIndexOf('.');
+        ext = file.getName().substring(mid + 1, file.getName().length()).toUpperCase();
+        if (ext.equals("TXT")) {
+            // Load simple from file
+            return loadSimple(file);
+        } else if (ext.equals("ROU")) {
+            // Load ECDIS900 V3 route
+            return loadRou(file, navSettings);
+        } else if (ext.equals("RT3")) {
+            // Load Navisailor 3000 route
+            return loadRt3(file, navSettings);
+        } else if (ext.equals("KML")) {
+            // Load from KML
+            return loadKml(file, navSettings);
+        }
+        return pertinaciousLoad(file, navSettings);
+    }
+
+    /**
+     * Loads routes from the given files in parallel, in the CPU pool of the {@linkplain TaskManager}.
+     * <p>
+     * Files that fail to load are skipped and reported in the {@code failures} map.
+     *
+     * @param files
+     *            the route files
+     * @param navSettings
+     *            the navigation settings providing the defaults
+     * @param failures
+     *            if not null, receives the files that failed to load
+     * @return the loaded routes, in the order of the files
+     */
+    public static List<Route> loadAll(List<File> files, final NavSettings navSettings, Map<File, RouteLoadException> failures) {
+        List<Route> routes = new ArrayList<>(files.size());
+        if (files.isEmpty()) {
+            return routes;
+        }
+
+        List<Future<Route>> results = new ArrayList<>(files.size());
+        try {
+            for (final File file : files) {
+                Callable<Route> loader = new Callable<Route>() {
+                    @Override
+                    public Route call() throws RouteLoadException {
+                        return load(file, navSettings);
+                    }
+                };
+                try {
+                    results.add(TaskManager.getInstance().submit(Pool.CPU, "RouteLoader", loader));
+                } catch (RejectedExecutionException e) {
+                    // The queue of the pool is full, so load the route in the calling thread
+                    FutureTask<Route> task = new FutureTask<>(loader);
+                    task.run();
+                    results.add(task);
+                }
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    routes.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    RouteLoadException cause = (e.getCause() instanceof RouteLoadException) ? (RouteLoadException) e
+                            .getCause() : new RouteLoadException("Failed to load route: " + e.getCause());
+                    LOG.warn("Failed to load route " + files.get(i) + ": " + cause.getMessage());
+                    if (failures != null) {
+                        failures.put(files.get(i), cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            // Only has an effect if interrupted
+            for (Future<Route> result : results) {
+                result.cancel(true);
+            }
+        }
+        return routes;
+    }
+
     public static String makeWpName(int i) {
         return String.format("WP_%03d", i);
     }
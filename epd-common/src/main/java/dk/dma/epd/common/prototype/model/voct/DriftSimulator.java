@@ -0,0 +1,428 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.joda.time.DateTime;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
+import dk.dma.epd.common.prototype.task.TaskManager;
+
+/**
+ * Monte Carlo drift simulation of a search object.
+ * <p>
+ * Where the {@linkplain SAROperation} computes a single datum with a radius, the simulator propagates a large number
+ * of particles from the last known position, each drifting with its own perturbation of the surface current and of
+ * the leeway of the search object. The result is a {@linkplain ProbabilityGrid} per requested time, which gives the
+ * probability of containment of any search area.
+ * <p>
+ * The particles are initially distributed around the LKP according to the initial position error, X, interpreted
+ * as the radius containing 50% of the particles. Each particle is then given:
+ * <ul>
+ * <li>a leeway speed factor, normally distributed around 1, applied to the leeway speed of the search object as given
+ * by {@linkplain LeewayValues#getLeewaySpeed(int, double)},</li>
+ * <li>a leeway direction uniformly distributed within the downwind direction plus/minus the divergence of the search
+ * object, as given by {@linkplain LeewayValues#getDivergence(int)},</li>
+ * <li>a current speed and direction error, normally distributed.</li>
+ * </ul>
+ * The weather point in effect at a given time is the latest one at or before that time, or the first one if the time
+ * is before all weather points.
+ * <p>
+ * The particle state is kept in primitive arrays, and each time step is run as fork/join tasks over ranges of particles
+ * in the fork/join pool of the {@linkplain TaskManager}. Positions are advanced using a local flat-earth approximation,
+ * which is accurate for the time steps and drift speeds involved. Given the same seed, the result is deterministic.
+ */
+public class DriftSimulator {
+
+    /** The default number of particles */
+    public static final int DEFAULT_PARTICLES = 20000;
+
+    /** The default time step in minutes */
+    public static final int DEFAULT_TIME_STEP = 10;
+
+    /** The default cell size of the probability grids in nautical miles */
+    public static final double DEFAULT_CELL_SIZE = 0.25;
+
+    /** The maximum number of cells along each side of the probability grids */
+    public static final int MAX_CELLS = 256;
+
+    /** The number of particles below which a fork/join task is not split further */
+    private static final int THRESHOLD = 2048;
+
+    /** The radius of a circular normal distribution containing 50% of the samples, in standard deviations */
+    private static final double CEP_SIGMAS = 1.1774;
+
+    private final ForkJoinPool pool;
+    private final int particles;
+    private final int timeStep;
+    private final long seed;
+
+    private double cellSize = DEFAULT_CELL_SIZE;
+    private double leewaySpeedError = 0.15;
+    private double currentSpeedError = 0.1;
+    private double currentHeadingError = 10.0;
+
+    /**
+     * Constructor using the default number of particles and time step
+     */
+    public DriftSimulator() {
+        this(DEFAULT_PARTICLES, DEFAULT_TIME_STEP, System.nanoTime());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param particles
+     *            the number of particles to simulate
+     * @param timeStep
+     *            the maximum time step in minutes
+     * @param seed
+     *            the seed of the random perturbations
+     */
+    public DriftSimulator(int particles, int timeStep, long seed) {
+        this(TaskManager.getInstance().getForkJoinPool(), particles, timeStep, seed);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pool
+     *            the fork/join pool to run the simulation in
+     * @param particles
+     *            the number of particles to simulate
+     * @param timeStep
+     *            the maximum time step in minutes
+     * @param seed
+     *            the seed of the random perturbations
+     */
+    public DriftSimulator(ForkJoinPool pool, int particles, int timeStep, long seed) {
+        if (particles <= 0 || timeStep <= 0) {
+            throw new IllegalArgumentException("The number of particles and the time step must be positive");
+        }
+        this.pool = pool;
+        this.particles = particles;
+        this.timeStep = timeStep;
+        this.seed = seed;
+    }
+
+    /**
+     * Simulates the drift of the search object of the SAR data, and returns the probability grids at the given times
+     *
+     * @param data
+     *            the SAR data, providing the LKP, the initial position error, the search object and the weather points
+     * @param times
+     *            the times to compute the probability grids for
+     * @return the probability grids, in the order of the times
+     */
+    public List<ProbabilityGrid> simulate(SARData data, List<DateTime> times) {
+        return simulate(data.getLKP(), data.getLKPDate(), data.getX(), data.getSearchObject(),
+                data.getWeatherPoints(), times);
+    }
+
+    /**
+     * Simulates the drift of a search object, and returns the probability grids at the given times
+     *
+     * @param lkp
+     *            the last known position
+     * @param lkpDate
+     *            the time of the last known position
+     * @param x
+     *            the initial position error in nautical miles
+     * @param searchObject
+     *            the search object type, as listed by {@linkplain LeewayValues#getLeeWayTypes()}
+     * @param weatherPoints
+     *            the surface current and wind observations, ordered by time
+     * @param times
+     *            the times to compute the probability grids for
+     * @return the probability grids, in the order of the times
+     */
+    public List<ProbabilityGrid> simulate(Position lkp, DateTime lkpDate, double x, int searchObject,
+            List<SARWeatherData> weatherPoints, List<DateTime> times) {
+        if (weatherPoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one weather point is required");
+        }
+        if (LeewayValues.getDivergence(searchObject) < 0) {
+            throw new IllegalArgumentException("Unknown search object " + searchObject);
+        }
+
+        Particles state = new Particles(lkp, x, searchObject);
+
+        // Advance through the times in chronological order, but return the grids in the requested order
+        List<DateTime> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        List<ProbabilityGrid> grids = new ArrayList<>(Collections.<ProbabilityGrid> nCopies(times.size(), null));
+
+        long now = lkpDate.getMillis();
+        int weatherIndex = -1;
+        for (DateTime time : sorted) {
+            long target = time.getMillis();
+            while (now < target) {
+                int index = weatherIndexAt(weatherPoints, now);
+                if (index != weatherIndex) {
+                    weatherIndex = index;
+                    pool.invoke(state.new Velocities(0, particles, weatherPoints.get(index)));
+                }
+
+                // Do not step past the next weather point
+                long end = Math.min(target, now + timeStep * 60000L);
+                if (index + 1 < weatherPoints.size()) {
+                    long next = weatherPoints.get(index + 1).getDateTime().getMillis();
+                    if (next > now) {
+                        end = Math.min(end, next);
+                    }
+                }
+                pool.invoke(state.new Move(0, particles, (end - now) / 3600000.0));
+                now = end;
+            }
+
+            ProbabilityGrid grid = state.toGrid(time);
+            for (int i = 0; i < times.size(); i++) {
+                if (times.get(i).equals(time) && grids.get(i) == null) {
+                    grids.set(i, grid);
+                    break;
+                }
+            }
+        }
+        return grids;
+    }
+
+    /**
+     * Returns the index of the weather point in effect at the given time
+     */
+    private static int weatherIndexAt(List<SARWeatherData> weatherPoints, long time) {
+        int index = 0;
+        for (int i = 1; i < weatherPoints.size(); i++) {
+            if (weatherPoints.get(i).getDateTime().getMillis() <= time) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    public int getParticles() {
+        return particles;
+    }
+
+    public int getTimeStep() {
+        return timeStep;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Sets the minimum cell size of the probability grids. Larger cells are used if the particles are spread over
+     * more than {@linkplain #MAX_CELLS} cells.
+     *
+     * @param cellSize
+     *            the cell size in nautical miles
+     */
+    public void setCellSize(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public double getLeewaySpeedError() {
+        return leewaySpeedError;
+    }
+
+    /**
+     * Sets the standard deviation of the leeway speed factor of the particles
+     *
+     * @param leewaySpeedError
+     *            the standard deviation as a fraction of the leeway speed
+     */
+    public void setLeewaySpeedError(double leewaySpeedError) {
+        this.leewaySpeedError = leewaySpeedError;
+    }
+
+    public double getCurrentSpeedError() {
+        return currentSpeedError;
+    }
+
+    /**
+     * Sets the standard deviation of the current speed of the particles
+     *
+     * @param currentSpeedError
+     *            the standard deviation in knots
+     */
+    public void setCurrentSpeedError(double currentSpeedError) {
+        this.currentSpeedError = currentSpeedError;
+    }
+
+    public double getCurrentHeadingError() {
+        return currentHeadingError;
+    }
+
+    /**
+     * Sets the standard deviation of the current direction of the particles
+     *
+     * @param currentHeadingError
+     *            the standard deviation in degrees
+     */
+    public void setCurrentHeadingError(double currentHeadingError) {
+        this.currentHeadingError = currentHeadingError;
+    }
+
+    /**
+     * The state of the particles of a simulation
+     */
+    private final class Particles {
+
+        private final int searchObject;
+        private final double[] lats = new double[particles];
+        private final double[] lons = new double[particles];
+
+        // Per-particle perturbations
+        private final double[] leewayFactors = new double[particles];
+        private final double[] leewayOffsets = new double[particles];
+        private final double[] currentSpeedOffsets = new double[particles];
+        private final double[] currentHeadingOffsets = new double[particles];
+
+        // Velocity of the particles in knots under the current weather point
+        private final double[] northSpeeds = new double[particles];
+        private final double[] eastSpeeds = new double[particles];
+
+        Particles(Position lkp, double x, int searchObject) {
+            this.searchObject = searchObject;
+            int divergence = LeewayValues.getDivergence(searchObject);
+            double sigma = x / CEP_SIGMAS / 60.0;
+            double cosLat = Math.cos(Math.toRadians(lkp.getLatitude()));
+            Random random = new Random(seed);
+            for (int i = 0; i < particles; i++) {
+                lats[i] = lkp.getLatitude() + random.nextGaussian() * sigma;
+                lons[i] = lkp.getLongitude() + random.nextGaussian() * sigma / cosLat;
+                leewayFactors[i] = Math.max(0.0, 1.0 + random.nextGaussian() * leewaySpeedError);
+                leewayOffsets[i] = (2.0 * random.nextDouble() - 1.0) * divergence;
+                currentSpeedOffsets[i] = random.nextGaussian() * currentSpeedError;
+                currentHeadingOffsets[i] = random.nextGaussian() * currentHeadingError;
+            }
+        }
+
+        /**
+         * Bins the particles into a probability grid
+         */
+        ProbabilityGrid toGrid(DateTime time) {
+            double minLat = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE;
+            double minLon = Double.MAX_VALUE;
+            double maxLon = -Double.MAX_VALUE;
+            for (int i = 0; i < particles; i++) {
+                minLat = Math.min(minLat, lats[i]);
+                maxLat = Math.max(maxLat, lats[i]);
+                minLon = Math.min(minLon, lons[i]);
+                maxLon = Math.max(maxLon, lons[i]);
+            }
+
+            double cosLat = Math.cos(Math.toRadians((minLat + maxLat) / 2));
+            double extent = Math.max(maxLat - minLat, (maxLon - minLon) * cosLat) * 60.0;
+            double size = Math.max(cellSize, extent / (MAX_CELLS - 1));
+            double latStep = size / 60.0;
+            double lonStep = latStep / cosLat;
+            int rows = Math.min(MAX_CELLS, (int) ((maxLat - minLat) / latStep) + 1);
+            int cols = Math.min(MAX_CELLS, (int) ((maxLon - minLon) / lonStep) + 1);
+
+            double[] probabilities = new double[rows * cols];
+            double weight = 1.0 / particles;
+            for (int i = 0; i < particles; i++) {
+                int row = Math.min(rows - 1, (int) ((lats[i] - minLat) / latStep));
+                int col = Math.min(cols - 1, (int) ((lons[i] - minLon) / lonStep));
+                probabilities[row * cols + col] += weight;
+            }
+            return new ProbabilityGrid(time, minLat, minLon, latStep, lonStep, rows, cols, probabilities);
+        }
+
+        /**
+         * Computes the velocity of the particles under a weather point
+         */
+        final class Velocities extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int from;
+            private final int to;
+            private final SARWeatherData weather;
+
+            Velocities(int from, int to, SARWeatherData weather) {
+                this.from = from;
+                this.to = to;
+                this.weather = weather;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > THRESHOLD) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Velocities(from, mid, weather), new Velocities(mid, to, weather));
+                    return;
+                }
+
+                double leewaySpeed = Math.max(0.0, LeewayValues.getLeewaySpeed(searchObject, weather.getLWknots()));
+                for (int i = from; i < to; i++) {
+                    double currentSpeed = Math.max(0.0, weather.getTWCknots() + currentSpeedOffsets[i]);
+                    double currentHeading = Math.toRadians(weather.getTWCHeading() + currentHeadingOffsets[i]);
+                    double leeway = leewaySpeed * leewayFactors[i];
+                    double leewayHeading = Math.toRadians(weather.getDownWind() + leewayOffsets[i]);
+                    northSpeeds[i] = currentSpeed * Math.cos(currentHeading) + leeway * Math.cos(leewayHeading);
+                    eastSpeeds[i] = currentSpeed * Math.sin(currentHeading) + leeway * Math.sin(leewayHeading);
+                }
+            }
+        }
+
+        /**
+         * Moves the particles with their velocity for the given number of hours
+         */
+        final class Move extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int from;
+            private final int to;
+            private final double hours;
+
+            Move(int from, int to, double hours) {
+                this.from = from;
+                this.to = to;
+                this.hours = hours;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > THRESHOLD) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Move(from, mid, hours), new Move(mid, to, hours));
+                    return;
+                }
+
+                // One minute of latitude is one nautical mile
+                double scale = hours / 60.0;
+                for (int i = from; i < to; i++) {
+                    double dLat = northSpeeds[i] * scale;
+                    double midLat = Math.toRadians(lats[i] + dLat / 2);
+                    lats[i] += dLat;
+                    lons[i] += eastSpeeds[i] * scale / Math.cos(midLat);
+                }
+            }
+        }
+    }
+}
@@ -108,6 +108,120 @@ public class LeewayValues {
         return leeWayContent;
     }
 
+    /**
+     * Returns the leeway speed of the search object
+     *
+     * @param searchObject
+     *            the search object type, as listed by {@linkplain #getLeeWayTypes()}
+     * @param LWKnots
+     *            the wind speed in knots
+     * @return the leeway speed in knots, or -9999.9 for an unknown search object
+     */
+    public static double getLeewaySpeed(int searchObject, double LWKnots) {
+
+        switch (searchObject) {
+        case 0:
+            return personInWater(LWKnots);
+        case 1:
+            return raftFourToSix(LWKnots);
+        case 2:
+            return raftFourToSixWithDriftAnker(LWKnots);
+        case 3:
+            return raftFourToSixWithoutDriftAnker(LWKnots);
+        case 4:
+            return raftFifteenToTwentyFive(LWKnots);
+        case 5:
+            return raftFifteenToTwentyFiveWithDriftAnker(LWKnots);
+        case 6:
+            return raftFifteenToTwentyFiveWitouthDriftAnker(LWKnots);
+        case 7:
+            return dinghyFlatBottom(LWKnots);
+        case 8:
+            return dinghyWithKeel(LWKnots);
+        case 9:
+            return dinghyCapsized(LWKnots);
+        case 10:
+            return kayakWithPerson(LWKnots);
+        case 11:
+            return surfboardWithPerson(LWKnots);
+        case 12:
+            return windsurferWithPersonMastAndSailInWater(LWKnots);
+        case 13:
+            return sailboatLongKeel(LWKnots);
+        case 14:
+            return sailboatFinKeel(LWKnots);
+        case 15:
+            return motorboat(LWKnots);
+        case 16:
+            return fishingVessel(LWKnots);
+        case 17:
+            return trawler(LWKnots);
+        case 18:
+            return coaster(LWKnots);
+        case 19:
+            return wreckage(LWKnots);
+
+        }
+
+        return -9999.9;
+    }
+
+    /**
+     * Returns the leeway divergence of the search object
+     *
+     * @param searchObject
+     *            the search object type, as listed by {@linkplain #getLeeWayTypes()}
+     * @return the divergence in degrees, or -9999 for an unknown search object
+     */
+    public static int getDivergence(int searchObject) {
+
+        switch (searchObject) {
+        case 0:
+            return personInWater();
+        case 1:
+            return raftFourToSix();
+        case 2:
+            return raftFourToSixWithDriftAnker();
+        case 3:
+            return raftFourToSixWithoutDriftAnker();
+        case 4:
+            return raftFifteenToTwentyFive();
+        case 5:
+            return raftFifteenToTwentyFiveWithDriftAnker();
+        case 6:
+            return raftFifteenToTwentyFiveWitouthDriftAnker();
+        case 7:
+            return dinghyFlatBottom();
+        case 8:
+            return dinghyWithKeel();
+        case 9:
+            return dinghyCapsized();
+        case 10:
+            return kayakWithPerson();
+        case 11:
+            return surfboardWithPerson();
+        case 12:
+            return windsurferWithPersonMastAndSailInWater();
+        case 13:
+            return sailboatLongKeel();
+        case 14:
+            return sailboatFinKeel();
+        case 15:
+            return motorboat();
+        case 16:
+            return fishingVessel();
+        case 17:
+            return trawler();
+        case 18:
+            return coaster();
+        case 19:
+            return wreckage();
+
+        }
+
+        return -9999;
+    }
+
     public static double personInWater(double LWknots){
         return 0.011 * LWknots + 0.068;
     }
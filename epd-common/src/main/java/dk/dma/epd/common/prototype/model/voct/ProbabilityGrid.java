@@ -0,0 +1,258 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct;
+
+import java.io.Serializable;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+
+import org.joda.time.DateTime;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Probability map of the location of a search object at a given time, as computed by the {@linkplain DriftSimulator}.
+ * <p>
+ * The grid covers a latitude/longitude box divided into cells of equal size in nautical miles. Each cell holds the
+ * fraction of the simulated particles located in the cell, so that the cells of the grid sum to 1.
+ */
+@Immutable
+public class ProbabilityGrid implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DateTime time;
+    private final double minLat;
+    private final double minLon;
+    private final double latStep;
+    private final double lonStep;
+    private final int rows;
+    private final int cols;
+    /** Cell probabilities, row by row starting from the southernmost row */
+    private final double[] probabilities;
+
+    /**
+     * Constructor
+     *
+     * @param time
+     *            the time of the grid
+     * @param minLat
+     *            the latitude of the southern edge of the grid
+     * @param minLon
+     *            the longitude of the western edge of the grid
+     * @param latStep
+     *            the height of a cell in degrees
+     * @param lonStep
+     *            the width of a cell in degrees
+     * @param rows
+     *            the number of rows
+     * @param cols
+     *            the number of columns
+     * @param probabilities
+     *            the cell probabilities, row by row starting from the southernmost row
+     */
+    public ProbabilityGrid(DateTime time, double minLat, double minLon, double latStep, double lonStep, int rows,
+            int cols, double[] probabilities) {
+        if (probabilities.length != rows * cols) {
+            throw new IllegalArgumentException("Expected " + rows * cols + " cells, got " + probabilities.length);
+        }
+        this.time = time;
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.latStep = latStep;
+        this.lonStep = lonStep;
+        this.rows = rows;
+        this.cols = cols;
+        this.probabilities = probabilities;
+    }
+
+    public DateTime getTime() {
+        return time;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public double getMinLat() {
+        return minLat;
+    }
+
+    public double getMinLon() {
+        return minLon;
+    }
+
+    public double getMaxLat() {
+        return minLat + rows * latStep;
+    }
+
+    public double getMaxLon() {
+        return minLon + cols * lonStep;
+    }
+
+    public double getLatStep() {
+        return latStep;
+    }
+
+    public double getLonStep() {
+        return lonStep;
+    }
+
+    /**
+     * Returns the probability of the cell
+     *
+     * @param row
+     *            the row, counted from the south
+     * @param col
+     *            the column, counted from the west
+     * @return the probability of the cell
+     */
+    public double getProbability(int row, int col) {
+        return probabilities[row * cols + col];
+    }
+
+    /**
+     * Returns the probability of the cell containing the position
+     *
+     * @param pos
+     *            the position
+     * @return the probability of the cell, or 0 if the position is outside the grid
+     */
+    public double getProbability(Position pos) {
+        int row = (int) Math.floor((pos.getLatitude() - minLat) / latStep);
+        int col = (int) Math.floor((pos.getLongitude() - minLon) / lonStep);
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return 0.0;
+        }
+        return getProbability(row, col);
+    }
+
+    /**
+     * Returns the highest cell probability of the grid
+     *
+     * @return the highest cell probability
+     */
+    public double getMaxProbability() {
+        double max = 0.0;
+        for (double p : probabilities) {
+            max = Math.max(max, p);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the center of the cell
+     *
+     * @param row
+     *            the row, counted from the south
+     * @param col
+     *            the column, counted from the west
+     * @return the center of the cell
+     */
+    public Position getCellCenter(int row, int col) {
+        return Position.create(minLat + (row + 0.5) * latStep, minLon + (col + 0.5) * lonStep);
+    }
+
+    /**
+     * Returns the probability weighted mean position of the grid, i.e. the most likely datum
+     *
+     * @return the mean position
+     */
+    public Position getMeanPosition() {
+        double lat = 0.0;
+        double lon = 0.0;
+        double total = 0.0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                double p = probabilities[row * cols + col];
+                lat += p * (row + 0.5);
+                lon += p * (col + 0.5);
+                total += p;
+            }
+        }
+        if (total == 0.0) {
+            return Position.create(minLat + rows * latStep / 2, minLon + cols * lonStep / 2);
+        }
+        return Position.create(minLat + lat / total * latStep, minLon + lon / total * lonStep);
+    }
+
+    /**
+     * Returns the probability of containment (POC) of the area, i.e. the sum of the probabilities of the cells whose
+     * center is inside the polygon
+     *
+     * @param polygon
+     *            the corners of the area, e.g. the A, B, C and D positions of a search area
+     * @return the probability of containment
+     */
+    public double getProbabilityOfContainment(List<Position> polygon) {
+        int n = polygon.size();
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        double south = Double.MAX_VALUE;
+        double north = -Double.MAX_VALUE;
+        double west = Double.MAX_VALUE;
+        double east = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            lats[i] = polygon.get(i).getLatitude();
+            lons[i] = polygon.get(i).getLongitude();
+            south = Math.min(south, lats[i]);
+            north = Math.max(north, lats[i]);
+            west = Math.min(west, lons[i]);
+            east = Math.max(east, lons[i]);
+        }
+
+        // Only test the cells within the bounding box of the polygon
+        int fromRow = Math.max(0, (int) Math.floor((south - minLat) / latStep));
+        int toRow = Math.min(rows - 1, (int) Math.floor((north - minLat) / latStep));
+        int fromCol = Math.max(0, (int) Math.floor((west - minLon) / lonStep));
+        int toCol = Math.min(cols - 1, (int) Math.floor((east - minLon) / lonStep));
+
+        double poc = 0.0;
+        for (int row = fromRow; row <= toRow; row++) {
+            double lat = minLat + (row + 0.5) * latStep;
+            for (int col = fromCol; col <= toCol; col++) {
+                double p = probabilities[row * cols + col];
+                if (p > 0.0 && contains(lats, lons, lat, minLon + (col + 0.5) * lonStep)) {
+                    poc += p;
+                }
+            }
+        }
+        return poc;
+    }
+
+    /**
+     * Ray casting test of whether the point is inside the polygon
+     */
+    private static boolean contains(double[] lats, double[] lons, double lat, double lon) {
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public String toString() {
+        return "ProbabilityGrid [time=" + time + ", rows=" + rows + ", cols=" + cols + "]";
+    }
+}
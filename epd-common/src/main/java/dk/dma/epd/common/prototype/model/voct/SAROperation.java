@@ -15,6 +15,7 @@
 package dk.dma.epd.common.prototype.model.voct;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -195,102 +196,30 @@ public class SAROperation {
         return futureDataList;
     }
 
-    private double searchObjectValue(int searchObject, double LWKnots) {
-
-        switch (searchObject) {
-        case 0:
-            return LeewayValues.personInWater(LWKnots);
-        case 1:
-            return LeewayValues.raftFourToSix(LWKnots);
-        case 2:
-            return LeewayValues.raftFourToSixWithDriftAnker(LWKnots);
-        case 3:
-            return LeewayValues.raftFourToSixWithoutDriftAnker(LWKnots);
-        case 4:
-            return LeewayValues.raftFifteenToTwentyFive(LWKnots);
-        case 5:
-            return LeewayValues.raftFifteenToTwentyFiveWithDriftAnker(LWKnots);
-        case 6:
-            return LeewayValues.raftFifteenToTwentyFiveWitouthDriftAnker(LWKnots);
-        case 7:
-            return LeewayValues.dinghyFlatBottom(LWKnots);
-        case 8:
-            return LeewayValues.dinghyWithKeel(LWKnots);
-        case 9:
-            return LeewayValues.dinghyCapsized(LWKnots);
-        case 10:
-            return LeewayValues.kayakWithPerson(LWKnots);
-        case 11:
-            return LeewayValues.surfboardWithPerson(LWKnots);
-        case 12:
-            return LeewayValues.windsurferWithPersonMastAndSailInWater(LWKnots);
-        case 13:
-            return LeewayValues.sailboatLongKeel(LWKnots);
-        case 14:
-            return LeewayValues.sailboatFinKeel(LWKnots);
-        case 15:
-            return LeewayValues.motorboat(LWKnots);
-        case 16:
-            return LeewayValues.fishingVessel(LWKnots);
-        case 17:
-            return LeewayValues.trawler(LWKnots);
-        case 18:
-            return LeewayValues.coaster(LWKnots);
-        case 19:
-            return LeewayValues.wreckage(LWKnots);
-
+    /**
+     * Simulates the drift of the search object using the given drift simulator, and returns the probability grids at
+     * the CSS and at the same 30 minute intervals as {@linkplain #sarFutureCalculations(SARData)}
+     *
+     * @param data
+     *            the SAR data
+     * @param simulator
+     *            the drift simulator
+     * @return the probability grids, starting with the one at the CSS
+     */
+    public List<ProbabilityGrid> sarProbabilityCalculations(SARData data, DriftSimulator simulator) {
+        List<DateTime> times = new ArrayList<DateTime>();
+        for (int i = 0; i < 9; i++) {
+            times.add(data.getCSSDate().plusMinutes(i * 30));
         }
+        return simulator.simulate(data, times);
+    }
 
-        return -9999.9;
+    private double searchObjectValue(int searchObject, double LWKnots) {
+        return LeewayValues.getLeewaySpeed(searchObject, LWKnots);
     }
 
     private int searchObjectValue(int searchObject) {
-
-        switch (searchObject) {
-        case 0:
-            return LeewayValues.personInWater();
-        case 1:
-            return LeewayValues.raftFourToSix();
-        case 2:
-            return LeewayValues.raftFourToSixWithDriftAnker();
-        case 3:
-            return LeewayValues.raftFourToSixWithoutDriftAnker();
-        case 4:
-            return LeewayValues.raftFifteenToTwentyFive();
-        case 5:
-            return LeewayValues.raftFifteenToTwentyFiveWithDriftAnker();
-        case 6:
-            return LeewayValues.raftFifteenToTwentyFiveWitouthDriftAnker();
-        case 7:
-            return LeewayValues.dinghyFlatBottom();
-        case 8:
-            return LeewayValues.dinghyWithKeel();
-        case 9:
-            return LeewayValues.dinghyCapsized();
-        case 10:
-            return LeewayValues.kayakWithPerson();
-        case 11:
-            return LeewayValues.surfboardWithPerson();
-        case 12:
-            return LeewayValues.windsurferWithPersonMastAndSailInWater();
-        case 13:
-            return LeewayValues.sailboatLongKeel();
-        case 14:
-            return LeewayValues.sailboatFinKeel();
-        case 15:
-            return LeewayValues.motorboat();
-        case 16:
-            return LeewayValues.fishingVessel();
-        case 17:
-            return LeewayValues.trawler();
-        case 18:
-            return LeewayValues.coaster();
-        case 19:
-            return LeewayValues.wreckage();
-
-        }
-
-        return -9999;
+        return LeewayValues.getDivergence(searchObject);
     }
 
     public DatumPointData datumPoint(DatumPointData data) {
@@ -1850,6 +1779,28 @@ public class SAROperation {
 
     }
 
+    /**
+     * Computes the probability of containment (POC) of the effective area of the effort allocation from a drift
+     * simulation, and returns the resulting probability of success, POS = POC x POD
+     *
+     * @param data
+     *            the effort allocation, with the effective area placed
+     * @param grid
+     *            the probability grid at the time of the search
+     * @return the probability of success, or 0 if the effective area has not been placed
+     */
+    public double calculateProbabilityOfSuccess(EffortAllocationData data, ProbabilityGrid grid) {
+        if (data.getEffectiveAreaA() == null || data.getEffectiveAreaB() == null
+                || data.getEffectiveAreaC() == null || data.getEffectiveAreaD() == null) {
+            return 0.0;
+        }
+
+        double poc = grid.getProbabilityOfContainment(Arrays.asList(data.getEffectiveAreaA(),
+                data.getEffectiveAreaB(), data.getEffectiveAreaC(), data.getEffectiveAreaD()));
+        data.setPoc(poc);
+        return poc * data.getPod();
+    }
+
     private double findS(double W, double PoD) {
         // S = W*(-5/8*ln(1-x))^(-5/7)
 
@@ -26,6 +26,7 @@ public class EffortAllocationData implements Serializable {
     private double w;
     private double groundSpeed;
     private double pod;
+    private Double poc;
     private double trackSpacing;
     private double searchTime;
     private double effectiveAreaSize;
@@ -191,6 +192,22 @@ public class EffortAllocationData implements Serializable {
         this.pod = pod;
     }
 
+    /**
+     * @return the probability of containment of the effective area, or null if it has not been computed from a drift
+     *         simulation
+     */
+    public Double getPoc() {
+        return poc;
+    }
+
+    /**
+     * @param poc
+     *            the poc to set
+     */
+    public void setPoc(Double poc) {
+        this.poc = poc;
+    }
+
     /**
      * @return the trackSpacing
      */
@@ -16,7 +16,6 @@ package dk.dma.epd.common.prototype.nogo;
 
 import java.util.Date;
 
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,93 +23,82 @@ import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
 import dk.frv.enav.common.xml.nogo.response.NogoResponse;
-import dk.frv.enav.common.xml.nogoslices.response.NogoResponseSlices;
 
-public class NoGoWorker extends Thread {
+/**
+ * Fetches a single time slice of a NoGo request.
+ * <p>
+ * Workers are submitted to the I/O pool of the task manager by the {@linkplain NogoHandlerCommon}, which runs a bounded
+ * number of slices concurrently. The response is handed back to the handler as soon as it arrives, tagged with the id of the request, so
+ * that the handler can discard responses of cancelled requests.
+ */
+public class NoGoWorker implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(NoGoWorker.class);
 
-    private NogoHandlerCommon nogoHandler;
-    private ShoreServicesCommon shoreServices;
-    int id;
-    double draught;
-    Position northWestPoint;
-    Position southEastPoint;
-    Date validFrom;
-    Date validTo;
-    int slices;
-
-    public NoGoWorker(NogoHandlerCommon nogoHandler, ShoreServicesCommon shoreCommon, int id, int slices) {
+    private final NogoHandlerCommon nogoHandler;
+    private final ShoreServicesCommon shoreServices;
+    private final int requestId;
+    private final int index;
+    private final double draught;
+    private final Position northWestPoint;
+    private final Position southEastPoint;
+    private final Date validFrom;
+    private final Date validTo;
+
+    public NoGoWorker(NogoHandlerCommon nogoHandler, ShoreServicesCommon shoreServices, int requestId, int index,
+            double draught, Position northWestPoint, Position southEastPoint, Date validFrom, Date validTo) {
         this.nogoHandler = nogoHandler;
-        shoreServices = shoreCommon;
-        this.id = id;
-        this.slices = slices;
-    }
-
-    public void setValues(double draught, Position northWestPoint, Position southEastPoint, DateTime startDate, DateTime endDate) {
-
+        this.shoreServices = shoreServices;
+        this.requestId = requestId;
+        this.index = index;
         this.draught = draught;
         this.northWestPoint = northWestPoint;
         this.southEastPoint = southEastPoint;
-        this.validFrom = new Date(startDate.getMillis());
-        this.validTo = new Date(endDate.getMillis());
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
 
+    public int getIndex() {
+        return index;
     }
 
     @Override
     public void run() {
-
-        LOG.info("NoGo Worker has started its request");
+        if (Thread.currentThread().isInterrupted() || !nogoHandler.isCurrentRequest(requestId)) {
+            // Cancelled before it was started
+            return;
+        }
 
         if (shoreServices == null) {
-            nogoHandler.noNetworkConnection();
-            // Send fault message
-
+            nogoHandler.nogoSliceFailed(requestId, index, true);
             return;
         }
 
         try {
+            NogoResponse nogoResponse = shoreServices.nogoPoll(draught, northWestPoint, southEastPoint, validFrom, validTo);
 
-            if (slices == 1) {
-
-                NogoResponse nogoResponse = shoreServices.nogoPoll(draught, northWestPoint, southEastPoint, validFrom, validTo);
-
-                // Check the nogoresponse stuff
-
-                if (nogoResponse == null || nogoResponse.getPolygons() == null) {
-                    nogoHandler.nogoTimedOut();
-                    return;
-                }
-
-                // Store results
-
-                nogoHandler.nogoRequestCompleted(nogoResponse);
-            } else {
-                NogoResponseSlices nogoResponse = shoreServices.nogoPoll(draught, northWestPoint, southEastPoint, validFrom,
-                        validTo, slices);
-
-                // Check the nogoresponse stuff
-
-                if (nogoResponse == null || nogoResponse.getResponses() == null) {
-                    nogoHandler.nogoTimedOut();
-                    nogoHandler.setNoGoRequestCompleted();
-                    return;
-                }
-
-                // Store the responses
-                nogoHandler.nogoRequestCompleted(nogoResponse);
+            // Check the nogoresponse stuff
+            if (nogoResponse == null || nogoResponse.getPolygons() == null) {
+                nogoHandler.nogoSliceFailed(requestId, index, false);
+                return;
+            }
 
-                LOG.info("NoGo Worker has completed its request");
+            nogoHandler.nogoSliceCompleted(requestId, index,
+                    NogoHandlerCommon.cacheKey(draught, northWestPoint, southEastPoint, validFrom, validTo), nogoResponse);
 
-            }
         } catch (ShoreServiceException e) {
-            // TODO Auto-generated catch block
-            nogoHandler.noNetworkConnection();
-            LOG.error("Failed to get NoGo from shore: " + e.getMessage());
-
+            if (nogoHandler.isCurrentRequest(requestId)) {
+                LOG.error("Failed to get NoGo from shore: " + e.getMessage());
+            }
+            nogoHandler.nogoSliceFailed(requestId, index, true);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to handle NoGo response", e);
+            nogoHandler.nogoSliceFailed(requestId, index, false);
         }
-        // Perform the thing
-        nogoHandler.setNoGoRequestCompleted();
     }
 
 }
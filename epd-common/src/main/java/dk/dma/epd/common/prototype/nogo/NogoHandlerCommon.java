@@ -14,9 +14,15 @@
  */
 package dk.dma.epd.common.prototype.nogo;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import net.jcip.annotations.ThreadSafe;
 
@@ -29,18 +35,33 @@ import com.bbn.openmap.MapHandlerChild;
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.layers.nogo.NogoLayer;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
 import dk.frv.enav.common.xml.nogo.response.NogoResponse;
 import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
-import dk.frv.enav.common.xml.nogoslices.response.NogoResponseSlices;
 
 /**
  * Component for handling NOGO areas
+ * <p>
+ * A request is split into time slices, which are fetched concurrently in the I/O pool of the {@linkplain TaskManager},
+ * at most {@linkplain #NOGO_THREADS} at a time, and passed on to the panel and the {@linkplain NogoLayer} one by one as
+ * they arrive. Slice responses are cached by draught, area and slice time, and cached slices are passed on before the
+ * rest are fetched. A new request cancels the slices of the request in progress.
  */
 @ThreadSafe
 public class NogoHandlerCommon extends MapHandlerChild {
 
     private static final Logger LOG = LoggerFactory.getLogger(NogoHandlerCommon.class);
 
+    /** The number of slices fetched concurrently */
+    static final int NOGO_THREADS = 4;
+
+    /** The name of the slice tasks in the task manager */
+    private static final String NOGO_TASK = "NoGo slice";
+
+    /** The maximum number of slice responses kept in the cache */
+    private static final int MAX_CACHED_RESPONSES = 256;
+
     protected List<NoGoDataEntry> nogoData = new ArrayList<NoGoDataEntry>();
 
     Position northWestPoint;
@@ -64,10 +85,26 @@ public class NogoHandlerCommon extends MapHandlerChild {
 
     // private NoGoComponentPanel nogoPanel;
 
-    // int completedSlices;
-
     protected boolean requestInProgress;
 
+    // The id of the current request. Responses of older requests are discarded
+    private int currentRequestId;
+    private int completedSlices;
+    private boolean requestFailed;
+    private final List<Future<?>> pendingSlices = new ArrayList<>();
+    // Slices waiting for one of the running slices to complete
+    private final Deque<NoGoWorker> queuedSlices = new ArrayDeque<>();
+    private int runningSlices;
+
+    // Responses keyed by draught, area and slice time, evicting the least recently used
+    @SuppressWarnings("serial")
+    private final Map<String, NogoResponse> responseCache = new LinkedHashMap<String, NogoResponse>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NogoResponse> eldest) {
+            return size() > MAX_CACHED_RESPONSES;
+        }
+    };
+
     public NogoLayer getNogoLayer() {
         return nogoLayer;
     }
@@ -95,6 +132,11 @@ public class NogoHandlerCommon extends MapHandlerChild {
 
     public synchronized void updateNogo(boolean useSlices, int minutesBetween) {
 
+        // A new request supersedes the one in progress, e.g. when the area or draught has changed
+        cancelRequest();
+        requestInProgress = true;
+        final int requestId = ++currentRequestId;
+
         nogoData = new ArrayList<NoGoDataEntry>();
         // New Request - determine how many time slices are needed to complete the request or if we even need to do slices
 
@@ -119,6 +161,7 @@ public class NogoHandlerCommon extends MapHandlerChild {
             }
 
             nogoLayer.initializeNoGoStorage(nogoData.size());
+            updatePanelSlices(nogoData.size());
         } else {
             // Do a single request
 
@@ -129,16 +172,72 @@ public class NogoHandlerCommon extends MapHandlerChild {
             nogoData.add(nogoDataEntry);
         }
 
-        NoGoWorker nogoWorker = createWorker(nogoData.size(), new DateTime(validFrom.getTime()), new DateTime(validTo.getTime()));
+        completedSlices = 0;
+        requestFailed = false;
 
-        nogoWorker.start();
+        // Pass on the cached slices before fetching the rest
+        int cached = 0;
+        for (int i = 0; i < nogoData.size(); i++) {
+            NoGoDataEntry dataEntry = nogoData.get(i);
+            Date from = new Date(dataEntry.getValidFrom().getMillis());
+            Date to = new Date(dataEntry.getValidTo().getMillis());
+            NogoResponse response = responseCache.get(cacheKey(draught, northWestPoint, southEastPoint, from, to));
+            if (response != null) {
+                setResponse(dataEntry, response);
+                sliceCompleted(i);
+                cached++;
+            } else {
+                queuedSlices.add(new NoGoWorker(this, shoreServices, requestId, i, draught, northWestPoint,
+                        southEastPoint, from, to));
+            }
+        }
 
+        LOG.info("NoGo request of " + nogoData.size() + " slices started, " + cached + " served from cache");
+        submitQueuedSlices();
     }
 
-    private NoGoWorker createWorker(int slices, DateTime startDate, DateTime endDate) {
-        NoGoWorker nogoWorker = new NoGoWorker(this, this.shoreServices, 0, slices);
-        nogoWorker.setValues(draught, northWestPoint, southEastPoint, startDate, endDate);
-        return nogoWorker;
+    /**
+     * Submits queued slices to the I/O pool, until {@linkplain #NOGO_THREADS} slices are running
+     */
+    private void submitQueuedSlices() {
+        while (runningSlices < NOGO_THREADS && !queuedSlices.isEmpty()) {
+            NoGoWorker nogoWorker = queuedSlices.poll();
+            try {
+                pendingSlices.add(TaskManager.getInstance().submit(Pool.IO, NOGO_TASK, nogoWorker));
+                runningSlices++;
+            } catch (RejectedExecutionException e) {
+                LOG.warn("NoGo slice rejected: " + e.getMessage());
+                nogoSliceFailed(nogoWorker.getRequestId(), nogoWorker.getIndex(), false);
+            }
+        }
+    }
+
+    /**
+     * Cancels the request in progress, if any. Responses of slices that are still being fetched are discarded
+     */
+    public synchronized void cancelRequest() {
+        if (!pendingSlices.isEmpty()) {
+            LOG.info("Cancelling NoGo request with " + pendingSlices.size() + " pending slices");
+            for (Future<?> slice : pendingSlices) {
+                slice.cancel(true);
+            }
+            pendingSlices.clear();
+        }
+        queuedSlices.clear();
+        runningSlices = 0;
+        currentRequestId++;
+        requestInProgress = false;
+    }
+
+    /**
+     * Returns if the given request is the current one, i.e. has not been cancelled or superseded
+     *
+     * @param requestId
+     *            the id of the request
+     * @return if the given request is the current one
+     */
+    synchronized boolean isCurrentRequest(int requestId) {
+        return requestId == currentRequestId && !requestFailed;
     }
 
     /**
@@ -152,39 +251,99 @@ public class NogoHandlerCommon extends MapHandlerChild {
 
     }
 
-    public synchronized void nogoRequestCompleted(NogoResponseSlices nogoResponses) {
-
-        LOG.info("NoGo Worker has completed its request");
-
-        int completedSlices = 0;
+    /**
+     * Called by a {@linkplain NoGoWorker} when a slice of the request has been received
+     *
+     * @param requestId
+     *            the id of the request
+     * @param index
+     *            the index of the slice
+     * @param cacheKey
+     *            the cache key of the slice
+     * @param response
+     *            the response
+     */
+    synchronized void nogoSliceCompleted(int requestId, int index, String cacheKey, NogoResponse response) {
+        // Also cache the responses of cancelled requests, since the area is likely to be requested again
+        responseCache.put(cacheKey, response);
 
-        for (int i = 0; i < nogoResponses.getResponses().size(); i++) {
-            NogoResponse response = nogoResponses.getResponses().get(i);
+        if (!isCurrentRequest(requestId)) {
+            return;
+        }
+        setResponse(nogoData.get(index), response);
+        runningSlices--;
+        sliceCompleted(index);
+        submitQueuedSlices();
+    }
 
-            completedSlices = completedSlices + 1;
+    /**
+     * Called by a {@linkplain NoGoWorker} when a slice of the request has failed. The rest of the request is cancelled
+     *
+     * @param requestId
+     *            the id of the request
+     * @param index
+     *            the index of the slice
+     * @param noConnection
+     *            if the slice failed because the shore service could not be reached
+     */
+    synchronized void nogoSliceFailed(int requestId, int index, boolean noConnection) {
+        if (!isCurrentRequest(requestId)) {
+            return;
+        }
+        LOG.warn("NoGo slice " + index + " failed, cancelling the request");
+        requestFailed = true;
+        for (Future<?> slice : pendingSlices) {
+            slice.cancel(true);
+        }
+        pendingSlices.clear();
+        queuedSlices.clear();
+        runningSlices = 0;
 
-            NoGoDataEntry dataEntry = nogoData.get(i);
+        if (noConnection) {
+            noNetworkConnection();
+        } else {
+            nogoTimedOut();
+        }
+        setNoGoRequestCompleted();
+    }
 
-            dataEntry.setNogoPolygons(response.getPolygons());
-            dataEntry.setNoGoMessage(response.getNoGoMessage());
-            dataEntry.setNoGoErrorCode(response.getNoGoErrorCode());
+    private void sliceCompleted(int i) {
+        NoGoDataEntry dataEntry = nogoData.get(i);
+        completedSlices++;
 
-            // Special handling of slices
-            if (this.useSlices) {
-                updatePanelCompleteMultiple(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), dataEntry.getValidFrom(),
-                        dataEntry.getValidTo(), draught, i);
+        // Special handling of slices
+        if (this.useSlices) {
+            updatePanelCompleteMultiple(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), dataEntry.getValidFrom(),
+                    dataEntry.getValidTo(), draught, i);
 
-                updateLayerMultipleResult(i);
+            updateLayerMultipleResult(i);
 
-                updatePanelCompletedSlices(completedSlices, nogoData.size());
-            } else {
-                updatePanelCompleteSingle(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), validFrom, validTo, draught);
+            updatePanelCompletedSlices(completedSlices, nogoData.size());
+        } else {
+            updatePanelCompleteSingle(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), validFrom, validTo, draught);
 
-                updateLayerSingleResult();
-            }
+            updateLayerSingleResult();
+        }
 
+        if (completedSlices == nogoData.size()) {
+            LOG.info("NoGo request has completed");
+            pendingSlices.clear();
+            setNoGoRequestCompleted();
         }
+    }
 
+    private static void setResponse(NoGoDataEntry dataEntry, NogoResponse response) {
+        dataEntry.setNogoPolygons(response.getPolygons());
+        dataEntry.setNoGoMessage(response.getNoGoMessage());
+        dataEntry.setNoGoErrorCode(response.getNoGoErrorCode());
+    }
+
+    /**
+     * Returns the key of the slice in the response cache
+     */
+    static String cacheKey(double draught, Position northWest, Position southEast, Date from, Date to) {
+        return draught + ";" + northWest.getLatitude() + ";" + northWest.getLongitude() + ";" + southEast.getLatitude() + ";"
+                + southEast.getLongitude() + ";" + from.getTime() + ";" + to.getTime();
     }
 
     protected void updatePanelCompleteMultiple(int errorcode, List<NogoPolygon> polygons, DateTime validFrom, DateTime validTo,
@@ -200,17 +359,13 @@ public class NogoHandlerCommon extends MapHandlerChild {
 
     }
 
-    public synchronized void nogoRequestCompleted(NogoResponse response) {
-
-        NoGoDataEntry dataEntry = nogoData.get(0);
-
-        dataEntry.setNogoPolygons(response.getPolygons());
-        dataEntry.setNoGoMessage(response.getNoGoMessage());
-        dataEntry.setNoGoErrorCode(response.getNoGoErrorCode());
-
-        updatePanelCompleteSingle(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), validFrom, validTo, draught);
-
-        updateLayerSingleResult();
+    /**
+     * Called when the slices of a new request have been calculated, before any slice is passed on to the panel
+     *
+     * @param slices
+     *            the number of slices
+     */
+    protected void updatePanelSlices(int slices) {
 
     }
 
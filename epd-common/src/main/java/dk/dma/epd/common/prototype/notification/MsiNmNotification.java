@@ -226,119 +226,126 @@ public class MsiNmNotification extends Notification<MCMessage, Integer> {
      */
     public boolean nearNewRoute(Route route, Position mousePosition, Projection projection) {
 
+        // Go through each waypoint of the route to check if the MSI message should be visible.
+        // If the waypoint is not the last placed waypoint compare it to the next in line.
+        // Else compare it to the mouse location.
+        List<RouteWaypoint> waypoints = route.getWaypoints();
+        for (int i = 0; i < waypoints.size(); i++) {
+            Position next = (i == waypoints.size() - 1) ? mousePosition : waypoints.get(i + 1).getPos();
+            if (nearNewRouteLeg(waypoints.get(i).getPos(), next, projection)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns if the MSI-NM is close the the given leg of a new route
+     *
+     * @param from the start position of the leg
+     * @param to the end position of the leg, i.e. the next waypoint or the mouse position
+     * @param projection the projection
+     * @return if the MSI-NM is close the the leg
+     */
+    public boolean nearNewRouteLeg(Position from, Position to, Projection projection) {
+
         double visibilityFromNewWaypoint = EPD.getInstance().getSettings().getEnavSettings().getMsiVisibilityFromNewWaypoint();
 
-        // Check if MSI messages should be visible on route.
+        // Check if MSI messages should be visible on the leg.
         boolean visibleOnRoute = false;
 
-        // Go through each waypoint of the route to check if the MSI message should be visible.
-        for (int i = 0; !visibleOnRoute && i < route.getWaypoints().size(); i++) {
-
-            RouteWaypoint rWaypoint = route.getWaypoints().get(i);
-            Point2D pointA = null;
-            Point2D pointB = null;
-            Point2D pnt;
-
-            // If the waypoint is not the last placed waypoint compare it to the next in line.
-            // Else compare it to the mouse location.
-            if (rWaypoint == route.getWaypoints().getLast()) {
-                pointA = projection.forward(rWaypoint.getPos().getLatitude(), rWaypoint.getPos().getLongitude());
-                pointB = projection.forward(mousePosition.getLatitude(), mousePosition.getLongitude());
-            } else if (rWaypoint != route.getWaypoints().getLast()) {
-                RouteWaypoint nWaypoint = route.getWaypoints().get(i+1);
-                pointA = projection.forward(rWaypoint.getPos().getLatitude(), rWaypoint.getPos().getLongitude());
-                pointB = projection.forward(nWaypoint.getPos().getLatitude(), nWaypoint.getPos().getLongitude());
-            }
+        Point2D pointA = projection.forward(from.getLatitude(), from.getLongitude());
+        Point2D pointB = projection.forward(to.getLatitude(), to.getLongitude());
+        Point2D pnt;
 
-            // The slope of the line.
-            double slope = Math.round(
-                    ((pointB.getY() - pointA.getY()) / (pointB.getX() - pointA.getX())) * visibilityFromNewWaypoint);
-
-            // If the value of slope is more than the value of visibilityFromNewWaypoint,
-            // change the slop reverse the x and y axis.
-            if (Math.abs(slope) > visibilityFromNewWaypoint) {
-                double dy = Math.abs(pointB.getY()-pointA.getY());
-                slope = Math.round(((pointB.getX() - pointA.getX()) / (pointB.getY() - pointA.getY())) * visibilityFromNewWaypoint);
-                for (int j = 0; j*visibilityFromNewWaypoint < dy; j++) {
-                    pnt = pointA;
-
-                    // The first point should be placed a point where the mouse was clicked.
-                    if (j == 0) {
-                        visibleOnRoute = setMessageVisible(visibilityFromNewWaypoint, visibleOnRoute, projection, pnt);
-                        continue;
-                    }
+        // The slope of the line.
+        double slope = Math.round(
+                ((pointB.getY() - pointA.getY()) / (pointB.getX() - pointA.getX())) * visibilityFromNewWaypoint);
 
-                    //Mouse placed on the right side of the last placed waypoint.
-                    if (pointA.getX() <= pointB.getX()) {
-
-                        if (slope > 0) {
-                            pnt.setLocation(pointA.getX()+slope, pointA.getY()+visibilityFromNewWaypoint);
-                        } else if (slope < 0) {
-                            double posSlope = Math.abs(slope);
-                            pnt.setLocation(pointA.getX()+posSlope, pointA.getY()-visibilityFromNewWaypoint);
-                        }
-
-                        // mouse placed on the left side.
-                    } else if (pointA.getX() > pointB.getX()) {
-
-                        if (slope > 0) {
-                            pnt.setLocation(pointA.getX()-slope, pointA.getY()-visibilityFromNewWaypoint);
-                        } else if (slope < 0) {
-                            double posSlope = Math.abs(slope);
-                            pnt.setLocation(pointA.getX()-posSlope, pointA.getY()+visibilityFromNewWaypoint);
-                        }
+        // If the value of slope is more than the value of visibilityFromNewWaypoint,
+        // change the slop reverse the x and y axis.
+        if (Math.abs(slope) > visibilityFromNewWaypoint) {
+            double dy = Math.abs(pointB.getY()-pointA.getY());
+            slope = Math.round(((pointB.getX() - pointA.getX()) / (pointB.getY() - pointA.getY())) * visibilityFromNewWaypoint);
+            for (int j = 0; j*visibilityFromNewWaypoint < dy; j++) {
+                pnt = pointA;
+
+                // The first point should be placed a point where the mouse was clicked.
+                if (j == 0) {
+                    visibleOnRoute = setMessageVisible(visibilityFromNewWaypoint, visibleOnRoute, projection, pnt);
+                    continue;
+                }
+
+                //Mouse placed on the right side of the last placed waypoint.
+                if (pointA.getX() <= pointB.getX()) {
+
+                    if (slope > 0) {
+                        pnt.setLocation(pointA.getX()+slope, pointA.getY()+visibilityFromNewWaypoint);
+                    } else if (slope < 0) {
+                        double posSlope = Math.abs(slope);
+                        pnt.setLocation(pointA.getX()+posSlope, pointA.getY()-visibilityFromNewWaypoint);
                     }
 
-                    // Handles placing of point on a vertical line.
-                    if (pointA.getY() < pointB.getY() && slope == 0) {
-                        pnt.setLocation(pointA.getX(), pointA.getY()+visibilityFromNewWaypoint);
-                    } else if (pointA.getY() > pointB.getY() && slope == 0) {
-                        pnt.setLocation(pointA.getX(), pointA.getY()-visibilityFromNewWaypoint);
+                    // mouse placed on the left side.
+                } else if (pointA.getX() > pointB.getX()) {
+
+                    if (slope > 0) {
+                        pnt.setLocation(pointA.getX()-slope, pointA.getY()-visibilityFromNewWaypoint);
+                    } else if (slope < 0) {
+                        double posSlope = Math.abs(slope);
+                        pnt.setLocation(pointA.getX()-posSlope, pointA.getY()+visibilityFromNewWaypoint);
                     }
+                }
+
+                // Handles placing of point on a vertical line.
+                if (pointA.getY() < pointB.getY() && slope == 0) {
+                    pnt.setLocation(pointA.getX(), pointA.getY()+visibilityFromNewWaypoint);
+                } else if (pointA.getY() > pointB.getY() && slope == 0) {
+                    pnt.setLocation(pointA.getX(), pointA.getY()-visibilityFromNewWaypoint);
+                }
 
+                visibleOnRoute = setMessageVisible(visibilityFromNewWaypoint, visibleOnRoute, projection, pnt);
+            }
+        } else {
+            double dx = Math.abs(pointB.getX()-pointA.getX());
+            for (int j = 0; j*visibilityFromNewWaypoint < dx; j++) {
+                pnt = pointA;
+
+                if (j == 0) {
                     visibleOnRoute = setMessageVisible(visibilityFromNewWaypoint, visibleOnRoute, projection, pnt);
+                    continue;
                 }
-            } else {
-                double dx = Math.abs(pointB.getX()-pointA.getX());
-                for (int j = 0; j*visibilityFromNewWaypoint < dx; j++) {
-                    pnt = pointA;
-
-                    if (j == 0) {
-                        visibleOnRoute = setMessageVisible(visibilityFromNewWaypoint, visibleOnRoute, projection, pnt);
-                        continue;
-                    }
 
-                    // Mouse placed on the right side of the last placed waypoint.
-                    if (pointA.getX() <= pointB.getX()) {
-
-                        if (slope > 0) {
-                            pnt.setLocation(pointA.getX()+visibilityFromNewWaypoint, pointA.getY()+slope);
-                        } else if (slope < 0) {
-                            double posSlope = Math.abs(slope);
-                            pnt.setLocation(pointA.getX()+visibilityFromNewWaypoint, pointA.getY()-posSlope);
-                        }
-
-                        // Mouse placed on the left side of the last placed waypoint.
-                    } else if (pointA.getX() > pointB.getX()) {
-
-                        if (slope > 0) {
-                            pnt.setLocation(pointA.getX()-visibilityFromNewWaypoint, pointA.getY()-slope);
-                        } else if (slope < 0) {
-                            double posSlope = Math.abs(slope);
-                            pnt.setLocation(pointA.getX()-visibilityFromNewWaypoint, pointA.getY()+posSlope);
-                        }
+                // Mouse placed on the right side of the last placed waypoint.
+                if (pointA.getX() <= pointB.getX()) {
+
+                    if (slope > 0) {
+                        pnt.setLocation(pointA.getX()+visibilityFromNewWaypoint, pointA.getY()+slope);
+                    } else if (slope < 0) {
+                        double posSlope = Math.abs(slope);
+                        pnt.setLocation(pointA.getX()+visibilityFromNewWaypoint, pointA.getY()-posSlope);
                     }
 
-                    if (pointA.getX() < pointB.getX() &&
-                            slope == 0) {
-                        pnt.setLocation(pointA.getX()+visibilityFromNewWaypoint, pointA.getY());
-                    } else if (pointA.getX() > pointB.getX() &&
-                            slope == 0) {
-                        pnt.setLocation(pointA.getX()-visibilityFromNewWaypoint, pointA.getY());
+                    // Mouse placed on the left side of the last placed waypoint.
+                } else if (pointA.getX() > pointB.getX()) {
+
+                    if (slope > 0) {
+                        pnt.setLocation(pointA.getX()-visibilityFromNewWaypoint, pointA.getY()-slope);
+                    } else if (slope < 0) {
+                        double posSlope = Math.abs(slope);
+                        pnt.setLocation(pointA.getX()-visibilityFromNewWaypoint, pointA.getY()+posSlope);
                     }
+                }
 
-                    visibleOnRoute = setMessageVisible(visibilityFromNewWaypoint, visibleOnRoute, projection, pnt);
+                if (pointA.getX() < pointB.getX() &&
+                        slope == 0) {
+                    pnt.setLocation(pointA.getX()+visibilityFromNewWaypoint, pointA.getY());
+                } else if (pointA.getX() > pointB.getX() &&
+                        slope == 0) {
+                    pnt.setLocation(pointA.getX()-visibilityFromNewWaypoint, pointA.getY());
                 }
+
+                visibleOnRoute = setMessageVisible(visibilityFromNewWaypoint, visibleOnRoute, projection, pnt);
             }
         }
 
@@ -0,0 +1,687 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.route;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteLeg;
+import dk.dma.epd.common.prototype.model.route.RouteMetocSettings;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+
+/**
+ * Append-only journal used for persisting the routes of a route manager.
+ * <p>
+ * Each route is stored as a separately serialized record, and a save only appends the records of the routes that have
+ * been added or changed since the last save, along with the ids of removed routes and the route order when it has
+ * changed. Changed routes are detected by comparing a cheap fingerprint of the route fields, so unchanged routes, and
+ * their METOC forecasts in particular, are never re-serialized. When the journal has grown to more than twice the size
+ * of the live records, it is compacted into a new file holding only the current records.
+ * <p>
+ * The list returned by {@linkplain #load()} resolves its routes lazily, i.e. a route is only deserialized the first
+ * time it is accessed. The summary of a route not yet accessed is read from its record by
+ * {@linkplain #summary(List, int)}.
+ * <p>
+ * The journal consists of a header followed by records of the form:
+ * <ul>
+ * <li>{@code PUT}: id, length and {@linkplain RouteSummary} of the route, length and serialized route</li>
+ * <li>{@code REMOVE}: id</li>
+ * <li>{@code ORDER}: count and ids of the routes in list order</li>
+ * </ul>
+ * A record that was only partially written, e.g. when the application was killed during a save, is truncated at load.
+ * A record that cannot be deserialized is listed as an empty placeholder route, and its bytes are written back
+ * unchanged for as long as the placeholder is not edited or removed.
+ */
+@ThreadSafe
+public class RouteJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RouteJournal.class);
+
+    private static final int MAGIC = 0x45504452;
+    private static final int VERSION = 2;
+    /** Version without route summaries, which is rewritten at the first save */
+    private static final int VERSION_1 = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte ORDER = 3;
+
+    /** The journal is never compacted while smaller than this */
+    private static final long COMPACT_MIN_BYTES = 1024L * 1024L;
+
+    private final Path file;
+
+    /** The live records by id */
+    @GuardedBy("this")
+    private final Map<Long, Record> live = new LinkedHashMap<>();
+    /** The records of the resolved or saved routes */
+    @GuardedBy("this")
+    private final Map<Route, Record> records = new IdentityHashMap<>();
+    @GuardedBy("this")
+    private long[] order = new long[0];
+    @GuardedBy("this")
+    private long nextId = 1L;
+    @GuardedBy("this")
+    private long liveBytes;
+    @GuardedBy("this")
+    private long journalBytes;
+    @GuardedBy("this")
+    private DataOutputStream out;
+
+    /**
+     * Constructor
+     * 
+     * @param file
+     *            the journal file
+     */
+    public RouteJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns if the journal file exists
+     * 
+     * @return if the journal file exists
+     */
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Loads the journal and returns the list of routes, which are deserialized on first access
+     * 
+     * @return the list of routes
+     * @throws IOException
+     *             if the journal could not be read
+     */
+    public synchronized List<Route> load() throws IOException {
+        close();
+        live.clear();
+        records.clear();
+        order = new long[0];
+        nextId = 1L;
+        liveBytes = 0L;
+        journalBytes = 0L;
+
+        if (!Files.exists(file)) {
+            return new RouteList(new ArrayList<>());
+        }
+
+        long valid = HEADER_SIZE;
+        int version = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a route journal: " + file);
+            }
+            version = in.readInt();
+            if (version != VERSION && version != VERSION_1) {
+                throw new IOException("Unsupported route journal version " + version + ": " + file);
+            }
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                long id;
+                if (type == PUT) {
+                    id = in.readLong();
+                    byte[] header = null;
+                    if (version == VERSION) {
+                        header = new byte[in.readInt()];
+                        in.readFully(header);
+                    }
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    Record record = new Record(id, header, data);
+                    put(record);
+                    valid += 13 + (header != null ? 4 + header.length : 0) + data.length;
+                } else if (type == REMOVE) {
+                    id = in.readLong();
+                    remove(id);
+                    valid += 9;
+                } else if (type == ORDER) {
+                    long[] ids = new long[in.readInt()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = in.readLong();
+                    }
+                    id = 0L;
+                    order = ids;
+                    valid += 5 + 8L * ids.length;
+                } else {
+                    throw new EOFException("Unknown record type " + type);
+                }
+                nextId = Math.max(nextId, id + 1);
+            }
+        } catch (EOFException e) {
+            LOG.warn("Truncating incomplete route journal record at offset " + valid);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        // Force a rewrite of an old journal at the next save
+        journalBytes = (version == VERSION) ? valid : 0L;
+
+        // Routes put after the last order record, e.g. if a save was interrupted, are appended
+        List<Object> slots = new ArrayList<>(live.size());
+        Set<Long> ordered = new HashSet<>();
+        for (long id : order) {
+            Record record = live.get(id);
+            if (record != null && ordered.add(id)) {
+                slots.add(record);
+            }
+        }
+        for (Record record : live.values()) {
+            if (!ordered.contains(record.id)) {
+                slots.add(record);
+            }
+        }
+        order = ids(slots);
+        return new RouteList(slots);
+    }
+
+    /**
+     * Persists the changes of the given routes since the last save or load.
+     * <p>
+     * If the list is not the one returned by {@linkplain #load()}, all routes not previously saved with this journal
+     * are written, e.g. when migrating from another store.
+     * 
+     * @param routes
+     *            the current routes
+     * @return if the routes were written to the journal. On failure, the whole journal is rewritten at the next save
+     */
+    public boolean save(List<Route> routes) {
+        // Snapshot the list outside the journal lock, since resolving routes locks the list before the journal
+        Object[] slots = (routes instanceof RouteList) ? ((RouteList) routes).slots() : routes.toArray();
+
+        synchronized (this) {
+            try {
+                boolean compact = out == null && journalBytes == 0L;
+                if (!compact) {
+                    openOutput();
+                }
+
+                long[] ids = new long[slots.length];
+                Set<Long> current = new HashSet<>();
+                for (int i = 0; i < slots.length; i++) {
+                    Record record;
+                    if (slots[i] instanceof Record) {
+                        // Not resolved, hence unchanged
+                        record = (Record) slots[i];
+                    } else {
+                        Route route = (Route) slots[i];
+                        record = records.get(route);
+                        long fingerprint = fingerprint(route);
+                        if (record == null || record.fingerprint != fingerprint) {
+                            byte[] header = RouteSummary.of(route).toBytes();
+                            byte[] data = serialize(route);
+                            Record updated = new Record(record != null ? record.id : nextId++, header, data);
+                            updated.resolved(route, fingerprint);
+                            put(updated);
+                            if (!compact) {
+                                writePut(updated.id, header, data);
+                            }
+                            record = updated;
+                        }
+                    }
+                    ids[i] = record.id;
+                    current.add(record.id);
+                }
+
+                for (Iterator<Long> it = live.keySet().iterator(); it.hasNext();) {
+                    Long id = it.next();
+                    if (!current.contains(id)) {
+                        Record record = live.get(id);
+                        it.remove();
+                        discard(record);
+                        if (!compact) {
+                            out.writeByte(REMOVE);
+                            out.writeLong(id);
+                            journalBytes += 9;
+                        }
+                    }
+                }
+
+                if (!Arrays.equals(order, ids)) {
+                    order = ids;
+                    if (!compact) {
+                        writeOrder(ids);
+                    }
+                }
+
+                if (compact || journalBytes > COMPACT_MIN_BYTES && journalBytes > 2 * liveBytes) {
+                    compact();
+                } else {
+                    out.flush();
+                }
+                return true;
+            } catch (IOException e) {
+                LOG.error("Failed to save route journal: " + e.getMessage());
+                close();
+                // Force a rewrite of the journal at the next save
+                journalBytes = 0L;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the live records
+     * 
+     * @throws IOException
+     *             if the journal could not be written
+     */
+    public synchronized void compact() throws IOException {
+        close();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long bytes = HEADER_SIZE;
+        try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            tmpOut.writeInt(MAGIC);
+            tmpOut.writeInt(VERSION);
+            for (Record record : live.values()) {
+                byte[] header;
+                byte[] data;
+                if (record.data != null) {
+                    // Not resolved or unreadable, hence written back as is
+                    header = (record.header != null) ? record.header : summary(record.data).toBytes();
+                    data = record.data;
+                } else {
+                    header = RouteSummary.of(record.route).toBytes();
+                    data = serialize(record.route);
+                }
+                tmpOut.writeByte(PUT);
+                tmpOut.writeLong(record.id);
+                tmpOut.writeInt(header.length);
+                tmpOut.write(header);
+                tmpOut.writeInt(data.length);
+                tmpOut.write(data);
+                bytes += 17 + header.length + data.length;
+            }
+            tmpOut.writeByte(ORDER);
+            tmpOut.writeInt(order.length);
+            for (long id : order) {
+                tmpOut.writeLong(id);
+            }
+            bytes += 5 + 8L * order.length;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        LOG.info("Compacted route journal from " + journalBytes + " to " + bytes + " bytes");
+        journalBytes = bytes;
+    }
+
+    /**
+     * Closes the journal file
+     */
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close route journal: " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Returns the size of the journal file in bytes
+     * 
+     * @return the size of the journal file in bytes
+     */
+    public synchronized long getJournalSize() {
+        return journalBytes;
+    }
+
+    /**
+     * Returns the number of routes of the journal that have been deserialized or saved since the load
+     * 
+     * @return the number of routes deserialized or saved since the load
+     */
+    synchronized int getResolvedCount() {
+        return records.size();
+    }
+
+    /**
+     * Returns the summary of the route with the given index in the list. If the list was returned by
+     * {@linkplain #load()}, and the route has not yet been accessed, the summary is read from the route record without
+     * deserializing the route.
+     * 
+     * @param routes
+     *            the list of routes
+     * @param index
+     *            the index of the route
+     * @return the summary of the route
+     */
+    public static RouteSummary summary(List<Route> routes, int index) {
+        if (routes instanceof RouteList) {
+            return ((RouteList) routes).summary(index);
+        }
+        return RouteSummary.of(routes.get(index));
+    }
+
+    /**
+     * Deserializes the route of the record and registers it with the journal
+     */
+    private synchronized Route resolve(Record record) {
+        if (record.route != null) {
+            return record.route;
+        }
+        Route route;
+        try {
+            route = deserialize(record.data);
+            record.resolved(route, fingerprint(route));
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOG.error("Failed to load route " + record.id + " from route journal: " + e.getMessage());
+            // The record is kept as is, unless the placeholder is edited or removed
+            route = unreadableRoute();
+            record.unreadable(route, fingerprint(route));
+        }
+        records.put(route, record);
+        return route;
+    }
+
+    /**
+     * Returns the summary of a record without a stored summary, i.e. from a journal of the first version
+     */
+    private static RouteSummary summary(byte[] data) {
+        try {
+            return RouteSummary.of(deserialize(data));
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return RouteSummary.of(unreadableRoute());
+        }
+    }
+
+    private static Route deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (InputStream in = new ByteArrayInputStream(data); ObjectInputStream objectIn = new ObjectInputStream(in)) {
+            return (Route) objectIn.readObject();
+        }
+    }
+
+    private static Route unreadableRoute() {
+        Route route = new Route();
+        route.setName("Unreadable route");
+        return route;
+    }
+
+    private void put(Record record) {
+        Record old = live.put(record.id, record);
+        if (old != null) {
+            discard(old);
+        }
+        if (record.route != null) {
+            records.put(record.route, record);
+        }
+        liveBytes += record.length;
+    }
+
+    private void remove(long id) {
+        Record old = live.remove(id);
+        if (old != null) {
+            discard(old);
+        }
+    }
+
+    private void discard(Record record) {
+        liveBytes -= record.length;
+        if (record.route != null && records.get(record.route) == record) {
+            records.remove(record.route);
+        }
+    }
+
+    private void openOutput() throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+        }
+    }
+
+    private void writePut(long id, byte[] header, byte[] data) throws IOException {
+        out.writeByte(PUT);
+        out.writeLong(id);
+        out.writeInt(header.length);
+        out.write(header);
+        out.writeInt(data.length);
+        out.write(data);
+        journalBytes += 17 + header.length + data.length;
+    }
+
+    private void writeOrder(long[] ids) throws IOException {
+        out.writeByte(ORDER);
+        out.writeInt(ids.length);
+        for (long id : ids) {
+            out.writeLong(id);
+        }
+        journalBytes += 5 + 8L * ids.length;
+    }
+
+    private static long[] ids(List<Object> slots) {
+        long[] ids = new long[slots.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ((Record) slots.get(i)).id;
+        }
+        return ids;
+    }
+
+    private static byte[] serialize(Route route) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(route);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns a fingerprint of the persisted fields of the route, which changes whenever the route is edited.
+     * <p>
+     * The METOC forecast is compared by identity, since it is always replaced rather than modified.
+     * 
+     * @param route
+     *            the route
+     * @return the fingerprint of the route
+     */
+    static long fingerprint(Route route) {
+        long h = route.getClass().getName().hashCode();
+        h = mix(h, Objects.hashCode(route.getName()));
+        h = mix(h, Objects.hashCode(route.getDeparture()));
+        h = mix(h, Objects.hashCode(route.getDestination()));
+        h = mix(h, route.isVisible() ? 1 : 0);
+        h = mix(h, time(route.getStarttime()));
+        h = mix(h, System.identityHashCode(route.getMetocForecast()));
+        h = mix(h, time(route.getMetocStarttime()));
+        h = mix(h, time(route.getMetocEta()));
+        h = mix(h, route.isSafeHaven() ? 1 : 0);
+        h = mix(h, route.isStccApproved() ? 1 : 0);
+        h = mix(h, route.getStrategicRouteId());
+        h = mix(h, Objects.hashCode(route.getEtaCalculationType()));
+
+        RouteMetocSettings metocSettings = route.getRouteMetocSettings();
+        if (metocSettings != null) {
+            h = mix(h, metocSettings.isShowRouteMetoc() ? 1 : 0);
+            h = mix(h, metocSettings.getInterval());
+            h = mix(h, Objects.hashCode(metocSettings.getDataTypes()));
+            h = mix(h, Objects.hashCode(metocSettings.getWindWarnLimit()));
+            h = mix(h, Objects.hashCode(metocSettings.getCurrentWarnLimit()));
+            h = mix(h, Objects.hashCode(metocSettings.getWaveWarnLimit()));
+            h = mix(h, Objects.hashCode(metocSettings.getProvider()));
+        }
+
+        List<RouteWaypoint> waypoints = route.getWaypoints();
+        h = mix(h, waypoints.size());
+        for (RouteWaypoint wp : waypoints) {
+            h = mix(h, Objects.hashCode(wp.getName()));
+            if (wp.getPos() != null) {
+                h = mix(h, Double.doubleToLongBits(wp.getPos().getLatitude()));
+                h = mix(h, Double.doubleToLongBits(wp.getPos().getLongitude()));
+            }
+            h = mix(h, Objects.hashCode(wp.getTurnRad()));
+            h = mix(h, Objects.hashCode(wp.getRot()));
+            RouteLeg leg = wp.getOutLeg();
+            if (leg != null) {
+                h = mix(h, Double.doubleToLongBits(leg.getSpeed()));
+                h = mix(h, Objects.hashCode(leg.getHeading()));
+                h = mix(h, Objects.hashCode(leg.getXtdStarboard()));
+                h = mix(h, Objects.hashCode(leg.getXtdPort()));
+                h = mix(h, Double.doubleToLongBits(leg.getSFLen()));
+            }
+        }
+        return h;
+    }
+
+    private static long time(Date date) {
+        return (date != null) ? date.getTime() : Long.MIN_VALUE;
+    }
+
+    private static long mix(long h, long v) {
+        h = (h ^ v) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * A route record of the journal
+     */
+    private static final class Record {
+        final long id;
+        final int length;
+        /** The stored route summary and serialized route, until resolved, or for good if unreadable */
+        byte[] header;
+        byte[] data;
+        /** The decoded route summary, or null if resolved or not stored */
+        RouteSummary summary;
+        Route route;
+        long fingerprint;
+
+        Record(long id, byte[] header, byte[] data) {
+            this.id = id;
+            this.header = header;
+            this.data = data;
+            this.length = (header != null ? header.length : 0) + data.length;
+            if (header != null) {
+                try {
+                    summary = RouteSummary.fromBytes(header);
+                } catch (IOException e) {
+                    LOG.warn("Ignoring invalid summary of route " + id + " in route journal");
+                }
+            }
+        }
+
+        void resolved(Route route, long fingerprint) {
+            this.route = route;
+            this.fingerprint = fingerprint;
+            this.header = null;
+            this.data = null;
+            this.summary = null;
+        }
+
+        void unreadable(Route placeholder, long fingerprint) {
+            this.route = placeholder;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * List of routes, holding the records of routes that have not yet been accessed
+     */
+    private final class RouteList extends AbstractList<Route> {
+
+        @GuardedBy("this")
+        private final List<Object> slots;
+
+        RouteList(List<Object> slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public synchronized Route get(int index) {
+            Object slot = slots.get(index);
+            if (slot instanceof Record) {
+                Route route = resolve((Record) slot);
+                slots.set(index, route);
+                return route;
+            }
+            return (Route) slot;
+        }
+
+        @Override
+        public synchronized int size() {
+            return slots.size();
+        }
+
+        @Override
+        public synchronized Route set(int index, Route route) {
+            Route old = get(index);
+            slots.set(index, route);
+            return old;
+        }
+
+        @Override
+        public synchronized void add(int index, Route route) {
+            slots.add(index, route);
+            modCount++;
+        }
+
+        @Override
+        public synchronized Route remove(int index) {
+            Route old = get(index);
+            slots.remove(index);
+            modCount++;
+            return old;
+        }
+
+        synchronized RouteSummary summary(int index) {
+            Object slot = slots.get(index);
+            if (slot instanceof Record && ((Record) slot).summary != null) {
+                return ((Record) slot).summary;
+            }
+            return RouteSummary.of(get(index));
+        }
+
+        synchronized Object[] slots() {
+            return slots.toArray();
+        }
+    }
+}
@@ -15,12 +15,18 @@
 package dk.dma.epd.common.prototype.route;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +48,8 @@ import dk.dma.epd.common.prototype.model.route.RoutesUpdateEvent;
 import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
-import dk.dma.epd.common.util.Util;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
 import dk.frv.enav.common.xml.metoc.MetocForecast;
 
 /**
@@ -72,7 +79,8 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
      */
     public RouteManagerCommon() {
         enavSettings = EPD.getInstance().getSettings().getEnavSettings();
-        EPD.startThread(this, "RouteManager");
+        // Polls for METOC, and therefore blocks on the shore services
+        TaskManager.getInstance().scheduleWithFixedDelay(Pool.IO, "RouteManager", this, 10, 10, TimeUnit.SECONDS);
     }
 
     /**************************************/
@@ -192,14 +200,30 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
      */
     public synchronized List<Route> getVisibleRoutes() {
         List<Route> visibleRoutes = new ArrayList<>();
-        for (Route route : routes) {
-            if (route.isVisible()) {
-                visibleRoutes.add(route);
+        for (int i = 0; i < routes.size(); i++) {
+            // Check the summary first, to avoid loading invisible routes
+            if (RouteJournal.summary(routes, i).isVisible()) {
+                visibleRoutes.add(routes.get(i));
             }
         }
         return visibleRoutes;
     }
 
+    /**
+     * Returns the summary of the route with the given index. The summary of a route that has not been loaded yet is
+     * returned without loading the route.
+     * 
+     * @param index
+     *            the index of the route
+     * @return the summary of the route with the given index
+     */
+    public synchronized RouteSummary getRouteSummary(int index) {
+        if (index == activeRouteIndex) {
+            return RouteSummary.of(activeRoute);
+        }
+        return RouteJournal.summary(routes, index);
+    }
+
     /**
      * Sets the given routes as the current list of routes
      * 
@@ -272,14 +296,12 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
      */
     public void hideInactiveRoutes() {
         boolean visibilityChanged = false;
-        int routeIndex = 0;
         synchronized (this) {
-            for (Route route : routes) {
-                if (routeIndex != activeRouteIndex && route.isVisible()) {
-                    route.setVisible(false);
+            for (int routeIndex = 0; routeIndex < routes.size(); routeIndex++) {
+                if (routeIndex != activeRouteIndex && RouteJournal.summary(routes, routeIndex).isVisible()) {
+                    routes.get(routeIndex).setVisible(false);
                     visibilityChanged = true;
                 }
-                routeIndex++;
             }
         }
         if (visibilityChanged) {
@@ -494,10 +516,12 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
         boolean visualUpdate = false;
 
         synchronized (this) {
-            for (Route route : routes) {
-                if (route.getMetocForecast() == null) {
+            for (int i = 0; i < routes.size(); i++) {
+                // Check the summary first, to avoid loading routes without METOC
+                if (!RouteJournal.summary(routes, i).hasMetoc()) {
                     continue;
                 }
+                Route route = routes.get(i);
                 if (isMetocOld(route) || !route.isMetocValid(enavSettings.getMetocTimeDiffTolerance())) {
                     if (route.isVisible() && route.getRouteMetocSettings().isShowRouteMetoc()) {
                         visualUpdate = true;
@@ -594,27 +618,7 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     public void loadFromFile(File file) throws RouteLoadException {
         LOG.debug("Load route from file: " + file.getAbsolutePath());
         // Create new route instance
-        Route route;
-
-        // Some pertinacious loading
-        String ext = "";
-        int mid = file.getName().lastIndexOf('.');
-        ext = file.getName().substring(mid + 1, file.getName().length()).toUpperCase();
-        if (ext.equals("TXT")) {
-            // Load simple from file
-            route = RouteLoader.loadSimple(file);
-        } else if (ext.equals("ROU")) {
-            // Load ECDIS900 V3 route
-            route = RouteLoader.loadRou(file, EPD.getInstance().getSettings().getNavSettings());
-        } else if (ext.equals("RT3")) {
-            // Load Navisailor 3000 route
-            route = RouteLoader.loadRt3(file, EPD.getInstance().getSettings().getNavSettings());
-        } else if (ext.equals("KML")) {
-            // Load from KML
-            route = RouteLoader.loadKml(file, EPD.getInstance().getSettings().getNavSettings());
-        } else {
-            route = RouteLoader.pertinaciousLoad(file, EPD.getInstance().getSettings().getNavSettings());
-        }
+        Route route = RouteLoader.load(file, EPD.getInstance().getSettings().getNavSettings());
 
         // Add route to list
         synchronized (this) {
@@ -624,6 +628,55 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
         notifyListeners(RoutesUpdateEvent.ROUTE_ADDED);
     }
 
+    /**
+     * Loads routes from the given files, parsing the files in parallel.<br>
+     * The file formats are determined as in {@linkplain #loadFromFile(File)}.
+     * <p>
+     * The routes are added in the order of the files, and listeners are notified once. Files that fail to load are
+     * skipped.
+     * 
+     * @param files
+     *            the route files
+     * @return the files that failed to load, along with the error
+     */
+    public Map<File, RouteLoadException> loadFromFiles(List<File> files) {
+        LOG.debug("Load " + files.size() + " routes from files");
+        Map<File, RouteLoadException> failures = new LinkedHashMap<>();
+        List<Route> loaded = RouteLoader.loadAll(files, EPD.getInstance().getSettings().getNavSettings(), failures);
+
+        if (!loaded.isEmpty()) {
+            // Add routes to list
+            synchronized (this) {
+                routes.addAll(loaded);
+            }
+            // Notify of new routes
+            notifyListeners(RoutesUpdateEvent.ROUTE_ADDED);
+        }
+        return failures;
+    }
+
+    /**
+     * Loads all route files of the given folder, parsing the files in parallel.
+     * 
+     * @param folder
+     *            the folder containing the route files
+     * @return the files that failed to load, along with the error
+     * @see #loadFromFiles(List)
+     */
+    public Map<File, RouteLoadException> loadFromFolder(File folder) {
+        File[] files = folder.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && !file.isHidden();
+            }
+        });
+        if (files == null) {
+            return Collections.emptyMap();
+        }
+        Arrays.sort(files);
+        return loadFromFiles(Arrays.asList(files));
+    }
+
     /**
      * Saves the current set of routes to file
      */
@@ -663,14 +716,11 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     public void run() {
 
         // Maintanaince routines
-        while (true) {
-            Util.sleep(10000);
 
-            // Active route poll for METOC
-            pollForMetoc();
+        // Active route poll for METOC
+        pollForMetoc();
 
-            // Check validity of METOC for all routes
-            checkValidMetoc();
-        }
+        // Check validity of METOC for all routes
+        checkValidMetoc();
     }
 }
@@ -0,0 +1,146 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.route;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.epd.common.prototype.model.route.Route;
+
+/**
+ * The list-level fields of a route, i.e. the fields needed for listing the routes and for deciding whether to display
+ * them.
+ * <p>
+ * The {@linkplain RouteJournal} stores the summary in the header of each route record, so that the summary of a route
+ * can be read without deserializing the route.
+ */
+@Immutable
+public final class RouteSummary {
+
+    private static final int VISIBLE = 1;
+    private static final int STCC_APPROVED = 2;
+    private static final int METOC = 4;
+    private static final int SHOW_METOC = 8;
+
+    private final String name;
+    private final String destination;
+    private final int flags;
+
+    private RouteSummary(String name, String destination, int flags) {
+        this.name = name;
+        this.destination = destination;
+        this.flags = flags;
+    }
+
+    /**
+     * Returns the summary of the given route
+     * 
+     * @param route
+     *            the route
+     * @return the summary of the route
+     */
+    public static RouteSummary of(Route route) {
+        int flags = 0;
+        if (route.isVisible()) {
+            flags |= VISIBLE;
+        }
+        if (route.isStccApproved()) {
+            flags |= STCC_APPROVED;
+        }
+        if (route.getMetocForecast() != null) {
+            flags |= METOC;
+        }
+        // Routes without METOC settings get the default settings when displayed
+        if (route.getRouteMetocSettings() == null || route.getRouteMetocSettings().isShowRouteMetoc()) {
+            flags |= SHOW_METOC;
+        }
+        return new RouteSummary(route.getName(), route.getDestination(), flags);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public boolean isVisible() {
+        return (flags & VISIBLE) != 0;
+    }
+
+    public boolean isStccApproved() {
+        return (flags & STCC_APPROVED) != 0;
+    }
+
+    /**
+     * Returns if the route has a METOC forecast
+     * 
+     * @return if the route has a METOC forecast
+     */
+    public boolean hasMetoc() {
+        return (flags & METOC) != 0;
+    }
+
+    /**
+     * Returns if the METOC forecast of the route may be displayed, i.e. if the route is visible, has a forecast, and
+     * the METOC settings of the route do not hide it
+     * 
+     * @return if the METOC forecast of the route may be displayed
+     */
+    public boolean isMetocShown() {
+        return (flags & (VISIBLE | METOC | SHOW_METOC)) == (VISIBLE | METOC | SHOW_METOC);
+    }
+
+    /**
+     * Encodes the summary as stored in the route journal
+     */
+    byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(flags);
+            writeString(out, name);
+            writeString(out, destination);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a summary stored in the route journal
+     */
+    static RouteSummary fromBytes(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int flags = in.readUnsignedByte();
+            String name = readString(in);
+            String destination = readString(in);
+            return new RouteSummary(name, destination, flags);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,158 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.task.TaskManager;
+
+/**
+ * A single selector thread serving the channels of all NIO based NMEA sensors, run as a dedicated thread of the
+ * {@linkplain TaskManager}.
+ * <p>
+ * Channels are read into one direct buffer owned by the selector thread, and handed to the {@linkplain ChannelReader} of
+ * the channel, which is expected to frame and dispatch the data before returning.
+ */
+@ThreadSafe
+public final class NmeaChannelSelector implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaChannelSelector.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static NmeaChannelSelector instance;
+
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final ConcurrentLinkedQueue<Runnable> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Reads from a registered channel. All methods are called by the selector thread.
+     */
+    public interface ChannelReader {
+
+        /**
+         * Called when the channel is readable
+         *
+         * @param buffer
+         *            a cleared buffer to read into. Must not be retained after returning
+         * @return false if the end of the stream has been reached
+         */
+        boolean read(ByteBuffer buffer) throws IOException;
+
+        /**
+         * Called when the channel has been deregistered, due to end of stream or an error
+         *
+         * @param cause
+         *            the error, or null if the end of the stream was reached
+         */
+        void closed(IOException cause);
+    }
+
+    private NmeaChannelSelector() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * Returns the shared selector, creating and starting it on first use
+     *
+     * @return the shared selector
+     */
+    public static synchronized NmeaChannelSelector getInstance() throws IOException {
+        if (instance == null) {
+            instance = new NmeaChannelSelector();
+            TaskManager.getInstance().startThread("NmeaChannelSelector", instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the channel for reading. The channel is put in non-blocking mode.
+     * <p>
+     * To deregister the channel, simply close it.
+     *
+     * @param channel
+     *            the channel to register
+     * @param reader
+     *            the reader of the channel
+     */
+    public void register(final SelectableChannel channel, final ChannelReader reader) throws IOException {
+        channel.configureBlocking(false);
+        pendingRegistrations.add(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    channel.register(selector, SelectionKey.OP_READ, reader);
+                } catch (ClosedChannelException e) {
+                    reader.closed(e);
+                }
+            }
+        });
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        // Interrupted when the task manager is shut down
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                LOG.error("NMEA channel selector failed", e);
+                return;
+            }
+
+            Runnable registration;
+            while ((registration = pendingRegistrations.poll()) != null) {
+                registration.run();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ChannelReader reader = (ChannelReader) key.attachment();
+                try {
+                    if (!key.isValid()) {
+                        reader.closed(null);
+                        continue;
+                    }
+                    readBuffer.clear();
+                    if (!reader.read(readBuffer)) {
+                        key.cancel();
+                        reader.closed(null);
+                    }
+                } catch (IOException e) {
+                    key.cancel();
+                    reader.closed(e);
+                } catch (RuntimeException e) {
+                    LOG.error("Failed handling NMEA channel data", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.status.IStatusComponent;
+import dk.dma.epd.common.prototype.status.NmeaIngestStatus;
+import dk.dma.epd.common.prototype.task.TaskManager;
+
+/**
+ * The decode stage of an {@linkplain NmeaSensor}.
+ * <p>
+ * Tasks are submitted by the reader thread of the sensor along with a partition key, typically the MMSI of the AIS
+ * message to decode. Each worker has its own bounded queue, and tasks with the same key are always executed by the same
+ * worker, in the order they were submitted. The workers are dedicated threads of the {@linkplain TaskManager}.
+ * <p>
+ * When the queue of a worker is full, the {@linkplain OverflowPolicy} decides whether the reader thread blocks or a task
+ * is dropped. Dropped tasks are counted and reported through the {@linkplain NmeaIngestStatus}.
+ */
+@ThreadSafe
+public class NmeaDecodePipeline implements IStatusComponent {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaDecodePipeline.class);
+
+    /**
+     * Defines what happens when a task is submitted to a worker with a full queue
+     */
+    public enum OverflowPolicy {
+        /** Block the reader thread until there is room in the queue */
+        BLOCK,
+        /** Drop the submitted task */
+        DROP_NEWEST,
+        /** Drop the oldest queued task to make room for the submitted task */
+        DROP_OLDEST
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private final String name;
+    private final Worker[] workers;
+    private final OverflowPolicy overflowPolicy;
+    private final NmeaIngestStatus status;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong lastDropTime = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Constructor
+     *
+     * @param name
+     *            the name used for the worker threads and the status
+     * @param workerCount
+     *            the number of workers
+     * @param queueCapacity
+     *            the capacity of the queue of each worker
+     * @param overflowPolicy
+     *            the policy to apply when a queue is full
+     */
+    public NmeaDecodePipeline(String name, int workerCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (workerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid worker count or queue capacity");
+        }
+        this.name = name;
+        this.overflowPolicy = overflowPolicy;
+        this.status = new NmeaIngestStatus(name, this);
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(queueCapacity);
+            TaskManager.getInstance().startThread(name + " decoder " + i, workers[i]);
+        }
+    }
+
+    /**
+     * Returns the default number of workers for the available processors
+     *
+     * @return the default number of workers
+     */
+    public static int defaultWorkerCount() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Extracts the MMSI from the payload of the given VDM sentences without decoding the full message. Used as partition
+     * key, so that messages from the same vessel are handled in order.
+     *
+     * @param vdm
+     *            the VDM sentence(s), as read
+     * @return the MMSI, or 0 if it could not be extracted
+     */
+    public static long getMmsi(String vdm) {
+        int start = Math.max(vdm.indexOf("VDM,"), vdm.indexOf("VDO,"));
+        if (start < 0) {
+            return 0L;
+        }
+
+        // The payload is the fifth field after the talker and sentence type
+        int pos = start;
+        for (int i = 0; i < 5; i++) {
+            pos = vdm.indexOf(',', pos) + 1;
+            if (pos == 0) {
+                return 0L;
+            }
+        }
+
+        // Message id (6 bits), repeat indicator (2 bits) and MMSI (30 bits) are held by the first 7 characters
+        long bits = 0L;
+        for (int i = 0; i < 7; i++) {
+            if (pos + i >= vdm.length()) {
+                return 0L;
+            }
+            int value = vdm.charAt(pos + i) - 48;
+            if (value > 40) {
+                value -= 8;
+            }
+            if (value < 0 || value > 63) {
+                return 0L;
+            }
+            bits = (bits << 6) | value;
+        }
+        return (bits >> 4) & 0x3FFFFFFFL;
+    }
+
+    /**
+     * Submits the task for execution by the worker associated with the given key
+     *
+     * @param key
+     *            the partition key, e.g. the MMSI
+     * @param task
+     *            the task to execute
+     * @return if the task was queued. Returns false if the task was dropped
+     */
+    public boolean submit(long key, Runnable task) {
+        if (shutdown) {
+            drop();
+            return false;
+        }
+        submitted.incrementAndGet();
+        BlockingQueue<Runnable> queue = workers[(int) ((key & Long.MAX_VALUE) % workers.length)].queue;
+
+        switch (overflowPolicy) {
+        case BLOCK:
+            try {
+                queue.put(task);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drop();
+                return false;
+            }
+        case DROP_OLDEST:
+            while (!queue.offer(task)) {
+                if (queue.poll() != null) {
+                    drop();
+                }
+            }
+            return true;
+        default:
+            if (queue.offer(task)) {
+                return true;
+            }
+            drop();
+            return false;
+        }
+    }
+
+    /**
+     * Counts a dropped task
+     */
+    private void drop() {
+        dropped.incrementAndGet();
+        lastDropTime.set(System.currentTimeMillis());
+    }
+
+    /**
+     * Stops the pipeline. Queued tasks are still executed before the workers terminate.
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Returns the name of the pipeline
+     *
+     * @return the name of the pipeline
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of workers
+     *
+     * @return the number of workers
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Returns the overflow policy
+     *
+     * @return the overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Returns the total number of tasks currently queued
+     *
+     * @return the number of queued tasks
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (Worker worker : workers) {
+            size += worker.queue.size();
+        }
+        return size;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the time of the most recently dropped task
+     *
+     * @return the time of the most recently dropped task in milliseconds, or 0 if no task has been dropped
+     */
+    public long getLastDropTime() {
+        return lastDropTime.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NmeaIngestStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * A worker executing the tasks of its queue in order
+     */
+    private final class Worker implements Runnable {
+
+        final BlockingQueue<Runnable> queue;
+
+        Worker(int queueCapacity) {
+            queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown || !queue.isEmpty()) {
+                Runnable task;
+                try {
+                    task = queue.poll(500, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == null) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    LOG.error("Failed handling NMEA data in " + name, e);
+                } finally {
+                    processed.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -15,9 +15,14 @@
 package dk.dma.epd.common.prototype.sensor.nmea;
 
 import java.awt.Frame;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JOptionPane;
 
@@ -35,35 +40,49 @@ import dk.dma.epd.common.util.Util;
 
 
 /**
- * NMEA sensor reading from file
+ * NMEA sensor reading from file.
+ * <p>
+ * The file is memory mapped and indexed by {@linkplain NmeaReplayIndex}, which allows seeking to an arbitrary time of
+ * the recording with {@linkplain #seek(Date)}. Replay may be paced according to the replay speedup or run as fast as
+ * possible.
  */
 @ThreadSafe
 public class NmeaFileSensor extends NmeaSensor {
     
     private static final Logger LOG = LoggerFactory.getLogger(NmeaFileSensor.class);
     
+    /** The number of bytes framed between checks for stop and seek requests */
+    private static final int SLICE_SIZE = 4096;
+
     private final String filename;
-    private InputStream inputStream;
+    private volatile NmeaReplayIndex replayIndex;
     private volatile Frame frame;
+    private final AtomicReference<Date> seekTime = new AtomicReference<>();
     
     public NmeaFileSensor(String filename, SensorSettings sensorSettings) {
         LOG.info("Using AIS replay file: " + filename);
         this.filename = filename;
         setReplay(true);
+        // Replay must not lose messages, so throttle the reader rather than dropping
+        setOverflowPolicy(NmeaDecodePipeline.OverflowPolicy.BLOCK);
         setReplaySpeedup(sensorSettings.getReplaySpeedup());
+        setReplayAsFastAsPossible(sensorSettings.isReplayAsFastAsPossible());
         setReplayStartDate(sensorSettings.getReplayStartDate());
         LOG.info("Replay start date: " + sensorSettings.getReplayStartDate());
     }
 
     @Override
     public void run() {
-        // Open file
-        inputStream = null;
+        // Open file and get the index
+        File file = new File(filename);
+        if (!file.canRead()) {
+            LOG.error("Failed to open replay file: " + filename);
+            return;
+        }
         try {
-            inputStream = new FileInputStream(filename);
+            replayIndex = NmeaReplayIndex.get(file);
         } catch (IOException e) {
-            LOG.error("Failed to open replay file: " + filename + ": " + e.getMessage());
-            return;
+            LOG.error("Failed to index replay file: " + filename + ": " + e.getMessage());
         }
         
         // Wait for frame and confirmation
@@ -73,30 +92,113 @@ public class NmeaFileSensor extends NmeaSensor {
         Util.sleep(5000);
         JOptionPane.showMessageDialog(frame, "Start replay");        
         
+        // Skip directly to the replay start date
+        if (getReplayStartDate() != null) {
+            seekTime.compareAndSet(null, getReplayStartDate());
+        }
         
         // Read
         try {
-            readLoop(inputStream);
+            replay(file);
         } catch (IOException e) {
             LOG.error("Error while reading replay file: " + filename + ": " + e.getMessage());
         }
         
-        long dataElapsed = getDataEnd().getTime() - getDataStart().getTime();
-        long realElapsed = (getReplayEnd().getTime() - getReplayStart().getTime()) * getReplaySpeedup();
+        if (getDataStart() != null && getReplayStart() != null) {
+            long dataElapsed = getDataEnd().getTime() - getDataStart().getTime();
+            long realElapsed = (getReplayEnd().getTime() - getReplayStart().getTime()) * getReplaySpeedup();
                 
-        LOG.info("Replay data start: " + getDataStart() + " end: " + getDataEnd() + " elapsed: " + dataElapsed / 1000);
-        LOG.info("Replay real start: " + getReplayStart() + " end: " + getReplayEnd() + " elapsed: " + realElapsed / 1000);
+            LOG.info("Replay data start: " + getDataStart() + " end: " + getDataEnd() + " elapsed: " + dataElapsed / 1000);
+            LOG.info("Replay real start: " + getReplayStart() + " end: " + getReplayEnd() + " elapsed: " + realElapsed / 1000);
+        }
         
         if (frame != null && !isStopped()) {
             JOptionPane.showMessageDialog(frame, "Replay finished");
         }
         
         // Flag that the sensor has terminated
-        try { inputStream.close(); } catch (Exception ex) {}
         flagTerminated();
         LOG.warn("File NMEA sensor terminated");
     }
     
+    /**
+     * Reads the memory mapped file slice by slice, handling seek requests in between
+     * 
+     * @param file
+     *            the file to replay
+     */
+    private void replay(File file) throws IOException {
+        NmeaLineFramer framer = new NmeaLineFramer(new NmeaLineFramer.LineSink() {
+            @Override
+            public void handleLine(byte[] line, int length) {
+                NmeaFileSensor.this.handleLine(line, length);
+            }
+        });
+        
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long fileLength = channel.size();
+            long position = 0L;
+            long segmentStart = 0L;
+            MappedByteBuffer segment = null;
+            
+            while (!isStopped()) {
+                Date seek = seekTime.getAndSet(null);
+                if (seek != null) {
+                    NmeaReplayIndex index = replayIndex;
+                    position = (index != null) ? index.getOffset(seek) : 0L;
+                    framer.reset();
+                    // Lines before the seek time are handled without pacing
+                    setReplayStartDate(seek);
+                    resetReplayClock();
+                    LOG.info("Replay seeking to " + seek + " at offset " + position);
+                }
+                if (position >= fileLength) {
+                    break;
+                }
+                
+                // Map the segment holding the position
+                if (segment == null || position < segmentStart || position >= segmentStart + segment.limit()) {
+                    segmentStart = position;
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                            Math.min(NmeaReplayIndex.SEGMENT_SIZE, fileLength - segmentStart));
+                }
+                
+                // Frame the next slice of the segment
+                ByteBuffer slice = segment.duplicate();
+                slice.position((int) (position - segmentStart));
+                slice.limit(Math.min(segment.limit(), slice.position() + SLICE_SIZE));
+                framer.frame(slice);
+                position = segmentStart + slice.limit();
+            }
+            
+            if (!isStopped()) {
+                framer.endOfLine();
+            }
+        }
+    }
+    
+    /**
+     * Requests the replay to continue from the given time of the recording.
+     * <p>
+     * The replay starts from the closest indexed time at or before the given time, and handles the data up to the given
+     * time without pacing.
+     * 
+     * @param time
+     *            the time to seek to
+     */
+    public void seek(Date time) {
+        seekTime.set(time);
+    }
+    
+    /**
+     * Returns the timestamp index of the replay file, or null if not yet built
+     * 
+     * @return the timestamp index
+     */
+    public NmeaReplayIndex getReplayIndex() {
+        return replayIndex;
+    }
+    
     @Override
     public void findAndInit(Object obj) {
         super.findAndInit(obj);
@@ -0,0 +1,86 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.nio.ByteBuffer;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Frames NMEA lines from a stream of bytes into a reusable line buffer.
+ * <p>
+ * Each complete line is handed to the sink as bytes, which allows the sink to classify the sentence before a
+ * {@code String} is created. Lines longer than {@linkplain #MAX_LINE_LENGTH} are discarded.
+ */
+@NotThreadSafe
+final class NmeaLineFramer {
+
+    /** The maximum accepted line length, well above the 82 characters of a standard NMEA sentence */
+    static final int MAX_LINE_LENGTH = 4096;
+
+    /**
+     * Receives the framed lines
+     */
+    interface LineSink {
+        void handleLine(byte[] line, int length);
+    }
+
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private final LineSink sink;
+    private int length;
+    private boolean overflow;
+
+    NmeaLineFramer(LineSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Frames the remaining bytes of the buffer. Incomplete lines are kept until the next call
+     *
+     * @param buffer
+     *            the buffer, ready to be read
+     */
+    void frame(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n' || b == '\r') {
+                endOfLine();
+            } else if (length < MAX_LINE_LENGTH) {
+                line[length++] = b;
+            } else {
+                overflow = true;
+            }
+        }
+    }
+
+    /**
+     * Terminates the current line, e.g. at the end of a datagram
+     */
+    void endOfLine() {
+        if (length > 0 && !overflow) {
+            sink.handleLine(line, length);
+        }
+        length = 0;
+        overflow = false;
+    }
+
+    /**
+     * Discards the current line, e.g. after seeking in the stream
+     */
+    void reset() {
+        length = 0;
+        overflow = false;
+    }
+}
@@ -0,0 +1,258 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+import net.jcip.annotations.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.proprietary.IProprietarySourceTag;
+import dk.dma.ais.proprietary.IProprietaryTag;
+import dk.dma.ais.proprietary.ProprietaryFactory;
+import dk.dma.ais.sentence.SentenceLine;
+
+/**
+ * Timestamp index of an NMEA log file.
+ * <p>
+ * The index maps the timestamps of the proprietary source tags of the log to the byte offsets of the tag lines, with at
+ * most one entry per {@linkplain #INDEX_INTERVAL}. It is cached next to the log file with the extension
+ * {@code .idx}, and rebuilt if the log file has changed.
+ */
+@Immutable
+public final class NmeaReplayIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaReplayIndex.class);
+
+    /** The minimum data time between index entries in milliseconds */
+    public static final long INDEX_INTERVAL = 10000L;
+
+    /** The size of the file segments mapped at a time */
+    static final long SEGMENT_SIZE = 256L * 1024L * 1024L;
+
+    private static final int MAGIC = 0x4e4d4931; // "NMI1"
+
+    private final long fileLength;
+    private final long lastModified;
+    private final long[] times;
+    private final long[] offsets;
+
+    private NmeaReplayIndex(long fileLength, long lastModified, long[] times, long[] offsets) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.times = times;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns the index of the given file, loading it from the cache if valid, or building and caching it otherwise
+     *
+     * @param file
+     *            the NMEA log file
+     * @return the index
+     */
+    public static NmeaReplayIndex get(File file) throws IOException {
+        File indexFile = new File(file.getPath() + ".idx");
+        if (indexFile.exists()) {
+            try {
+                NmeaReplayIndex index = load(indexFile);
+                if (index.fileLength == file.length() && index.lastModified == file.lastModified()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to load replay index " + indexFile + ": " + e.getMessage());
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        NmeaReplayIndex index = build(file);
+        LOG.info("Built replay index of " + file + " with " + index.size() + " entries in "
+                + (System.currentTimeMillis() - start) + " ms");
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to save replay index " + indexFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index by scanning the memory mapped file
+     *
+     * @param file
+     *            the NMEA log file
+     * @return the index
+     */
+    static NmeaReplayIndex build(File file) throws IOException {
+        long[] times = new long[256];
+        long[] offsets = new long[256];
+        int size = 0;
+        long lastIndexed = Long.MIN_VALUE;
+
+        byte[] line = new byte[NmeaLineFramer.MAX_LINE_LENGTH];
+        int length = 0;
+        long lineStart = 0L;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long fileLength = channel.size();
+            for (long segment = 0L; segment < fileLength; segment += SEGMENT_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment,
+                        Math.min(SEGMENT_SIZE, fileLength - segment));
+                while (buffer.hasRemaining()) {
+                    long offset = segment + buffer.position();
+                    byte b = buffer.get();
+                    if (b != '\n' && b != '\r') {
+                        if (length == 0) {
+                            lineStart = offset;
+                        }
+                        if (length < line.length) {
+                            line[length] = b;
+                        }
+                        length++;
+                        continue;
+                    }
+
+                    // Only proprietary tags carry timestamps
+                    if (length > 1 && length <= line.length && line[0] == '$' && line[1] == 'P') {
+                        Date timestamp = parseTimestamp(new String(line, 0, length, StandardCharsets.US_ASCII));
+                        if (timestamp != null && timestamp.getTime() >= lastIndexed + INDEX_INTERVAL) {
+                            if (size == times.length) {
+                                times = Arrays.copyOf(times, size * 2);
+                                offsets = Arrays.copyOf(offsets, size * 2);
+                            }
+                            times[size] = timestamp.getTime();
+                            offsets[size] = lineStart;
+                            size++;
+                            lastIndexed = timestamp.getTime();
+                        }
+                    }
+                    length = 0;
+                }
+            }
+        }
+
+        return new NmeaReplayIndex(file.length(), file.lastModified(), Arrays.copyOf(times, size), Arrays.copyOf(offsets,
+                size));
+    }
+
+    /**
+     * Returns the timestamp of the proprietary source tag, or null if the line is not a source tag
+     */
+    private static Date parseTimestamp(String line) {
+        try {
+            if (!ProprietaryFactory.isProprietaryTag(line)) {
+                return null;
+            }
+            IProprietaryTag tag = ProprietaryFactory.parseTag(new SentenceLine(line));
+            if (tag instanceof IProprietarySourceTag) {
+                return ((IProprietarySourceTag) tag).getTimestamp();
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("Failed to parse proprietary tag " + line + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static NmeaReplayIndex load(File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a replay index");
+            }
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            int size = in.readInt();
+            long[] times = new long[size];
+            long[] offsets = new long[size];
+            for (int i = 0; i < size; i++) {
+                times[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            return new NmeaReplayIndex(fileLength, lastModified, times, offsets);
+        }
+    }
+
+    private void save(File indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeInt(times.length);
+            for (int i = 0; i < times.length; i++) {
+                out.writeLong(times[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset to start reading from to replay the data from the given time.
+     * <p>
+     * This is the offset of the last indexed tag at or before the given time, or 0 if the time is before the first
+     * indexed tag.
+     *
+     * @param time
+     *            the time to seek to
+     * @return the offset to start reading from
+     */
+    public long getOffset(Date time) {
+        int idx = Arrays.binarySearch(times, time.getTime());
+        if (idx < 0) {
+            idx = -idx - 2;
+        }
+        return (idx < 0) ? 0L : offsets[idx];
+    }
+
+    /**
+     * Returns the first indexed time, or null if the index is empty
+     *
+     * @return the first indexed time
+     */
+    public Date getStart() {
+        return (times.length == 0) ? null : new Date(times[0]);
+    }
+
+    /**
+     * Returns the last indexed time, or null if the index is empty
+     *
+     * @return the last indexed time
+     */
+    public Date getEnd() {
+        return (times.length == 0) ? null : new Date(times[times.length - 1]);
+    }
+
+    /**
+     * Returns the number of index entries
+     *
+     * @return the number of index entries
+     */
+    public int size() {
+        return times.length;
+    }
+}
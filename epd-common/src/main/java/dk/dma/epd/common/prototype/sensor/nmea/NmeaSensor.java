@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -50,9 +51,13 @@ import dk.dma.ais.sentence.SentenceException;
 import dk.dma.ais.sentence.SentenceLine;
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.enav.util.function.Consumer;
+import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.sensor.predictor.DynamicPredictorData;
 import dk.dma.epd.common.prototype.sensor.predictor.IDynamicPredictorDataListener;
 import dk.dma.epd.common.prototype.sensor.rpnt.ResilientPntData;
+import dk.dma.epd.common.prototype.status.ComponentStatus;
+import dk.dma.epd.common.prototype.status.IStatusComponent;
+import dk.dma.epd.common.prototype.status.NmeaIngestStatus;
 import dk.dma.epd.common.util.Util;
 
 /**
@@ -84,6 +89,8 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
     @GuardedBy("this")
     private int replaySpeedup = 1;
     @GuardedBy("this")
+    private boolean replayAsFastAsPossible;
+    @GuardedBy("this")
     private boolean stopped;
     @GuardedBy("this")
     private boolean terminated;
@@ -91,6 +98,27 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
 
     private final AisPacketParser packetReader = new AisPacketParser();
 
+    @GuardedBy("this")
+    private NmeaDecodePipeline decodePipeline;
+    @GuardedBy("this")
+    private NmeaDecodePipeline.OverflowPolicy overflowPolicy = NmeaDecodePipeline.OverflowPolicy.DROP_OLDEST;
+    @GuardedBy("this")
+    private int decodeWorkers = NmeaDecodePipeline.defaultWorkerCount();
+
+    private final IStatusComponent ingestStatusComponent = new IStatusComponent() {
+        private final NmeaIngestStatus notStarted = new NmeaIngestStatus(NmeaSensor.this.getClass().getSimpleName(),
+                null);
+
+        @Override
+        public ComponentStatus getStatus() {
+            NmeaDecodePipeline pipeline;
+            synchronized (NmeaSensor.this) {
+                pipeline = decodePipeline;
+            }
+            return pipeline != null ? pipeline.getStatus() : notStarted;
+        }
+    };
+
     protected final SendThreadPool sendThreadPool = new SendThreadPool();
     private final CopyOnWriteArrayList<IPntSensorListener> pntListeners = new CopyOnWriteArrayList<>();
     private final CopyOnWriteArrayList<IResilientPntSensorListener> msPntListeners = new CopyOnWriteArrayList<>();
@@ -123,6 +151,41 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         handleSentence(line);
     }
 
+    /**
+     * Handles a line framed from a byte stream.
+     * <p>
+     * The talker and sentence type are classified on the raw bytes, and a {@code String} is only created for sentences
+     * that will actually be handled by {@linkplain #handleSentence(String)}, i.e. RMC's if there are PNT listeners,
+     * VDM's if there are AIS listeners, ABK's and proprietary sentences.
+     * 
+     * @param line
+     *            the buffer holding the line. Must not be retained
+     * @param length
+     *            the length of the line
+     */
+    protected void handleLine(byte[] line, int length) {
+        if (isHandled(NmeaSentenceType.classify(line, length))) {
+            handleLine(new String(line, 0, length, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Returns if a line with sentences of the given types would be handled by {@linkplain #handleSentence(String)}
+     * 
+     * @param types
+     *            the mask of sentence types, as returned by {@linkplain NmeaSentenceType#classify(byte[], int)}
+     * @return if the line would be handled
+     */
+    private boolean isHandled(int types) {
+        if (pntListeners.size() > 0 && NmeaSentenceType.RMC.in(types)) {
+            return true;
+        }
+        if (aisListeners.size() > 0 && NmeaSentenceType.VDM.in(types)) {
+            return true;
+        }
+        return NmeaSentenceType.ABK.in(types) || NmeaSentenceType.PROPRIETARY.in(types);
+    }
+
     /**
      * Method to send addressed or broadcast AIS messages (ABM or BBM).
      * 
@@ -211,6 +274,11 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
             setReplayStart(now);
         }
 
+        if (isReplayAsFastAsPossible()) {
+            setReplayEnd(now);
+            return;
+        }
+
         long elapsedData = timestamp.getTime() - getDataStart().getTime();
         long elapsedReal = (now.getTime() - getReplayStart().getTime()) * getReplaySpeedup();
         long diff = elapsedData - elapsedReal;
@@ -233,20 +301,35 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
     }
 
     /**
-     * Handles the given sentence
+     * Handles the given sentence.
+     * <p>
+     * Must be called from the reader thread of the sensor. Reassembly of multi-sentence VDM's and ABK's are handled
+     * directly, whereas decoding and distribution to the listeners is handed to the {@linkplain NmeaDecodePipeline}.
+     * AIS messages are partitioned by MMSI and all other sentences share a single partition, so that the order of
+     * messages from the same source is preserved.
      * 
      * @param msg
      *            the sentence to handle
      */
-    protected void handleSentence(String msg) {
+    protected void handleSentence(final String msg) {
         if (pntListeners.size() > 0 && RmcSentence.getParser(msg) != null) {
-            handleRmc(msg);
+            getDecodePipeline().submit(0L, new Runnable() {
+                @Override
+                public void run() {
+                    handleRmc(msg);
+                }
+            });
         } else if (aisListeners.size() > 0 && isVdm(msg)) {
             handleAis(msg);
         } else if (Abk.isAbk(msg)) {
             handleAbk(msg);
         } else if (msg.indexOf("$P") >= 0) {
-            handleProprietary(msg);
+            getDecodePipeline().submit(0L, new Runnable() {
+                @Override
+                public void run() {
+                    handleProprietary(msg);
+                }
+            });
         }
     }
 
@@ -269,6 +352,26 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
             return;
         }
 
+        // Capture the replay time now, as the reader thread may have moved on when the packet is decoded
+        final Long time = (isReplay()) ? getReplayTime().getTime() : null;
+        final AisPacket completePacket = packet;
+        getDecodePipeline().submit(NmeaDecodePipeline.getMmsi(packet.getVdm().getOrgLinesJoined()), new Runnable() {
+            @Override
+            public void run() {
+                decodeAis(completePacket, time);
+            }
+        });
+    }
+
+    /**
+     * Decodes the AIS packet and distributes the message to the listeners. Called by the decode pipeline.
+     * 
+     * @param packet
+     *            the complete AIS packet
+     * @param time
+     *            the replay time when the packet was read, or null if not replaying
+     */
+    private void decodeAis(AisPacket packet, Long time) {
         // Get AIS message
         AisMessage message = null;
         // Parse AIS message
@@ -297,12 +400,24 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
 
         // Distribute PNT from own mesasge
         if (ownMessage) {
-            handlePntFromOwnMessage(message);
+            handlePntFromOwnMessage(message, time);
         }
 
     }
 
     protected void handlePntFromOwnMessage(AisMessage aisMessage) {
+        handlePntFromOwnMessage(aisMessage, (isReplay()) ? getReplayTime().getTime() : null);
+    }
+
+    /**
+     * Distributes the position of the own message to the PNT listeners
+     * 
+     * @param aisMessage
+     *            the own message
+     * @param time
+     *            the replay time of the message, or null if not replaying
+     */
+    protected void handlePntFromOwnMessage(AisMessage aisMessage, Long time) {
         if (pntListeners.size() == 0) {
             return;
         }
@@ -329,7 +444,6 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
             return;
         }
 
-        Long time = (isReplay()) ? getReplayTime().getTime() : null;
         PntMessage pntMessage = new PntMessage(PntSource.AIS, pos, sog, cog, time);
         publishPntMessage(pntMessage);
     }
@@ -465,7 +579,52 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
     }
 
     public void start() {
-        new Thread(this).start();
+        EPD.startThread(this, getClass().getSimpleName());
+    }
+
+    /**
+     * Returns the decode pipeline of the sensor, creating it on first use
+     * 
+     * @return the decode pipeline
+     */
+    public synchronized NmeaDecodePipeline getDecodePipeline() {
+        if (decodePipeline == null) {
+            decodePipeline = new NmeaDecodePipeline(getClass().getSimpleName(), decodeWorkers,
+                    NmeaDecodePipeline.DEFAULT_QUEUE_CAPACITY, overflowPolicy);
+        }
+        return decodePipeline;
+    }
+
+    /**
+     * Returns a status component reporting the status of the decode pipeline. Unlike
+     * {@linkplain #getDecodePipeline()} this does not create the pipeline
+     * 
+     * @return the status component of the decode stage
+     */
+    public IStatusComponent getIngestStatusComponent() {
+        return ingestStatusComponent;
+    }
+
+    /**
+     * Sets the policy applied when the decode pipeline can not keep up with the reader.<br>
+     * Must be called before the sensor is started.
+     * 
+     * @param overflowPolicy
+     *            the overflow policy
+     */
+    protected synchronized void setOverflowPolicy(NmeaDecodePipeline.OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Sets the number of decode workers.<br>
+     * Must be called before the sensor is started.
+     * 
+     * @param decodeWorkers
+     *            the number of decode workers
+     */
+    public synchronized void setDecodeWorkers(int decodeWorkers) {
+        this.decodeWorkers = decodeWorkers;
     }
 
     private synchronized boolean isReplay() {
@@ -484,6 +643,22 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         this.replaySpeedup = replaySpeedup;
     }
 
+    protected synchronized boolean isReplayAsFastAsPossible() {
+        return replayAsFastAsPossible;
+    }
+
+    protected synchronized void setReplayAsFastAsPossible(boolean replayAsFastAsPossible) {
+        this.replayAsFastAsPossible = replayAsFastAsPossible;
+    }
+
+    /**
+     * Restarts the replay clock, e.g. after seeking, so that pacing is computed from the next timestamp
+     */
+    protected synchronized void resetReplayClock() {
+        this.dataStart = null;
+        this.replayStart = null;
+    }
+
     protected synchronized Date getReplayStart() {
         return replayStart;
     }
@@ -524,7 +699,7 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         this.replayTime = replayTime;
     }
 
-    private synchronized Date getReplayStartDate() {
+    protected synchronized Date getReplayStartDate() {
         return replayStartDate;
     }
 
@@ -563,7 +738,15 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
      * Used internally to flag that the sensor has terminated
      */
     protected void flagTerminated() {
-        this.terminated = true;
+        NmeaDecodePipeline pipeline;
+        synchronized (this) {
+            this.terminated = true;
+            pipeline = decodePipeline;
+        }
+        // Do not start the workers of a sensor that never decoded anything
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
     }
     
     /**
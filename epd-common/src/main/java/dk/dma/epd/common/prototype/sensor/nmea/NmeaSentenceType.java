@@ -0,0 +1,98 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+/**
+ * The sentence types handled by the {@linkplain NmeaSensor}, classified on the raw bytes of a framed line so that a
+ * {@code String} is only created for lines that will be handled.
+ * <p>
+ * A line may hold several sentences, e.g. a proprietary source tag followed by a VDM, so every {@code $} or {@code !}
+ * of the line is taken as a possible start of a sentence, and the address field following it is classified. The
+ * classification accepts the same talkers as {@linkplain RmcSentence#getParser(String)},
+ * {@linkplain NmeaSensor#isVdm(String)} and the proprietary check of {@linkplain NmeaSensor#handleSentence(String)},
+ * and any talker for ABK.
+ */
+enum NmeaSentenceType {
+    RMC, VDM, ABK, PROPRIETARY;
+
+    /**
+     * Returns the bit of this type in the mask returned by {@linkplain #classify(byte[], int)}
+     *
+     * @return the bit of this type
+     */
+    int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Returns if the given mask contains this type
+     *
+     * @param mask
+     *            the mask returned by {@linkplain #classify(byte[], int)}
+     * @return if the mask contains this type
+     */
+    boolean in(int mask) {
+        return (mask & bit()) != 0;
+    }
+
+    /**
+     * Classifies the sentences of the line
+     *
+     * @param line
+     *            the buffer holding the line
+     * @param length
+     *            the length of the line
+     * @return the mask of the types of the sentences of the line, 0 if none is handled
+     */
+    static int classify(byte[] line, int length) {
+        int mask = 0;
+        for (int i = 0; i < length; i++) {
+            byte start = line[i];
+            if (start != '$' && start != '!') {
+                continue;
+            }
+            if (start == '$' && i + 1 < length && line[i + 1] == 'P') {
+                mask |= PROPRIETARY.bit();
+                continue;
+            }
+            // Two characters of talker and three of sentence type
+            if (i + 5 >= length) {
+                continue;
+            }
+            byte t1 = line[i + 1];
+            byte t2 = line[i + 2];
+            if (is(line, i + 3, 'R', 'M', 'C')) {
+                if (start == '$' && (t1 == 'G' && t2 == 'P' || t1 == 'E' && t2 == 'L' || t1 == 'R' && t2 == 'D')) {
+                    mask |= RMC.bit();
+                }
+            } else if (is(line, i + 3, 'V', 'D', 'M')) {
+                if (start == '!' && (t1 == 'A' && t2 == 'I' || t1 == 'B' && t2 == 'S' || t1 == 'A' && t2 == 'B')) {
+                    mask |= VDM.bit();
+                }
+            } else if (is(line, i + 3, 'V', 'D', 'O')) {
+                if (start == '!' && t1 == 'A' && t2 == 'I') {
+                    mask |= VDM.bit();
+                }
+            } else if (is(line, i + 3, 'A', 'B', 'K')) {
+                mask |= ABK.bit();
+            }
+        }
+        return mask;
+    }
+
+    private static boolean is(byte[] line, int offset, char c1, char c2, char c3) {
+        return line[offset] == c1 && line[offset + 1] == c2 && line[offset + 2] == c3;
+    }
+}
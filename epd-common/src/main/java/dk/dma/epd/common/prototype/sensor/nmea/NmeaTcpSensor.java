@@ -17,9 +17,13 @@ package dk.dma.epd.common.prototype.sensor.nmea;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 
 import net.jcip.annotations.ThreadSafe;
 
@@ -33,7 +37,10 @@ import dk.dma.ais.sentence.Abk;
 import dk.dma.enav.util.function.Consumer;
 
 /**
- * TCP NMEA sensor
+ * TCP NMEA sensor.
+ * <p>
+ * The socket channel is read by the shared {@linkplain NmeaChannelSelector}, whereas the sensor thread only manages the
+ * connection, i.e. connects, detects read timeouts and reconnects.
  */
 @ThreadSafe
 public class NmeaTcpSensor extends NmeaSensor {
@@ -41,14 +48,16 @@ public class NmeaTcpSensor extends NmeaSensor {
     private static final Logger LOG = LoggerFactory.getLogger(NmeaTcpSensor.class);
 
     private static final int TCP_READ_TIMEOUT = 60000; // 1 min
+    private static final int TCP_WRITE_TIMEOUT = 10000; // 10 sec
 
     private volatile long reconnectInterval = 5000; // Default 5 sec
     private volatile String hostname;
     private volatile int port;
-    private volatile OutputStream outputStream;
-    private final AtomicBoolean outputStreamSet = new AtomicBoolean(false);
+    private volatile ChannelOutputStream outputStream;
 
-    private volatile Socket clientSocket = new Socket();
+    private volatile SocketChannel channel;
+    private volatile long lastRead;
+    private volatile IOException readError;
 
     public NmeaTcpSensor() {
     }
@@ -73,7 +82,7 @@ public class NmeaTcpSensor extends NmeaSensor {
             try {
                 disconnect();
                 connect();
-                readLoop(clientSocket.getInputStream());
+                awaitDisconnect();
             } catch (IOException e) {
                 LOG.error("TCP NMEA sensor failed: " + e.getMessage() + " retry in " + reconnectInterval / 1000 + " seconds");
                 try {
@@ -91,13 +100,14 @@ public class NmeaTcpSensor extends NmeaSensor {
 
     private void connect() throws IOException {
         try {
-            clientSocket = new Socket();
-            InetSocketAddress address = new InetSocketAddress(hostname, port);
-            clientSocket.connect(address);
-            clientSocket.setKeepAlive(true);
-            clientSocket.setSoTimeout(TCP_READ_TIMEOUT);
-            // mark the outputStream as not established yet
-            outputStreamSet.set(false);
+            SocketChannel socketChannel = SocketChannel.open();
+            channel = socketChannel;
+            socketChannel.connect(new InetSocketAddress(hostname, port));
+            socketChannel.socket().setKeepAlive(true);
+            readError = null;
+            lastRead = System.currentTimeMillis();
+            NmeaChannelSelector.getInstance().register(socketChannel, new Reader(socketChannel));
+            outputStream = new ChannelOutputStream(socketChannel);
             LOG.info("NMEA source connected " + hostname + ":" + port);
         } catch (UnknownHostException e) {
             LOG.error("Unknown host: " + hostname + ": " + e.getMessage());
@@ -108,11 +118,39 @@ public class NmeaTcpSensor extends NmeaSensor {
         }
     }
 
+    /**
+     * Waits until the connection is closed, fails or times out, or until the sensor is stopped
+     */
+    private void awaitDisconnect() throws IOException {
+        SocketChannel socketChannel = channel;
+        synchronized (socketChannel) {
+            while (!isStopped() && socketChannel.isOpen()) {
+                if (System.currentTimeMillis() - lastRead > TCP_READ_TIMEOUT) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                try {
+                    socketChannel.wait(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+        if (readError != null) {
+            throw readError;
+        }
+    }
+
     private void disconnect() {
-        if (clientSocket != null && getStatus() == Status.CONNECTED) {
+        SocketChannel socketChannel = channel;
+        ChannelOutputStream out = outputStream;
+        outputStream = null;
+        if (out != null) {
+            out.close();
+        }
+        if (socketChannel != null && socketChannel.isOpen()) {
             try {
                 LOG.info("Disconnecting source " + hostname + ":" + port);
-                clientSocket.close();
+                socketChannel.close();
             } catch (IOException e) {
             }
         }
@@ -127,21 +165,12 @@ public class NmeaTcpSensor extends NmeaSensor {
         // from the same thread as the read loop (called synchronously by a
         // listener) and the other case where the send was called from a
         // different thread to the read loop.
-
-        // atomically initialize the outputStream if required
-        if (outputStreamSet.compareAndSet(false, true)) {
-            try {
-                outputStream = clientSocket.getOutputStream();
-            } catch (IOException e) {
-                throw new SendException("Could not connect to NMEA source outputStream: "
-                        + clientSocket.toString());
-            }
-        }
         doSend(sendRequest, resultListener, outputStream);
     }
 
     public Status getStatus() {
-        return clientSocket.isConnected() ? Status.CONNECTED : Status.DISCONNECTED;
+        SocketChannel socketChannel = channel;
+        return socketChannel != null && socketChannel.isConnected() ? Status.CONNECTED : Status.DISCONNECTED;
     }
 
     public long getReconnectInterval() {
@@ -152,4 +181,115 @@ public class NmeaTcpSensor extends NmeaSensor {
         this.reconnectInterval = reconnectInterval;
     }
 
+    /**
+     * Reads the channel in the selector thread and frames the lines
+     */
+    private final class Reader implements NmeaChannelSelector.ChannelReader, NmeaLineFramer.LineSink {
+
+        private final SocketChannel socketChannel;
+        private final NmeaLineFramer framer = new NmeaLineFramer(this);
+
+        Reader(SocketChannel socketChannel) {
+            this.socketChannel = socketChannel;
+        }
+
+        @Override
+        public boolean read(ByteBuffer buffer) throws IOException {
+            if (socketChannel.read(buffer) < 0) {
+                return false;
+            }
+            lastRead = System.currentTimeMillis();
+            buffer.flip();
+            framer.frame(buffer);
+            return true;
+        }
+
+        @Override
+        public void handleLine(byte[] line, int length) {
+            NmeaTcpSensor.this.handleLine(line, length);
+        }
+
+        @Override
+        public void closed(IOException cause) {
+            readError = cause;
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+            }
+            synchronized (socketChannel) {
+                socketChannel.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes to the non-blocking channel. When the socket send buffer is full, the writing thread waits for the channel
+     * to become writable using a private selector, since the shared {@linkplain NmeaChannelSelector} only handles reads.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+
+        private final SocketChannel socketChannel;
+        private volatile Selector writeSelector;
+        private volatile boolean closed;
+
+        ChannelOutputStream(SocketChannel socketChannel) {
+            this.socketChannel = socketChannel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                if (socketChannel.write(buffer) == 0) {
+                    awaitWritable();
+                }
+            }
+        }
+
+        /**
+         * Waits until the channel is writable
+         */
+        private void awaitWritable() throws IOException {
+            Selector selector = writeSelector;
+            if (selector == null) {
+                selector = Selector.open();
+                socketChannel.register(selector, SelectionKey.OP_WRITE);
+                writeSelector = selector;
+            }
+            int selected;
+            try {
+                selected = closed ? 0 : selector.select(TCP_WRITE_TIMEOUT);
+            } catch (ClosedSelectorException e) {
+                selected = 0;
+            }
+            if (closed) {
+                selector.close();
+                throw new IOException("Connection closed");
+            }
+            if (selected == 0) {
+                throw new SocketTimeoutException("Write timed out");
+            }
+            selector.selectedKeys().clear();
+        }
+
+        /**
+         * Closes the write selector, which also wakes up a thread waiting for the channel to become writable
+         */
+        @Override
+        public void close() {
+            closed = true;
+            Selector selector = writeSelector;
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
 }
@@ -15,19 +15,24 @@
 package dk.dma.epd.common.prototype.sensor.nmea;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Charsets;
-
 import dk.dma.ais.reader.SendException;
 import dk.dma.ais.reader.SendRequest;
 import dk.dma.ais.sentence.Abk;
 import dk.dma.enav.util.function.Consumer;
 
+/**
+ * UDP NMEA sensor.
+ * <p>
+ * The datagram channel is read by the shared {@linkplain NmeaChannelSelector}. Each datagram may hold several
+ * sentences.
+ */
 public class NmeaUdpSensor extends NmeaSensor {
     
     private static final Logger LOG = LoggerFactory.getLogger(NmeaUdpSensor.class);
@@ -40,16 +45,18 @@ public class NmeaUdpSensor extends NmeaSensor {
     
     @Override
     public void run() {
-        byte[] receiveData = new byte[256];
-        try (DatagramSocket serverSocket = new DatagramSocket(port)) {
-            while (!isStopped()) {
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                serverSocket.receive(receivePacket);
-                String sentence = new String(receivePacket.getData(), 0, receivePacket.getLength(), Charsets.US_ASCII);
-                handleLine(sentence);
-            }            
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(new InetSocketAddress(port));
+            NmeaChannelSelector.getInstance().register(channel, new Reader(channel));
+            synchronized (channel) {
+                while (!isStopped() && channel.isOpen()) {
+                    channel.wait(1000);
+                }
+            }
         } catch (IOException e) {
             LOG.error("Failed to listen on UDP socket", e);
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted listening on UDP socket");
         }
 
         // Flag that the sensor has terminated
@@ -63,4 +70,46 @@ public class NmeaUdpSensor extends NmeaSensor {
 
     }
 
+    /**
+     * Reads the datagrams in the selector thread and frames the lines
+     */
+    private final class Reader implements NmeaChannelSelector.ChannelReader, NmeaLineFramer.LineSink {
+
+        private final DatagramChannel channel;
+        private final NmeaLineFramer framer = new NmeaLineFramer(this);
+
+        Reader(DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean read(ByteBuffer buffer) throws IOException {
+            while (channel.receive(buffer) != null) {
+                buffer.flip();
+                framer.frame(buffer);
+                framer.endOfLine();
+                buffer.clear();
+            }
+            return true;
+        }
+
+        @Override
+        public void handleLine(byte[] line, int length) {
+            NmeaUdpSensor.this.handleLine(line, length);
+        }
+
+        @Override
+        public void closed(IOException cause) {
+            if (cause != null) {
+                LOG.error("Failed to read UDP socket", cause);
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+            synchronized (channel) {
+                channel.notifyAll();
+            }
+        }
+    }
 }
@@ -16,19 +16,19 @@ package dk.dma.epd.common.prototype.sensor.pnt;
 
 import java.util.Date;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
 import com.bbn.openmap.MapHandlerChild;
 
-import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.sensor.nmea.IPntSensorListener;
 import dk.dma.epd.common.prototype.sensor.nmea.PntMessage;
 import dk.dma.epd.common.prototype.sensor.nmea.PntMessage.MessageType;
 import dk.dma.epd.common.prototype.status.IStatusComponent;
 import dk.dma.epd.common.prototype.status.PntStatus;
-import dk.dma.epd.common.util.Util;
+import dk.dma.epd.common.prototype.task.TaskManager;
 
 /**
  * Component class for handling received PNT messages.
@@ -42,7 +42,7 @@ public class PntHandler extends MapHandlerChild implements IPntSensorListener, I
     private PntData currentData = new PntData();
 
     public PntHandler() {
-        EPD.startThread(this, "PntHandler");
+        TaskManager.getInstance().scheduleWithFixedDelay("PntHandler", this, 0, 10, TimeUnit.SECONDS);
     }
 
     @Override
@@ -112,12 +112,9 @@ public class PntHandler extends MapHandlerChild implements IPntSensorListener, I
      */
     @Override
     public void run() {
-        while (true) {
-            if (pntTimedOut()) {
-                markBadPos();
-                distributeUpdate();
-            }
-            Util.sleep(10000);
+        if (pntTimedOut()) {
+            markBadPos();
+            distributeUpdate();
         }
     }
 
@@ -19,9 +19,13 @@ import dk.dma.epd.common.prototype.service.MaritimeCloudService.IMaritimeCloudLi
 import dk.dma.epd.common.prototype.status.CloudStatus;
 import net.maritimecloud.net.mms.MmsClient;
 
-import java.util.concurrent.Executors;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -33,24 +37,12 @@ import java.util.concurrent.TimeUnit;
 public abstract class EnavServiceHandlerCommon extends MapHandlerChild implements IMaritimeCloudListener {
 
     protected MaritimeCloudService maritimeCloudService;
-    private ScheduledExecutorService scheduler;
-    private final int schedulerPoolSize;
+    private final List<Future<?>> tasks = new CopyOnWriteArrayList<>();
 
     /**
      * Constructor
      */
     protected EnavServiceHandlerCommon() {
-        this(1);
-    }
-
-    /**
-     * Constructor
-     * 
-     * @param schedulerPoolSize
-     *            the scheduler core pool size
-     */
-    protected EnavServiceHandlerCommon(int schedulerPoolSize) {
-        this.schedulerPoolSize = schedulerPoolSize;
     }
 
     /**
@@ -122,10 +114,10 @@ public abstract class EnavServiceHandlerCommon extends MapHandlerChild implement
      * Will clean up the e-Navigation service
      */
     public synchronized void shutdown() {
-        if (scheduler != null) {
-            scheduler.shutdownNow();
-            scheduler = null;
+        for (Future<?> task : tasks) {
+            task.cancel(true);
         }
+        tasks.clear();
     }
 
     /****************************************/
@@ -133,20 +125,52 @@ public abstract class EnavServiceHandlerCommon extends MapHandlerChild implement
     /****************************************/
 
     /**
-     * Returns the scheduler associated with this e-Navigation service. The scheduler is created the first time this method is
-     * called.
+     * Schedules the given command to be run periodically in the I/O pool of the {@linkplain TaskManager}.
+     * <p>
+     * The task is named after the service, and is cancelled when the service is shut down.
+     * 
+     * @param command
+     *            the command to schedule
+     * @param initialDelay
+     *            the initial delay in {@linkplain TimeUnit}
+     * @param delay
+     *            the subsequent delay in {@linkplain TimeUnit}
+     * @param unit
+     *            the {@linkplain TimeUnit} for the delays
+     * @return a {@linkplain ScheduledFuture} that may be used for cancelling the task
+     */
+    protected ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        ScheduledFuture<?> future = TaskManager.getInstance().scheduleWithFixedDelay(Pool.IO, getClass().getSimpleName(),
+                command, initialDelay, delay, unit);
+        tasks.add(future);
+        return future;
+    }
+
+    /**
+     * Submits the given command for execution in the I/O pool of the {@linkplain TaskManager}.
+     * <p>
+     * The task is named after the service, and is cancelled if the service is shut down before it has completed.
      * 
-     * @return the scheduler
+     * @param command
+     *            the command to submit
+     * @return a {@linkplain Future} representing pending completion of the task
+     * @throws RejectedExecutionException
+     *             if the I/O pool is saturated or shut down
      */
-    protected synchronized ScheduledExecutorService getScheduler() {
-        if (scheduler == null) {
-            scheduler = Executors.newScheduledThreadPool(schedulerPoolSize);
+    protected Future<?> submit(Runnable command) {
+        // Forget about completed tasks
+        for (Future<?> task : tasks) {
+            if (task.isDone()) {
+                tasks.remove(task);
+            }
         }
-        return scheduler;
+        Future<?> future = TaskManager.getInstance().submit(Pool.IO, getClass().getSimpleName(), command);
+        tasks.add(future);
+        return future;
     }
 
     /**
-     * Schedules the given command to be run periodically in a separate thread.
+     * Schedules the given command to be run periodically in the I/O pool of the {@linkplain TaskManager}.
      * <p>
      * The command is wrapper so that it will only actually be run when there is a live connection to the maritime cloud.
      * 
@@ -162,11 +186,11 @@ public abstract class EnavServiceHandlerCommon extends MapHandlerChild implement
      */
     protected ScheduledFuture<?> scheduleWithFixedDelayWhenConnected(final Runnable command, long initialDelay, long delay,
             TimeUnit unit) {
-        return getScheduler().scheduleWithFixedDelay(new ConnectedRunnableWrapper(command), initialDelay, delay, unit);
+        return scheduleWithFixedDelay(new ConnectedRunnableWrapper(command), initialDelay, delay, unit);
     }
 
     /**
-     * Submits the given command for execution in a separate thread.
+     * Submits the given command for execution in the I/O pool of the {@linkplain TaskManager}.
      * <p>
      * The command is wrapper so that it will only actually be run if there is a live connection to the maritime cloud at time of
      * execution.
@@ -176,7 +200,7 @@ public abstract class EnavServiceHandlerCommon extends MapHandlerChild implement
      * @return a {@linkplain Future} representing pending completion of the task
      */
     protected Future<?> submitIfConnected(final Runnable command) {
-        return getScheduler().submit(new ConnectedRunnableWrapper(command));
+        return submit(new ConnectedRunnableWrapper(command));
     }
 
     /****************************************/
@@ -32,7 +32,7 @@ public class FALHandlerCommon extends EnavServiceHandlerCommon {
      * Constructor
      */
     public FALHandlerCommon() {
-        super(2);
+        super();
     }
 
     /**
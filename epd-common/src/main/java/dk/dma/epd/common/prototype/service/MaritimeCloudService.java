@@ -110,7 +110,7 @@ public class MaritimeCloudService extends MapHandlerChild implements Runnable, I
         // Update the eNav settings
         readEnavSettings();
         stopped = false;
-        new Thread(this).start();
+        EPD.startThread(this, "MaritimeCloudService");
     }
 
     /**
@@ -20,6 +20,7 @@ import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.model.route.IRoutesUpdateListener;
 import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
 import dk.dma.epd.common.prototype.model.route.RoutesUpdateEvent;
 import dk.dma.epd.common.prototype.notification.MsiNmNotification;
 import dk.dma.epd.common.prototype.route.RouteManagerCommon;
@@ -27,6 +28,7 @@ import dk.dma.epd.common.prototype.sensor.pnt.IPntDataListener;
 import dk.dma.epd.common.prototype.sensor.pnt.PntData;
 import dk.dma.epd.common.prototype.sensor.pnt.PntHandler;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
+import dk.dma.epd.common.prototype.status.MsiNmFilterStatus;
 import dk.dma.epd.common.util.Calculator;
 import dma.msinm.MCMessage;
 import dma.msinm.MCMsiNmService;
@@ -39,21 +41,35 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 /**
  * An implementation of a Maritime Cloud MSI-NM service
+ * <p>
+ * The MSI-NM relevance filter is maintained incrementally. The messages are held in a {@linkplain MsiNmSpatialIndex},
+ * along with flags recording which of the relevance criteria (proximity to own ship, visible routes, new route mouse
+ * position and new route legs) each message meets. When the ship position, the visible routes or the new route
+ * changes, only the criterion that changed is re-evaluated, and only for the messages intersecting the previous or
+ * current ship range, route bounding boxes or new route legs.
  */
 public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implements IRoutesUpdateListener, IPntDataListener {
 
     public static final int CLOUD_TIMEOUT = 10; // Seconds
 
+    private static final int RELEVANT_SHIP = 1;
+    private static final int RELEVANT_ROUTE = 2;
+    private static final int RELEVANT_MOUSE = 4;
+    private static final int RELEVANT_NEW_ROUTE = 8;
+
     private static final Logger LOG = LoggerFactory.getLogger(MsiNmServiceHandlerCommon.class);
 
     protected List<IMsiNmServiceListener> listeners = new CopyOnWriteArrayList<>();
@@ -73,11 +89,25 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
     private Route newRoute;
     private Projection newRouteProjection;
 
+    // The spatial index and the state that the relevance flags of the index were last computed for
+    private MsiNmSpatialIndex msiNmIndex = new MsiNmSpatialIndex();
+    private boolean filterApplied;
+    private Position filteredShipPosition;
+    private double filteredShipRange;
+    private List<double[]> filteredRouteBounds = Collections.emptyList();
+    private Position filteredMousePosition;
+    private double filteredMouseRange;
+    private List<Position[]> filteredNewRouteLegs = Collections.emptyList();
+    private double filteredNewRouteRange;
+    private float filteredProjectionScale;
+    private Object filteredProjectionCenter;
+    private final MsiNmFilterStatus filterStatus = new MsiNmFilterStatus();
+
     /**
      * Constructor
      */
     public MsiNmServiceHandlerCommon() {
-        super(2);
+        super();
 
         enavSettings = EPD.getInstance().getSettings().getEnavSettings();
 
@@ -90,6 +120,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         msiNmStore = MsiNmStore.loadFromFile(EPD.getInstance().getHomePath());
         msiNmMessages = msiNmStore.getMsiNmMessages();
         deletedMsiNmIds = msiNmStore.getDeletedMsiNmIds();
+        msiNmIndex.rebuild(msiNmMessages);
 
         // Schedule a refresh of the chat services and active MSI-NM messages
         // NB: The calls are combined to avoid too many internet connections on sea
@@ -101,7 +132,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         }, 20, enavSettings.getMsiPollInterval(), TimeUnit.SECONDS);
 
         // Schedule re-computation of message filter
-        getScheduler().scheduleWithFixedDelay(new Runnable() {
+        scheduleWithFixedDelay(new Runnable() {
                     @Override public void run() {
                         recomputeMsiNmMessageFilter(true);
                     }
@@ -268,6 +299,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         }
 
         msiNmMessages = newMsiNmMessages;
+        msiNmIndex.rebuild(msiNmMessages);
 
         // Update the store
         msiNmStore.setMsiNmMessages(msiNmMessages);
@@ -319,6 +351,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         msiNmLastUpdate = null;
         msiNmMessages = new ArrayList<>();
         deletedMsiNmIds = new HashSet<>();
+        msiNmIndex.rebuild(msiNmMessages);
         msiNmStore.setMsiNmMessages(msiNmMessages);
         msiNmStore.setDeletedMsiNmIds(deletedMsiNmIds);
         fetchPublishedMsiNmMessages();
@@ -339,17 +372,29 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
     public synchronized void deleteMsiNmMessage(MsiNmNotification message) {
         if (message != null && msiNmMessages.remove(message)) {
             deletedMsiNmIds.add(message.getId());
+            msiNmIndex.rebuild(msiNmMessages);
             doUpdate();
         }
     }
 
     /**
-     * Re-computes the filtered state of the MSI-NM messages
+     * Re-computes the filtered state of all the MSI-NM messages
      * @param notifyListeners whether to notify listeners or not
      */
     public synchronized void recomputeMsiNmMessageFilter(boolean notifyListeners) {
-        long t0 = System.currentTimeMillis();
+        filterApplied = false;
+        updateMsiNmMessageFilter(notifyListeners);
+    }
+
+    /**
+     * Updates the filtered state of the MSI-NM messages affected by changes to the ship position,
+     * visible routes or new route since the filter was last computed
+     * @param notifyListeners whether to notify listeners or not
+     */
+    public synchronized void updateMsiNmMessageFilter(boolean notifyListeners) {
+        long t0 = System.nanoTime();
         boolean updated = false;
+        Set<MsiNmNotification> evaluated = new HashSet<>();
 
         // Check if the MSI filter is on or not
         if (!enavSettings.isMsiFilter()) {
@@ -358,52 +403,117 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
                 updated |= !msg.isFiltered();
                 msg.setFiltered(true);
             }
+            filterApplied = false;
 
         } else {
             // MSI-NM filtering is on
 
-            for (MsiNmNotification msg : msiNmMessages) {
-
-                boolean wasFiltered = msg.isFiltered();
-                msg.setFiltered(false);
-
-                // Messages without location always included
-                if (msg.getLocation() == null) {
-                    msg.setFiltered(true);
-                }
+            if (!filterApplied) {
+                // Compute the relevance flags from scratch
+                msiNmIndex.clearFlags(RELEVANT_SHIP | RELEVANT_ROUTE | RELEVANT_MOUSE | RELEVANT_NEW_ROUTE);
+                filteredShipPosition = null;
+                filteredRouteBounds = Collections.emptyList();
+                filteredMousePosition = null;
+                filteredNewRouteLegs = Collections.emptyList();
+            }
 
-                // 1) Check proximity to ship
-                if (!msg.isFiltered() && currentShipPosition != null) {
+            // 1) Check proximity to ship
+            double shipRange = enavSettings.getMsiRelevanceFromOwnShipRange();
+            if (!Objects.equals(currentShipPosition, filteredShipPosition) || shipRange != filteredShipRange) {
+                Set<MsiNmNotification> candidates = queryPosition(filteredShipPosition, filteredShipRange);
+                candidates.addAll(queryPosition(currentShipPosition, shipRange));
+                for (MsiNmNotification msg : candidates) {
                     Double dist = msg.getDistanceToPosition(currentShipPosition);
-                    if (dist != null && dist < enavSettings.getMsiRelevanceFromOwnShipRange()) {
-                        msg.setFiltered(true);
-                    }
+                    msiNmIndex.setFlag(msg, RELEVANT_SHIP, dist != null && dist < shipRange);
                 }
+                evaluated.addAll(candidates);
+                filteredShipPosition = currentShipPosition;
+                filteredShipRange = shipRange;
+            }
 
-                // 2) Check proximity to routes
-                if (!msg.isFiltered() && msg.nearRoute(routeManager.getVisibleRoutes())) {
-                    msg.setFiltered(true);
+            // 2) Check proximity to routes
+            List<Route> routes = (routeManager != null) ? routeManager.getVisibleRoutes() : new ArrayList<Route>();
+            List<double[]> routeBounds = computeRouteBounds(routes);
+            if (!equalBounds(routeBounds, filteredRouteBounds)) {
+                Set<MsiNmNotification> candidates = new HashSet<>();
+                for (double[] bounds : filteredRouteBounds) {
+                    candidates.addAll(msiNmIndex.query(bounds[0], bounds[1], bounds[2], bounds[3], 0.0));
                 }
+                for (double[] bounds : routeBounds) {
+                    candidates.addAll(msiNmIndex.query(bounds[0], bounds[1], bounds[2], bounds[3], 0.0));
+                }
+                for (MsiNmNotification msg : candidates) {
+                    msiNmIndex.setFlag(msg, RELEVANT_ROUTE, msg.nearRoute(routes));
+                }
+                evaluated.addAll(candidates);
+                filteredRouteBounds = routeBounds;
+            }
 
-                // 3) Check proximity from a new route mouse position
-                if (!msg.isFiltered() && newRouteMousePosition != null) {
+            // 3) Check proximity from a new route mouse position
+            double mouseRange = enavSettings.getMsiVisibilityFromNewWaypoint();
+            if (!Objects.equals(newRouteMousePosition, filteredMousePosition) || mouseRange != filteredMouseRange) {
+                Set<MsiNmNotification> candidates = queryPosition(filteredMousePosition, filteredMouseRange);
+                candidates.addAll(queryPosition(newRouteMousePosition, mouseRange));
+                for (MsiNmNotification msg : candidates) {
                     Double dist = msg.getDistanceToPosition(newRouteMousePosition);
-                    if (dist != null && dist < enavSettings.getMsiVisibilityFromNewWaypoint()) {
-                        msg.setFiltered(true);
-                    }
+                    msiNmIndex.setFlag(msg, RELEVANT_MOUSE, dist != null && dist < mouseRange);
                 }
+                evaluated.addAll(candidates);
+                filteredMousePosition = newRouteMousePosition;
+                filteredMouseRange = mouseRange;
+            }
 
-                // 4) Check proximity to the new route
-                if (!msg.isFiltered() && newRoute != null && newRouteMousePosition != null && newRouteProjection != null &&
-                        msg.nearNewRoute(newRoute, newRouteMousePosition, newRouteProjection)) {
-                    msg.setFiltered(true);
+            // 4) Check proximity to the new route.
+            // While a route is being drawn, typically only the leg to the mouse position changes
+            List<Position[]> newRouteLegs = computeNewRouteLegs();
+            // The sampling of the legs depends on the projection and range, so if changed, re-evaluate all legs
+            boolean resample = mouseRange != filteredNewRouteRange || (newRouteProjection != null
+                    && (newRouteProjection.getScale() != filteredProjectionScale
+                    || !newRouteProjection.getCenter().equals(filteredProjectionCenter)));
+            Set<MsiNmNotification> candidates = new HashSet<>();
+            for (Position[] leg : filteredNewRouteLegs) {
+                if (resample || !containsLeg(newRouteLegs, leg)) {
+                    double[] bounds = computeLegBounds(leg, filteredNewRouteRange);
+                    candidates.addAll(msiNmIndex.query(bounds[0], bounds[1], bounds[2], bounds[3], filteredNewRouteRange));
+                }
+            }
+            List<double[]> newRouteLegBounds = new ArrayList<>();
+            for (Position[] leg : newRouteLegs) {
+                double[] bounds = computeLegBounds(leg, mouseRange);
+                newRouteLegBounds.add(bounds);
+                if (resample || !containsLeg(filteredNewRouteLegs, leg)) {
+                    candidates.addAll(msiNmIndex.query(bounds[0], bounds[1], bounds[2], bounds[3], mouseRange));
+                }
+            }
+            for (MsiNmNotification msg : candidates) {
+                boolean near = false;
+                for (int i = 0; !near && i < newRouteLegs.size(); i++) {
+                    Position[] leg = newRouteLegs.get(i);
+                    double[] bounds = newRouteLegBounds.get(i);
+                    near = msiNmIndex.intersects(msg, bounds[0], bounds[1], bounds[2], bounds[3], mouseRange)
+                            && msg.nearNewRouteLeg(leg[0], leg[1], newRouteProjection);
                 }
+                msiNmIndex.setFlag(msg, RELEVANT_NEW_ROUTE, near);
+            }
+            evaluated.addAll(candidates);
+            filteredNewRouteLegs = newRouteLegs;
+            filteredNewRouteRange = mouseRange;
+            if (newRouteProjection != null) {
+                filteredProjectionScale = newRouteProjection.getScale();
+                filteredProjectionCenter = newRouteProjection.getCenter();
+            }
 
+            // Update the filtered state. Messages without location always included
+            boolean all = !filterApplied;
+            for (MsiNmNotification msg : all ? msiNmMessages : evaluated) {
+                boolean wasFiltered = msg.isFiltered();
+                msg.setFiltered(!msiNmIndex.contains(msg) || msiNmIndex.getFlags(msg) != 0);
                 updated |= wasFiltered != msg.isFiltered();
             }
+            filterApplied = true;
         }
 
-        LOG.debug("RECOMPUTE MSI-NM IN " + (System.currentTimeMillis() - t0) + " MS");
+        filterStatus.markFilterUpdate(System.nanoTime() - t0, evaluated.size());
 
         // Has the MSI-NM been updated
         if (notifyListeners && updated) {
@@ -411,6 +521,122 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         }
     }
 
+    /**
+     * Returns the messages within the given range of the position
+     */
+    private Set<MsiNmNotification> queryPosition(Position pos, double range) {
+        if (pos == null) {
+            return new HashSet<>();
+        }
+        return msiNmIndex.query(pos.getLatitude(), pos.getLongitude(), pos.getLatitude(), pos.getLongitude(), range);
+    }
+
+    /**
+     * Returns the bounding box of the leg as {minLat, minLon, maxLat, maxLon}.
+     * <p>
+     * {@linkplain MsiNmNotification#nearNewRouteLeg(Position, Position, Projection)} samples the leg in steps of
+     * the range in pixels with a rounded slope, which may drift from the leg by up to half a pixel per step.
+     * The bounding box is expanded accordingly.
+     */
+    private static double[] computeLegBounds(Position[] leg, double range) {
+        double minLat = Math.min(leg[0].getLatitude(), leg[1].getLatitude());
+        double maxLat = Math.max(leg[0].getLatitude(), leg[1].getLatitude());
+        double minLon = Math.min(leg[0].getLongitude(), leg[1].getLongitude());
+        double maxLon = Math.max(leg[0].getLongitude(), leg[1].getLongitude());
+        double drift = Math.max(maxLat - minLat, maxLon - minLon) * Math.min(1.0, 1.0 / Math.max(range, 1e-3));
+        return new double[] { minLat - drift, minLon - drift, maxLat + drift, maxLon + drift };
+    }
+
+    /**
+     * Returns the legs of the new route, the last leg ending at the mouse position
+     */
+    private List<Position[]> computeNewRouteLegs() {
+        List<Position[]> legs = new ArrayList<>();
+        if (newRoute != null && newRouteMousePosition != null && newRouteProjection != null) {
+            List<RouteWaypoint> waypoints = newRoute.getWaypoints();
+            for (int i = 0; i < waypoints.size(); i++) {
+                Position next = (i == waypoints.size() - 1) ? newRouteMousePosition : waypoints.get(i + 1).getPos();
+                legs.add(new Position[] { waypoints.get(i).getPos(), next });
+            }
+        }
+        return legs;
+    }
+
+    /**
+     * Returns the bounding boxes of the routes as {minLat, minLon, maxLat, maxLon}
+     */
+    private static List<double[]> computeRouteBounds(List<Route> routes) {
+        List<double[]> result = new ArrayList<>();
+        for (Route route : routes) {
+            if (route.getWaypoints() == null || route.getWaypoints().size() == 0) {
+                continue;
+            }
+            double[] bounds = { 90.0, 180.0, -90.0, -180.0 };
+            for (RouteWaypoint waypoint : route.getWaypoints()) {
+                Position pos = waypoint.getPos();
+                bounds[0] = Math.min(bounds[0], pos.getLatitude());
+                bounds[1] = Math.min(bounds[1], pos.getLongitude());
+                bounds[2] = Math.max(bounds[2], pos.getLatitude());
+                bounds[3] = Math.max(bounds[3], pos.getLongitude());
+            }
+            result.add(bounds);
+        }
+        return result;
+    }
+
+    private static boolean equalBounds(List<double[]> bounds1, List<double[]> bounds2) {
+        if (bounds1.size() != bounds2.size()) {
+            return false;
+        }
+        for (int i = 0; i < bounds1.size(); i++) {
+            if (!Arrays.equals(bounds1.get(i), bounds2.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsLeg(List<Position[]> legs, Position[] leg) {
+        for (Position[] l : legs) {
+            if (l[0].equals(leg[0]) && l[1].equals(leg[1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the status of the MSI-NM filter
+     * @return the status of the MSI-NM filter
+     */
+    public MsiNmFilterStatus getFilterStatus() {
+        return filterStatus;
+    }
+
+    /**
+     * Returns the duration of the last filter update in microseconds
+     * @return the duration of the last filter update in microseconds
+     */
+    public long getLastFilterTime() {
+        return filterStatus.getLastFilterTime();
+    }
+
+    /**
+     * Returns the number of messages re-evaluated by the last filter update
+     * @return the number of messages re-evaluated by the last filter update
+     */
+    public int getLastFilterEvaluated() {
+        return filterStatus.getLastFilterEvaluated();
+    }
+
+    /**
+     * Returns the number of filter updates
+     * @return the number of filter updates
+     */
+    public long getFilterUpdateCount() {
+        return filterStatus.getFilterUpdateCount();
+    }
+
     /**
      * Called by the MsiLayer to update the filter when a new route is being drawn
      * @param newRouteMousePosition the current mouse position
@@ -421,7 +647,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         this.newRouteMousePosition = newRouteMousePosition;
         this.newRoute = newRoute;
         this.newRouteProjection = newRouteProjection;
-        recomputeMsiNmMessageFilter(true);
+        updateMsiNmMessageFilter(true);
     }
 
     /**
@@ -434,7 +660,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         if (currentShipPosition == null ||
                 Calculator.range(position, currentShipPosition, Heading.GC) > enavSettings.getMsiRelevanceGpsUpdateRange()) {
             currentShipPosition = position;
-            recomputeMsiNmMessageFilter(true);
+            updateMsiNmMessageFilter(true);
         }
 
     }
@@ -453,7 +679,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
                 case ROUTE_ADDED:
                 case ROUTE_REMOVED:
                 case ROUTE_CHANGED:
-                    recomputeMsiNmMessageFilter(true);
+                    updateMsiNmMessageFilter(true);
             }
         }
     }
@@ -0,0 +1,332 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+import dma.msinm.MCLocation;
+import dma.msinm.MCLocationType;
+import dma.msinm.MCPoint;
+
+/**
+ * Spatial index of the MSI-NM messages, used by the {@linkplain MsiNmServiceHandlerCommon} for only re-evaluating the
+ * relevance filter of the messages close to the ship position, route or new route leg that changed.
+ * <p>
+ * The bounding boxes of the message locations, including the radius of circles, are registered in the cells of a
+ * fixed lat/lon grid. Messages covering more than {@linkplain #MAX_CELLS_PER_MESSAGE} cells, e.g. area-wide warnings,
+ * are not indexed spatially, but always returned as candidates. Messages without locations are not indexed.
+ * <p>
+ * The index holds the relevance flags of each message, so that a message is included in the filter when any
+ * criterion holds, without having to re-evaluate the criteria that did not change.
+ */
+@NotThreadSafe
+public class MsiNmSpatialIndex {
+
+    /** The size of the grid cells in degrees */
+    static final double CELL_SIZE = 0.25;
+
+    /** Messages covering more cells than this are not indexed spatially, but always considered candidates */
+    static final int MAX_CELLS_PER_MESSAGE = 1024;
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final List<Entry> unbounded = new ArrayList<>();
+    private final Map<MsiNmNotification, Entry> entries = new HashMap<>();
+
+    /**
+     * Re-builds the index from the given messages
+     *
+     * @param messages
+     *            the messages to index
+     */
+    public void rebuild(Collection<MsiNmNotification> messages) {
+        cells.clear();
+        unbounded.clear();
+        Map<MsiNmNotification, Entry> oldEntries = new HashMap<>(entries);
+        entries.clear();
+
+        for (MsiNmNotification message : messages) {
+            double[] bounds = computeBounds(message);
+            if (bounds == null) {
+                continue;
+            }
+
+            // Preserve the relevance flags of messages already indexed
+            Entry entry = new Entry(message, bounds);
+            Entry oldEntry = oldEntries.get(message);
+            if (oldEntry != null) {
+                entry.flags = oldEntry.flags;
+            }
+            entries.put(message, entry);
+
+            int minLatIdx = cellIndex(bounds[0]);
+            int maxLatIdx = cellIndex(bounds[2]);
+            int minLonIdx = cellIndex(bounds[1]);
+            int maxLonIdx = cellIndex(bounds[3]);
+            if ((long) (maxLatIdx - minLatIdx + 1) * (maxLonIdx - minLonIdx + 1) > MAX_CELLS_PER_MESSAGE) {
+                unbounded.add(entry);
+                continue;
+            }
+            for (int latIdx = minLatIdx; latIdx <= maxLatIdx; latIdx++) {
+                for (int lonIdx = minLonIdx; lonIdx <= maxLonIdx; lonIdx++) {
+                    Long cell = cellKey(latIdx, lonIdx);
+                    List<Entry> cellEntries = cells.get(cell);
+                    if (cellEntries == null) {
+                        cellEntries = new ArrayList<>(4);
+                        cells.put(cell, cellEntries);
+                    }
+                    cellEntries.add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed messages
+     *
+     * @return the number of indexed messages
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns if the message is indexed, i.e. has a location
+     *
+     * @param message
+     *            the message
+     * @return if the message is indexed
+     */
+    public boolean contains(MsiNmNotification message) {
+        return entries.containsKey(message);
+    }
+
+    /**
+     * Returns the messages whose bounding boxes intersect the margin-expanded bounding box
+     *
+     * @param minLat
+     *            the minimum latitude
+     * @param minLon
+     *            the minimum longitude
+     * @param maxLat
+     *            the maximum latitude
+     * @param maxLon
+     *            the maximum longitude
+     * @param marginNm
+     *            the margin in nautical miles
+     * @return the messages intersecting the bounding box
+     */
+    public Set<MsiNmNotification> query(double minLat, double minLon, double maxLat, double maxLon, double marginNm) {
+        double latMargin = latMargin(marginNm);
+        double lonMargin = lonMargin(marginNm, minLat, maxLat);
+        minLat -= latMargin;
+        maxLat += latMargin;
+        minLon -= lonMargin;
+        maxLon += lonMargin;
+
+        Set<MsiNmNotification> result = new LinkedHashSet<>();
+        for (Entry entry : unbounded) {
+            if (entry.intersects(minLat, minLon, maxLat, maxLon)) {
+                result.add(entry.message);
+            }
+        }
+
+        int minLatIdx = cellIndex(minLat);
+        int maxLatIdx = cellIndex(maxLat);
+        int minLonIdx = cellIndex(minLon);
+        int maxLonIdx = cellIndex(maxLon);
+        if ((long) (maxLatIdx - minLatIdx + 1) * (maxLonIdx - minLonIdx + 1) > cells.size()) {
+            // Cheaper to check all the messages than to look up the cells
+            for (Entry entry : entries.values()) {
+                if (entry.intersects(minLat, minLon, maxLat, maxLon)) {
+                    result.add(entry.message);
+                }
+            }
+            return result;
+        }
+
+        for (int latIdx = minLatIdx; latIdx <= maxLatIdx; latIdx++) {
+            for (int lonIdx = minLonIdx; lonIdx <= maxLonIdx; lonIdx++) {
+                List<Entry> cellEntries = cells.get(cellKey(latIdx, lonIdx));
+                if (cellEntries != null) {
+                    for (Entry entry : cellEntries) {
+                        if (entry.intersects(minLat, minLon, maxLat, maxLon)) {
+                            result.add(entry.message);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns if the bounding box of the message intersects the margin-expanded bounding box
+     *
+     * @param message
+     *            the message
+     * @param minLat
+     *            the minimum latitude
+     * @param minLon
+     *            the minimum longitude
+     * @param maxLat
+     *            the maximum latitude
+     * @param maxLon
+     *            the maximum longitude
+     * @param marginNm
+     *            the margin in nautical miles
+     * @return if the message intersects the bounding box, or false if not indexed
+     */
+    public boolean intersects(MsiNmNotification message, double minLat, double minLon, double maxLat, double maxLon,
+            double marginNm) {
+        Entry entry = entries.get(message);
+        if (entry == null) {
+            return false;
+        }
+        double latMargin = latMargin(marginNm);
+        double lonMargin = lonMargin(marginNm, minLat, maxLat);
+        return entry.intersects(minLat - latMargin, minLon - lonMargin, maxLat + latMargin, maxLon + lonMargin);
+    }
+
+    /**
+     * Returns the relevance flags of the message
+     *
+     * @param message
+     *            the message
+     * @return the relevance flags of the message, or 0 if not indexed
+     */
+    public int getFlags(MsiNmNotification message) {
+        Entry entry = entries.get(message);
+        return (entry != null) ? entry.flags : 0;
+    }
+
+    /**
+     * Sets or clears the given relevance flag of the message
+     *
+     * @param message
+     *            the message
+     * @param flag
+     *            the flag
+     * @param set
+     *            whether to set or clear the flag
+     */
+    public void setFlag(MsiNmNotification message, int flag, boolean set) {
+        Entry entry = entries.get(message);
+        if (entry != null) {
+            entry.flags = set ? entry.flags | flag : entry.flags & ~flag;
+        }
+    }
+
+    /**
+     * Clears the given relevance flags of all the messages
+     *
+     * @param flags
+     *            the flags to clear
+     */
+    public void clearFlags(int flags) {
+        for (Entry entry : entries.values()) {
+            entry.flags &= ~flags;
+        }
+    }
+
+    /**
+     * Computes the bounding box of the message locations as {minLat, minLon, maxLat, maxLon}
+     *
+     * @param message
+     *            the message
+     * @return the bounding box, or null if the message has no locations
+     */
+    static double[] computeBounds(MsiNmNotification message) {
+        List<MCLocation> locations = message.get().getLocations();
+        if (locations == null) {
+            return null;
+        }
+        double[] bounds = null;
+        for (MCLocation loc : locations) {
+            double radius = (loc.getType() == MCLocationType.CIRCLE && loc.getRadius() != null) ? loc.getRadius()
+                    .doubleValue() : 0.0;
+            for (MCPoint pt : loc.getPoints()) {
+                double latMargin = latMargin(radius);
+                double lonMargin = lonMargin(radius, pt.getLat(), pt.getLat());
+                if (bounds == null) {
+                    bounds = new double[] { 90.0, 180.0, -90.0, -180.0 };
+                }
+                bounds[0] = Math.min(bounds[0], pt.getLat() - latMargin);
+                bounds[1] = Math.min(bounds[1], pt.getLon() - lonMargin);
+                bounds[2] = Math.max(bounds[2], pt.getLat() + latMargin);
+                bounds[3] = Math.max(bounds[3], pt.getLon() + lonMargin);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the number of degrees of latitude covering the given distance
+     */
+    static double latMargin(double marginNm) {
+        return marginNm / 60.0;
+    }
+
+    /**
+     * Returns the number of degrees of longitude covering at least the given distance between the given latitudes
+     */
+    static double lonMargin(double marginNm, double minLat, double maxLat) {
+        if (marginNm <= 0.0) {
+            return 0.0;
+        }
+        double lat = Math.min(89.0, Math.max(Math.abs(minLat), Math.abs(maxLat)) + latMargin(marginNm));
+        return Math.min(180.0, marginNm / (60.0 * Math.cos(Math.toRadians(lat))));
+    }
+
+    private static int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / CELL_SIZE);
+    }
+
+    private static Long cellKey(int latIdx, int lonIdx) {
+        return ((long) latIdx << 32) | (lonIdx & 0xFFFFFFFFL);
+    }
+
+    /**
+     * An indexed message with its bounding box and relevance flags
+     */
+    private static final class Entry {
+
+        final MsiNmNotification message;
+        final double minLat;
+        final double minLon;
+        final double maxLat;
+        final double maxLon;
+        int flags;
+
+        Entry(MsiNmNotification message, double[] bounds) {
+            this.message = message;
+            this.minLat = bounds[0];
+            this.minLon = bounds[1];
+            this.maxLat = bounds[2];
+            this.maxLon = bounds[3];
+        }
+
+        boolean intersects(double minLat, double minLon, double maxLat, double maxLon) {
+            return this.minLat <= maxLat && this.maxLat >= minLat && this.minLon <= maxLon && this.maxLon >= minLon;
+        }
+    }
+}
@@ -58,7 +58,7 @@ public abstract class VoctHandlerCommon extends EnavServiceHandlerCommon {
     public VoctHandlerCommon() {
         super();
 
-        getScheduler().scheduleWithFixedDelay(new Runnable() {
+        scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -48,6 +48,17 @@ public class AisSettings implements Serializable {
     private int pastTrackDisplayTime = 30; // In minutes
     private int pastTrackMinDist = 100; // In meters
     private int pastTrackOwnShipMinDist = 20; // In meters
+    private int updateDispatchWindow = 200; // In milliseconds. Zero or less dispatches every update immediately
+    private float clusterScale = 2000000.0f; // Vessels are clustered beyond this map scale. Zero or less disables
+    private int clusterCellSize = 40; // In pixels
+    private int snapshotInterval = 5; // In minutes. Zero or less only saves the AIS view at shutdown
+    private boolean snapshotCompressed; // Compressed snapshots are smaller, but cannot be memory-mapped
+    private double densityCellSize = 0.01; // In degrees. Zero or less disables the traffic density grid
+    private double densityMinLat = 53.0; // The area covered by the traffic density grid
+    private double densityMinLon = 3.0;
+    private double densityMaxLat = 59.0;
+    private double densityMaxLon = 16.0;
+    private int densityHalfLife = 6 * 60; // In minutes. Zero or less disables decay
 
     /**
      * The minimum length of the COG vector in minutes.
@@ -117,6 +128,17 @@ public class AisSettings implements Serializable {
         pastTrackDisplayTime = PropUtils.intFromProperties(props, PREFIX + "pastTrackDisplayTime", pastTrackDisplayTime);
         pastTrackMinDist = PropUtils.intFromProperties(props, PREFIX + "pastTrackMinDist", pastTrackMinDist);
         pastTrackOwnShipMinDist = PropUtils.intFromProperties(props, PREFIX + "pastTrackOwnShipMinDist", pastTrackOwnShipMinDist);
+        updateDispatchWindow = PropUtils.intFromProperties(props, PREFIX + "updateDispatchWindow", updateDispatchWindow);
+        clusterScale = PropUtils.floatFromProperties(props, PREFIX + "clusterScale", clusterScale);
+        clusterCellSize = PropUtils.intFromProperties(props, PREFIX + "clusterCellSize", clusterCellSize);
+        snapshotInterval = PropUtils.intFromProperties(props, PREFIX + "snapshotInterval", snapshotInterval);
+        snapshotCompressed = PropUtils.booleanFromProperties(props, PREFIX + "snapshotCompressed", snapshotCompressed);
+        densityCellSize = PropUtils.doubleFromProperties(props, PREFIX + "densityCellSize", densityCellSize);
+        densityMinLat = PropUtils.doubleFromProperties(props, PREFIX + "densityMinLat", densityMinLat);
+        densityMinLon = PropUtils.doubleFromProperties(props, PREFIX + "densityMinLon", densityMinLon);
+        densityMaxLat = PropUtils.doubleFromProperties(props, PREFIX + "densityMaxLat", densityMaxLat);
+        densityMaxLon = PropUtils.doubleFromProperties(props, PREFIX + "densityMaxLon", densityMaxLon);
+        densityHalfLife = PropUtils.intFromProperties(props, PREFIX + "densityHalfLife", densityHalfLife);
 
         this.cogVectorLengthMin = PropUtils.intFromProperties(props, PREFIX + this.varNameCogVectorLengthMin,
                 this.cogVectorLengthMin);
@@ -150,6 +172,17 @@ public class AisSettings implements Serializable {
         props.put(PREFIX + "pastTrackDisplayTime", Integer.toString(pastTrackDisplayTime));
         props.put(PREFIX + "pastTrackMinDist", Integer.toString(pastTrackMinDist));
         props.put(PREFIX + "pastTrackOwnShipMinDist", Integer.toString(pastTrackOwnShipMinDist));
+        props.put(PREFIX + "updateDispatchWindow", Integer.toString(updateDispatchWindow));
+        props.put(PREFIX + "clusterScale", Float.toString(clusterScale));
+        props.put(PREFIX + "clusterCellSize", Integer.toString(clusterCellSize));
+        props.put(PREFIX + "snapshotInterval", Integer.toString(snapshotInterval));
+        props.put(PREFIX + "snapshotCompressed", Boolean.toString(snapshotCompressed));
+        props.put(PREFIX + "densityCellSize", Double.toString(densityCellSize));
+        props.put(PREFIX + "densityMinLat", Double.toString(densityMinLat));
+        props.put(PREFIX + "densityMinLon", Double.toString(densityMinLon));
+        props.put(PREFIX + "densityMaxLat", Double.toString(densityMaxLat));
+        props.put(PREFIX + "densityMaxLon", Double.toString(densityMaxLon));
+        props.put(PREFIX + "densityHalfLife", Integer.toString(densityHalfLife));
 
         props.put(PREFIX + this.varNameCogVectorLengthMin, Integer.toString(this.cogVectorLengthMin));
         props.put(PREFIX + this.varNameCogVectorLengthMax, Integer.toString(this.cogVectorLengthMax));
@@ -258,6 +291,94 @@ public class AisSettings implements Serializable {
         this.pastTrackOwnShipMinDist = pastTrackOwnShipMinDist;
     }
 
+    public int getUpdateDispatchWindow() {
+        return updateDispatchWindow;
+    }
+
+    public void setUpdateDispatchWindow(int updateDispatchWindow) {
+        this.updateDispatchWindow = updateDispatchWindow;
+    }
+
+    public float getClusterScale() {
+        return clusterScale;
+    }
+
+    public void setClusterScale(float clusterScale) {
+        this.clusterScale = clusterScale;
+    }
+
+    public int getClusterCellSize() {
+        return clusterCellSize;
+    }
+
+    public void setClusterCellSize(int clusterCellSize) {
+        this.clusterCellSize = clusterCellSize;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public boolean isSnapshotCompressed() {
+        return snapshotCompressed;
+    }
+
+    public void setSnapshotCompressed(boolean snapshotCompressed) {
+        this.snapshotCompressed = snapshotCompressed;
+    }
+
+    public double getDensityCellSize() {
+        return densityCellSize;
+    }
+
+    public void setDensityCellSize(double densityCellSize) {
+        this.densityCellSize = densityCellSize;
+    }
+
+    public double getDensityMinLat() {
+        return densityMinLat;
+    }
+
+    public void setDensityMinLat(double densityMinLat) {
+        this.densityMinLat = densityMinLat;
+    }
+
+    public double getDensityMinLon() {
+        return densityMinLon;
+    }
+
+    public void setDensityMinLon(double densityMinLon) {
+        this.densityMinLon = densityMinLon;
+    }
+
+    public double getDensityMaxLat() {
+        return densityMaxLat;
+    }
+
+    public void setDensityMaxLat(double densityMaxLat) {
+        this.densityMaxLat = densityMaxLat;
+    }
+
+    public double getDensityMaxLon() {
+        return densityMaxLon;
+    }
+
+    public void setDensityMaxLon(double densityMaxLon) {
+        this.densityMaxLon = densityMaxLon;
+    }
+
+    public int getDensityHalfLife() {
+        return densityHalfLife;
+    }
+
+    public void setDensityHalfLife(int densityHalfLife) {
+        this.densityHalfLife = densityHalfLife;
+    }
+
     public int getCogVectorLengthMin() {
         return cogVectorLengthMin;
     }
@@ -58,6 +58,7 @@ public class EnavSettings implements Serializable {
     private int connectTimeout = 30000;
     private int msiPollInterval = 180; // sek
     private int readTimeout = 60000;
+    private boolean gzipRequests = true;
     private int msiTextboxesVisibleAtScale = 80000;
     private double msiRelevanceGpsUpdateRange = 0.5d;
     private double msiRelevanceFromOwnShipRange = 40.0d;
@@ -101,6 +102,7 @@ public class EnavSettings implements Serializable {
         msiRelevanceFromOwnShipRange = PropUtils.doubleFromProperties(props, PREFIX + "msiRelevanceFromOwnShipRange", msiRelevanceFromOwnShipRange);
         msiVisibilityFromNewWaypoint = PropUtils.doubleFromProperties(props, PREFIX + "msiVisibilityFromNewWaypoint", msiVisibilityFromNewWaypoint);
         msiFilter = PropUtils.booleanFromProperties(props, PREFIX + "msiFilter", msiFilter);
+        gzipRequests = PropUtils.booleanFromProperties(props, PREFIX + "gzipRequests", gzipRequests);
         msiNmServiceId = props.getProperty(PREFIX + "msiNmServiceId", msiNmServiceId);
 
         this.setRouteTimeToLive(PropUtils.longFromProperties(props, PREFIX + "routeTimeToLive", this.getRouteTimeToLive()));
@@ -138,6 +140,7 @@ public class EnavSettings implements Serializable {
         props.put(PREFIX + "msiRelevanceFromOwnShipRange", Double.toString(msiRelevanceFromOwnShipRange));
         props.put(PREFIX + "msiVisibilityFromNewWaypoint", Double.toString(msiVisibilityFromNewWaypoint));
         props.put(PREFIX + "msiFilter", Boolean.toString(msiFilter));
+        props.put(PREFIX + "gzipRequests", Boolean.toString(gzipRequests));
         props.put(PREFIX + "msiNmServiceId", StringUtils.defaultString(msiNmServiceId));
         props.put(PREFIX + "monaLisaServer", monaLisaServer);
         props.put(PREFIX + "monaLisaPort", Integer.toString(monaLisaPort));
@@ -203,6 +206,14 @@ public class EnavSettings implements Serializable {
         this.readTimeout = readTimeout;
     }
     
+    public boolean isGzipRequests() {
+        return gzipRequests;
+    }
+
+    public void setGzipRequests(boolean gzipRequests) {
+        this.gzipRequests = gzipRequests;
+    }
+
     public int getMetocTtl() {
         return metocTtl;
     }
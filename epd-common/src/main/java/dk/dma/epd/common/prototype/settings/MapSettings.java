@@ -46,6 +46,9 @@ public class MapSettings implements Serializable {
     private boolean s52TwoShades;
     private String color = "Day";
     private String wmsQuery = "";
+    private int wmsCacheSize = 64; // MB
+    private int wmsCacheTtl = 7 * 24; // hours
+    private int maxLayerFrameRate = 5; // frames per second
     private boolean multipleBackgrounds;
     
     public MapSettings() {
@@ -68,6 +71,9 @@ public class MapSettings implements Serializable {
         
         //settings for wms
         wmsQuery = props.getProperty(PREFIX + "wmsQuery", "");
+        wmsCacheSize = PropUtils.intFromProperties(props, PREFIX + "wmsCacheSize", wmsCacheSize);
+        wmsCacheTtl = PropUtils.intFromProperties(props, PREFIX + "wmsCacheTtl", wmsCacheTtl);
+        maxLayerFrameRate = PropUtils.intFromProperties(props, PREFIX + "maxLayerFrameRate", maxLayerFrameRate);
         
         // settings for S52 layer
         s52ShowText = PropUtils.booleanFromProperties(props, PREFIX + "s52ShowText", s52ShowText);
@@ -94,6 +100,9 @@ public class MapSettings implements Serializable {
         props.put(PREFIX + "multipleBackgrounds", Boolean.toString(multipleBackgrounds));
         
         props.put(PREFIX + "wmsQuery", wmsQuery);
+        props.put(PREFIX + "wmsCacheSize", Integer.toString(wmsCacheSize));
+        props.put(PREFIX + "wmsCacheTtl", Integer.toString(wmsCacheTtl));
+        props.put(PREFIX + "maxLayerFrameRate", Integer.toString(maxLayerFrameRate));
         
         // settings for S52 layer
         props.put(PREFIX + "s52ShowText", Boolean.toString(s52ShowText));
@@ -190,6 +199,43 @@ public class MapSettings implements Serializable {
         this.wmsQuery = wmsQuery;
     }
 
+    /**
+     * Returns the size of the in-memory WMS tile cache in megabytes
+     * @return the size of the in-memory WMS tile cache in megabytes
+     */
+    public int getWmsCacheSize() {
+        return wmsCacheSize;
+    }
+
+    public void setWmsCacheSize(int wmsCacheSize) {
+        this.wmsCacheSize = wmsCacheSize;
+    }
+
+    /**
+     * Returns the time-to-live of the WMS tiles cached on disk in hours
+     * @return the time-to-live of the WMS tiles cached on disk in hours
+     */
+    public int getWmsCacheTtl() {
+        return wmsCacheTtl;
+    }
+
+    public void setWmsCacheTtl(int wmsCacheTtl) {
+        this.wmsCacheTtl = wmsCacheTtl;
+    }
+
+    /**
+     * Returns the maximum number of times per second that a layer is prepared in response to target updates
+     * 
+     * @return the maximum layer frame rate
+     */
+    public int getMaxLayerFrameRate() {
+        return maxLayerFrameRate;
+    }
+
+    public void setMaxLayerFrameRate(int maxLayerFrameRate) {
+        this.maxLayerFrameRate = maxLayerFrameRate;
+    }
+
     public int getS52ShallowContour() {
         return s52ShallowContour;
     }
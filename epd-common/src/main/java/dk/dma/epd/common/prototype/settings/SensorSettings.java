@@ -171,6 +171,10 @@ public class SensorSettings implements Serializable {
 
     private int replaySpeedup = 1;
     private Date replayStartDate;
+    /**
+     * If true, replay files are read as fast as possible, ignoring the replay speedup
+     */
+    private boolean replayAsFastAsPossible;
     
     private boolean useTimeFromPnt = true;
 
@@ -221,6 +225,7 @@ public class SensorSettings implements Serializable {
         gpsFilename = props.getProperty(PREFIX + "gpsFilename", gpsFilename);
         msPntFilename = props.getProperty(PREFIX + "msPntFilename", msPntFilename);
         replaySpeedup = PropUtils.intFromProperties(props, PREFIX + "replaySpeedup", replaySpeedup);
+        replayAsFastAsPossible = PropUtils.booleanFromProperties(props, PREFIX + "replayAsFastAsPossible", replayAsFastAsPossible);
         String replayStartStr = props.getProperty(PREFIX + "replayStartDate", "");
         if (replayStartStr.length() > 0) {
             try {
@@ -268,6 +273,7 @@ public class SensorSettings implements Serializable {
         props.put(PREFIX + "gpsFilename", gpsFilename);
         props.put(PREFIX + "msPntFilename", msPntFilename);
         props.put(PREFIX + "replaySpeedup", Integer.toString(replaySpeedup));
+        props.put(PREFIX + "replayAsFastAsPossible", Boolean.toString(replayAsFastAsPossible));
         String replayStartStr = "";
         if (replayStartDate != null) {
             replayStartStr = getISO8620(replayStartDate);
@@ -428,6 +434,14 @@ public class SensorSettings implements Serializable {
         this.replaySpeedup = replaySpeedup;
     }
 
+    public boolean isReplayAsFastAsPossible() {
+        return replayAsFastAsPossible;
+    }
+
+    public void setReplayAsFastAsPossible(boolean replayAsFastAsPossible) {
+        this.replayAsFastAsPossible = replayAsFastAsPossible;
+    }
+
     public Date getReplayStartDate() {
         return replayStartDate;
     }
@@ -0,0 +1,528 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.shoreservice;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.EPD;
+import dk.frv.enav.common.xml.metoc.MetocDataTypes;
+import dk.frv.enav.common.xml.metoc.MetocForecast;
+import dk.frv.enav.common.xml.metoc.MetocForecastPoint;
+import dk.frv.enav.common.xml.metoc.request.MetocForecastRequest;
+import dk.frv.enav.common.xml.metoc.request.MetocForecastRequestWp;
+
+/**
+ * Local cache of METOC forecast points, keyed by position/time cells and the requested data types.
+ * <p>
+ * A route METOC request is sampled locally at the request interval, and each sample is looked up in the cell of its
+ * position and time. Only the span of the route between the first and the last sample without a cached point has to be
+ * requested from shore, and the resulting forecast is merged from the cached points before and after that span and the
+ * points received. Hence tweaking a single leg of a long route only re-requests the part of the route affected.
+ * <p>
+ * Cells are {@linkplain #CELL_DEGREES} degrees wide and {@linkplain #CELL_MILLIS} long, and hold the points of the most
+ * recently received forecast within them. A cached point is only used for a sample within {@linkplain #POSITION_TOLERANCE} degrees and
+ * {@linkplain #TIME_TOLERANCE} milliseconds of it. Points expire with the METOC time-to-live, and the cache is
+ * persisted in the {@code .metoccache} file of the EPD home between sessions.
+ */
+@ThreadSafe
+public class MetocCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetocCache.class);
+
+    /** The cell size in degrees */
+    public static final double CELL_DEGREES = 0.1;
+
+    /** The cell duration in milliseconds */
+    public static final long CELL_MILLIS = 60L * 60L * 1000L;
+
+    /** The maximum difference in degrees between the latitude or longitude of a sample and a cached point used */
+    public static final double POSITION_TOLERANCE = CELL_DEGREES / 4;
+
+    /** The maximum difference in milliseconds between the time of a sample and a cached point used */
+    public static final long TIME_TOLERANCE = CELL_MILLIS / 4;
+
+    /** Version of the persisted cache, to be changed along with the key */
+    private static final int FILE_VERSION = 2;
+
+    /** The number of key bits holding the data types */
+    private static final int TYPE_BITS = MetocDataTypes.values().length;
+
+    private static final int MAX_ENTRIES = 50000;
+
+    /** The maximum number of samples per route */
+    private static final int MAX_SAMPLES = 10000;
+
+    private static MetocCache instance;
+
+    private final Path file;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<Long, Cell> cells = new LinkedHashMap<Long, Cell>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Cell> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Constructor
+     * 
+     * @param file
+     *            the file used for persisting the cache, or null for a memory-only cache
+     */
+    public MetocCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the shared METOC cache, loaded from the EPD home
+     * 
+     * @return the shared METOC cache
+     */
+    public static synchronized MetocCache getInstance() {
+        if (instance == null) {
+            instance = new MetocCache(EPD.getInstance().getHomePath().resolve(".metoccache"));
+            instance.loadFromFile();
+        }
+        return instance;
+    }
+
+    /**
+     * Saves the shared METOC cache, if it has been loaded
+     */
+    public static void saveInstance() {
+        MetocCache cache;
+        synchronized (MetocCache.class) {
+            cache = instance;
+        }
+        if (cache != null) {
+            cache.saveToFile();
+        }
+    }
+
+    /**
+     * Looks up the samples of the request in the cache
+     * 
+     * @param request
+     *            the route METOC request
+     * @param ttl
+     *            the time-to-live of the cached points in milliseconds
+     * @return the result of the look-up
+     */
+    public Lookup lookup(MetocForecastRequest request, long ttl) {
+        List<MetocForecastRequestWp> wps = request.getWaypoints();
+        long dt = request.getDt() * 60L * 1000L;
+        if (wps.size() < 2 || dt <= 0) {
+            return new Lookup(wps, new long[0], new double[0], new double[0], new Entry[0]);
+        }
+
+        // Sample the route at the request interval
+        long start = wps.get(0).getEta().getTime();
+        long end = wps.get(wps.size() - 1).getEta().getTime();
+        int count = (int) Math.min(MAX_SAMPLES, Math.max(0L, (end - start) / dt) + 1);
+        long[] times = new long[count];
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        int leg = 0;
+        for (int i = 0; i < count; i++) {
+            long t = (i == count - 1) ? end : start + i * dt;
+            while (leg < wps.size() - 2 && wps.get(leg + 1).getEta().getTime() < t) {
+                leg++;
+            }
+            MetocForecastRequestWp from = wps.get(leg);
+            MetocForecastRequestWp to = wps.get(leg + 1);
+            long t0 = from.getEta().getTime();
+            long t1 = to.getEta().getTime();
+            double f = (t1 > t0) ? Math.max(0.0, Math.min(1.0, (double) (t - t0) / (t1 - t0))) : 0.0;
+            times[i] = t;
+            lats[i] = from.getLat() + f * (to.getLat() - from.getLat());
+            lons[i] = from.getLon() + f * (to.getLon() - from.getLon());
+        }
+
+        Entry[] hits = new Entry[count];
+        long types = types(request.getDataTypes());
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                Long key = key(lats[i], lons[i], times[i], types);
+                Cell cell = cells.get(key);
+                if (cell != null && now - cell.created > ttl) {
+                    cells.remove(key);
+                    cell = null;
+                }
+                MetocForecastPoint point = (cell != null) ? cell.find(lats[i], lons[i], times[i]) : null;
+                hits[i] = (point != null) ? new Entry(point, cell.created) : null;
+            }
+        }
+        return new Lookup(wps, times, lats, lons, hits);
+    }
+
+    /**
+     * Adds the points of the forecast received from shore to the cache
+     * 
+     * @param forecast
+     *            the forecast
+     * @param dataTypes
+     *            the data types of the request
+     */
+    public void put(MetocForecast forecast, Collection<MetocDataTypes> dataTypes) {
+        if (forecast == null || forecast.getForecasts() == null) {
+            return;
+        }
+        long types = types(dataTypes);
+        long created = (forecast.getCreated() != null) ? forecast.getCreated().getTime() : System.currentTimeMillis();
+        synchronized (this) {
+            for (MetocForecastPoint point : forecast.getForecasts()) {
+                if (point.getTime() == null) {
+                    continue;
+                }
+                long key = key(point.getLat(), point.getLon(), point.getTime().getTime(), types);
+                Cell cell = cells.get(key);
+                if (cell == null || cell.created != created) {
+                    cell = new Cell(created);
+                    cells.put(key, cell);
+                }
+                cell.add(point);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached points
+     * 
+     * @return the number of cached points
+     */
+    public synchronized int size() {
+        return cells.size();
+    }
+
+    /**
+     * Removes the points older than the time-to-live
+     * 
+     * @param ttl
+     *            the time-to-live in milliseconds
+     */
+    public synchronized void removeExpired(long ttl) {
+        long now = System.currentTimeMillis();
+        for (Iterator<Cell> it = cells.values().iterator(); it.hasNext();) {
+            if (now - it.next().created > ttl) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Persists the cache
+     */
+    public void saveToFile() {
+        if (file == null) {
+            return;
+        }
+        Map<Long, Cell> copy;
+        synchronized (this) {
+            copy = new LinkedHashMap<>(cells);
+        }
+        try {
+            // Write to a temporary file first, so that a failed save does not lose the cache
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(FILE_VERSION);
+                out.writeObject(copy);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.error("Failed to save METOC cache: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadFromFile() {
+        if (file == null) {
+            return;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != FILE_VERSION) {
+                throw new IOException("Unsupported version");
+            }
+            Map<Long, Cell> loaded = (Map<Long, Cell>) in.readObject();
+            synchronized (this) {
+                cells.putAll(loaded);
+            }
+            LOG.info("Loaded " + loaded.size() + " cached METOC points");
+        } catch (NoSuchFileException e) {
+            // Not an error
+        } catch (Exception e) {
+            LOG.error("Failed to load METOC cache: " + e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e1) {
+                LOG.warn("Failed to delete METOC cache: " + e1.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the cell containing the given position and time, for the given data types
+     */
+    static long key(double lat, double lon, long time, long types) {
+        long latIdx = (long) Math.floor((lat + 90.0) / CELL_DEGREES) & 0xFFFL;
+        long lonIdx = (long) Math.floor((lon + 180.0) / CELL_DEGREES) & 0xFFFL;
+        long timeIdx = Math.floorDiv(time, CELL_MILLIS);
+        return (timeIdx << (24 + TYPE_BITS)) | (types << 24) | (latIdx << 12) | lonIdx;
+    }
+
+    /**
+     * Returns the bit mask of the given data types
+     */
+    private static long types(Collection<MetocDataTypes> dataTypes) {
+        long types = 0L;
+        if (dataTypes != null) {
+            for (MetocDataTypes dataType : dataTypes) {
+                types |= 1L << dataType.ordinal();
+            }
+        }
+        return types;
+    }
+
+    /**
+     * The points of a forecast within a cell, along with the creation time of the forecast
+     */
+    private static final class Cell implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final List<MetocForecastPoint> points = new ArrayList<>(2);
+        final long created;
+
+        Cell(long created) {
+            this.created = created;
+        }
+
+        void add(MetocForecastPoint point) {
+            for (int i = 0; i < points.size(); i++) {
+                if (points.get(i).getTime().equals(point.getTime())) {
+                    points.set(i, point);
+                    return;
+                }
+            }
+            points.add(point);
+        }
+
+        /**
+         * Returns the point closest in time to the given sample and within the tolerance of it, or null if none
+         */
+        MetocForecastPoint find(double lat, double lon, long time) {
+            MetocForecastPoint found = null;
+            long foundDt = Long.MAX_VALUE;
+            for (MetocForecastPoint point : points) {
+                long dt = Math.abs(point.getTime().getTime() - time);
+                if (dt <= TIME_TOLERANCE && dt < foundDt && Math.abs(point.getLat() - lat) <= POSITION_TOLERANCE
+                        && Math.abs(point.getLon() - lon) <= POSITION_TOLERANCE) {
+                    found = point;
+                    foundDt = dt;
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * A cached point used for a sample, along with the creation time of its forecast
+     */
+    private static final class Entry {
+        final MetocForecastPoint point;
+        final long created;
+
+        Entry(MetocForecastPoint point, long created) {
+            this.point = point;
+            this.created = created;
+        }
+    }
+
+    /**
+     * The result of looking up the samples of a route METOC request
+     */
+    public static final class Lookup {
+
+        private final List<MetocForecastRequestWp> wps;
+        private final long[] times;
+        private final double[] lats;
+        private final double[] lons;
+        private final Entry[] hits;
+        private int firstMissing = -1;
+        private int lastMissing = -1;
+
+        Lookup(List<MetocForecastRequestWp> wps, long[] times, double[] lats, double[] lons, Entry[] hits) {
+            this.wps = wps;
+            this.times = times;
+            this.lats = lats;
+            this.lons = lons;
+            this.hits = hits;
+            for (int i = 0; i < hits.length; i++) {
+                if (hits[i] == null) {
+                    if (firstMissing < 0) {
+                        firstMissing = i;
+                    }
+                    lastMissing = i;
+                }
+            }
+        }
+
+        /**
+         * Returns if all samples were found in the cache
+         * 
+         * @return if all samples were found in the cache
+         */
+        public boolean isComplete() {
+            return hits.length > 0 && firstMissing < 0;
+        }
+
+        /**
+         * Returns if only a part of the route has to be requested from shore
+         * 
+         * @return if only a part of the route has to be requested from shore
+         */
+        public boolean isPartial() {
+            return firstMissing > 0 || lastMissing >= 0 && lastMissing < hits.length - 1;
+        }
+
+        /**
+         * Returns the number of samples found in the cache
+         * 
+         * @return the number of samples found in the cache
+         */
+        public int getHitCount() {
+            int count = 0;
+            for (Entry hit : hits) {
+                if (hit != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Returns the waypoints of the span of the route that has to be requested from shore, i.e. from the first to
+         * the last sample not found in the cache, along with the request waypoints in between.
+         * 
+         * @return the waypoints of the span to request
+         */
+        public List<MetocForecastRequestWp> getMissingWaypoints() {
+            List<MetocForecastRequestWp> missing = new ArrayList<>();
+            if (!isPartial()) {
+                missing.addAll(wps);
+                return missing;
+            }
+            // Include the neighbouring samples, so that the span covers the cells on either side
+            int from = Math.max(0, firstMissing - 1);
+            int to = Math.min(times.length - 1, lastMissing + 1);
+            missing.add(sample(from));
+            for (MetocForecastRequestWp wp : wps) {
+                long eta = wp.getEta().getTime();
+                if (eta > times[from] && eta < times[to]) {
+                    missing.add(wp);
+                }
+            }
+            missing.add(sample(to));
+            return missing;
+        }
+
+        /**
+         * Returns the forecast merged from the cached points and the forecast received for the missing span
+         * 
+         * @param received
+         *            the forecast received from shore, or null if complete
+         * @return the merged forecast
+         */
+        public MetocForecast merge(MetocForecast received) {
+            if (received != null && !isPartial()) {
+                return received;
+            }
+
+            MetocForecast forecast = new MetocForecast();
+            long created = (received != null && received.getCreated() != null) ? received.getCreated().getTime()
+                    : Long.MAX_VALUE;
+            int before = (firstMissing < 0) ? hits.length : firstMissing;
+            MetocForecastPoint last = null;
+            for (int i = 0; i < before; i++) {
+                last = add(forecast, hits[i].point, last);
+                created = Math.min(created, hits[i].created);
+            }
+            if (received != null) {
+                long spanStart = (before > 0) ? times[before - 1] : Long.MIN_VALUE;
+                long spanEnd = (lastMissing + 1 < times.length) ? times[lastMissing + 1] : Long.MAX_VALUE;
+                for (MetocForecastPoint point : received.getForecasts()) {
+                    long t = point.getTime().getTime();
+                    if (t > spanStart && t < spanEnd) {
+                        last = add(forecast, point, last);
+                    }
+                }
+            }
+            for (int i = lastMissing + 1; i > 0 && i < hits.length; i++) {
+                last = add(forecast, hits[i].point, last);
+                created = Math.min(created, hits[i].created);
+            }
+            // The forecast is as old as the oldest point used
+            forecast.setCreated(new Date(created == Long.MAX_VALUE ? System.currentTimeMillis() : created));
+            return forecast;
+        }
+
+        private static MetocForecastPoint add(MetocForecast forecast, MetocForecastPoint point, MetocForecastPoint last) {
+            // Consecutive samples may hit the same cell
+            if (point != last) {
+                forecast.getForecasts().add(point);
+            }
+            return point;
+        }
+
+        private MetocForecastRequestWp sample(int index) {
+            MetocForecastRequestWp wp = new MetocForecastRequestWp();
+            wp.setEta(new Date(times[index]));
+            wp.setLat(lats[index]);
+            wp.setLon(lons[index]);
+            // Use the heading of the leg of the sample
+            String heading = wps.get(0).getHeading();
+            for (MetocForecastRequestWp reqWp : wps) {
+                if (reqWp.getEta().getTime() > times[index]) {
+                    break;
+                }
+                heading = reqWp.getHeading();
+            }
+            wp.setHeading(heading);
+            return wp;
+        }
+    }
+}
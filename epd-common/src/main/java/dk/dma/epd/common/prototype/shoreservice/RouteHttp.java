@@ -21,10 +21,10 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
-import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.dma.epd.common.prototype.communication.webservice.HttpClientPool;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 
 /**
@@ -35,6 +35,7 @@ public class RouteHttp {
     private static final Logger LOG = LoggerFactory.getLogger(RouteHttp.class);
 
     private static final String USER_AGENT = "EPD";
+    private static final String POOL = "monalisa";
 
     private String uri = "";
     private String url;
@@ -92,16 +93,10 @@ public class RouteHttp {
     }
 
     public void init(int timeout) {
-        httpClient = new HttpClient();
+        httpClient = HttpClientPool.getClient(POOL, timeout);
         method = new PostMethod(url);
-        HttpConnectionManagerParams params = httpClient
-                .getHttpConnectionManager().getParams();
-        // params.setSoTimeout(readTimeout);
-        // params.setConnectionTimeout(connectionTimeout);
-        params.setSoTimeout(timeout);
-        params.setConnectionTimeout(timeout);
+        method.getParams().setSoTimeout(timeout);
         method.setRequestHeader("User-Agent", USER_AGENT);
-        method.setRequestHeader("Connection", "close");
         method.addRequestHeader("Accept", "text/*");
         method.addRequestHeader("Content-Type", "text/xml");
 
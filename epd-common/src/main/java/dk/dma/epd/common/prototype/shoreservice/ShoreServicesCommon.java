@@ -14,18 +14,23 @@
  */
 package dk.dma.epd.common.prototype.shoreservice;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 
+import net.jcip.annotations.GuardedBy;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +38,7 @@ import com.bbn.openmap.MapHandlerChild;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
+import dk.dma.epd.common.prototype.communication.webservice.JaxbContextRegistry;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreHttp;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceErrorCode;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
@@ -59,8 +65,6 @@ import dk.frv.enav.common.xml.msi.request.MsiPollRequest;
 import dk.frv.enav.common.xml.msi.response.MsiResponse;
 import dk.frv.enav.common.xml.nogo.request.NogoRequest;
 import dk.frv.enav.common.xml.nogo.response.NogoResponse;
-import dk.frv.enav.common.xml.nogoslices.request.NogoRequestSlices;
-import dk.frv.enav.common.xml.nogoslices.response.NogoResponseSlices;
 import dk.frv.enav.common.xml.risk.request.RiskRequest;
 import dk.frv.enav.common.xml.risk.response.RiskList;
 import dk.frv.enav.common.xml.risk.response.RiskResponse;
@@ -76,7 +80,10 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
     private PntHandler pntHandler;
     protected EnavSettings enavSettings;
     private ShoreServiceStatus status = new ShoreServiceStatus();
-    private static final String ENCODING = "UTF-8";
+    private static final String MONALISA_CONTEXT_PATH = "dk.dma.epd.common.prototype.monalisa.sspa";
+
+    /** The requests in flight, keyed by URI and marshalled request */
+    private final ConcurrentHashMap<RequestKey, SharedRequest> inFlight = new ConcurrentHashMap<>();
 
     public ShoreServicesCommon(EnavSettings enavSettings) {
         this.enavSettings = enavSettings;
@@ -142,8 +149,6 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
     public NogoResponse nogoPoll(double draught, Position northWestPoint, Position southEastPoint, Date startDate, Date endDate)
             throws ShoreServiceException {
 
-        // nogoPoll(draught, northWestPoint, southEastPoint, startDate, endDate, 2);
-
         // Create request
         NogoRequest nogoRequest = new NogoRequest();
 
@@ -156,53 +161,17 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
         nogoRequest.setStartDate(startDate);
         nogoRequest.setEndDate(endDate);
 
-        // Add request parameters
-        addRequestParameters(nogoRequest);
-
         NogoResponse nogoResponse = (NogoResponse) makeRequest("/api/xml/nogo", "dk.frv.enav.common.xml.nogo.request",
                 "dk.frv.enav.common.xml.nogo.response", nogoRequest);
 
         return nogoResponse;
     }
 
-    public NogoResponseSlices nogoPoll(double draught, Position northWestPoint, Position southEastPoint, Date startDate,
-            Date endDate, int slices) throws ShoreServiceException {
-
-        // System.out.println("Nogo response slice test");
-
-        NogoRequestSlices nogoRequest = new NogoRequestSlices();
-        // System.out.println("Request created");
-
-        // Set request parameters
-        nogoRequest.setDraught(draught);
-        nogoRequest.setNorthWestPointLat(northWestPoint.getLatitude());
-        nogoRequest.setNorthWestPointLon(northWestPoint.getLongitude());
-        nogoRequest.setSouthEastPointLat(southEastPoint.getLatitude());
-        nogoRequest.setSouthEastPointLon(southEastPoint.getLongitude());
-        nogoRequest.setStartDate(startDate);
-        nogoRequest.setEndDate(endDate);
-        nogoRequest.setSlices(slices);
-
-        // Add request parameters
-        addRequestParameters(nogoRequest);
-
-        // System.out.println("Adding parameters");
-
-        NogoResponseSlices nogoResponse = (NogoResponseSlices) makeRequest("/api/xml/slicesnogo",
-                "dk.frv.enav.common.xml.nogoslices.request", "dk.frv.enav.common.xml.nogoslices.response", nogoRequest);
-
-        return nogoResponse;
-
-    }
-
     public MsiResponse msiPoll(int lastMessage) throws ShoreServiceException {
         // Create request
         MsiPollRequest msiPollRequest = new MsiPollRequest();
         msiPollRequest.setLastMessage(lastMessage);
 
-        // Add request parameters
-        addRequestParameters(msiPollRequest);
-
         MsiResponse msiResponse = (MsiResponse) makeRequest("/api/xml/msi", "dk.frv.enav.common.xml.msi.request",
                 "dk.frv.enav.common.xml.msi.response", msiPollRequest);
 
@@ -218,8 +187,6 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
         req.setLatMax(northEastLat);
         req.setLonMax(northEastLon);
         // req.setMmsiList(list);
-        // Add request parameters
-        addRequestParameters(req);
 
         RiskResponse resp = (RiskResponse) makeRequest("/api/xml/risk", "dk.frv.enav.common.xml.risk.request",
                 "dk.frv.enav.common.xml.risk.response", req);
@@ -240,18 +207,34 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
         // Create request
         MetocForecastRequest request = Metoc.generateMetocRequest(route, pos);
 
-        // Add request parameters
-        addRequestParameters(request);
+        // Look up the route in the METOC cache, and only request the span not cached
+        MetocCache metocCache = MetocCache.getInstance();
+        MetocCache.Lookup lookup = metocCache.lookup(request, enavSettings.getMetocTtl() * 60L * 1000L);
+        if (lookup.isComplete()) {
+            LOG.info("Route METOC served from the METOC cache");
+            return lookup.merge(null);
+        }
+        if (lookup.isPartial()) {
+            LOG.info("Requesting route METOC for the part of the route not cached, " + lookup.getHitCount()
+                    + " samples cached");
+            MetocForecastRequest partialRequest = new MetocForecastRequest();
+            partialRequest.setDt(request.getDt());
+            partialRequest.getDataTypes().addAll(request.getDataTypes());
+            partialRequest.getWaypoints().addAll(lookup.getMissingWaypoints());
+            request = partialRequest;
+        }
 
         // Make request
         MetocForecastResponse res = (MetocForecastResponse) makeRequest("/api/xml/routeMetoc",
                 "dk.frv.enav.common.xml.metoc.request", "dk.frv.enav.common.xml.metoc.response", request);
 
-        return res.getMetocForecast();
+        metocCache.put(res.getMetocForecast(), request.getDataTypes());
+        return lookup.merge(res.getMetocForecast());
     }
 
     /**
-     * Allow subclasses to adjust the shore service request
+     * Allow subclasses to adjust the shore service request. Called before the request is marshalled, so identical
+     * requests in flight are compared including the parameters added, e.g. the own-ship position.
      * 
      * @param request
      *            the request to adjust
@@ -259,50 +242,129 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
     protected void addRequestParameters(ShoreServiceRequest request) {
     }
 
-    private ShoreServiceResponse makeRequest(String uri, String reqContextPath, String resContextPath, Object request)
-            throws ShoreServiceException {
+    /**
+     * Makes the request, or waits for the response of an identical request already in flight, e.g. when two chart
+     * windows poll the same NoGo area. The request is marshalled once, and the marshalled request is used both for
+     * comparing the requests and as the request body.
+     * <p>
+     * The caller making the request streams the response directly into the unmarshaller, unless other callers have
+     * joined the request while it was in flight. Only then is the response body read into memory, and each caller
+     * unmarshals its own response object from it.
+     */
+    private ShoreServiceResponse makeRequest(String uri, String reqContextPath, String resContextPath,
+            ShoreServiceRequest request) throws ShoreServiceException {
+        // Add request parameters
+        addRequestParameters(request);
+
+        byte[] body;
+        try {
+            body = ShoreHttp.marshal(reqContextPath, request);
+        } catch (JAXBException e) {
+            LOG.error("Failed to make XML request: " + e.getMessage());
+            throw new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
+        }
+        RequestKey key = new RequestKey(uri, body);
+
+        ShoreServiceResponse res;
+        while (true) {
+            SharedRequest shared = new SharedRequest();
+            SharedRequest pending = inFlight.putIfAbsent(key, shared);
+            if (pending == null) {
+                try {
+                    res = executeRequest(uri, resContextPath, body, key, shared);
+                    break;
+                } catch (ShoreServiceException e) {
+                    shared.complete(null, e);
+                    throw e;
+                } finally {
+                    // Release the callers that joined, if the request failed unexpectedly
+                    inFlight.remove(key, shared);
+                    shared.close();
+                    shared.abort();
+                }
+            } else if (pending.join()) {
+                LOG.debug("Sharing response of identical request in flight to " + uri);
+                res = unmarshal(uri, resContextPath, pending.await());
+                break;
+            }
+            // Otherwise the response of the pending request is already being read, and a new request is made
+        }
+
+        // Report if an error response
+        if (res.getErrorCode() != 0) {
+            throw new ShoreServiceException(ShoreServiceErrorCode.SERVICE_ERROR, res.getErrorMessage());
+        }
+
+        return res;
+    }
+
+    /**
+     * Sends the marshalled request and unmarshals the response. The response body is shared with the callers that
+     * have joined the request.
+     */
+    private ShoreServiceResponse executeRequest(String uri, String resContextPath, byte[] body, RequestKey key,
+            SharedRequest shared) throws ShoreServiceException {
         // Create HTTP request
         ShoreHttp shoreHttp = new ShoreHttp(uri, enavSettings);
         // Init HTTP
         shoreHttp.init();
         // Set content
-        try {
-            shoreHttp.setXmlMarshalContent(reqContextPath, request);
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOG.error("Failed to make XML request: " + e.getMessage());
-            throw new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
-        }
+        shoreHttp.setXmlContent(body);
 
         // Make request
         try {
             shoreHttp.makeRequest();
         } catch (ShoreServiceException e) {
             status.markContactError(e);
+            status.markRequestFailed(uri);
             throw e;
         }
 
+        // No callers can join once the response is being read
+        inFlight.remove(key, shared);
         ShoreServiceResponse res;
-        try {
-            Object resObj = shoreHttp.getXmlUnmarshalledContent(resContextPath);
-            res = (ShoreServiceResponse) resObj;
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOG.error("Failed to unmarshal XML response: " + e.getMessage());
-            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+        if (shared.close()) {
+            byte[] responseBody;
+            try {
+                responseBody = shoreHttp.getResponseBody();
+            } catch (IOException e) {
+                LOG.error("Failed to read response: " + e.getMessage());
+                status.markRequestFailed(uri);
+                throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+            }
+            shared.complete(responseBody, null);
+            res = unmarshal(uri, resContextPath, responseBody);
+        } else {
+            try {
+                res = (ShoreServiceResponse) shoreHttp.getXmlUnmarshalledContent(resContextPath);
+            } catch (JAXBException | IOException | ClassCastException e) {
+                LOG.error("Failed to unmarshal XML response: " + e.getMessage());
+                status.markRequestFailed(uri);
+                throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+            }
         }
 
         // Set last fail/contact
         status.markContactSuccess();
-
-        // Report if an error response
-        if (res.getErrorCode() != 0) {
-            throw new ShoreServiceException(ShoreServiceErrorCode.SERVICE_ERROR, res.getErrorMessage());
-        }
+        status.markRequest(uri, shoreHttp.getTotalTime(), shoreHttp.getResponseSize());
 
         return res;
     }
 
+    /**
+     * Unmarshals a response body shared between callers
+     */
+    private ShoreServiceResponse unmarshal(String uri, String resContextPath, byte[] body)
+            throws ShoreServiceException {
+        try {
+            return (ShoreServiceResponse) ShoreHttp.unmarshal(resContextPath, body);
+        } catch (JAXBException | ClassCastException e) {
+            LOG.error("Failed to unmarshal XML response: " + e.getMessage());
+            status.markRequestFailed(uri);
+            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+        }
+    }
+
     @Override
     public void findAndInit(Object obj) {
         if (aisHandler == null && obj instanceof AisHandlerCommon) {
@@ -330,20 +392,19 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
     @SuppressWarnings({ "rawtypes", "unused" })
     public SSPAResponse makeMonaLisaRouteRequest(RouterequestType monaLisaRoute, int timeout, boolean showInput, boolean showOutput) {
 
-        JAXBContext context = null;
         String xmlReturnRoute = "";
 
         String xml = "";
 
         try {
-            context = JAXBContext.newInstance(RouterequestType.class);
-            Marshaller m = context.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            m.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
-
             // Convert the generated xml route to a String
             StringWriter st = new StringWriter();
-            m.marshal(monaLisaRoute, st);
+            Marshaller m = JaxbContextRegistry.acquireMarshaller(MONALISA_CONTEXT_PATH);
+            try {
+                m.marshal(monaLisaRoute, st);
+            } finally {
+                JaxbContextRegistry.releaseMarshaller(MONALISA_CONTEXT_PATH, m);
+            }
             xml = st.toString();
 
             if (showInput) {
@@ -389,17 +450,17 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
                     return new SSPAResponse(null, "Failed to receive a route in the area, buffer timedout");
                 }
 
-                Unmarshaller u;
-                JAXBContext jc;
                 RouteresponseType routeResponse = null;
 
                 StringReader sr = new StringReader(xmlReturnRoute);
 
                 try {
-                    jc = JAXBContext.newInstance("dk.dma.epd.common.prototype.monalisa.sspa");
-                    u = jc.createUnmarshaller();
-
-                    routeResponse = (RouteresponseType) ((javax.xml.bind.JAXBElement) u.unmarshal(sr)).getValue();
+                    Unmarshaller u = JaxbContextRegistry.acquireUnmarshaller(MONALISA_CONTEXT_PATH);
+                    try {
+                        routeResponse = (RouteresponseType) ((javax.xml.bind.JAXBElement) u.unmarshal(sr)).getValue();
+                    } finally {
+                        JaxbContextRegistry.releaseUnmarshaller(MONALISA_CONTEXT_PATH, u);
+                    }
 
                 } catch (JAXBException e1) {
                     e1.printStackTrace();
@@ -412,4 +473,102 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
         return null;
     }
 
+
+    /**
+     * The key of a request in flight
+     */
+    private static final class RequestKey {
+        private final String uri;
+        private final byte[] body;
+        private final int hash;
+
+        RequestKey(String uri, byte[] body) {
+            this.uri = uri;
+            this.body = body;
+            this.hash = 31 * uri.hashCode() + Arrays.hashCode(body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey other = (RequestKey) obj;
+            return hash == other.hash && uri.equals(other.uri) && Arrays.equals(body, other.body);
+        }
+    }
+
+    /**
+     * A request in flight, which callers making an identical request may join until its response is read
+     */
+    private static final class SharedRequest {
+        private final CountDownLatch done = new CountDownLatch(1);
+        @GuardedBy("this")
+        private boolean closed;
+        @GuardedBy("this")
+        private int followers;
+        private volatile byte[] body;
+        private volatile ShoreServiceException error;
+
+        /**
+         * Joins the request, unless its response is already being read
+         */
+        synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            followers++;
+            return true;
+        }
+
+        /**
+         * Closes the request for joining, and returns if any callers have joined
+         */
+        synchronized boolean close() {
+            closed = true;
+            return followers > 0;
+        }
+
+        /**
+         * Hands the response body, or the error, to the callers that have joined. Only the first call has effect.
+         * Called by the caller making the request only.
+         */
+        void complete(byte[] body, ShoreServiceException error) {
+            if (done.getCount() > 0) {
+                this.body = body;
+                this.error = error;
+                done.countDown();
+            }
+        }
+
+        /**
+         * Fails the callers that have joined, unless the request has been completed
+         */
+        void abort() {
+            if (done.getCount() > 0) {
+                complete(null, new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR));
+            }
+        }
+
+        /**
+         * Waits for the response body of the request
+         */
+        byte[] await() throws ShoreServiceException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
+            }
+            if (error != null) {
+                throw error;
+            }
+            return body;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.status;
+
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Status of the MSI-NM relevance filter, recording the cost of the filter updates
+ */
+@ThreadSafe
+public class MsiNmFilterStatus extends ComponentStatus {
+
+    private long lastFilterTime;
+    private int lastFilterEvaluated;
+    private long filterUpdateCount;
+
+    public MsiNmFilterStatus() {
+        super("MSI-NM filter");
+        shortStatusText = "No filter updates performed yet";
+    }
+
+    /**
+     * Records a filter update
+     * 
+     * @param nanos
+     *            the duration of the update in nanoseconds
+     * @param evaluated
+     *            the number of messages re-evaluated by the update
+     */
+    public synchronized void markFilterUpdate(long nanos, int evaluated) {
+        lastFilterTime = nanos;
+        lastFilterEvaluated = evaluated;
+        filterUpdateCount++;
+        status = Status.OK;
+        shortStatusText = "Last filter update: " + getLastFilterTime() + " us, " + evaluated + " evaluated";
+    }
+
+    /**
+     * Returns the duration of the last filter update in microseconds
+     * @return the duration of the last filter update in microseconds
+     */
+    public synchronized long getLastFilterTime() {
+        return TimeUnit.NANOSECONDS.toMicros(lastFilterTime);
+    }
+
+    /**
+     * Returns the number of messages re-evaluated by the last filter update
+     * @return the number of messages re-evaluated by the last filter update
+     */
+    public synchronized int getLastFilterEvaluated() {
+        return lastFilterEvaluated;
+    }
+
+    /**
+     * Returns the number of filter updates
+     * @return the number of filter updates
+     */
+    public synchronized long getFilterUpdateCount() {
+        return filterUpdateCount;
+    }
+
+    @Override
+    public synchronized String getStatusHtml() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("Filter updates: " + filterUpdateCount + "<br/>");
+        buf.append("Last update: " + getLastFilterTime() + " us<br/>");
+        buf.append("Last evaluated: " + lastFilterEvaluated);
+        return buf.toString();
+    }
+}
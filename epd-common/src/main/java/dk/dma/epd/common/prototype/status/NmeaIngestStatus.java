@@ -0,0 +1,98 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.status;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaDecodePipeline;
+
+/**
+ * Status of the decode stage of an NMEA sensor. The status is computed from the pipeline counters on each read, and
+ * reading it does not change any state.
+ */
+@ThreadSafe
+public class NmeaIngestStatus extends ComponentStatus {
+
+    /** The status is PARTIAL for this long after a message has been dropped */
+    public static final long DROP_STATUS_PERIOD = 60000L;
+
+    private final NmeaDecodePipeline pipeline;
+
+    /**
+     * Constructor
+     *
+     * @param name
+     *            the name of the status
+     * @param pipeline
+     *            the decode pipeline, or null if the sensor has not started decoding yet
+     */
+    public NmeaIngestStatus(String name, NmeaDecodePipeline pipeline) {
+        super(name);
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Returns the status of the pipeline. The status is PARTIAL if messages have been dropped within the last
+     * {@linkplain #DROP_STATUS_PERIOD}, and UNKNOWN if the sensor has not started decoding
+     */
+    @Override
+    public Status getStatus() {
+        if (pipeline == null) {
+            return Status.UNKNOWN;
+        }
+        long lastDrop = pipeline.getLastDropTime();
+        if (lastDrop > 0L && System.currentTimeMillis() - lastDrop < DROP_STATUS_PERIOD) {
+            return Status.PARTIAL;
+        }
+        return Status.OK;
+    }
+
+    @Override
+    public String getShortStatusText() {
+        if (pipeline == null) {
+            return "Not started";
+        }
+        return "Queued " + pipeline.getQueueSize() + " - Dropped " + pipeline.getDroppedCount();
+    }
+
+    public long getDroppedCount() {
+        return pipeline == null ? 0L : pipeline.getDroppedCount();
+    }
+
+    public long getProcessedCount() {
+        return pipeline == null ? 0L : pipeline.getProcessedCount();
+    }
+
+    public int getQueueSize() {
+        return pipeline == null ? 0 : pipeline.getQueueSize();
+    }
+
+    @Override
+    public String getStatusHtml() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("Decoding: " + getStatus().name() + "<br/>");
+        if (pipeline == null) {
+            buf.append("Not started");
+            return buf.toString();
+        }
+        buf.append("Workers: " + pipeline.getWorkerCount() + " (" + pipeline.getOverflowPolicy() + ")<br/>");
+        buf.append("Received: " + pipeline.getSubmittedCount() + "<br/>");
+        buf.append("Processed: " + pipeline.getProcessedCount() + "<br/>");
+        buf.append("Queued: " + pipeline.getQueueSize() + "<br/>");
+        buf.append("Dropped: " + pipeline.getDroppedCount() + "<br/>");
+        buf.append("Failed: " + pipeline.getFailedCount());
+        return buf.toString();
+    }
+
+}
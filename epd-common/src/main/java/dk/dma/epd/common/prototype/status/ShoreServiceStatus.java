@@ -14,7 +14,11 @@
  */
 package dk.dma.epd.common.prototype.status;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import net.jcip.annotations.ThreadSafe;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
@@ -29,6 +33,7 @@ public class ShoreServiceStatus extends ComponentStatus {
     private Date lastContact;
     private Date lastFailed;
     private ShoreServiceException lastException;
+    private final Map<String, EndpointMetrics> endpointMetrics = new TreeMap<>();
 
     public ShoreServiceStatus() {
         super("Shore services");
@@ -48,6 +53,57 @@ public class ShoreServiceStatus extends ComponentStatus {
         shortStatusText = "Last failed shore contact: " + Formatter.formatLongDateTime(lastFailed);
     }
 
+    /**
+     * Records the metrics of a successful request to the given endpoint
+     * 
+     * @param endpoint
+     *            the endpoint URI
+     * @param millis
+     *            the time from sending the request until the response was unmarshalled
+     * @param bytes
+     *            the size of the response as received
+     */
+    public synchronized void markRequest(String endpoint, long millis, long bytes) {
+        EndpointMetrics metrics = getEndpointMetrics(endpoint);
+        metrics.count++;
+        metrics.totalMillis += millis;
+        metrics.maxMillis = Math.max(metrics.maxMillis, millis);
+        metrics.lastMillis = millis;
+        metrics.totalBytes += bytes;
+    }
+
+    /**
+     * Records a failed request to the given endpoint
+     * 
+     * @param endpoint
+     *            the endpoint URI
+     */
+    public synchronized void markRequestFailed(String endpoint) {
+        getEndpointMetrics(endpoint).failures++;
+    }
+
+    /**
+     * Returns a copy of the metrics of the endpoints requested, sorted by endpoint URI
+     * 
+     * @return a copy of the metrics of the endpoints requested
+     */
+    public synchronized List<EndpointMetrics> getEndpointMetrics() {
+        List<EndpointMetrics> result = new ArrayList<>();
+        for (EndpointMetrics metrics : endpointMetrics.values()) {
+            result.add(new EndpointMetrics(metrics));
+        }
+        return result;
+    }
+
+    private EndpointMetrics getEndpointMetrics(String endpoint) {
+        EndpointMetrics metrics = endpointMetrics.get(endpoint);
+        if (metrics == null) {
+            metrics = new EndpointMetrics(endpoint);
+            endpointMetrics.put(endpoint, metrics);
+        }
+        return metrics;
+    }
+
     public synchronized Date getLastContact() {
         return lastContact;
     }
@@ -69,9 +125,74 @@ public class ShoreServiceStatus extends ComponentStatus {
         } else {
             buf.append("Last contact: " + Formatter.formatLongDateTime(lastContact));
         }
+        for (EndpointMetrics metrics : endpointMetrics.values()) {
+            buf.append("<br/>" + metrics.getEndpoint() + ": " + metrics.getCount() + " requests");
+            if (metrics.getCount() > 0) {
+                buf.append(", avg " + metrics.getAverageMillis() + " ms, max " + metrics.getMaxMillis() + " ms, "
+                        + metrics.getTotalBytes() / 1024 + " KB");
+            }
+            if (metrics.getFailures() > 0) {
+                buf.append(", " + metrics.getFailures() + " failed");
+            }
+        }
         
         
         return buf.toString();
     }
 
+    /**
+     * Request metrics of a shore service endpoint
+     */
+    public static class EndpointMetrics {
+
+        private final String endpoint;
+        private long count;
+        private long failures;
+        private long totalMillis;
+        private long maxMillis;
+        private long lastMillis;
+        private long totalBytes;
+
+        EndpointMetrics(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        EndpointMetrics(EndpointMetrics metrics) {
+            this.endpoint = metrics.endpoint;
+            this.count = metrics.count;
+            this.failures = metrics.failures;
+            this.totalMillis = metrics.totalMillis;
+            this.maxMillis = metrics.maxMillis;
+            this.lastMillis = metrics.lastMillis;
+            this.totalBytes = metrics.totalBytes;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getAverageMillis() {
+            return (count > 0) ? totalMillis / count : 0L;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public long getLastMillis() {
+            return lastMillis;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+    }
 }
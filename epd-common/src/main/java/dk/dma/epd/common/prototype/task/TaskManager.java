@@ -0,0 +1,569 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Central owner of the background threads of EPD.
+ * <p>
+ * Work is run in one of a small number of bounded pools rather than in threads created ad-hoc by each component:
+ * <ul>
+ * <li>{@linkplain Pool#IO}: tasks that block on the network or the file system, e.g. shore service and cloud calls.</li>
+ * <li>{@linkplain Pool#CPU}: computations, sized to the number of processors. Computations that split themselves
+ * into fork/join tasks use the separate fork/join pool of the same size, see {@linkplain #getForkJoinPool()}.</li>
+ * <li>{@linkplain Pool#PERIODIC}: short maintenance tasks run with a fixed delay, replacing the sleep-loops of the
+ * handlers. Periodic tasks that need to block should hand over the work to the I/O pool.</li>
+ * <li>{@linkplain Pool#DEDICATED}: a registry of long-lived threads for work that blocks indefinitely, such as reading
+ * from a sensor connection.</li>
+ * </ul>
+ * The queues of the I/O and CPU pools are bounded, and a task submitted to a full queue is rejected with a
+ * {@code RejectedExecutionException}, as is a task submitted after shutdown.
+ * <p>
+ * Every task is given a name, and the run-time and queue statistics are collected per name and may be inspected using
+ * {@linkplain #getTaskStats()}. Exceptions thrown by periodic tasks are logged, and do not cancel subsequent runs.
+ */
+@ThreadSafe
+public class TaskManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaskManager.class);
+
+    /** The pools of the task manager */
+    public enum Pool {
+        IO, CPU, PERIODIC, DEDICATED
+    }
+
+    /** The interval between logging the task statistics */
+    private static final long STATS_INTERVAL = 15;
+
+    /** The default capacity of the queues of the I/O and CPU pools */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static TaskManager instance;
+
+    private final ThreadPoolExecutor ioPool;
+    private final ThreadPoolExecutor cpuPool;
+    private final ScheduledThreadPoolExecutor periodicPool;
+    private final ForkJoinPool forkJoinPool;
+    private final Set<Thread> dedicatedThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    private final ConcurrentHashMap<String, TaskStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param ioThreads
+     *            the number of threads of the I/O pool
+     * @param cpuThreads
+     *            the number of threads of the CPU pool and the parallelism of the fork/join pool
+     * @param periodicThreads
+     *            the number of threads of the periodic pool
+     */
+    public TaskManager(int ioThreads, int cpuThreads, int periodicThreads) {
+        this(ioThreads, cpuThreads, periodicThreads, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ioThreads
+     *            the number of threads of the I/O pool
+     * @param cpuThreads
+     *            the number of threads of the CPU pool and the parallelism of the fork/join pool
+     * @param periodicThreads
+     *            the number of threads of the periodic pool
+     * @param queueCapacity
+     *            the capacity of the queues of the I/O and CPU pools
+     */
+    public TaskManager(int ioThreads, int cpuThreads, int periodicThreads, int queueCapacity) {
+        ioPool = newPool("IO", ioThreads, queueCapacity);
+        cpuPool = newPool("CPU", cpuThreads, queueCapacity);
+        periodicPool = new ScheduledThreadPoolExecutor(periodicThreads, new NamedThreadFactory("Periodic"));
+        periodicPool.setRemoveOnCancelPolicy(true);
+        periodicPool.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        periodicPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        forkJoinPool = new ForkJoinPool(cpuThreads);
+    }
+
+    /**
+     * Returns the shared task manager, sized according to the number of available processors
+     *
+     * @return the shared task manager
+     */
+    public static synchronized TaskManager getInstance() {
+        if (instance == null) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            instance = new TaskManager(Math.max(8, 2 * processors), processors, 2);
+            instance.scheduleWithFixedDelay("TaskManager statistics", new Runnable() {
+                @Override
+                public void run() {
+                    if (LOG.isDebugEnabled()) {
+                        for (TaskStats taskStats : instance.getTaskStats()) {
+                            LOG.debug(taskStats.toString());
+                        }
+                    }
+                }
+            }, STATS_INTERVAL, STATS_INTERVAL, TimeUnit.MINUTES);
+        }
+        return instance;
+    }
+
+    private static ThreadPoolExecutor newPool(String name, int threads, int queueCapacity) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Submits the named task for execution in the I/O or CPU pool
+     *
+     * @param pool
+     *            either {@linkplain Pool#IO} or {@linkplain Pool#CPU}
+     * @param name
+     *            the task name
+     * @param task
+     *            the task
+     * @return a future representing the pending completion of the task
+     * @throws RejectedExecutionException
+     *             if the queue of the pool is full, or the task manager is shut down
+     */
+    public Future<?> submit(Pool pool, String name, Runnable task) {
+        return submit(pool, name, Executors.callable(task));
+    }
+
+    /**
+     * Submits the named task for execution in the I/O or CPU pool
+     *
+     * @param pool
+     *            either {@linkplain Pool#IO} or {@linkplain Pool#CPU}
+     * @param name
+     *            the task name
+     * @param task
+     *            the task
+     * @return a future representing the pending completion of the task
+     * @throws RejectedExecutionException
+     *             if the queue of the pool is full, or the task manager is shut down
+     */
+    public <T> Future<T> submit(Pool pool, String name, Callable<T> task) {
+        ThreadPoolExecutor executor;
+        if (pool == Pool.IO) {
+            executor = ioPool;
+        } else if (pool == Pool.CPU) {
+            executor = cpuPool;
+        } else {
+            throw new IllegalArgumentException("Tasks can only be submitted to the IO or CPU pool: " + pool);
+        }
+        MonitoredFuture<T> future = new MonitoredFuture<>(getStats(name, pool), task);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.rejected();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Runs the named task once in the periodic pool after the given delay
+     *
+     * @param name
+     *            the task name
+     * @param task
+     *            the task
+     * @param delay
+     *            the delay
+     * @param unit
+     *            the unit of the delay
+     * @return a future representing the pending completion of the task
+     */
+    public ScheduledFuture<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+        return periodicPool.schedule(new MonitoredRunnable(getStats(name, Pool.PERIODIC), task), delay, unit);
+    }
+
+    /**
+     * Runs the named task periodically in the periodic pool, with the given delay between the end of one run and the
+     * start of the next
+     *
+     * @param name
+     *            the task name
+     * @param task
+     *            the task
+     * @param initialDelay
+     *            the delay before the first run
+     * @param delay
+     *            the delay between runs
+     * @param unit
+     *            the unit of the delays
+     * @return a future that may be used for cancelling the task
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay,
+            TimeUnit unit) {
+        return periodicPool.scheduleWithFixedDelay(new MonitoredRunnable(getStats(name, Pool.PERIODIC), task),
+                initialDelay, delay, unit);
+    }
+
+    /**
+     * Runs the named task periodically in the given pool. The periodic pool only keeps the time, and submits the task
+     * to the I/O or CPU pool, unless the previous run has not completed yet. Used for periodic tasks that block, e.g.
+     * polling a shore service.
+     *
+     * @param pool
+     *            the pool to run the task in
+     * @param name
+     *            the task name
+     * @param task
+     *            the task
+     * @param initialDelay
+     *            the delay before the first run
+     * @param delay
+     *            the delay between submitting runs
+     * @param unit
+     *            the unit of the delays
+     * @return a future that may be used for cancelling the task
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Pool pool, final String name, final Runnable task,
+            long initialDelay, long delay, TimeUnit unit) {
+        if (pool == Pool.PERIODIC) {
+            return scheduleWithFixedDelay(name, task, initialDelay, delay, unit);
+        }
+        final AtomicReference<Future<?>> last = new AtomicReference<>();
+        return periodicPool.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                Future<?> previous = last.get();
+                if (previous == null || previous.isDone()) {
+                    try {
+                        last.set(submit(pool, name, task));
+                    } catch (RejectedExecutionException e) {
+                        LOG.debug("Task " + name + " rejected: " + e.getMessage());
+                    }
+                }
+            }
+        }, initialDelay, delay, unit);
+    }
+
+    /**
+     * Starts the named task in a dedicated thread, which is registered with the task manager until the task ends
+     *
+     * @param name
+     *            the thread name
+     * @param task
+     *            the task
+     * @return the started thread
+     */
+    public Thread startThread(String name, Runnable task) {
+        if (periodicPool.isShutdown()) {
+            throw new RejectedExecutionException("Task manager is shut down");
+        }
+        final MonitoredRunnable monitored = new MonitoredRunnable(getStats(name, Pool.DEDICATED), task);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    monitored.run();
+                } finally {
+                    dedicatedThreads.remove(Thread.currentThread());
+                }
+            }
+        }, name);
+        dedicatedThreads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Returns the statistics of all tasks run by the task manager, sorted by name
+     *
+     * @return the task statistics
+     */
+    public List<TaskStats> getTaskStats() {
+        List<TaskStats> result = new ArrayList<>(stats.values());
+        Collections.sort(result, new Comparator<TaskStats>() {
+            @Override
+            public int compare(TaskStats s1, TaskStats s2) {
+                return s1.getName().compareTo(s2.getName());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the fork/join pool used for computations that split themselves into fork/join tasks, e.g. the drift
+     * simulation of the VOCT. The fork/join tasks are not included in the task statistics.
+     *
+     * @return the fork/join pool
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Returns the number of tasks waiting in the queue of the given pool
+     *
+     * @param pool
+     *            the pool
+     * @return the number of queued tasks
+     */
+    public int getQueueSize(Pool pool) {
+        switch (pool) {
+        case IO:
+            return ioPool.getQueue().size();
+        case CPU:
+            return cpuPool.getQueue().size();
+        case PERIODIC:
+            return periodicPool.getQueue().size();
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the number of threads of the given pool that are currently running a task
+     *
+     * @param pool
+     *            the pool
+     * @return the number of active threads
+     */
+    public int getActiveCount(Pool pool) {
+        switch (pool) {
+        case IO:
+            return ioPool.getActiveCount();
+        case CPU:
+            return cpuPool.getActiveCount();
+        case PERIODIC:
+            return periodicPool.getActiveCount();
+        default:
+            return dedicatedThreads.size();
+        }
+    }
+
+    /**
+     * Shuts down the task manager. Queued and periodic tasks are discarded, running tasks and dedicated threads are
+     * interrupted, and the method waits up to the given timeout for them to end.
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the unit of the timeout
+     * @return if all tasks ended within the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        LOG.info("Shutting down task manager");
+        for (TaskStats taskStats : getTaskStats()) {
+            LOG.info(taskStats.toString());
+        }
+
+        periodicPool.shutdownNow();
+        cancelAll(ioPool.shutdownNow());
+        cancelAll(cpuPool.shutdownNow());
+        forkJoinPool.shutdownNow();
+        for (Thread thread : dedicatedThreads) {
+            thread.interrupt();
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            boolean terminated = periodicPool.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)
+                    && ioPool.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)
+                    && cpuPool.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)
+                    && forkJoinPool.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS);
+            for (Thread thread : dedicatedThreads) {
+                thread.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remaining(deadline))));
+                terminated &= !thread.isAlive();
+            }
+            if (!terminated) {
+                LOG.warn("Tasks still running after shutting down the task manager");
+            }
+            return terminated;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Cancels the tasks discarded from the queue of a pool, releasing threads waiting for them
+     */
+    private static void cancelAll(List<Runnable> discarded) {
+        for (Runnable task : discarded) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0L, deadline - System.nanoTime());
+    }
+
+    private TaskStats getStats(String name, Pool pool) {
+        TaskStats taskStats = stats.get(name);
+        if (taskStats == null) {
+            TaskStats newStats = new TaskStats(name, pool);
+            taskStats = stats.putIfAbsent(name, newStats);
+            if (taskStats == null) {
+                taskStats = newStats;
+            }
+        }
+        return taskStats;
+    }
+
+    /**
+     * Wraps a periodic or dedicated task, collecting run-time statistics and logging exceptions
+     */
+    private static final class MonitoredRunnable implements Runnable {
+
+        private final TaskStats stats;
+        private final Runnable task;
+
+        MonitoredRunnable(TaskStats stats, Runnable task) {
+            this.stats = stats;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            stats.queued();
+            stats.started(0L);
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                task.run();
+                failed = false;
+            } catch (RuntimeException e) {
+                LOG.error("Task " + stats.getName() + " failed", e);
+            } finally {
+                stats.finished(System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * Future of a task submitted to the I/O or CPU pool, collecting queue and run-time statistics
+     */
+    private static final class MonitoredFuture<T> extends FutureTask<T> {
+
+        private final TaskStats stats;
+        private final long submitted = System.nanoTime();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long start;
+
+        MonitoredFuture(TaskStats stats, Callable<T> task) {
+            super(task);
+            this.stats = stats;
+            stats.queued();
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            start = System.nanoTime();
+            stats.started(start - submitted);
+            try {
+                super.run();
+            } finally {
+                // Cancelled while running
+                finish(false);
+            }
+        }
+
+        /**
+         * Records the run before the result is made available to waiting threads
+         */
+        @Override
+        protected void set(T v) {
+            finish(false);
+            super.set(v);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            finish(true);
+            super.setException(t);
+        }
+
+        private void finish(boolean failed) {
+            if (finished.compareAndSet(false, true)) {
+                stats.finished(System.nanoTime() - start, failed);
+            }
+        }
+
+        /**
+         * Records that the task was rejected by the pool, and will never run
+         */
+        void rejected() {
+            if (started.compareAndSet(false, true)) {
+                stats.rejected();
+            }
+            super.cancel(false);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && started.compareAndSet(false, true)) {
+                // Cancelled while queued
+                stats.cancelled();
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Creates daemon threads named after the pool
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
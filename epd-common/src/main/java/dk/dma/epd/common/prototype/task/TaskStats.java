@@ -0,0 +1,177 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.task;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Run-time and queue statistics of the tasks with a given name, as collected by the {@linkplain TaskManager}
+ */
+@ThreadSafe
+public class TaskStats {
+
+    private final String name;
+    private final TaskManager.Pool pool;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param name
+     *            the task name
+     * @param pool
+     *            the pool that runs the task
+     */
+    TaskStats(String name, TaskManager.Pool pool) {
+        this.name = name;
+        this.pool = pool;
+    }
+
+    void queued() {
+        queued.incrementAndGet();
+    }
+
+    void started(long queueNanos) {
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        totalQueueNanos.addAndGet(queueNanos);
+    }
+
+    void finished(long runNanos, boolean failed) {
+        running.decrementAndGet();
+        runs.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        totalRunNanos.addAndGet(runNanos);
+        long max = maxRunNanos.get();
+        while (runNanos > max && !maxRunNanos.compareAndSet(max, runNanos)) {
+            max = maxRunNanos.get();
+        }
+    }
+
+    void cancelled() {
+        queued.decrementAndGet();
+    }
+
+    void rejected() {
+        queued.decrementAndGet();
+        rejections.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TaskManager.Pool getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the number of submitted runs that have not started yet
+     *
+     * @return the number of queued runs
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of runs currently executing
+     *
+     * @return the number of running runs
+     */
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * Returns the number of completed runs, including the failed ones
+     *
+     * @return the number of completed runs
+     */
+    public long getRunCount() {
+        return runs.get();
+    }
+
+    /**
+     * Returns the number of runs that ended with an exception
+     *
+     * @return the number of failed runs
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the number of submissions rejected because the queue of the pool was full or the task manager was shut
+     * down
+     *
+     * @return the number of rejected submissions
+     */
+    public long getRejectedCount() {
+        return rejections.get();
+    }
+
+    /**
+     * Returns the average run time in milliseconds
+     *
+     * @return the average run time in milliseconds
+     */
+    public double getAverageRunTime() {
+        long count = runs.get();
+        return (count == 0) ? 0.0 : totalRunNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the maximum run time in milliseconds
+     *
+     * @return the maximum run time in milliseconds
+     */
+    public double getMaxRunTime() {
+        return maxRunNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the average time in milliseconds that a run has waited in the queue of the pool before starting. Periodic
+     * and dedicated tasks are not queued, and always report 0.
+     *
+     * @return the average queue time in milliseconds
+     */
+    public double getAverageQueueTime() {
+        long count = runs.get() + running.get();
+        return (count == 0) ? 0.0 : totalQueueNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s [%s] runs=%d failures=%d rejected=%d running=%d queued=%d avgRun=%.1fms maxRun=%.1fms avgQueue=%.1fms",
+                name, pool, getRunCount(), getFailureCount(), getRejectedCount(), getRunningCount(), getQueuedCount(),
+                getAverageRunTime(), getMaxRunTime(), getAverageQueueTime());
+    }
+}
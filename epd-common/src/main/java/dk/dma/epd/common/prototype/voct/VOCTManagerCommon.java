@@ -23,6 +23,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.swing.SwingUtilities;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -32,6 +35,8 @@ import com.bbn.openmap.MapHandlerChild;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.model.voct.DriftSimulator;
+import dk.dma.epd.common.prototype.model.voct.ProbabilityGrid;
 import dk.dma.epd.common.prototype.model.voct.SAROperation;
 import dk.dma.epd.common.prototype.model.voct.SAR_TYPE;
 import dk.dma.epd.common.prototype.model.voct.SearchPatternGenerator;
@@ -44,7 +49,8 @@ import dk.dma.epd.common.prototype.model.voct.sardata.SARTextLogMessage;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SearchPatternRoute;
 import dk.dma.epd.common.prototype.model.voct.sardata.SimpleSAR;
-import dk.dma.epd.common.util.Util;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
 import dma.voct.VOCTMessage;
 
 /**
@@ -56,8 +62,7 @@ import dma.voct.VOCTMessage;
  * 
  */
 
-public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
-        Serializable {
+public class VOCTManagerCommon extends MapHandlerChild implements Serializable {
 
     private static final long serialVersionUID = 1L;
     protected SAROperation sarOperation;
@@ -71,6 +76,9 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
     protected SARData sarData;
     protected List<SARData> sarFutureData;
 
+    /** The probability grids of the latest drift simulation, starting with the one at the CSS */
+    protected transient volatile List<ProbabilityGrid> probabilityGrids;
+
     protected List<IVoctInfoListener> voctInfoMsgListener = new CopyOnWriteArrayList<>();
 
     protected static final String VOCT_FILE = EPD.getInstance().getHomePath()
@@ -179,6 +187,7 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
     public void cancelSarOperation() {
         deleteAllRoutes();
         sarOperation = null;
+        probabilityGrids = null;
         hasSar = false;
 
         notifyListeners(VOCTUpdateEvent.SAR_CANCEL);
@@ -236,17 +245,6 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
 //        }
     }
 
-    @Override
-    public void run() {
-
-        // Maintanaince routines
-        while (true) {
-            Util.sleep(10000);
-
-        }
-
-    }
-
     public void notifyListeners(VOCTUpdateEvent e) {
         for (VOCTUpdateListener listener : listeners) {
             listener.voctUpdated(e);
@@ -284,6 +282,8 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
         }
         
         this.sarData = sarData;
+        probabilityGrids = null;
+        startDriftSimulation(sarData);
 
         // Disable, not sure if should be part of main features.
         // if (!(sarData instanceof DatumPointDataSARIS)) {
@@ -297,10 +297,73 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
         sarOperation.calculateEffortAllocation(sarData);
 
         notifyListeners(VOCTUpdateEvent.EFFORT_ALLOCATION_DISPLAY);
+        updateProbabilityOfSuccess();
 
         saveToFile();
     }
 
+    /**
+     * Simulates the drift of the search object in the background. When done, the probability grids are available
+     * through {@linkplain #getProbabilityGrid()}, the POC of the effective areas is updated and the listeners are
+     * notified with {@linkplain VOCTUpdateEvent#PROBABILITY_GRID_READY}
+     * 
+     * @param data
+     *            the SAR data to simulate
+     */
+    private void startDriftSimulation(final SARData data) {
+        final SAROperation operation = sarOperation;
+        if (operation == null || data.getLKP() == null || data.getWeatherPoints() == null
+                || data.getWeatherPoints().isEmpty()) {
+            return;
+        }
+
+        try {
+            TaskManager.getInstance().submit(Pool.CPU, "VOCT drift simulation", new Runnable() {
+                @Override
+                public void run() {
+                    final List<ProbabilityGrid> grids = operation.sarProbabilityCalculations(data,
+                            new DriftSimulator());
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Discard the result if the SAR has been replaced or cancelled meanwhile
+                            if (sarData == data && sarOperation == operation) {
+                                probabilityGrids = grids;
+                                updateProbabilityOfSuccess();
+                                notifyListeners(VOCTUpdateEvent.PROBABILITY_GRID_READY);
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Drift simulation not started: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the probability grid of the latest drift simulation at the CSS, or null if none is available
+     */
+    public ProbabilityGrid getProbabilityGrid() {
+        List<ProbabilityGrid> grids = probabilityGrids;
+        return grids == null || grids.isEmpty() ? null : grids.get(0);
+    }
+
+    /**
+     * Updates the POC of the placed effective areas from the probability grid at the CSS
+     */
+    protected void updateProbabilityOfSuccess() {
+        ProbabilityGrid grid = getProbabilityGrid();
+        if (grid == null || sarOperation == null || sarData == null) {
+            return;
+        }
+
+        for (Entry<Long, EffortAllocationData> entry : sarData.getEffortAllocationData().entrySet()) {
+            double pos = sarOperation.calculateProbabilityOfSuccess(entry.getValue(), grid);
+            LOG.debug("Probability of success of effort allocation " + entry.getKey() + ": " + pos);
+        }
+    }
+
     public void generateSearchPattern(
             SearchPatternGenerator.searchPattern type, Position CSP, long id) {
 
@@ -0,0 +1,121 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+
+public class AisSnapshotTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        roundTrip(false);
+        roundTrip(true);
+    }
+
+    private void roundTrip(boolean compress) throws Exception {
+        VesselTarget vessel = new VesselTarget();
+        vessel.setMmsi(219000001L);
+        vessel.setLastReceived(new Date(1000L));
+        vessel.setAisClass(VesselTarget.AisClass.B);
+        vessel.setShowIntendedRoute(true);
+        vessel.getSettings().setPastTrackMinDist(0);
+        VesselPositionData posData = new VesselPositionData();
+        posData.setPos(Position.create(55.5, 12.25));
+        posData.setSog(12.5f);
+        posData.setCog(271.0f);
+        vessel.setPositionData(posData);
+        VesselStaticData staticData = new VesselStaticData();
+        staticData.setName("\u00C6GIR");
+        staticData.setDestination(null);
+        staticData.setDimBow(120);
+        vessel.setStaticData(staticData);
+        vessel.addPastTrackPosition(Position.create(55.0, 12.0));
+        vessel.addPastTrackPosition(Position.create(55.1, 12.1));
+        vessel.setStatus(AisTarget.Status.GONE);
+
+        SarTarget sar = new SarTarget();
+        sar.setMmsi(970000001L);
+        sar.setLastReceived(new Date(2000L));
+        sar.setFirstReceived(new Date(1500L));
+        sar.setOld(true);
+
+        AtoNTarget aton = new AtoNTarget();
+        aton.setMmsi(992190001L);
+        aton.setLastReceived(new Date(3000L));
+        aton.setPos(Position.create(56.0, 11.0));
+        aton.setName("BUOY");
+        aton.setVirtual(1);
+
+        Map<Long, VesselTarget> vesselTargets = new HashMap<>();
+        vesselTargets.put(vessel.getMmsi(), vessel);
+        Map<Long, SarTarget> sarTargets = new HashMap<>();
+        sarTargets.put(sar.getMmsi(), sar);
+        Map<Integer, AtoNTarget> atonTargets = new HashMap<>();
+        atonTargets.put((int) aton.getMmsi(), aton);
+        AisStore aisStore = new AisStore();
+        aisStore.setVesselTargets(vesselTargets);
+        aisStore.setSarTargets(sarTargets);
+        aisStore.setAtonTargets(atonTargets);
+
+        Path file = Files.createTempFile("aisview", ".bin");
+        try {
+            AisSnapshot.write(file, aisStore, compress);
+            assertTrue(AisSnapshot.isSnapshot(file));
+            AisStore loaded = AisSnapshot.read(file);
+
+            VesselTarget v = loaded.getVesselTargets().get(219000001L);
+            assertEquals(1000L, v.getLastReceived().getTime());
+            assertEquals(AisTarget.Status.GONE, v.getStatus());
+            assertEquals(VesselTarget.AisClass.B, v.getAisClass());
+            assertTrue(v.isShowIntendedRoute());
+            assertEquals(55.5, v.getPositionData().getPos().getLatitude(), 0.0);
+            assertEquals(12.25, v.getPositionData().getPos().getLongitude(), 0.0);
+            assertEquals(12.5f, v.getPositionData().getSog(), 0.0f);
+            assertEquals("\u00C6GIR", v.getStaticData().getName());
+            assertNull(v.getStaticData().getDestination());
+            assertEquals(120, v.getStaticData().getDimBow());
+            assertEquals(2, v.getPastTrackData().size());
+            assertEquals(2, v.getPastTrackData().getPoints().size());
+
+            SarTarget s = loaded.getSarTargets().get(970000001L);
+            assertEquals(1500L, s.getFirstReceived().getTime());
+            assertTrue(s.isOld());
+            assertNull(s.getPositionData());
+
+            AtoNTarget a = loaded.getAtonTargets().get((int) 992190001L);
+            assertEquals(56.0, a.getPos().getLatitude(), 0.0);
+            assertEquals("BUOY", a.getName());
+            assertEquals(1, a.getVirtual());
+
+            // The snapshot can be replaced right after being read
+            AisSnapshot.write(file, loaded, compress);
+            assertEquals(1, AisSnapshot.read(file).getVesselTargets().size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
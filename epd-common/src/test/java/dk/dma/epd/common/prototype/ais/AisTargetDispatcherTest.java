@@ -0,0 +1,71 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AisTargetDispatcherTest {
+
+    private static VesselTarget vessel(long mmsi) {
+        VesselTarget vessel = new VesselTarget();
+        vessel.setMmsi(mmsi);
+        return vessel;
+    }
+
+    @Test
+    public void testBatchDeliveredInCpuPool() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final List<AisTarget> received = new ArrayList<>();
+        final String[] threadName = new String[1];
+
+        List<IAisTargetListener> listeners = new CopyOnWriteArrayList<>();
+        listeners.add(new IAisTargetListener() {
+            @Override
+            public void targetUpdated(AisTarget aisTarget) {
+            }
+
+            @Override
+            public void targetsUpdated(Collection<AisTarget> aisTargets) {
+                received.addAll(aisTargets);
+                threadName[0] = Thread.currentThread().getName();
+                delivered.countDown();
+            }
+        });
+
+        AisTargetDispatcher dispatcher = new AisTargetDispatcher(listeners, 50L);
+        dispatcher.publish(vessel(1L));
+        dispatcher.publish(vessel(2L));
+        dispatcher.publish(vessel(1L));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        // Coalesced per MMSI, in order of first publication
+        assertEquals(2, received.size());
+        assertEquals(1L, received.get(0).getMmsi());
+        assertEquals(2L, received.get(1).getMmsi());
+        // Not delivered in the periodic pool
+        assertTrue(threadName[0], threadName[0].startsWith("CPU-"));
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+}
@@ -0,0 +1,84 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class AisTargetGridTest {
+
+    @Test
+    public void testBoundingBox() {
+        AisTargetGrid grid = new AisTargetGrid();
+        grid.update(1L, 55.70, 12.60); // Copenhagen
+        grid.update(2L, 56.15, 10.22); // Aarhus
+        grid.update(3L, 59.33, 18.07); // Stockholm
+
+        List<Long> result = grid.getWithin(55.0, 10.0, 57.0, 13.0);
+        assertEquals(2, result.size());
+        assertTrue(result.contains(1L));
+        assertTrue(result.contains(2L));
+
+        // A bounding box spanning more cells than are occupied
+        assertEquals(3, grid.getWithin(-90.0, -180.0, 90.0, 180.0).size());
+    }
+
+    @Test
+    public void testMoveAndRemove() {
+        AisTargetGrid grid = new AisTargetGrid();
+        grid.update(1L, 55.70, 12.60);
+        grid.update(1L, 59.33, 18.07);
+
+        assertEquals(1, grid.size());
+        assertTrue(grid.getWithin(55.0, 12.0, 56.0, 13.0).isEmpty());
+        assertEquals(1, grid.getWithin(59.0, 18.0, 60.0, 19.0).size());
+
+        grid.remove(1L);
+        assertFalse(grid.contains(1L));
+        assertTrue(grid.getWithin(-90.0, -180.0, 90.0, 180.0).isEmpty());
+    }
+
+    @Test
+    public void testDateLine() {
+        AisTargetGrid grid = new AisTargetGrid();
+        grid.update(1L, 10.0, 179.9);
+        grid.update(2L, 10.0, -179.9);
+        grid.update(3L, 10.0, 0.0);
+
+        List<Long> result = grid.getWithin(9.0, 179.0, 11.0, -179.0);
+        assertEquals(2, result.size());
+        assertFalse(result.contains(3L));
+    }
+
+    @Test
+    public void testRadius() {
+        AisTargetGrid grid = new AisTargetGrid();
+        grid.update(1L, 55.70, 12.60);
+        grid.update(2L, 55.71, 12.61); // ~1.3 km away
+        grid.update(3L, 55.80, 12.60); // ~11 km away
+
+        List<Long> result = grid.getWithinRadius(55.70, 12.60, 5000.0);
+        assertEquals(2, result.size());
+        assertTrue(result.contains(1L));
+        assertTrue(result.contains(2L));
+
+        assertEquals(3, grid.getWithinRadius(55.70, 12.60, 20000.0).size());
+    }
+}
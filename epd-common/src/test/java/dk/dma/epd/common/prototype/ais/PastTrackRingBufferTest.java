@@ -0,0 +1,86 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+
+public class PastTrackRingBufferTest {
+
+    @Test
+    public void testMinDist() {
+        PastTrackRingBuffer pastTrack = new PastTrackRingBuffer();
+        pastTrack.addPosition(Position.create(55.0, 12.0), 100);
+        pastTrack.addPosition(Position.create(55.0001, 12.0), 100); // ~11 m
+        assertEquals(1, pastTrack.size());
+        pastTrack.addPosition(Position.create(55.01, 12.0), 100); // ~1.1 km
+        assertEquals(2, pastTrack.size());
+    }
+
+    @Test
+    public void testGrowAndOverwrite() {
+        PastTrackRingBuffer pastTrack = new PastTrackRingBuffer();
+        int count = PastTrackRingBuffer.MAX_CAPACITY + 10;
+        for (int i = 0; i < count; i++) {
+            pastTrack.addPosition(Position.create(0.0, i * 0.01), 0);
+        }
+        assertEquals(PastTrackRingBuffer.MAX_CAPACITY, pastTrack.size());
+
+        PastTrackWindow window = new PastTrackWindow();
+        pastTrack.copyPointsNewerThan(Long.MIN_VALUE, window);
+        assertEquals(PastTrackRingBuffer.MAX_CAPACITY, window.size());
+        assertEquals(10 * 0.01, window.getLongitude(0), 1e-9);
+        assertEquals((count - 1) * 0.01, window.getLongitude(window.size() - 1), 1e-9);
+    }
+
+    @Test
+    public void testWindowAndGone() {
+        PastTrackRingBuffer pastTrack = new PastTrackRingBuffer();
+        pastTrack.addPosition(Position.create(55.0, 12.0), 0);
+        pastTrack.addPosition(Position.create(56.0, 12.0), 0);
+        pastTrack.flagGone();
+
+        PastTrackWindow window = new PastTrackWindow();
+        pastTrack.copyPointsNewerThan(System.currentTimeMillis() + 1000L, window);
+        assertEquals(0, window.size());
+
+        pastTrack.copyPointsNewerThan(0L, window);
+        assertEquals(2, window.size());
+        assertFalse(window.hasGone(0));
+        assertTrue(window.hasGone(1));
+        assertEquals(2, pastTrack.getPoints().size());
+    }
+
+    @Test
+    public void testCleanup() {
+        PastTrackRingBuffer pastTrack = new PastTrackRingBuffer();
+        for (int i = 0; i < 100; i++) {
+            pastTrack.addPosition(Position.create(0.0, i * 0.01), 0);
+        }
+        pastTrack.cleanup(60);
+        assertEquals(100, pastTrack.size());
+        pastTrack.cleanup(-1);
+        assertEquals(0, pastTrack.size());
+
+        // Still usable after shrinking
+        pastTrack.addPosition(Position.create(0.0, 0.0), 0);
+        assertEquals(1, new PastTrackRingBuffer(pastTrack).size());
+    }
+}
@@ -0,0 +1,71 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrafficDensityGridTest {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+    private static final long T0 = 1400000000000L;
+
+    @Test
+    public void testAddAndBounds() {
+        TrafficDensityGrid grid = new TrafficDensityGrid(55.0, 10.0, 56.0, 12.0, 0.1, 0L);
+        assertEquals(10, grid.getRows());
+        assertEquals(20, grid.getCols());
+
+        long version = grid.getVersion();
+        assertTrue(grid.add(55.05, 10.05, 2.0, T0));
+        assertTrue(grid.add(55.06, 10.01, 3.0, T0));
+        assertFalse(grid.add(54.9, 10.05, 1.0, T0));
+        assertFalse(grid.add(55.5, 12.1, 1.0, T0));
+        assertTrue(version != grid.getVersion());
+        assertEquals(5.0f, grid.getValue(0, 0, T0), 1e-4f);
+
+        float[] block = new float[4];
+        float max = grid.copyCells(0, 0, 2, 2, block, T0);
+        assertEquals(5.0f, max, 1e-4f);
+        assertEquals(0f, block[1], 0f);
+    }
+
+    @Test
+    public void testPresence() {
+        TrafficDensityGrid grid = new TrafficDensityGrid(55.0, 10.0, 56.0, 12.0, 0.1, 0L);
+        grid.addReport(55.05, 10.05, 0L, T0);
+        assertEquals(TrafficDensityGrid.DEFAULT_PRESENCE, grid.getValue(0, 0, T0), 1e-4);
+        grid.addReport(55.15, 10.05, T0, T0 + 6000L);
+        assertEquals(6.0f, grid.getValue(1, 0, T0), 1e-4f);
+        grid.addReport(55.25, 10.05, T0, T0 + HOUR);
+        assertEquals(TrafficDensityGrid.MAX_PRESENCE, grid.getValue(2, 0, T0), 1e-3);
+    }
+
+    @Test
+    public void testDecay() {
+        TrafficDensityGrid grid = new TrafficDensityGrid(55.0, 10.0, 56.0, 12.0, 0.1, HOUR);
+        grid.add(55.05, 10.05, 8.0, T0);
+        assertEquals(4.0f, grid.getValue(0, 0, T0 + HOUR), 1e-3f);
+        assertEquals(1.0f, grid.getValue(0, 0, T0 + 3 * HOUR), 1e-3f);
+
+        // Adding a report far into the future rescales the grid
+        grid.add(55.15, 10.05, 1.0, T0 + 40 * HOUR);
+        assertEquals(1.0f, grid.getValue(1, 0, T0 + 40 * HOUR), 1e-3f);
+        assertEquals(0f, grid.getValue(0, 0, T0 + 40 * HOUR), 1e-6f);
+    }
+}
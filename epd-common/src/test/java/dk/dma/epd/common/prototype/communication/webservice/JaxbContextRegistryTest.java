@@ -0,0 +1,162 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.communication.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBIntrospector;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.monalisa.sspa.PositionType;
+import dk.dma.epd.common.prototype.monalisa.sspa.RouteType;
+import dk.dma.epd.common.prototype.monalisa.sspa.RouterequestType;
+import dk.dma.epd.common.prototype.monalisa.sspa.WaypointType;
+import dk.dma.epd.common.prototype.monalisa.sspa.WaypointsType;
+
+/**
+ * Tests the shared contexts and the marshaller pools of the {@linkplain JaxbContextRegistry}, using the Mona Lisa
+ * route request
+ */
+public class JaxbContextRegistryTest {
+
+    static final String CONTEXT_PATH = "dk.dma.epd.common.prototype.monalisa.sspa";
+
+    @Test
+    public void testSharedContext() throws Exception {
+        assertSame(JaxbContextRegistry.getContext(CONTEXT_PATH), JaxbContextRegistry.getContext(CONTEXT_PATH));
+        assertSame(JaxbContextRegistry.getContext(RouterequestType.class),
+                JaxbContextRegistry.getContext(RouterequestType.class));
+    }
+
+    @Test
+    public void testPooling() throws Exception {
+        // Empty the pool, which holds at most 8 idle marshallers
+        List<Marshaller> marshallers = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            marshallers.add(JaxbContextRegistry.acquireMarshaller(CONTEXT_PATH));
+        }
+        assertNotSame(marshallers.get(0), marshallers.get(1));
+
+        // A released marshaller is borrowed again
+        Marshaller m = marshallers.get(0);
+        JaxbContextRegistry.releaseMarshaller(CONTEXT_PATH, m);
+        assertSame(m, JaxbContextRegistry.acquireMarshaller(CONTEXT_PATH));
+        for (Marshaller marshaller : marshallers) {
+            JaxbContextRegistry.releaseMarshaller(CONTEXT_PATH, marshaller);
+        }
+
+        List<Unmarshaller> unmarshallers = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            unmarshallers.add(JaxbContextRegistry.acquireUnmarshaller(CONTEXT_PATH));
+        }
+        Unmarshaller u = unmarshallers.get(0);
+        JaxbContextRegistry.releaseUnmarshaller(CONTEXT_PATH, u);
+        assertSame(u, JaxbContextRegistry.acquireUnmarshaller(CONTEXT_PATH));
+        for (Unmarshaller unmarshaller : unmarshallers) {
+            JaxbContextRegistry.releaseUnmarshaller(CONTEXT_PATH, unmarshaller);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        RouterequestType request = createRequest(3);
+        RouterequestType result = unmarshal(marshal(request));
+
+        List<WaypointType> waypoints = result.getRoute().getWaypoints().getWaypoint();
+        assertEquals(3, waypoints.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("WP " + i, waypoints.get(i).getWptName());
+            assertEquals(55.0 + i * 0.1, waypoints.get(i).getPosition().getLatitude(), 0.0);
+            assertEquals(11.0, waypoints.get(i).getPosition().getLongitude(), 0.0);
+        }
+    }
+
+    @Test
+    public void testConcurrentMarshalling() throws Exception {
+        final RouterequestType request = createRequest(20);
+        final String expected = marshal(request);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return marshal(unmarshal(marshal(request)));
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String marshal(RouterequestType request) throws Exception {
+        StringWriter writer = new StringWriter();
+        Marshaller m = JaxbContextRegistry.acquireMarshaller(CONTEXT_PATH);
+        try {
+            m.marshal(request, writer);
+        } finally {
+            JaxbContextRegistry.releaseMarshaller(CONTEXT_PATH, m);
+        }
+        return writer.toString();
+    }
+
+    private static RouterequestType unmarshal(String xml) throws Exception {
+        Unmarshaller u = JaxbContextRegistry.acquireUnmarshaller(CONTEXT_PATH);
+        try {
+            return (RouterequestType) JAXBIntrospector.getValue(u.unmarshal(new StringReader(xml)));
+        } finally {
+            JaxbContextRegistry.releaseUnmarshaller(CONTEXT_PATH, u);
+        }
+    }
+
+    private static RouterequestType createRequest(int count) {
+        WaypointsType waypoints = new WaypointsType();
+        for (int i = 0; i < count; i++) {
+            PositionType position = new PositionType();
+            position.setLatitude(55.0 + i * 0.1);
+            position.setLongitude(11.0);
+            WaypointType wp = new WaypointType();
+            wp.setWptId(i + 1);
+            wp.setWptName("WP " + i);
+            wp.setPosition(position);
+            waypoints.getWaypoint().add(wp);
+        }
+        RouteType route = new RouteType();
+        route.setWaypoints(waypoints);
+        RouterequestType request = new RouterequestType();
+        request.setRoute(route);
+        return request;
+    }
+}
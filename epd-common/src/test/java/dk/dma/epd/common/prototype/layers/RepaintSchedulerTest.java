@@ -0,0 +1,118 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoint;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class RepaintSchedulerTest {
+
+    @Test
+    public void testThrottle() throws InterruptedException {
+        final AtomicInteger prepares = new AtomicInteger();
+        RepaintScheduler scheduler = new RepaintScheduler(new Runnable() {
+            @Override
+            public void run() {
+                prepares.incrementAndGet();
+            }
+        }, 5);
+
+        // The first request prepares immediately, and the rest of the frame is coalesced into a single prepare
+        for (int i = 0; i < 50; i++) {
+            scheduler.requestPrepare();
+        }
+        assertEquals(1, prepares.get());
+        Thread.sleep(500L);
+        assertEquals(2, prepares.get());
+
+        // Prepares immediately again once a frame has passed
+        Thread.sleep(250L);
+        scheduler.requestPrepare();
+        assertEquals(3, prepares.get());
+    }
+
+    @Test
+    public void testProjectDirty() {
+        Projection proj = new Mercator(new LatLonPoint.Double(56.0, 11.0), 500000f, 800, 600);
+        CountingPoint a = new CountingPoint(56.0, 11.0);
+        CountingPoint b = new CountingPoint(56.1, 11.1);
+        OMGraphicList graphics = new OMGraphicList();
+        graphics.add(a);
+        graphics.add(b);
+        RepaintScheduler scheduler = new RepaintScheduler(null, 10);
+
+        assertTrue(scheduler.project(graphics, proj));
+        assertEquals(1, a.generated);
+        assertEquals(1, b.generated);
+
+        // Unchanged projection, only the dirty graphic is generated
+        scheduler.markDirty(a);
+        assertFalse(scheduler.project(graphics, proj));
+        assertEquals(2, a.generated);
+        assertEquals(1, b.generated);
+        assertFalse(scheduler.project(graphics, proj));
+        assertEquals(2, a.generated);
+
+        // A graphic moved is only regenerated once marked dirty
+        b.setLat(56.2);
+        assertFalse(scheduler.project(graphics, proj));
+        assertEquals(1, b.generated);
+        scheduler.markDirty(b);
+        assertFalse(scheduler.project(graphics, proj));
+        assertEquals(2, a.generated);
+        assertEquals(2, b.generated);
+
+        // A changed projection or an invalidated scheduler projects all graphics
+        Projection panned = new Mercator(new LatLonPoint.Double(56.5, 11.0), 500000f, 800, 600);
+        assertTrue(scheduler.project(graphics, panned));
+        assertEquals(3, a.generated);
+        assertEquals(3, b.generated);
+        scheduler.markDirty(a);
+        scheduler.invalidate();
+        assertTrue(scheduler.project(graphics, panned));
+        assertEquals(4, a.generated);
+        assertEquals(4, b.generated);
+    }
+
+    /**
+     * Point counting the times it has been generated
+     */
+    private static class CountingPoint extends OMPoint {
+        private static final long serialVersionUID = 1L;
+
+        int generated;
+
+        CountingPoint(double lat, double lon) {
+            super(lat, lon);
+        }
+
+        @Override
+        public boolean generate(Projection proj) {
+            generated++;
+            return super.generate(proj);
+        }
+    }
+}
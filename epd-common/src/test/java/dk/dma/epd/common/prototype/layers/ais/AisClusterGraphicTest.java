@@ -0,0 +1,135 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bbn.openmap.omGraphics.OMCircle;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMText;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.prototype.ais.VesselPositionData;
+import dk.dma.epd.common.prototype.ais.VesselTarget;
+
+public class AisClusterGraphicTest {
+
+    private static final float CLUSTER_SCALE = 2000000f;
+
+    private static VesselTarget vessel(long mmsi, double lat, double lon) {
+        VesselTarget vessel = new VesselTarget();
+        vessel.setMmsi(mmsi);
+        VesselPositionData posData = new VesselPositionData();
+        posData.setPos(Position.create(lat, lon));
+        vessel.setPositionData(posData);
+        return vessel;
+    }
+
+    private static Projection projection(float scale) {
+        return new Mercator(new LatLonPoint.Double(56.0, 11.0), scale, 800, 600);
+    }
+
+    @Test
+    public void testCountsAndCentroids() {
+        List<VesselTarget> vessels = new ArrayList<>();
+        // Three vessels in the cell [55, 56) x [11, 12)
+        vessels.add(vessel(1L, 55.2, 11.2));
+        vessels.add(vessel(2L, 55.4, 11.6));
+        vessels.add(vessel(3L, 55.9, 11.1));
+        // One vessel in another cell
+        vessels.add(vessel(4L, 57.5, 12.5));
+        // Gone vessels and vessels without a position are not clustered
+        VesselTarget gone = vessel(5L, 55.5, 11.5);
+        gone.setStatus(AisTarget.Status.GONE);
+        vessels.add(gone);
+        VesselTarget noPos = new VesselTarget();
+        noPos.setMmsi(6L);
+        noPos.setPositionData(new VesselPositionData());
+        vessels.add(noPos);
+
+        Collection<double[]> clusters = AisClusterGraphic.computeClusters(vessels, 1.0, 1.0);
+        assertEquals(2, clusters.size());
+        for (double[] cluster : clusters) {
+            if (cluster[0] == 3) {
+                assertEquals(55.5, cluster[1], 1e-9);
+                assertEquals(11.3, cluster[2], 1e-9);
+            } else {
+                assertEquals(1, cluster[0], 0.0);
+                assertEquals(57.5, cluster[1], 1e-9);
+                assertEquals(12.5, cluster[2], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testGroupsAtClusterScale() {
+        Projection proj = projection(5000000f);
+        assertTrue(AisClusterGraphic.isClusterScale(proj, CLUSTER_SCALE));
+
+        List<VesselTarget> vessels = new ArrayList<>();
+        for (long mmsi = 1L; mmsi <= 3L; mmsi++) {
+            vessels.add(vessel(mmsi, 56.0, 11.0));
+        }
+        vessels.add(vessel(4L, 57.5, 13.5));
+
+        AisClusterGraphic clusterGraphic = new AisClusterGraphic();
+        clusterGraphic.rebuild(proj, 40, vessels);
+
+        int circles = 0;
+        List<String> labels = new ArrayList<>();
+        for (OMGraphic graphic : clusterGraphic) {
+            if (graphic instanceof OMCircle) {
+                circles++;
+            } else if (graphic instanceof OMText) {
+                labels.add(((OMText) graphic).getData());
+            }
+        }
+        // One circle per cell, and only cells with more than one vessel are labelled
+        assertEquals(2, circles);
+        assertEquals(1, labels.size());
+        assertEquals("3", labels.get(0));
+    }
+
+    @Test
+    public void testIndividualTargetsBelowClusterScale() {
+        Projection zoomedOut = projection(5000000f);
+        Projection zoomedIn = projection(500000f);
+        assertTrue(AisClusterGraphic.isClusterScale(zoomedOut, CLUSTER_SCALE));
+        assertFalse(AisClusterGraphic.isClusterScale(zoomedIn, CLUSTER_SCALE));
+        // Clustering is disabled by a zero cluster scale
+        assertFalse(AisClusterGraphic.isClusterScale(zoomedOut, 0f));
+
+        AisClusterGraphic clusterGraphic = new AisClusterGraphic();
+        List<VesselTarget> vessels = new ArrayList<>();
+        vessels.add(vessel(1L, 56.0, 11.0));
+        clusterGraphic.rebuild(zoomedOut, 40, vessels);
+        assertFalse(clusterGraphic.needsRebuild(zoomedOut, 40));
+        // A changed scale or cell size requires a rebuild
+        assertTrue(clusterGraphic.needsRebuild(zoomedIn, 40));
+        assertTrue(clusterGraphic.needsRebuild(zoomedOut, 20));
+    }
+}
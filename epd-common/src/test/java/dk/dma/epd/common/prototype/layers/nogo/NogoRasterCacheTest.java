@@ -0,0 +1,147 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.nogo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.TexturePaint;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bbn.openmap.omGraphics.OMRaster;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+import dk.frv.enav.common.xml.nogo.types.NogoPoint;
+import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
+
+public class NogoRasterCacheTest {
+
+    private final Projection proj = new Mercator(new LatLonPoint.Double(55.5, 11.0), 2000000f, 800, 600);
+
+    @Test
+    public void testRasterize() {
+        // A square and a triangle sharing the north-west corner of the bounds
+        List<NogoPolygon> slice = Arrays.asList(
+                polygon(56.0, 10.0, 56.0, 10.5, 55.5, 10.5, 55.5, 10.0),
+                polygon(56.0, 10.0, 55.0, 11.0, 55.0, 10.0));
+
+        OMRaster raster = NogoRasterCache.rasterize(slice, proj);
+        assertEquals(56.0, raster.getLat(), 0.0);
+        assertEquals(10.0, raster.getLon(), 0.0);
+
+        // A 1-bit image, transparent or the 20% red of the NogoGraphic
+        BufferedImage image = (BufferedImage) raster.getImage();
+        assertTrue(image.getColorModel() instanceof IndexColorModel);
+        IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+        assertEquals(1, colorModel.getPixelSize());
+        assertEquals(2, colorModel.getMapSize());
+        assertEquals(0, colorModel.getAlpha(0));
+        assertEquals(new Color(255, 0, 0, 51).getRGB(), colorModel.getRGB(1));
+
+        // Same pixels as filling the polygons with the hatch texture of the NogoGraphic
+        Point2D nw = proj.forward(56.0, 10.0);
+        Point2D se = proj.forward(55.0, 11.0);
+        int width = (int) Math.ceil(se.getX() - nw.getX()) + 1;
+        int height = (int) Math.ceil(se.getY() - nw.getY()) + 1;
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+
+        BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        g.setPaint(new TexturePaint(hatchFill(), new Rectangle(0, 0, 10, 10)));
+        for (NogoPolygon polygon : slice) {
+            g.fill(path(polygon, nw));
+        }
+        g.dispose();
+
+        int filled = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+                if (image.getRGB(x, y) != 0) {
+                    filled++;
+                }
+            }
+        }
+        // The square and the part of the triangle outside it, i.e. about 5/8 of the bounds
+        assertTrue(filled > width * height / 2 && filled < width * height * 3 / 4);
+        assertEquals(0, image.getRGB(width - 2, 1));
+        assertEquals(new Color(255, 0, 0, 51).getRGB(), image.getRGB(1, height - 2));
+    }
+
+    @Test
+    public void testRasterizeEmptyOrTooLarge() {
+        assertNull(NogoRasterCache.rasterize(new ArrayList<NogoPolygon>(), proj));
+
+        Projection zoomedIn = new Mercator(new LatLonPoint.Double(55.5, 11.0), 1000f, 800, 600);
+        assertNull(NogoRasterCache.rasterize(Arrays.asList(polygon(56.0, 10.0, 55.0, 11.0, 55.0, 10.0)), zoomedIn));
+    }
+
+    /**
+     * Returns the hatch texture of the {@linkplain NogoGraphic}
+     */
+    private static BufferedImage hatchFill() {
+        BufferedImage hatchFill = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D big = hatchFill.createGraphics();
+        big.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.2f));
+        big.setColor(Color.red);
+        big.drawLine(0, 0, 10, 10);
+        big.dispose();
+        return hatchFill;
+    }
+
+    private Path2D path(NogoPolygon polygon, Point2D origin) {
+        Path2D path = new Path2D.Double();
+        List<NogoPoint> points = polygon.getPolygon();
+        for (int i = 0; i < points.size(); i++) {
+            Point2D pt = proj.forward(points.get(i).getLat(), points.get(i).getLon());
+            if (i == 0) {
+                path.moveTo(pt.getX() - origin.getX(), pt.getY() - origin.getY());
+            } else {
+                path.lineTo(pt.getX() - origin.getX(), pt.getY() - origin.getY());
+            }
+        }
+        path.closePath();
+        return path;
+    }
+
+    private static NogoPolygon polygon(double... latLons) {
+        List<NogoPoint> points = new ArrayList<>();
+        for (int i = 0; i < latLons.length; i += 2) {
+            NogoPoint point = new NogoPoint();
+            point.setLat(latLons[i]);
+            point.setLon(latLons[i + 1]);
+            points.add(point);
+        }
+        NogoPolygon polygon = new NogoPolygon();
+        polygon.setPolygon(points);
+        return polygon;
+    }
+}
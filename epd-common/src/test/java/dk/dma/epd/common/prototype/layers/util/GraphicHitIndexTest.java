@@ -0,0 +1,128 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.util;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.event.MouseEvent;
+import java.util.Random;
+
+import javax.swing.JPanel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bbn.openmap.event.MapEventUtils;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoint;
+import com.bbn.openmap.omGraphics.OMRect;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class GraphicHitIndexTest {
+
+    private static final float LIMIT = 5.0f;
+
+    private final JPanel source = new JPanel();
+    private OMGraphicList graphics;
+    private Projection proj;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42L);
+        proj = new Mercator(new LatLonPoint.Double(56.0, 11.0), 500000f, 800, 600);
+
+        graphics = new OMGraphicList();
+        for (int i = 0; i < 300; i++) {
+            int x = random.nextInt(600);
+            int y = random.nextInt(400);
+            graphics.add(new OMRect(x, y, x + 1 + random.nextInt(60), y + 1 + random.nextInt(60)));
+        }
+        OMGraphicList nested = new OMGraphicList();
+        for (int i = 0; i < 50; i++) {
+            nested.add(new OMPoint(random.nextInt(600), random.nextInt(400)));
+        }
+        graphics.add(nested);
+        OMGraphicList vague = new OMGraphicList();
+        vague.setVague(true);
+        vague.add(new OMRect(100, 100, 140, 140));
+        vague.add(new OMPoint(300, 300));
+        graphics.add(vague);
+        OMRect hidden = new OMRect(200, 200, 220, 220);
+        hidden.setVisible(false);
+        graphics.add(hidden);
+        // Covers too many cells to be indexed spatially
+        graphics.add(new OMRect(0, 0, 799, 599));
+
+        graphics.generate(proj);
+    }
+
+    @Test
+    public void testLookupMatchesBruteForce() {
+        GraphicHitIndex index = new GraphicHitIndex(graphics);
+        Random random = new Random(7L);
+        for (int i = 0; i < 2000; i++) {
+            int x = random.nextInt(800);
+            int y = random.nextInt(600);
+            assertSame(bruteForce(x, y), index.getSelectedGraphic(x, y, LIMIT, proj));
+            assertSame(bruteForce(x, y, OMPoint.class), index.getSelectedGraphic(x, y, LIMIT, proj, OMPoint.class));
+            assertSame(bruteForce(x, y, OMPoint.class, OMRect.class),
+                    index.getSelectedGraphic(x, y, LIMIT, proj, OMPoint.class, OMRect.class));
+        }
+    }
+
+    @Test
+    public void testInvalidate() {
+        GraphicHitIndex index = new GraphicHitIndex(graphics);
+        assertNull(index.getSelectedGraphic(700, 500, LIMIT, proj));
+
+        // Changes to the graphics are not seen until the index is invalidated
+        OMPoint point = new OMPoint(700, 500);
+        point.generate(proj);
+        graphics.add(point);
+        assertNull(index.getSelectedGraphic(700, 500, LIMIT, proj));
+
+        index.invalidate();
+        assertSame(point, index.getSelectedGraphic(700, 500, LIMIT, proj));
+
+        point.setVisible(false);
+        assertSame(point, index.getSelectedGraphic(700, 500, LIMIT, proj));
+        index.invalidate();
+        assertNull(index.getSelectedGraphic(700, 500, LIMIT, proj));
+    }
+
+    @Test
+    public void testProjectionChange() {
+        GraphicHitIndex index = new GraphicHitIndex(graphics);
+        assertNull(index.getSelectedGraphic(700, 500, LIMIT, proj));
+
+        OMPoint point = new OMPoint(700, 500);
+        graphics.add(point);
+        Projection newProj = new Mercator(new LatLonPoint.Double(56.0, 12.0), 500000f, 800, 600);
+        graphics.generate(newProj);
+
+        // A new projection rebuilds the index without it being invalidated
+        assertSame(point, index.getSelectedGraphic(700, 500, LIMIT, newProj));
+        assertSame(bruteForce(50, 50), index.getSelectedGraphic(50, 50, LIMIT, newProj));
+    }
+
+    private OMGraphic bruteForce(int x, int y, Class<?>... types) {
+        MouseEvent evt = new MouseEvent(source, MouseEvent.MOUSE_MOVED, 0L, 0, x, y, 0, false);
+        return MapEventUtils.getSelectedGraphic(graphics, evt, LIMIT, types);
+    }
+}
@@ -0,0 +1,70 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class WMSTileCacheTest {
+
+    private static final long TILE_BYTES = 4L * 16 * 16;
+
+    @Test
+    public void testMemoryLru() {
+        WMSTileCache cache = new WMSTileCache(null, 2 * TILE_BYTES, 0L, 1000L);
+        cache.put("a", tile(), null);
+        cache.put("b", tile(), null);
+        assertNotNull(cache.get("a")); // a is now most recently used
+        cache.put("c", tile(), null);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2 * TILE_BYTES, cache.getMemorySize());
+    }
+
+    @Test
+    public void testDiskTtl() throws Exception {
+        Path dir = Files.createTempDirectory("wmscache");
+        WMSTileCache cache = new WMSTileCache(dir, TILE_BYTES, 1024L * 1024L, 60000L);
+        byte[] data = { 1, 2, 3 };
+        cache.put("a", tile(), data);
+        cache.clearMemory();
+
+        assertTrue(cache.contains("a"));
+        assertArrayEquals(data, cache.readFromDisk("a"));
+
+        File file = dir.resolve(WMSTileCache.hash("a") + ".tile").toFile();
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 120000L));
+        assertFalse(cache.contains("a"));
+        assertNull(cache.readFromDisk("a"));
+        assertFalse(file.exists());
+    }
+
+    private static BufferedImage tile() {
+        return new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+    }
+}
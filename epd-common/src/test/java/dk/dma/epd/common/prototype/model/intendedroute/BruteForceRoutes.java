@@ -0,0 +1,154 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.intendedroute;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteLeg;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.util.Calculator;
+import dk.dma.epd.common.util.Converter;
+import dk.dma.epd.common.util.TypedValue.Dist;
+import dk.dma.epd.common.util.TypedValue.DistType;
+import dk.dma.epd.common.util.TypedValue.Speed;
+import dk.dma.epd.common.util.TypedValue.SpeedType;
+import dk.dma.epd.common.util.TypedValue.TimeType;
+
+/**
+ * Test routes and the brute-force route traversal that was used for finding TCPA's before the
+ * {@linkplain IntendedRouteTimeline} was introduced, used as reference in the tests.
+ * <p>
+ * The ETA's before the active way point are calculated backwards leg by leg, and the positions are found by traversing
+ * the legs one step at a time from the last position, starting over from the way point when switching leg.
+ */
+public final class BruteForceRoutes {
+
+    private BruteForceRoutes() {
+    }
+
+    /**
+     * Creates a rhumb line route starting at the given time
+     * 
+     * @param starttime
+     *            the start time in epoch milliseconds
+     * @param speeds
+     *            the speeds of the legs in knots
+     * @param positions
+     *            the way point positions
+     * @return the route
+     */
+    public static Route createRoute(long starttime, double[] speeds, Position... positions) {
+        Route route = new Route();
+        route.setName("Route");
+        RouteWaypoint prev = null;
+        for (int i = 0; i < positions.length; i++) {
+            RouteWaypoint wp = new RouteWaypoint();
+            wp.setName("WP " + i);
+            wp.setPos(positions[i]);
+            if (prev != null) {
+                RouteLeg leg = new RouteLeg(prev, wp);
+                leg.setSpeed(speeds[i - 1]);
+                leg.setHeading(Heading.RL);
+            }
+            route.getWaypoints().add(wp);
+            prev = wp;
+        }
+        route.setStarttime(new Date(starttime));
+        route.calcValues(true);
+        return route;
+    }
+
+    /**
+     * Returns the ETA of the given way point, calculated backwards from the active way point if before it
+     * 
+     * @param route
+     *            the route
+     * @param activeWp
+     *            the active way point
+     * @param index
+     *            the way point
+     * @return the ETA in epoch milliseconds
+     */
+    public static long getEta(Route route, int activeWp, int index) {
+        if (index >= activeWp) {
+            return route.getEtas().get(index).getTime();
+        }
+        long eta = route.getEtas().get(activeWp).getTime();
+        for (int j = activeWp - 1; j >= index; j--) {
+            RouteLeg leg = route.getWaypoints().get(j).getOutLeg();
+            if (leg.getSpeed() < 0.000000001) {
+                continue;
+            }
+            eta -= new Dist(DistType.NAUTICAL_MILES, leg.calcRng()).withSpeed(new Speed(SpeedType.KNOTS, leg.getSpeed()))
+                    .in(TimeType.MILLISECONDS).longValue();
+        }
+        return eta;
+    }
+
+    /**
+     * Traverses the route from the given time, returning the positions at every step
+     * 
+     * @param route
+     *            the route
+     * @param activeWp
+     *            the active way point
+     * @param from
+     *            the first time in epoch milliseconds
+     * @param to
+     *            the last time in epoch milliseconds
+     * @param step
+     *            the step in milliseconds
+     * @return the positions by time
+     */
+    public static Map<Long, Position> traverse(Route route, int activeWp, long from, long to, long step) {
+        int lastLeg = route.getWaypoints().size() - 2;
+
+        // Find the leg sailed at the first time
+        int leg = Math.max(0, activeWp - 1);
+        while (leg < lastLeg && getEta(route, activeWp, leg + 1) <= from) {
+            leg++;
+        }
+        RouteWaypoint wp = route.getWaypoints().get(leg);
+        Position pos = traverseLine(wp, wp.getPos(), from - getEta(route, activeWp, leg));
+
+        Map<Long, Position> result = new LinkedHashMap<>();
+        for (long time = from; time <= to; time += step) {
+            result.put(time, pos);
+
+            pos = traverseLine(route.getWaypoints().get(leg), pos, step);
+            while (leg < lastLeg && time + step > getEta(route, activeWp, leg + 1)) {
+                // Switch to next leg and traverse the time past the way point
+                leg++;
+                wp = route.getWaypoints().get(leg);
+                pos = traverseLine(wp, wp.getPos(), time + step - getEta(route, activeWp, leg));
+            }
+        }
+        return result;
+    }
+
+    private static Position traverseLine(RouteWaypoint wp, Position pos, long millis) {
+        double dist = wp.getOutLeg().getSpeed() * millis / (60.0 * 60.0 * 1000.0);
+        if (wp.getHeading() == Heading.RL) {
+            return Calculator.findPosition(pos, wp.calcBrg(), Converter.nmToMeters(dist));
+        } else {
+            return Calculator.findPosition(pos, wp.getOutLeg().getEndWp().getPos(), Converter.nmToMeters(dist));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.intendedroute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.util.Converter;
+
+/**
+ * Tests the {@linkplain IntendedRouteLegIndex}, comparing the candidates with the routes found to come close by the
+ * brute-force traversal of {@linkplain BruteForceRoutes}
+ */
+public class IntendedRouteLegIndexTest {
+
+    static final long START = IntendedRouteTimelineTest.START;
+    static final long MINUTE = IntendedRouteTimelineTest.MINUTE;
+    static final double MARGIN = 1.0;
+
+    @Test
+    public void testCandidates() {
+        IntendedRouteLegIndex index = new IntendedRouteLegIndex();
+        IntendedRouteTimeline own = eastbound(1L, 56.0, START);
+        index.put(own);
+
+        // Crossing
+        IntendedRouteTimeline crossing = northbound(2L, 11.075, START);
+        index.put(crossing);
+
+        // Parallel, 0.5 and 30 nautical miles apart
+        IntendedRouteTimeline parallel = eastbound(3L, 56.0 + 0.5 / 60.0, START);
+        index.put(parallel);
+        IntendedRouteTimeline parallelFar = eastbound(4L, 56.5, START);
+        index.put(parallelFar);
+
+        // Crossing, but sailed after the time window
+        IntendedRouteTimeline later = northbound(5L, 11.075, START + 180 * MINUTE);
+        index.put(later);
+
+        assertEquals(5, index.size());
+        Set<Long> candidates = mmsis(index.findCandidates(own, MARGIN, START, START + 120 * MINUTE));
+        assertTrue(candidates.contains(2L));
+        assertTrue(candidates.contains(3L));
+        assertFalse(candidates.contains(1L));
+        assertFalse(candidates.contains(4L));
+        assertFalse(candidates.contains(5L));
+
+        // The route need not be indexed itself
+        assertEquals(own, index.remove(1L));
+        assertNull(index.get(1L));
+        candidates = mmsis(index.findCandidates(own, MARGIN, START, START + 120 * MINUTE));
+        assertTrue(candidates.contains(2L));
+        assertTrue(candidates.contains(3L));
+
+        // Removed routes are no longer candidates
+        index.remove(2L);
+        candidates = mmsis(index.findCandidates(own, MARGIN, START, START + 120 * MINUTE));
+        assertFalse(candidates.contains(2L));
+        assertTrue(candidates.contains(3L));
+    }
+
+    @Test
+    public void testLongLegsAreAlwaysCandidates() {
+        IntendedRouteLegIndex index = new IntendedRouteLegIndex();
+        IntendedRouteTimeline own = eastbound(1L, 56.0, START);
+
+        // A leg covering more than MAX_CELLS_PER_LEG cells, far from the route
+        Route route = BruteForceRoutes.createRoute(START, new double[] { 20.0 }, Position.create(-10.0, -30.0),
+                Position.create(30.0, 10.0));
+        IntendedRouteTimeline unbounded = new IntendedRouteTimeline(2L, route, 0);
+        index.put(unbounded);
+
+        // Found by the index, but ruled out by the legs bounding boxes
+        assertTrue(index.findCandidates(own, MARGIN, START, START + 120 * MINUTE).isEmpty());
+        index.put(northbound(3L, 11.075, START));
+        assertEquals(new HashSet<>(Arrays.asList(3L)), mmsis(index.findCandidates(own, MARGIN, START, START + 120 * MINUTE)));
+    }
+
+    @Test
+    public void testCandidatesIncludeCloseRoutes() {
+        List<IntendedRouteTimeline> timelines = new ArrayList<>();
+        List<Route> routes = new ArrayList<>();
+        long mmsi = 1L;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 3; j++) {
+                IntendedRouteTimeline timeline = (i % 2 == 0)
+                        ? eastbound(mmsi++, 56.0 + i * 0.4 / 60.0, START + j * 15 * MINUTE)
+                        : northbound(mmsi++, 11.0 + i * 0.04, START + j * 15 * MINUTE);
+                timelines.add(timeline);
+                routes.add(timeline.getRoute());
+            }
+        }
+
+        IntendedRouteLegIndex index = new IntendedRouteLegIndex();
+        for (IntendedRouteTimeline timeline : timelines) {
+            index.put(timeline);
+        }
+
+        long from = START;
+        long to = START + 120 * MINUTE;
+        for (int i = 0; i < timelines.size(); i++) {
+            Set<Long> candidates = mmsis(index.findCandidates(timelines.get(i), MARGIN, from, to));
+            for (int j = 0; j < timelines.size(); j++) {
+                if (i != j && minDistance(routes.get(i), routes.get(j), from, to) <= MARGIN) {
+                    assertTrue("Route " + (j + 1) + " is a candidate for route " + (i + 1),
+                            candidates.contains(timelines.get(j).getMmsi()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the minimum distance in nautical miles between two routes, sampled every minute by the brute-force
+     * traversal, or {@linkplain Double#MAX_VALUE} if they are not sailed at the same time
+     */
+    private static double minDistance(Route route1, Route route2, long from, long to) {
+        long start = Math.max(from, Math.max(BruteForceRoutes.getEta(route1, 0, 0), BruteForceRoutes.getEta(route2, 0, 0)));
+        long end = Math.min(to, Math.min(BruteForceRoutes.getEta(route1, 0, route1.getWaypoints().size() - 1),
+                BruteForceRoutes.getEta(route2, 0, route2.getWaypoints().size() - 1)));
+        double min = Double.MAX_VALUE;
+        if (start > end) {
+            return min;
+        }
+        Map<Long, Position> positions1 = BruteForceRoutes.traverse(route1, 0, start, end, MINUTE);
+        Map<Long, Position> positions2 = BruteForceRoutes.traverse(route2, 0, start, end, MINUTE);
+        for (Map.Entry<Long, Position> entry : positions1.entrySet()) {
+            double dist = Converter.metersToNm(entry.getValue().distanceTo(positions2.get(entry.getKey()),
+                    CoordinateSystem.CARTESIAN));
+            min = Math.min(min, dist);
+        }
+        return min;
+    }
+
+    static IntendedRouteTimeline eastbound(long mmsi, double lat, long start) {
+        Route route = BruteForceRoutes.createRoute(start, new double[] { 10.0, 10.0 }, Position.create(lat, 11.0),
+                Position.create(lat, 11.1), Position.create(lat, 11.2));
+        return new IntendedRouteTimeline(mmsi, route, 0);
+    }
+
+    static IntendedRouteTimeline northbound(long mmsi, double lon, long start) {
+        Route route = BruteForceRoutes.createRoute(start, new double[] { 12.0, 12.0 }, Position.create(55.95, lon),
+                Position.create(56.0, lon), Position.create(56.05, lon));
+        return new IntendedRouteTimeline(mmsi, route, 0);
+    }
+
+    private static Set<Long> mmsis(List<IntendedRouteTimeline> timelines) {
+        Set<Long> result = new HashSet<>();
+        for (IntendedRouteTimeline timeline : timelines) {
+            result.add(timeline.getMmsi());
+        }
+        return result;
+    }
+}
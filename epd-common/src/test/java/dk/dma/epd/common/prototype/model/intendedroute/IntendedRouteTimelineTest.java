@@ -0,0 +1,127 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.intendedroute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.util.Converter;
+
+/**
+ * Compares the ETA's and positions of the {@linkplain IntendedRouteTimeline} with the brute-force traversal of
+ * {@linkplain BruteForceRoutes}
+ */
+public class IntendedRouteTimelineTest {
+
+    static final long START = 1400000000000L;
+    static final long MINUTE = 60 * 1000L;
+
+    /** Tolerance of the positions in nautical miles */
+    static final double TOLERANCE = 0.05;
+
+    static final Position[] POSITIONS = { Position.create(55.0, 11.0), Position.create(55.1, 11.1),
+            Position.create(55.1, 11.25), Position.create(55.0, 11.35) };
+
+    @Test
+    public void testBackCalculatedEtas() {
+        Route route = BruteForceRoutes.createRoute(START, new double[] { 8.0, 10.0, 12.0 }, POSITIONS);
+        IntendedRouteTimeline timeline = new IntendedRouteTimeline(1L, route, 2);
+
+        assertEquals(1, timeline.getFirstLeg());
+        assertEquals(route.getEtas().get(2).getTime(), timeline.getStartTime());
+        assertEquals(route.getEtas().get(3).getTime(), timeline.getEndTime());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BruteForceRoutes.getEta(route, 2, i), timeline.getLegStartTime(i), 2L);
+        }
+    }
+
+    @Test
+    public void testPositions() {
+        Route route = BruteForceRoutes.createRoute(START, new double[] { 10.0, 12.0, 8.0 }, POSITIONS);
+        IntendedRouteTimeline timeline = new IntendedRouteTimeline(1L, route, 1);
+
+        // Start on the leg leading to the active way point
+        assertMatchesTraversal(timeline, route, 1, timeline.getLegStartTime(0) + 5 * MINUTE);
+        assertMatchesTraversal(timeline, route, 1, timeline.getStartTime());
+    }
+
+    @Test
+    public void testZeroSpeedBeforeActiveWaypoint() {
+        Route route = BruteForceRoutes.createRoute(START, new double[] { 0.0, 10.0, 10.0 }, POSITIONS);
+        IntendedRouteTimeline timeline = new IntendedRouteTimeline(1L, route, 2);
+
+        // The leg sailed at zero speed takes no time
+        assertEquals(timeline.getLegStartTime(1), timeline.getLegStartTime(0));
+        assertEquals(BruteForceRoutes.getEta(route, 2, 1), timeline.getLegStartTime(1), 2L);
+        assertTrue(timeline.getLegStartTime(0) <= timeline.getStartTime());
+
+        assertMatchesTraversal(timeline, route, 2, timeline.getLegStartTime(1));
+    }
+
+    @Test
+    public void testZeroSpeedAfterActiveWaypoint() {
+        Route route = BruteForceRoutes.createRoute(START, new double[] { 10.0, 0.0, 10.0 }, POSITIONS);
+        IntendedRouteTimeline timeline = new IntendedRouteTimeline(1L, route, 0);
+
+        assertMatchesTraversal(timeline, route, 0, timeline.getStartTime());
+    }
+
+    @Test
+    public void testMayApproach() {
+        Route route1 = BruteForceRoutes.createRoute(START, new double[] { 10.0 }, Position.create(56.0, 11.0),
+                Position.create(56.0, 11.15));
+        IntendedRouteTimeline timeline1 = new IntendedRouteTimeline(1L, route1, 0);
+
+        // Crossing
+        Route route2 = BruteForceRoutes.createRoute(START, new double[] { 12.0 }, Position.create(55.95, 11.075),
+                Position.create(56.05, 11.075));
+        IntendedRouteTimeline timeline2 = new IntendedRouteTimeline(2L, route2, 0);
+        assertTrue(timeline1.mayApproach(timeline2, 1.0, START, START + 60 * MINUTE));
+
+        // Crossing, but sailed after the time window
+        assertFalse(timeline1.mayApproach(timeline2, 1.0, START - 60 * MINUTE, START - MINUTE));
+
+        // Parallel, 2 nautical miles apart
+        Route route3 = BruteForceRoutes.createRoute(START, new double[] { 10.0 }, Position.create(56.0 + 2.0 / 60.0, 11.0),
+                Position.create(56.0 + 2.0 / 60.0, 11.15));
+        IntendedRouteTimeline timeline3 = new IntendedRouteTimeline(3L, route3, 0);
+        assertFalse(timeline1.mayApproach(timeline3, 1.0, START, START + 60 * MINUTE));
+        assertTrue(timeline1.mayApproach(timeline3, 3.0, START, START + 60 * MINUTE));
+    }
+
+    /**
+     * Asserts that the positions of the timeline every minute from the given time to the end of the route are the same
+     * as the brute-force traversal
+     */
+    private static void assertMatchesTraversal(IntendedRouteTimeline timeline, Route route, int activeWp, long from) {
+        long end = timeline.getEndTime();
+        Map<Long, Position> expected = BruteForceRoutes.traverse(route, activeWp, from, end, MINUTE);
+        assertFalse(expected.isEmpty());
+        for (Map.Entry<Long, Position> entry : expected.entrySet()) {
+            Position pos = timeline.getPosition(entry.getKey());
+            assertFalse(Double.isNaN(pos.getLatitude()) || Double.isNaN(pos.getLongitude()));
+            double dist = Converter.metersToNm(pos.distanceTo(entry.getValue(), CoordinateSystem.CARTESIAN));
+            assertTrue("Position differs " + dist + " nm at " + entry.getKey(), dist < TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.prototype.model.route.Route.EtaCalculationType;
+import dk.dma.epd.common.prototype.sensor.pnt.PntData;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+
+/**
+ * Compares the incrementally maintained totals and lazily updated leg values of the {@linkplain ActiveRoute} against
+ * a full recalculation from the route legs
+ */
+public class ActiveRouteTest {
+
+    private static final double[] SPEEDS = { 10.0, 12.5, 8.0, 15.0, 11.0, 9.5, 14.0 };
+
+    /** The time of the latest update, which the remaining ETA's are based on */
+    private long updateTime;
+
+    @Before
+    public void setUp() {
+        PntTime.init(false);
+    }
+
+    @Test
+    public void testUpdate() {
+        for (EtaCalculationType type : EtaCalculationType.values()) {
+            ActiveRoute route = createActiveRoute(type);
+            assertEquals(0, route.getActiveWaypointIndex());
+
+            double[] sogs = { 9.0, 11.3, 0.0, 17.2 };
+            for (int i = 0; i < sogs.length; i++) {
+                update(route, Position.create(54.99 + i * 0.001, 10.99 + i * 0.002), sogs[i]);
+                assertMatchesFullRecalculation(route, sogs[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testEditedWaypointAndSpeed() {
+        for (EtaCalculationType type : EtaCalculationType.values()) {
+            ActiveRoute route = createActiveRoute(type);
+            update(route, Position.create(54.995, 10.995), 10.0);
+            assertMatchesFullRecalculation(route, 10.0);
+
+            // Move a way point, changing the legs on both sides of it
+            route.getWaypoints().get(3).setPos(Position.create(55.35, 11.6));
+            // Change the speed of a leg
+            route.getWaypoints().get(1).setSpeed(6.0);
+            route.getWaypoints().get(5).getOutLeg().setHeading(Heading.GC);
+            recalculate(route);
+            update(route, Position.create(54.996, 10.996), 10.0);
+            assertMatchesFullRecalculation(route, 10.0);
+
+            // Further updates without edits
+            update(route, Position.create(54.997, 10.997), 13.0);
+            assertMatchesFullRecalculation(route, 13.0);
+        }
+    }
+
+    @Test
+    public void testChangeActiveWaypoint() {
+        for (EtaCalculationType type : EtaCalculationType.values()) {
+            ActiveRoute route = createActiveRoute(type);
+            update(route, Position.create(54.995, 10.995), 10.0);
+
+            route.changeActiveWaypoint(2);
+            update(route, Position.create(55.15, 11.25), 12.0);
+            assertMatchesFullRecalculation(route, 12.0);
+
+            route.getWaypoints().get(4).setSpeed(20.0);
+            recalculate(route);
+            assertMatchesFullRecalculation(route, 12.0);
+
+            route.changeActiveWaypoint(6);
+            update(route, Position.create(55.55, 11.95), 7.0);
+            assertMatchesFullRecalculation(route, 7.0);
+        }
+    }
+
+    /**
+     * Recalculates the values of the remaining route leg by leg, the way the active route did on every update before
+     * the leg values were maintained incrementally, and compares them with the values of the route
+     */
+    private void assertMatchesFullRecalculation(ActiveRoute route, double sog) {
+        double speed = Math.max(sog, 0.1);
+        List<RouteWaypoint> waypoints = route.getWaypoints();
+        int legs = waypoints.size() - 1;
+        int aw = route.getActiveWaypointIndex();
+        EtaCalculationType type = route.getEtaCalculationType();
+
+        double activeWpRng = route.getActiveWpRng();
+        long activeWpTtg = (type == EtaCalculationType.PLANNED_SPEED) ? Math.round(activeWpRng
+                / route.getCurrentLeg().getSpeed() * 60 * 60 * 1000) : Math.round(activeWpRng / speed * 60 * 60 * 1000);
+        assertEquals(activeWpTtg, route.getActiveWpTtg().longValue());
+
+        long[] legTtgs = new long[legs];
+        long totalTtg = activeWpTtg;
+        double totalDtg = activeWpRng;
+        for (int i = aw; i < legs; i++) {
+            RouteLeg leg = waypoints.get(i).getOutLeg();
+            if (type == EtaCalculationType.DYNAMIC_SPEED || type == EtaCalculationType.HYBRID && i == aw) {
+                legTtgs[i] = leg.calcTtg(speed);
+            } else {
+                legTtgs[i] = leg.calcTtg();
+            }
+            totalTtg += legTtgs[i];
+            totalDtg += leg.calcRng();
+        }
+
+        // With dynamic speed, the remaining total is rounded once rather than once per leg
+        assertEquals(totalTtg, route.getRouteTtg(), legs);
+        assertEquals(totalDtg, route.getRouteDtg(), 1e-9);
+
+        for (int i = 0; i < legs; i++) {
+            assertEquals(waypoints.get(i).getOutLeg().calcRng(), route.getDtgs()[i], 0.0);
+        }
+        long[] ttgs = route.getTtgs();
+        for (int i = aw; i < legs; i++) {
+            assertEquals(legTtgs[i], ttgs[i]);
+            assertEquals(legTtgs[i], route.getWpTtg(i + 1).longValue());
+        }
+
+        // The ETA's are based on the time they are brought up to date, i.e. at the latest when read
+        List<Date> etas = route.getEtas();
+        long eta = etas.get(aw).getTime();
+        assertTrue(eta >= updateTime + activeWpTtg && eta <= System.currentTimeMillis() + activeWpTtg);
+        for (int i = aw; i < legs; i++) {
+            eta += legTtgs[i];
+            assertEquals(eta, etas.get(i + 1).getTime());
+        }
+    }
+
+    private void update(ActiveRoute route, Position pos, double sog) {
+        updateTime = System.currentTimeMillis();
+        route.update(createPntData(pos, sog));
+    }
+
+    private void recalculate(ActiveRoute route) {
+        updateTime = System.currentTimeMillis();
+        route.calcValues(true);
+    }
+
+    private static PntData createPntData(Position pos, double sog) {
+        PntData pntData = new PntData();
+        pntData.setPosition(pos);
+        pntData.setSog(sog);
+        pntData.setCog(45.0);
+        pntData.setBadPosition(false);
+        return pntData;
+    }
+
+    private static ActiveRoute createActiveRoute(EtaCalculationType type) {
+        Route route = new Route();
+        route.setName("Route");
+        RouteWaypoint prev = null;
+        for (int i = 0; i <= SPEEDS.length; i++) {
+            RouteWaypoint wp = new RouteWaypoint();
+            wp.setName("WP " + i);
+            wp.setPos(Position.create(55.0 + i * 0.1, 11.0 + i * (i % 2 == 0 ? 0.2 : 0.1)));
+            if (prev != null) {
+                RouteLeg leg = new RouteLeg(prev, wp);
+                leg.setSpeed(SPEEDS[i - 1]);
+                leg.setHeading(i % 3 == 0 ? Heading.GC : Heading.RL);
+            }
+            route.getWaypoints().add(wp);
+            prev = wp;
+        }
+        // Start in the past, so that the ETA of the first way point is based on the current time
+        route.setStarttime(new Date(System.currentTimeMillis() - 3600000L));
+        route.setEtaCalculationType(type);
+        route.calcValues(true);
+        return new ActiveRoute(route, createPntData(Position.create(54.99, 10.99), 10.0));
+    }
+}
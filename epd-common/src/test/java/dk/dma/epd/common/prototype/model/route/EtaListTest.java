@@ -0,0 +1,72 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EtaListTest {
+
+    @Test
+    public void testCopyAndSetTime() {
+        List<Date> dates = Arrays.asList(new Date(1000L), null, new Date(3000L));
+        EtaList etas = new EtaList(dates);
+        assertEquals(3, etas.size());
+        assertEquals(new Date(1000L), etas.get(0));
+        assertNull(etas.get(1));
+
+        etas.setTime(1, 2000L);
+        assertEquals(2000L, etas.getTime(1));
+        assertEquals(new ArrayList<>(Arrays.asList(new Date(1000L), new Date(2000L), new Date(3000L))),
+                new ArrayList<>(etas));
+
+        // Returned dates are not backed by the list
+        etas.get(0).setTime(0L);
+        assertEquals(1000L, etas.getTime(0));
+    }
+
+    @Test
+    public void testResize() {
+        EtaList etas = new EtaList();
+        etas.setSize(40);
+        assertEquals(40, etas.size());
+        assertNull(etas.get(39));
+        etas.setTime(39, 39L);
+
+        etas.setSize(2);
+        assertEquals(2, etas.size());
+        etas.add(new Date(5L));
+        etas.add(0, new Date(1L));
+        assertEquals(4, etas.size());
+        assertEquals(1L, etas.getTime(0));
+        assertEquals(5L, etas.getTime(3));
+        assertEquals(new Date(1L), etas.remove(0));
+        assertEquals(5L, etas.getTime(2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() {
+        EtaList etas = new EtaList();
+        etas.setSize(1);
+        etas.setTime(1, 0L);
+    }
+}
@@ -0,0 +1,171 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
+
+public class DriftSimulatorTest {
+
+    private static final Position LKP = Position.create(61, -51);
+    private static final DateTime LKP_DATE = new DateTime(2015, 3, 17, 12, 0);
+
+    private static List<ProbabilityGrid> simulate(long seed, List<SARWeatherData> weatherPoints, DateTime... times) {
+        DriftSimulator simulator = new DriftSimulator(20000, 10, seed);
+        return simulator.simulate(LKP, LKP_DATE, 1.0, 0, weatherPoints, Arrays.asList(times));
+    }
+
+    private static List<SARWeatherData> weather() {
+        List<SARWeatherData> weatherPoints = new ArrayList<>();
+        // Current of 2 knots towards north, wind of 15 knots from the west
+        weatherPoints.add(new SARWeatherData(0.0, 2.0, 15.0, 270.0, LKP_DATE));
+        return weatherPoints;
+    }
+
+    private static double sum(ProbabilityGrid grid) {
+        double sum = 0.0;
+        for (int row = 0; row < grid.getRows(); row++) {
+            for (int col = 0; col < grid.getCols(); col++) {
+                sum += grid.getProbability(row, col);
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    public void testProbabilitiesSumToOne() {
+        List<ProbabilityGrid> grids = simulate(1L, weather(), LKP_DATE.plusHours(2), LKP_DATE.plusHours(1));
+
+        assertEquals(2, grids.size());
+        assertEquals(LKP_DATE.plusHours(2), grids.get(0).getTime());
+        assertEquals(LKP_DATE.plusHours(1), grids.get(1).getTime());
+        for (ProbabilityGrid grid : grids) {
+            assertEquals(1.0, sum(grid), 1e-9);
+        }
+    }
+
+    @Test
+    public void testMeanPositionFollowsDrift() {
+        ProbabilityGrid grid = simulate(1L, weather(), LKP_DATE.plusHours(2)).get(0);
+
+        // 2 knots of current towards north, and the mean leeway of a person in water towards east, for 2 hours
+        double leeway = LeewayValues.getLeewaySpeed(0, 15.0) * Math.sin(Math.toRadians(30)) / Math.toRadians(30);
+        double expectedLat = LKP.getLatitude() + 2 * 2.0 / 60.0;
+        double expectedLon = LKP.getLongitude() + 2 * leeway / 60.0 / Math.cos(Math.toRadians(expectedLat));
+
+        Position mean = grid.getMeanPosition();
+        assertEquals(expectedLat, mean.getLatitude(), 0.1 / 60.0);
+        assertEquals(expectedLon, mean.getLongitude(), 0.1 / 60.0 / Math.cos(Math.toRadians(expectedLat)));
+    }
+
+    @Test
+    public void testWeatherPointsAreApplied() {
+        List<SARWeatherData> weatherPoints = weather();
+        // After one hour, the current turns east
+        weatherPoints.add(new SARWeatherData(90.0, 2.0, 0.0, 270.0, LKP_DATE.plusHours(1)));
+
+        Position mean = simulate(1L, weatherPoints, LKP_DATE.plusHours(2)).get(0).getMeanPosition();
+        double cosLat = Math.cos(Math.toRadians(mean.getLatitude()));
+        assertEquals(LKP.getLatitude() + 2.0 / 60.0, mean.getLatitude(), 0.1 / 60.0);
+        assertTrue((mean.getLongitude() - LKP.getLongitude()) * cosLat * 60.0 > 2.0);
+    }
+
+    @Test
+    public void testSameSeedGivesSameResult() {
+        ProbabilityGrid grid1 = simulate(42L, weather(), LKP_DATE.plusHours(3)).get(0);
+        ProbabilityGrid grid2 = simulate(42L, weather(), LKP_DATE.plusHours(3)).get(0);
+
+        assertEquals(grid1.getRows(), grid2.getRows());
+        assertEquals(grid1.getCols(), grid2.getCols());
+        for (int row = 0; row < grid1.getRows(); row++) {
+            double[] row1 = new double[grid1.getCols()];
+            double[] row2 = new double[grid2.getCols()];
+            for (int col = 0; col < grid1.getCols(); col++) {
+                row1[col] = grid1.getProbability(row, col);
+                row2[col] = grid2.getProbability(row, col);
+            }
+            assertArrayEquals(row1, row2, 0.0);
+        }
+    }
+
+    @Test
+    public void testProbabilityOfContainment() {
+        List<ProbabilityGrid> grids = simulate(1L, weather(), LKP_DATE.plusHours(1), LKP_DATE.plusHours(3));
+        ProbabilityGrid grid = grids.get(0);
+
+        Position center = grid.getMeanPosition();
+        double lat = center.getLatitude();
+        double lon = center.getLongitude();
+
+        // A 20 nm box around the mean contains practically all particles
+        double d = 10.0 / 60.0;
+        double poc = grid.getProbabilityOfContainment(Arrays.asList(Position.create(lat + d, lon - 2 * d),
+                Position.create(lat + d, lon + 2 * d), Position.create(lat - d, lon + 2 * d),
+                Position.create(lat - d, lon - 2 * d)));
+        assertEquals(1.0, poc, 1e-3);
+
+        // The northern half contains about half of the particles
+        poc = grid.getProbabilityOfContainment(Arrays.asList(Position.create(lat + d, lon - 2 * d),
+                Position.create(lat + d, lon + 2 * d), Position.create(lat, lon + 2 * d),
+                Position.create(lat, lon - 2 * d)));
+        assertEquals(0.5, poc, 0.1);
+
+        // After 3 hours, the search object has drifted away from the LKP
+        d = 0.5 / 60.0;
+        poc = grids.get(1).getProbabilityOfContainment(Arrays.asList(Position.create(LKP.getLatitude() + d,
+                LKP.getLongitude() - 2 * d), Position.create(LKP.getLatitude() + d, LKP.getLongitude() + 2 * d),
+                Position.create(LKP.getLatitude() - d, LKP.getLongitude() + 2 * d),
+                Position.create(LKP.getLatitude() - d, LKP.getLongitude() - 2 * d)));
+        assertTrue(poc < 0.01);
+    }
+
+    @Test
+    public void testProbabilityOfSuccess() {
+        ProbabilityGrid grid = simulate(1L, weather(), LKP_DATE.plusHours(1)).get(0);
+        SAROperation operation = new SAROperation(SAR_TYPE.RAPID_RESPONSE);
+
+        EffortAllocationData data = new EffortAllocationData();
+        data.setPod(0.8);
+        assertEquals(0.0, operation.calculateProbabilityOfSuccess(data, grid), 0.0);
+        assertNull(data.getPoc());
+
+        // The northern half of a 20 nm box around the mean
+        Position center = grid.getMeanPosition();
+        double lat = center.getLatitude();
+        double lon = center.getLongitude();
+        double d = 10.0 / 60.0;
+        data.setEffectiveAreaA(Position.create(lat + d, lon - 2 * d));
+        data.setEffectiveAreaB(Position.create(lat + d, lon + 2 * d));
+        data.setEffectiveAreaC(Position.create(lat, lon + 2 * d));
+        data.setEffectiveAreaD(Position.create(lat, lon - 2 * d));
+
+        double pos = operation.calculateProbabilityOfSuccess(data, grid);
+        assertEquals(0.5, data.getPoc(), 0.1);
+        assertEquals(data.getPoc() * 0.8, pos, 1e-9);
+    }
+}
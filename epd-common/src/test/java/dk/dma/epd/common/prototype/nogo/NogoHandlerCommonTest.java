@@ -0,0 +1,258 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.nogo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
+import dk.dma.epd.common.prototype.layers.nogo.NogoLayer;
+import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
+import dk.frv.enav.common.xml.nogo.response.NogoResponse;
+import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
+
+public class NogoHandlerCommonTest {
+
+    private static final int SLICES = 10;
+    private static final Position NORTH_WEST_A = Position.create(56.0, 10.0);
+    private static final Position NORTH_WEST_B = Position.create(56.5, 10.0);
+    private static final Position SOUTH_EAST = Position.create(55.0, 11.0);
+
+    private TestShoreServices shoreServices;
+    private TestLayer layer;
+    private TestHandler handler;
+
+    @Before
+    public void setUp() {
+        shoreServices = new TestShoreServices();
+        layer = new TestLayer();
+        handler = new TestHandler();
+        handler.shoreServices = shoreServices;
+        handler.nogoLayer = layer;
+        handler.useSlices = true;
+        handler.setDraught(5.0);
+        handler.setNorthWestPoint(NORTH_WEST_A);
+        handler.setSouthEastPoint(SOUTH_EAST);
+        handler.setValidFrom(new Date(0L));
+        handler.setValidTo(new Date(TimeUnit.HOURS.toMillis(SLICES)));
+    }
+
+    @Test
+    public void testConcurrentFetch() throws Exception {
+        CountDownLatch release = shoreServices.block(NORTH_WEST_A);
+        handler.updateNogo(true, 60);
+        shoreServices.awaitRunning(NORTH_WEST_A, NogoHandlerCommon.NOGO_THREADS);
+        release.countDown();
+        assertTrue(handler.completed.tryAcquire(10, TimeUnit.SECONDS));
+
+        assertEquals(NogoHandlerCommon.NOGO_THREADS, shoreServices.maxRunning);
+        assertEquals(SLICES, shoreServices.getCalls(NORTH_WEST_A));
+        assertSlices(NORTH_WEST_A);
+        assertEquals(SLICES, handler.completedSlices);
+
+        // The same request is served from the cache before updateNogo() returns
+        handler.updateNogo(true, 60);
+        assertEquals(SLICES, shoreServices.getCalls(NORTH_WEST_A));
+        assertSlices(NORTH_WEST_A);
+        assertEquals(2 * SLICES, handler.completedSlices);
+        assertTrue(handler.completed.tryAcquire());
+        assertFalse(handler.requestInProgress);
+    }
+
+    @Test
+    public void testCancelledRequest() throws Exception {
+        CountDownLatch releaseA = shoreServices.block(NORTH_WEST_A);
+        CountDownLatch releaseB = shoreServices.block(NORTH_WEST_B);
+        handler.updateNogo(true, 60);
+        shoreServices.awaitRunning(NORTH_WEST_A, NogoHandlerCommon.NOGO_THREADS);
+
+        // A new request for another area supersedes the running one
+        handler.setNorthWestPoint(NORTH_WEST_B);
+        handler.updateNogo(true, 60);
+        shoreServices.awaitRunning(NORTH_WEST_B, NogoHandlerCommon.NOGO_THREADS);
+        releaseB.countDown();
+        assertTrue(handler.completed.tryAcquire(10, TimeUnit.SECONDS));
+        assertSlices(NORTH_WEST_B);
+
+        // The late responses of the cancelled request are discarded, and its queued slices are never fetched
+        releaseA.countDown();
+        assertTrue(handler.responses.tryAcquire(SLICES + NogoHandlerCommon.NOGO_THREADS, 10, TimeUnit.SECONDS));
+        assertSlices(NORTH_WEST_B);
+        assertEquals(SLICES, handler.completedSlices);
+        assertEquals(NogoHandlerCommon.NOGO_THREADS, shoreServices.getCalls(NORTH_WEST_A));
+        assertFalse(handler.completed.tryAcquire());
+
+        // The responses of the cancelled request have been cached
+        handler.setNorthWestPoint(NORTH_WEST_A);
+        handler.updateNogo(true, 60);
+        assertTrue(handler.completed.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(SLICES, shoreServices.getCalls(NORTH_WEST_A));
+        assertSlices(NORTH_WEST_A);
+    }
+
+    /**
+     * Asserts that the layer holds the responses of the slices of the given area
+     */
+    private void assertSlices(Position northWest) {
+        for (int i = 0; i < SLICES; i++) {
+            Date from = new Date(TimeUnit.HOURS.toMillis(i));
+            Date to = new Date(TimeUnit.HOURS.toMillis(i + 1));
+            String key = NogoHandlerCommon.cacheKey(handler.getDraught(), northWest, SOUTH_EAST, from, to);
+            assertSame(shoreServices.getPolygons(key), layer.slices.get(i));
+        }
+    }
+
+    /**
+     * Handler signalling completed requests and slice responses
+     */
+    static class TestHandler extends NogoHandlerCommon {
+
+        final Semaphore completed = new Semaphore(0);
+        final Semaphore responses = new Semaphore(0);
+        int completedSlices;
+
+        @Override
+        public synchronized void setNoGoRequestCompleted() {
+            super.setNoGoRequestCompleted();
+            completed.release();
+        }
+
+        @Override
+        synchronized void nogoSliceCompleted(int requestId, int index, String cacheKey, NogoResponse response) {
+            super.nogoSliceCompleted(requestId, index, cacheKey, response);
+            responses.release();
+        }
+
+        @Override
+        protected synchronized void updatePanelCompletedSlices(int completedSlices, int i) {
+            this.completedSlices++;
+        }
+    }
+
+    /**
+     * Layer recording the polygons of the slices
+     */
+    @SuppressWarnings("serial")
+    static class TestLayer extends NogoLayer {
+
+        final List<List<NogoPolygon>> slices = Collections.synchronizedList(new ArrayList<List<NogoPolygon>>());
+
+        @Override
+        public void initializeNoGoStorage(int count) {
+            slices.clear();
+            slices.addAll(Collections.<List<NogoPolygon>> nCopies(count, null));
+        }
+
+        @Override
+        public void addResultFromMultipleRequest(NoGoDataEntry dataEntry, int id) {
+            slices.set(id, dataEntry.getNogoPolygons());
+        }
+    }
+
+    /**
+     * Shore services returning a new response per slice, blocking the calls for an area until released
+     */
+    static class TestShoreServices extends ShoreServicesCommon {
+
+        private final Map<Position, CountDownLatch> releases = new HashMap<>();
+        private final Map<Position, Integer> calls = new HashMap<>();
+        private final Map<Position, Integer> running = new HashMap<>();
+        private final Map<String, List<NogoPolygon>> polygons = new HashMap<>();
+        int maxRunning;
+
+        TestShoreServices() {
+            super(null);
+        }
+
+        synchronized CountDownLatch block(Position northWest) {
+            CountDownLatch release = new CountDownLatch(1);
+            releases.put(northWest, release);
+            return release;
+        }
+
+        synchronized void awaitRunning(Position northWest, int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000L;
+            while (get(running, northWest) < count && System.currentTimeMillis() < deadline) {
+                wait(100L);
+            }
+            assertEquals(count, get(running, northWest));
+        }
+
+        synchronized int getCalls(Position northWest) {
+            return get(calls, northWest);
+        }
+
+        synchronized List<NogoPolygon> getPolygons(String key) {
+            return polygons.get(key);
+        }
+
+        @Override
+        public NogoResponse nogoPoll(double draught, Position northWestPoint, Position southEastPoint, Date startDate,
+                Date endDate) throws ShoreServiceException {
+            CountDownLatch release;
+            synchronized (this) {
+                calls.put(northWestPoint, get(calls, northWestPoint) + 1);
+                running.put(northWestPoint, get(running, northWestPoint) + 1);
+                maxRunning = Math.max(maxRunning, get(running, northWestPoint));
+                release = releases.get(northWestPoint);
+                notifyAll();
+            }
+
+            // Ignore the interrupt of a cancelled slice, like a blocking HTTP call would
+            boolean interrupted = false;
+            while (release != null && release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            List<NogoPolygon> result = new ArrayList<>();
+            synchronized (this) {
+                running.put(northWestPoint, get(running, northWestPoint) - 1);
+                polygons.put(NogoHandlerCommon.cacheKey(draught, northWestPoint, southEastPoint, startDate, endDate),
+                        result);
+            }
+            NogoResponse response = new NogoResponse();
+            response.setPolygons(result);
+            return response;
+        }
+
+        private static int get(Map<Position, Integer> map, Position northWest) {
+            Integer count = map.get(northWest);
+            return (count != null) ? count : 0;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.route;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+
+public class RouteJournalTest {
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path file = Files.createTempFile("routes", ".journal");
+        Files.delete(file);
+        try {
+            RouteJournal journal = new RouteJournal(file);
+            List<Route> routes = journal.load();
+            for (int i = 0; i < 10; i++) {
+                routes.add(createRoute("Route " + i, 50));
+            }
+            journal.save(routes);
+            long size = journal.getJournalSize();
+
+            // Saving without changes appends nothing
+            journal.save(routes);
+            Assert.assertEquals(size, journal.getJournalSize());
+
+            // Only the edited route is appended
+            routes.get(3).getWaypoints().get(7).setPos(Position.create(10.0, 10.0));
+            journal.save(routes);
+            long editSize = journal.getJournalSize() - size;
+            Assert.assertTrue(editSize > 0 && editSize < size / 5);
+
+            routes.remove(0);
+            Route last = routes.remove(routes.size() - 1);
+            routes.add(0, last);
+            journal.save(routes);
+            journal.close();
+
+            RouteJournal reloaded = new RouteJournal(file);
+            List<Route> loaded = reloaded.load();
+            Assert.assertEquals(9, loaded.size());
+            Assert.assertEquals("Route 9", loaded.get(0).getName());
+            Assert.assertEquals("Route 1", loaded.get(1).getName());
+            Assert.assertEquals(10.0, loaded.get(3).getWaypoints().get(7).getPos().getLatitude(), 1e-9);
+
+            // Compacting keeps the routes, including the ones not yet resolved
+            reloaded.compact();
+            Assert.assertTrue(reloaded.getJournalSize() < journal.getJournalSize());
+            reloaded.close();
+            loaded = new RouteJournal(file).load();
+            Assert.assertEquals(9, loaded.size());
+            Assert.assertEquals("Route 8", loaded.get(8).getName());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTruncatedRecord() throws IOException {
+        Path file = Files.createTempFile("routes", ".journal");
+        Files.delete(file);
+        try {
+            RouteJournal journal = new RouteJournal(file);
+            List<Route> routes = journal.load();
+            routes.add(createRoute("Route", 10));
+            journal.save(routes);
+            routes.add(createRoute("Partial", 10));
+            journal.save(routes);
+            journal.close();
+
+            // Simulate a save interrupted while writing the second route
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 100);
+            }
+
+            List<Route> loaded = new RouteJournal(file).load();
+            Assert.assertEquals(1, loaded.size());
+            Assert.assertEquals("Route", loaded.get(0).getName());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testUnreadableRecord() throws IOException {
+        Path file = Files.createTempFile("routes", ".journal");
+        Files.delete(file);
+        try {
+            RouteJournal journal = new RouteJournal(file);
+            List<Route> routes = journal.load();
+            routes.add(createRoute("Route", 10));
+            routes.add(createRoute("Broken", 10));
+            journal.save(routes);
+            journal.close();
+
+            // Break the serialization header of the second route
+            byte[] bytes = Files.readAllBytes(file);
+            int offset = indexOf(bytes, STREAM_MAGIC, indexOf(bytes, STREAM_MAGIC, 0) + 1);
+            bytes[offset] = 0;
+            Files.write(file, bytes);
+
+            journal = new RouteJournal(file);
+            List<Route> loaded = journal.load();
+            Assert.assertEquals(2, loaded.size());
+            Assert.assertEquals("Unreadable route", loaded.get(1).getName());
+
+            // Saving and compacting keeps the unreadable record as is
+            loaded.get(0).setName("Renamed");
+            journal.save(loaded);
+            journal.compact();
+            journal.close();
+            bytes = Files.readAllBytes(file);
+            offset = indexOf(bytes, new byte[] { 0, STREAM_MAGIC[1], STREAM_MAGIC[2], STREAM_MAGIC[3] }, 0);
+            Assert.assertTrue(offset > 0);
+            bytes[offset] = STREAM_MAGIC[0];
+            Files.write(file, bytes);
+
+            loaded = new RouteJournal(file).load();
+            Assert.assertEquals(2, loaded.size());
+            Assert.assertEquals("Renamed", loaded.get(0).getName());
+            Assert.assertEquals("Broken", loaded.get(1).getName());
+            Assert.assertEquals(10, loaded.get(1).getWaypoints().size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSummaryWithoutLoading() throws IOException {
+        Path file = Files.createTempFile("routes", ".journal");
+        Files.delete(file);
+        try {
+            RouteJournal journal = new RouteJournal(file);
+            List<Route> routes = journal.load();
+            for (int i = 0; i < 10; i++) {
+                Route route = createRoute("Route " + i, 50);
+                route.setDestination("Destination " + i);
+                route.setVisible(i % 2 == 0);
+                route.setStccApproved(i == 4);
+                routes.add(route);
+            }
+            journal.save(routes);
+            journal.close();
+
+            journal = new RouteJournal(file);
+            routes = journal.load();
+            RouteSummary summary = RouteJournal.summary(routes, 3);
+            Assert.assertEquals("Route 3", summary.getName());
+            Assert.assertEquals("Destination 3", summary.getDestination());
+            Assert.assertFalse(summary.isVisible());
+            Assert.assertTrue(RouteJournal.summary(routes, 4).isStccApproved());
+            Assert.assertFalse(RouteJournal.summary(routes, 4).hasMetoc());
+            Assert.assertEquals(0, journal.getResolvedCount());
+
+            // A route layer pass only loads the visible routes, and the routes with METOC shown
+            for (int i = 0; i < routes.size(); i++) {
+                if (RouteJournal.summary(routes, i).isVisible()) {
+                    Assert.assertTrue(routes.get(i).isVisible());
+                }
+                if (RouteJournal.summary(routes, i).isMetocShown()) {
+                    routes.get(i);
+                }
+            }
+            Assert.assertEquals(5, journal.getResolvedCount());
+
+            // The summary of a loaded route follows the route, and is saved with it
+            routes.get(0).setVisible(false);
+            Assert.assertFalse(RouteJournal.summary(routes, 0).isVisible());
+            journal.save(routes);
+            journal.close();
+            routes = new RouteJournal(file).load();
+            Assert.assertFalse(RouteJournal.summary(routes, 0).isVisible());
+            Assert.assertTrue(RouteJournal.summary(routes, 2).isVisible());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSaveFailure() throws IOException {
+        // The journal folder is blocked by a regular file
+        Path folder = Files.createTempFile("routes", ".folder");
+        Path file = folder.resolve("routes.journal");
+        try {
+            RouteJournal journal = new RouteJournal(file);
+            List<Route> routes = journal.load();
+            routes.add(createRoute("Route", 10));
+            Assert.assertFalse(journal.save(routes));
+            Assert.assertFalse(journal.exists());
+
+            // The whole journal is written once the folder is available
+            Files.delete(folder);
+            Files.createDirectory(folder);
+            Assert.assertTrue(journal.save(routes));
+            journal.close();
+            List<Route> loaded = new RouteJournal(file).load();
+            Assert.assertEquals(1, loaded.size());
+            Assert.assertEquals("Route", loaded.get(0).getName());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(folder);
+        }
+    }
+
+    private static final byte[] STREAM_MAGIC = { (byte) 0xAC, (byte) 0xED, 0x00, 0x05 };
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+        outer: for (int i = from; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static Route createRoute(String name, int count) {
+        Route route = new Route();
+        route.setName(name);
+        for (int i = 0; i < count; i++) {
+            RouteWaypoint wp = new RouteWaypoint();
+            wp.setName("WP " + i);
+            wp.setPos(Position.create(55.0 + i * 0.01, 11.0));
+            route.getWaypoints().add(wp);
+        }
+        return route;
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.route;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteLoadException;
+import dk.dma.epd.common.prototype.model.route.RouteLoader;
+import dk.dma.epd.common.prototype.settings.NavSettings;
+
+/**
+ * Tests of the route import over a generated corpus of RT3 and KML route files.
+ */
+public class RouteLoaderTest {
+
+    @Test
+    public void testLoadAll() throws IOException, RouteLoadException {
+        Path folder = Files.createTempDirectory("routes");
+        List<File> files = writeCorpus(folder, 5, 100);
+        try {
+            NavSettings navSettings = new NavSettings();
+            List<Route> sequential = new ArrayList<>();
+            for (File file : files) {
+                sequential.add(RouteLoader.load(file, navSettings));
+            }
+            Map<File, RouteLoadException> failures = new LinkedHashMap<>();
+            List<Route> bulk = RouteLoader.loadAll(files, navSettings, failures);
+
+            Assert.assertTrue(failures.isEmpty());
+            Assert.assertEquals(files.size(), bulk.size());
+            for (int i = 0; i < files.size(); i++) {
+                Assert.assertEquals(sequential.get(i).getName(), bulk.get(i).getName());
+                Assert.assertEquals(100, bulk.get(i).getWaypoints().size());
+                Assert.assertEquals(sequential.get(i).getWaypoints().getLast().getPos().getLatitude(), bulk.get(i)
+                        .getWaypoints().getLast().getPos().getLatitude(), 1e-9);
+            }
+            Assert.assertEquals(12.5, bulk.get(0).getWaypoints().get(0).getOutLeg().getSpeed(), 1e-9);
+
+        } finally {
+            delete(folder, files);
+        }
+    }
+
+    @Test
+    public void testFailures() throws IOException {
+        Path folder = Files.createTempDirectory("routes");
+        File valid = writeRt3(folder.resolve("valid.rt3"), "Valid", 10);
+        File invalid = folder.resolve("invalid.rt3").toFile();
+        Files.write(invalid.toPath(), "<TSH_Route RtName=\"Invalid\"></TSH_Route>".getBytes(StandardCharsets.UTF_8));
+        try {
+            List<File> files = new ArrayList<>();
+            files.add(invalid);
+            files.add(valid);
+            Map<File, RouteLoadException> failures = new LinkedHashMap<>();
+            List<Route> routes = RouteLoader.loadAll(files, new NavSettings(), failures);
+            Assert.assertEquals(1, routes.size());
+            Assert.assertEquals("Valid", routes.get(0).getName());
+            Assert.assertTrue(failures.containsKey(invalid));
+        } finally {
+            valid.delete();
+            invalid.delete();
+            Files.deleteIfExists(folder);
+        }
+    }
+
+    private static List<File> writeCorpus(Path folder, int count, int waypoints) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(writeRt3(folder.resolve("route" + i + ".rt3"), "Route " + i, waypoints));
+            files.add(writeKml(folder.resolve("route" + i + ".kml"), "Route " + i, waypoints));
+        }
+        return files;
+    }
+
+    private static void delete(Path folder, List<File> files) throws IOException {
+        for (File file : files) {
+            file.delete();
+        }
+        Files.deleteIfExists(folder);
+    }
+
+    private static File writeRt3(Path path, String name, int waypoints) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+            writer.write("<TSH_Route RtVersion=\"3\" RtName=\"" + name + "\">\n");
+            writer.write("  <WayPoints WPCount=\"" + waypoints + "\">\n");
+            for (int i = 0; i < waypoints; i++) {
+                writer.write(String.format(Locale.US,
+                        "    <WayPoint WPName=\"WP%d\" LegType=\"0\" Lat=\"%.5f\" Lon=\"%.5f\" TurnRadius=\"0.300000\" />\n", i,
+                        (55.0 + i * 0.001) * 60.0, (11.0 + i * 0.001) * 60.0));
+            }
+            writer.write("  </WayPoints>\n  <Calculations CalcCount=\"1\">\n    <Calculation CalcName=\"Calc\">\n");
+            writer.write("      <WayPointExs>\n");
+            for (int i = 0; i < waypoints; i++) {
+                writer.write("        <WayPointEx ETA=\"0\" ETD=\"0\" Speed=\"12.500000\" />\n");
+            }
+            writer.write("      </WayPointExs>\n    </Calculation>\n  </Calculations>\n</TSH_Route>\n");
+        }
+        return path.toFile();
+    }
+
+    private static File writeKml(Path path, String name, int waypoints) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n  <Folder>\n    <Placemark>\n");
+            writer.write("      <name>" + name + "</name>\n      <LineString>\n        <coordinates>\n");
+            for (int i = 0; i < waypoints; i++) {
+                writer.write(String.format(Locale.US, "          %.6f,%.6f,0\n", 11.0 + i * 0.001, 55.0 + i * 0.001));
+            }
+            writer.write("        </coordinates>\n      </LineString>\n    </Placemark>\n  </Folder>\n</kml>\n");
+        }
+        return path.toFile();
+    }
+}
@@ -0,0 +1,141 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaDecodePipeline.OverflowPolicy;
+import dk.dma.epd.common.prototype.status.ComponentStatus.Status;
+import dk.dma.epd.common.prototype.status.NmeaIngestStatus;
+
+public class NmeaDecodePipelineTest {
+
+    @Test
+    public void testMmsi() {
+        assertEquals(477553000L, NmeaDecodePipeline.getMmsi("!AIVDM,1,1,,B,177KQJ5000G?tO`K>RA1wUbN0TKH,0*5C"));
+        assertEquals(477553000L, NmeaDecodePipeline.getMmsi("$PGHP,1,2013,3,13,10,39,18,375,219,,2190047,1,4A*57\r\n"
+                + "!BSVDM,1,1,,B,177KQJ5000G?tO`K>RA1wUbN0TKH,0*5C"));
+        assertEquals(0L, NmeaDecodePipeline.getMmsi("!AIVDM,1,1,,B,17,0*5C"));
+        assertEquals(0L, NmeaDecodePipeline.getMmsi("$GPRMC,"));
+    }
+
+    @Test
+    public void testOrderPerKey() throws InterruptedException {
+        NmeaDecodePipeline pipeline = new NmeaDecodePipeline("test", 4, 16, OverflowPolicy.BLOCK);
+        final List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            final int value = i;
+            pipeline.submit(42L, new Runnable() {
+                @Override
+                public void run() {
+                    handled.add(value);
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, handled.get(i).intValue());
+        }
+        assertEquals(0L, pipeline.getDroppedCount());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        NmeaDecodePipeline pipeline = new NmeaDecodePipeline("test", 1, 4, OverflowPolicy.DROP_OLDEST);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit(1L, new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        final List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 10; i++) {
+            final int value = i;
+            assertTrue(pipeline.submit(1L, new Runnable() {
+                @Override
+                public void run() {
+                    handled.add(value);
+                }
+            }));
+        }
+        assertEquals(6L, pipeline.getDroppedCount());
+        release.countDown();
+        pipeline.shutdown();
+
+        long timeout = System.currentTimeMillis() + 10000L;
+        while (pipeline.getProcessedCount() < 5 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, handled.size());
+        assertEquals(6, handled.get(0).intValue());
+    }
+
+    @Test
+    public void testStatus() throws InterruptedException {
+        assertEquals(Status.UNKNOWN, new NmeaIngestStatus("test", null).getStatus());
+
+        NmeaDecodePipeline pipeline = new NmeaDecodePipeline("test", 1, 1, OverflowPolicy.DROP_NEWEST);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable block = new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        pipeline.submit(1L, block);
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        assertEquals(Status.OK, pipeline.getStatus().getStatus());
+
+        // Fill the queue, then drop one
+        assertTrue(pipeline.submit(1L, block));
+        assertFalse(pipeline.submit(1L, block));
+
+        // Reading the status does not reset it
+        assertEquals(Status.PARTIAL, pipeline.getStatus().getStatus());
+        assertEquals(Status.PARTIAL, pipeline.getStatus().getStatus());
+        assertEquals("Queued 1 - Dropped 1", pipeline.getStatus().getShortStatusText());
+
+        release.countDown();
+        pipeline.shutdown();
+    }
+}
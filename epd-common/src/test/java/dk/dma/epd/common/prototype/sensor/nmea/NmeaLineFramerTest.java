@@ -0,0 +1,66 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NmeaLineFramerTest {
+
+    private final List<String> lines = new ArrayList<>();
+
+    private final NmeaLineFramer framer = new NmeaLineFramer(new NmeaLineFramer.LineSink() {
+        @Override
+        public void handleLine(byte[] line, int length) {
+            lines.add(new String(line, 0, length, StandardCharsets.US_ASCII));
+        }
+    });
+
+    @Test
+    public void testFraming() {
+        framer.frame(ascii("$GPRMC,1\r\n!AIVDM,"));
+        assertEquals(1, lines.size());
+        framer.frame(ascii("1,1\r"));
+        framer.frame(ascii("\n\n$PSTT"));
+        assertEquals(2, lines.size());
+        assertEquals("$GPRMC,1", lines.get(0));
+        assertEquals("!AIVDM,1,1", lines.get(1));
+
+        // Datagram without trailing line feed
+        framer.endOfLine();
+        assertEquals("$PSTT", lines.get(2));
+    }
+
+    @Test
+    public void testOverflow() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i <= NmeaLineFramer.MAX_LINE_LENGTH; i++) {
+            buf.append('x');
+        }
+        framer.frame(ascii(buf.toString() + "\n$GPRMC\n"));
+        assertEquals(1, lines.size());
+        assertEquals("$GPRMC", lines.get(0));
+    }
+
+    private static ByteBuffer ascii(String str) {
+        return ByteBuffer.wrap(str.getBytes(StandardCharsets.US_ASCII));
+    }
+}
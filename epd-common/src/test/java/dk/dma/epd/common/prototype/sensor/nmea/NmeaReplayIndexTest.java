@@ -0,0 +1,102 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the replay index using a small recorded log, where each line of AIS data is preceded by a source tag. The tags
+ * are at 0, 5, 12, 20 and 25 seconds, so the tags at 0, 12 and 25 seconds are indexed.
+ */
+public class NmeaReplayIndexTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("replay").toFile();
+        file = new File(dir, "replay.nmea");
+        try (InputStream in = getClass().getResourceAsStream("replay.nmea")) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testIndexing() throws IOException {
+        NmeaReplayIndex index = NmeaReplayIndex.build(file);
+
+        assertEquals(3, index.size());
+        assertEquals(25000L, index.getEnd().getTime() - index.getStart().getTime());
+        assertEquals(0L, index.getOffset(index.getStart()));
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        NmeaReplayIndex index = NmeaReplayIndex.build(file);
+        long start = index.getStart().getTime();
+
+        // Before the first entry, replay from the start of the file
+        assertEquals(0L, index.getOffset(new Date(start - 1000L)));
+
+        // Between entries, replay from the tag at 12 seconds
+        long offset = index.getOffset(new Date(start + 15000L));
+        assertTrue(readLine(offset).startsWith("$PGHP,1,2013,3,13,10,39,12,"));
+        assertEquals(offset, index.getOffset(new Date(start + 12000L)));
+
+        // After the last entry, replay from the tag at 25 seconds
+        assertTrue(readLine(index.getOffset(new Date(start + 60000L))).startsWith("$PGHP,1,2013,3,13,10,39,25,"));
+    }
+
+    @Test
+    public void testCachedIndex() throws IOException {
+        NmeaReplayIndex index = NmeaReplayIndex.get(file);
+        assertTrue(new File(file.getPath() + ".idx").exists());
+
+        NmeaReplayIndex cached = NmeaReplayIndex.get(file);
+        assertEquals(index.size(), cached.size());
+        assertEquals(index.getStart(), cached.getStart());
+        assertEquals(index.getEnd(), cached.getEnd());
+        assertEquals(index.getOffset(index.getEnd()), cached.getOffset(cached.getEnd()));
+    }
+
+    private String readLine(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            return raf.readLine();
+        }
+    }
+}
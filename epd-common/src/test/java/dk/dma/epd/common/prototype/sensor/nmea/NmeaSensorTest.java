@@ -0,0 +1,103 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.reader.SendException;
+import dk.dma.ais.reader.SendRequest;
+import dk.dma.ais.sentence.Abk;
+import dk.dma.enav.util.function.Consumer;
+
+public class NmeaSensorTest {
+
+    private static final String RMC = "$GPRMC,101010,A,5540.1,N,01235.2,E,10.0,90.0,010115,,*00";
+    private static final String VDM = "!AIVDM,1,1,,B,177KQJ5000G?tO`K>RA1wUbN0TKH,0*5C";
+    private static final String GGA = "$GPGGA,101010,5540.1,N,01235.2,E,1,08,0.9,10.0,M,,,,*00";
+    private static final String PSTT = "$PSTT,10A,1*00";
+
+    /**
+     * Records the lines turned into strings instead of handling them
+     */
+    private static class RecordingSensor extends NmeaSensor {
+        final List<String> lines = new ArrayList<>();
+
+        @Override
+        protected void handleLine(String line) {
+            lines.add(line);
+        }
+
+        @Override
+        public void send(SendRequest sendRequest, Consumer<Abk> resultListener) throws SendException {
+        }
+
+        @Override
+        public void run() {
+        }
+
+        void frame(String... lines) {
+            byte[] buffer = new byte[NmeaLineFramer.MAX_LINE_LENGTH];
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+                handleLine(buffer, bytes.length);
+            }
+        }
+    }
+
+    @Test
+    public void testNoListeners() {
+        RecordingSensor sensor = new RecordingSensor();
+        sensor.frame(RMC, VDM, GGA, PSTT);
+
+        // Only the proprietary sentence is handled without listeners
+        assertEquals(1, sensor.lines.size());
+        assertEquals(PSTT, sensor.lines.get(0));
+    }
+
+    @Test
+    public void testListeners() {
+        RecordingSensor sensor = new RecordingSensor();
+        sensor.addPntListener(new IPntSensorListener() {
+            @Override
+            public void receive(PntMessage pntMessage) {
+            }
+        });
+        sensor.frame(RMC, VDM, GGA);
+        assertEquals(1, sensor.lines.size());
+        assertEquals(RMC, sensor.lines.get(0));
+
+        sensor.addAisListener(new IAisSensorListener() {
+            @Override
+            public void receive(AisMessage aisMessage) {
+            }
+
+            @Override
+            public void receiveOwnMessage(AisMessage aisMessage) {
+            }
+        });
+        sensor.frame(RMC, VDM, GGA);
+        assertEquals(3, sensor.lines.size());
+        assertEquals(RMC, sensor.lines.get(1));
+        assertEquals(VDM, sensor.lines.get(2));
+    }
+}
@@ -0,0 +1,67 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class NmeaSentenceTypeTest {
+
+    private static int classify(String line) {
+        // Classify a line in the middle of a larger buffer, as handed over by the framer
+        byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.US_ASCII);
+        byte[] buffer = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 2, buffer, 0, buffer.length);
+        return NmeaSentenceType.classify(buffer, line.length());
+    }
+
+    @Test
+    public void testTypes() {
+        assertEquals(NmeaSentenceType.RMC.bit(), classify("$GPRMC,101010,A,5540.1,N,01235.2,E,10.0,90.0,010115,,*00"));
+        assertEquals(NmeaSentenceType.RMC.bit(), classify("$ELRMC,"));
+        assertEquals(NmeaSentenceType.RMC.bit(), classify("$RDRMC,"));
+        assertEquals(NmeaSentenceType.VDM.bit(), classify("!AIVDM,1,1,,B,177KQJ5000G?tO`K>RA1wUbN0TKH,0*5C"));
+        assertEquals(NmeaSentenceType.VDM.bit(), classify("!AIVDO,1,1,,B,177KQJ5000G?tO`K>RA1wUbN0TKH,0*5C"));
+        assertEquals(NmeaSentenceType.VDM.bit(), classify("!BSVDM,"));
+        assertEquals(NmeaSentenceType.VDM.bit(), classify("!ABVDM,"));
+        assertEquals(NmeaSentenceType.ABK.bit(), classify("$AIABK,219000001,A,8,2,3*23"));
+        assertEquals(NmeaSentenceType.PROPRIETARY.bit(), classify("$PSTT,10A,1*00"));
+    }
+
+    @Test
+    public void testUnhandled() {
+        assertEquals(0, classify("$GPGGA,101010,5540.1,N,01235.2,E,1,08,0.9,10.0,M,,,,*00"));
+        assertEquals(0, classify("$GPVTG,90.0,T,,M,10.0,N,18.5,K*00"));
+        assertEquals(0, classify("$GNRMC,"));
+        assertEquals(0, classify("!GPVDM,"));
+        assertEquals(0, classify("$AIVDM,"));
+        assertEquals(0, classify("!AIVD"));
+        assertEquals(0, classify(""));
+    }
+
+    @Test
+    public void testSeveralSentences() {
+        int mask = classify("$PGHP,1,2013,3,13,10,39,18,375,219,,2190047,1,4A*57!BSVDM,1,1,,B,177KQJ5000G?tO`K>RA1wUbN0TKH,0*5C");
+        assertTrue(NmeaSentenceType.PROPRIETARY.in(mask));
+        assertTrue(NmeaSentenceType.VDM.in(mask));
+        assertEquals(NmeaSentenceType.VDM.bit(), classify("\\g:1-2-73874,c:1362999558*0E\\!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24"));
+        // A proprietary sentence at the very end of the line
+        assertEquals(NmeaSentenceType.PROPRIETARY.bit(), classify("!AI$P"));
+    }
+}
@@ -0,0 +1,233 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.intendedroute.BruteForceRoutes;
+import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute;
+import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessage;
+import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessage.IntendedRouteFilterType;
+import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteTimeline;
+import dk.dma.epd.common.prototype.model.route.IntendedRoute;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+import dk.dma.epd.common.util.Converter;
+
+/**
+ * Compares the TCPA's found by {@linkplain IntendedRouteHandlerCommon#findTCPA(IntendedRouteTimeline, IntendedRouteTimeline)}
+ * with the distances found by the brute-force traversal of {@linkplain BruteForceRoutes}
+ */
+public class IntendedRouteTcpaTest {
+
+    static final long MINUTE = 60 * 1000L;
+
+    /** Tolerance of the distances in nautical miles */
+    static final double TOLERANCE = 0.05;
+
+    private double encDistance;
+    private double alertDistance;
+    private double filterDistance;
+
+    private TestIntendedRouteHandler handler;
+    private long start;
+
+    @Before
+    public void setUp() {
+        PntTime.init(false);
+        encDistance = IntendedRouteHandlerCommon.ENC_DISTANCE_EPSILON;
+        alertDistance = IntendedRouteHandlerCommon.ALERT_DISTANCE_EPSILON;
+        filterDistance = IntendedRouteHandlerCommon.FILTER_DISTANCE_EPSILON;
+        IntendedRouteHandlerCommon.ENC_DISTANCE_EPSILON = 0.5;
+        IntendedRouteHandlerCommon.ALERT_DISTANCE_EPSILON = 0.5;
+        IntendedRouteHandlerCommon.FILTER_DISTANCE_EPSILON = 1.0;
+
+        handler = new TestIntendedRouteHandler();
+
+        // Start in the future, on a whole minute
+        start = (PntTime.getDate().getTime() / MINUTE + 10) * MINUTE;
+    }
+
+    @After
+    public void tearDown() {
+        handler.shutdown();
+        IntendedRouteHandlerCommon.ENC_DISTANCE_EPSILON = encDistance;
+        IntendedRouteHandlerCommon.ALERT_DISTANCE_EPSILON = alertDistance;
+        IntendedRouteHandlerCommon.FILTER_DISTANCE_EPSILON = filterDistance;
+    }
+
+    @Test
+    public void testCrossing() {
+        Route route1 = BruteForceRoutes.createRoute(start, new double[] { 10.0, 10.0 }, Position.create(56.0, 11.0),
+                Position.create(56.0, 11.1), Position.create(56.0, 11.2));
+        Route route2 = BruteForceRoutes.createRoute(start, new double[] { 12.0, 12.0 }, Position.create(55.95, 11.075),
+                Position.create(56.0, 11.075), Position.create(56.05, 11.075));
+
+        FilteredIntendedRoute filter = assertMatchesBruteForce(route1, 0, route2, 0);
+        assertTrue(filter.include());
+        IntendedRouteFilterMessage message = filter.getMinimumDistanceMessage();
+        assertNotNull(message);
+        assertEquals(IntendedRouteFilterType.ALERT, message.getFilterType());
+    }
+
+    @Test
+    public void testCrossingWithActiveWaypoint() {
+        Route route1 = BruteForceRoutes.createRoute(start - 20 * MINUTE, new double[] { 10.0, 10.0, 10.0 },
+                Position.create(56.0, 10.9), Position.create(56.0, 11.0), Position.create(56.0, 11.1),
+                Position.create(56.0, 11.2));
+        Route route2 = BruteForceRoutes.createRoute(start, new double[] { 12.0, 12.0 }, Position.create(55.95, 11.075),
+                Position.create(56.0, 11.075), Position.create(56.05, 11.075));
+
+        // Compared from the arrival of route 2 at the crossing
+        assertTrue(assertMatchesBruteForce(route1, 1, route2, 1).include());
+    }
+
+    @Test
+    public void testParallel() {
+        Route route1 = BruteForceRoutes.createRoute(start, new double[] { 10.0, 10.0 }, Position.create(56.0, 11.0),
+                Position.create(56.0, 11.1), Position.create(56.0, 11.2));
+        Route route2 = BruteForceRoutes.createRoute(start, new double[] { 10.0, 10.0 },
+                Position.create(56.0 + 0.4 / 60.0, 11.0), Position.create(56.0 + 0.4 / 60.0, 11.1),
+                Position.create(56.0 + 0.4 / 60.0, 11.2));
+
+        FilteredIntendedRoute filter = assertMatchesBruteForce(route1, 0, route2, 0);
+        for (IntendedRouteFilterMessage message : filter.getFilterMessages()) {
+            assertEquals(0.4, Converter.metersToNm(message.getDistance()), TOLERANCE);
+        }
+
+        // 2 nautical miles apart
+        Route route3 = BruteForceRoutes.createRoute(start, new double[] { 10.0, 10.0 },
+                Position.create(56.0 + 2.0 / 60.0, 11.0), Position.create(56.0 + 2.0 / 60.0, 11.1),
+                Position.create(56.0 + 2.0 / 60.0, 11.2));
+        assertFalse(assertMatchesBruteForce(route1, 0, route3, 0).include());
+    }
+
+    @Test
+    public void testZeroSpeed() {
+        Route route1 = BruteForceRoutes.createRoute(start, new double[] { 10.0, 10.0 }, Position.create(56.0, 11.0),
+                Position.create(56.0, 11.1), Position.create(56.0, 11.2));
+
+        // Lying still before the active way point
+        Route route2 = BruteForceRoutes.createRoute(start, new double[] { 0.0, 12.0, 12.0 },
+                Position.create(55.9, 11.075), Position.create(55.95, 11.075), Position.create(56.0, 11.075),
+                Position.create(56.05, 11.075));
+        assertTrue(assertMatchesBruteForce(route1, 0, route2, 2).include());
+
+        // A zero speed leg after the active way point
+        Route route3 = BruteForceRoutes.createRoute(start, new double[] { 12.0, 0.0, 12.0 },
+                Position.create(55.95, 11.075), Position.create(56.0, 11.075), Position.create(56.0, 11.08),
+                Position.create(56.05, 11.08));
+        assertMatchesBruteForce(route1, 0, route3, 0);
+    }
+
+    @Test
+    public void testNoOverlap() {
+        Route route1 = BruteForceRoutes.createRoute(start, new double[] { 10.0 }, Position.create(56.0, 11.0),
+                Position.create(56.0, 11.1));
+        Route route2 = BruteForceRoutes.createRoute(start + 120 * MINUTE, new double[] { 10.0 },
+                Position.create(56.0, 11.0), Position.create(56.0, 11.1));
+
+        assertFalse(assertMatchesBruteForce(route1, 0, route2, 0).include());
+    }
+
+    /**
+     * Asserts that the TCPA's found for the two routes, in either order, are the samples where the brute-force traversal
+     * of the routes finds them within the filter distance, and returns the result
+     */
+    private FilteredIntendedRoute assertMatchesBruteForce(Route route1, int activeWp1, Route route2, int activeWp2) {
+        IntendedRouteTimeline timeline1 = new IntendedRouteTimeline(1L, route1, activeWp1);
+        IntendedRouteTimeline timeline2 = new IntendedRouteTimeline(2L, route2, activeWp2);
+        FilteredIntendedRoute result = handler.findTCPA(timeline1, timeline2);
+        assertEquals(result.getFilterMessages().size(), handler.findTCPA(timeline2, timeline1).getFilterMessages().size());
+
+        Map<Long, Double> distances = new HashMap<>();
+        for (IntendedRouteFilterMessage message : result.getFilterMessages()) {
+            distances.put(message.getTime1().getMillis(), Converter.metersToNm(message.getDistance()));
+        }
+
+        Map<Long, Double> expected = bruteForceDistances(route1, activeWp1, route2, activeWp2);
+        for (Map.Entry<Long, Double> entry : expected.entrySet()) {
+            double dist = entry.getValue();
+            Double found = distances.remove(entry.getKey());
+            if (dist <= IntendedRouteHandlerCommon.FILTER_DISTANCE_EPSILON - TOLERANCE) {
+                assertNotNull("Missing TCPA at " + entry.getKey(), found);
+            } else if (dist > IntendedRouteHandlerCommon.FILTER_DISTANCE_EPSILON + TOLERANCE) {
+                assertTrue("Unexpected TCPA at " + entry.getKey(), found == null);
+            }
+            if (found != null) {
+                assertEquals(dist, found, TOLERANCE);
+            }
+        }
+        assertTrue("TCPA's at unexpected times " + distances.keySet(), distances.isEmpty());
+        return result;
+    }
+
+    /**
+     * Returns the distances in nautical miles between the routes, sampled by the brute-force traversal at the times
+     * searched for TCPA's
+     */
+    private static Map<Long, Double> bruteForceDistances(Route route1, int activeWp1, Route route2, int activeWp2) {
+        long from = Math.max(BruteForceRoutes.getEta(route1, activeWp1, activeWp1),
+                BruteForceRoutes.getEta(route2, activeWp2, activeWp2));
+        long to = Math.min(BruteForceRoutes.getEta(route1, activeWp1, route1.getWaypoints().size() - 1),
+                BruteForceRoutes.getEta(route2, activeWp2, route2.getWaypoints().size() - 1));
+        Map<Long, Double> result = new HashMap<>();
+        if (from > to) {
+            return result;
+        }
+
+        Map<Long, Position> positions1 = BruteForceRoutes.traverse(route1, activeWp1, from, to,
+                IntendedRouteHandlerCommon.TCPA_STEP);
+        Map<Long, Position> positions2 = BruteForceRoutes.traverse(route2, activeWp2, from, to,
+                IntendedRouteHandlerCommon.TCPA_STEP);
+        for (Map.Entry<Long, Position> entry : positions1.entrySet()) {
+            Position pos2 = positions2.get(entry.getKey());
+            result.put(entry.getKey(),
+                    Converter.metersToNm(entry.getValue().distanceTo(pos2, CoordinateSystem.CARTESIAN)));
+        }
+        return result;
+    }
+
+    /**
+     * Intended route handler without filtering
+     */
+    static class TestIntendedRouteHandler extends IntendedRouteHandlerCommon {
+
+        @Override
+        protected void updateFilter() {
+        }
+
+        @Override
+        protected void applyFilter(IntendedRoute route) {
+        }
+
+        @Override
+        protected String formatNotificationDescription(FilteredIntendedRoute filteredIntendedRoute) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.maritimecloud.util.Timestamp;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+import dma.msinm.MCLocation;
+import dma.msinm.MCLocationType;
+import dma.msinm.MCMessage;
+import dma.msinm.MCMessageDesc;
+import dma.msinm.MCPoint;
+
+/**
+ * Tests the {@linkplain MsiNmSpatialIndex}, comparing the queries with checking the bounding boxes of all the messages
+ */
+public class MsiNmSpatialIndexTest {
+
+    private int nextId = 1;
+
+    @Test
+    public void testQuery() {
+        MsiNmNotification point = message(MCLocationType.POINT, null, 55.0, 11.0);
+        MsiNmNotification circle = message(MCLocationType.CIRCLE, 6, 56.0, 12.0);
+        MsiNmNotification polygon = message(MCLocationType.POLYGON, null, 55.5, 10.0, 55.8, 10.0, 55.8, 10.5);
+        MsiNmNotification noLocation = message(null, null);
+        MsiNmNotification areaWide = message(MCLocationType.POLYGON, null, 50.0, 0.0, 60.0, 0.0, 60.0, 20.0);
+
+        MsiNmSpatialIndex index = new MsiNmSpatialIndex();
+        index.rebuild(Arrays.asList(point, circle, polygon, noLocation, areaWide));
+        assertEquals(4, index.size());
+        assertFalse(index.contains(noLocation));
+
+        // The area-wide message covers all the queries
+        assertEquals(set(point, areaWide), index.query(55.0, 11.0, 55.0, 11.0, 0.0));
+        assertEquals(set(areaWide), index.query(55.0, 11.1, 55.0, 11.1, 0.0));
+        assertEquals(set(point, areaWide), index.query(55.0, 11.1, 55.0, 11.1, 5.0));
+
+        // The 6 nautical miles radius of the circle is included
+        assertEquals(set(circle, areaWide), index.query(56.09, 12.0, 56.09, 12.0, 0.0));
+        assertEquals(set(areaWide), index.query(56.11, 12.0, 56.11, 12.0, 0.0));
+
+        assertEquals(set(polygon, areaWide), index.query(55.6, 10.2, 55.7, 10.3, 0.0));
+        assertEquals(set(areaWide), index.query(50.5, 1.0, 50.6, 1.1, 0.0));
+        assertTrue(index.query(20.0, 10.0, 21.0, 11.0, 10.0).isEmpty());
+
+        assertTrue(index.intersects(point, 55.0, 11.1, 55.0, 11.1, 5.0));
+        assertFalse(index.intersects(point, 55.0, 11.1, 55.0, 11.1, 1.0));
+        assertFalse(index.intersects(noLocation, 55.0, 11.0, 55.0, 11.0, 1.0));
+    }
+
+    @Test
+    public void testQueryMatchesBoundingBoxes() {
+        Random random = new Random(42);
+        List<MsiNmNotification> messages = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            double lat = 54.0 + random.nextDouble() * 4.0;
+            double lon = 8.0 + random.nextDouble() * 8.0;
+            switch (i % 3) {
+            case 0:
+                messages.add(message(MCLocationType.POINT, null, lat, lon));
+                break;
+            case 1:
+                messages.add(message(MCLocationType.CIRCLE, 1 + random.nextInt(10), lat, lon));
+                break;
+            default:
+                messages.add(message(MCLocationType.POLYLINE, null, lat, lon, lat + random.nextDouble(),
+                        lon + random.nextDouble()));
+            }
+        }
+        MsiNmSpatialIndex index = new MsiNmSpatialIndex();
+        index.rebuild(messages);
+
+        for (int i = 0; i < 500; i++) {
+            double minLat = 53.0 + random.nextDouble() * 6.0;
+            double minLon = 7.0 + random.nextDouble() * 10.0;
+            double maxLat = minLat + random.nextDouble() * ((i % 10 == 0) ? 5.0 : 0.2);
+            double maxLon = minLon + random.nextDouble() * ((i % 10 == 0) ? 5.0 : 0.2);
+            double margin = random.nextDouble() * 5.0;
+
+            Set<MsiNmNotification> expected = new HashSet<>();
+            for (MsiNmNotification message : messages) {
+                if (index.intersects(message, minLat, minLon, maxLat, maxLon, margin)) {
+                    expected.add(message);
+                }
+            }
+            assertEquals(expected, new HashSet<>(index.query(minLat, minLon, maxLat, maxLon, margin)));
+        }
+    }
+
+    @Test
+    public void testFlags() {
+        MsiNmNotification point = message(MCLocationType.POINT, null, 55.0, 11.0);
+        MsiNmNotification circle = message(MCLocationType.CIRCLE, 6, 56.0, 12.0);
+        MsiNmNotification noLocation = message(null, null);
+
+        MsiNmSpatialIndex index = new MsiNmSpatialIndex();
+        index.rebuild(Arrays.asList(point, circle, noLocation));
+        index.setFlag(point, 1, true);
+        index.setFlag(point, 2, true);
+        index.setFlag(circle, 2, true);
+        index.setFlag(noLocation, 1, true);
+        assertEquals(3, index.getFlags(point));
+        assertEquals(2, index.getFlags(circle));
+        assertEquals(0, index.getFlags(noLocation));
+
+        // The flags of messages still present are kept when re-building the index
+        MsiNmNotification added = message(MCLocationType.POINT, null, 57.0, 11.0);
+        index.rebuild(Arrays.asList(point, added));
+        assertEquals(3, index.getFlags(point));
+        assertEquals(0, index.getFlags(added));
+        assertFalse(index.contains(circle));
+
+        index.clearFlags(2);
+        assertEquals(1, index.getFlags(point));
+        index.setFlag(point, 1, false);
+        assertEquals(0, index.getFlags(point));
+    }
+
+    /**
+     * Creates a message with a location of the given type and radius through the given points, or without locations
+     * if the type is null
+     */
+    private MsiNmNotification message(MCLocationType type, Integer radius, double... latLons) {
+        MCMessage message = new MCMessage();
+        message.setId(nextId++);
+        message.setUpdated(Timestamp.create(1400000000000L));
+        MCMessageDesc desc = new MCMessageDesc();
+        desc.setTitle("Message " + message.getId());
+        message.addDescs(desc);
+        if (type != null) {
+            MCLocation location = new MCLocation();
+            location.setType(type);
+            if (radius != null) {
+                location.setRadius(radius);
+            }
+            for (int i = 0; i < latLons.length; i += 2) {
+                MCPoint pt = new MCPoint();
+                pt.setLat(latLons[i]);
+                pt.setLon(latLons[i + 1]);
+                location.addPoints(pt);
+            }
+            message.addLocations(location);
+        }
+        return new MsiNmNotification(message);
+    }
+
+    private static Set<MsiNmNotification> set(MsiNmNotification... messages) {
+        return new HashSet<>(Arrays.asList(messages));
+    }
+}
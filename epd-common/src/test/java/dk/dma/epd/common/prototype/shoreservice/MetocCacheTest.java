@@ -0,0 +1,142 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.shoreservice;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.frv.enav.common.xml.metoc.MetocDataTypes;
+import dk.frv.enav.common.xml.metoc.MetocForecast;
+import dk.frv.enav.common.xml.metoc.MetocForecastPoint;
+import dk.frv.enav.common.xml.metoc.request.MetocForecastRequest;
+import dk.frv.enav.common.xml.metoc.request.MetocForecastRequestWp;
+
+public class MetocCacheTest {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+    private static final long TTL = 24L * HOUR;
+
+    @Test
+    public void testPartialReuse() {
+        long start = (System.currentTimeMillis() / HOUR + 1) * HOUR;
+        MetocCache cache = new MetocCache(null);
+
+        // 10 hour route heading east along 55N with 30 minute forecast interval
+        MetocForecastRequest request = createRequest(start, 10);
+        MetocCache.Lookup lookup = cache.lookup(request, TTL);
+        Assert.assertFalse(lookup.isComplete());
+        Assert.assertFalse(lookup.isPartial());
+        MetocForecast full = forecast(request.getWaypoints(), 30L * 60L * 1000L);
+        cache.put(full, request.getDataTypes());
+        Assert.assertSame(full, lookup.merge(full));
+
+        // The same route is served from the cache
+        lookup = cache.lookup(createRequest(start, 10), TTL);
+        Assert.assertTrue(lookup.isComplete());
+        List<MetocForecastPoint> cached = lookup.merge(null).getForecasts();
+        // The cached points are within the tolerance of the samples
+        Assert.assertTrue(cached.get(0).getTime().getTime() < start + HOUR);
+        Assert.assertTrue(cached.get(cached.size() - 1).getTime().getTime() > start + 9 * HOUR);
+
+        // Extending the route only requests the added part
+        MetocForecastRequest extended = createRequest(start, 14);
+        lookup = cache.lookup(extended, TTL);
+        Assert.assertTrue(lookup.isPartial());
+        List<MetocForecastRequestWp> missing = lookup.getMissingWaypoints();
+        Assert.assertTrue(missing.get(0).getEta().getTime() >= start + 9 * HOUR);
+        Assert.assertEquals(start + 14 * HOUR, missing.get(missing.size() - 1).getEta().getTime());
+
+        MetocForecast received = forecast(missing, 30L * 60L * 1000L);
+        MetocForecast merged = lookup.merge(received);
+        List<MetocForecastPoint> points = merged.getForecasts();
+        Assert.assertTrue(points.get(0).getTime().getTime() < start + HOUR);
+        Assert.assertEquals(start + 14 * HOUR, points.get(points.size() - 1).getTime().getTime());
+        for (int i = 1; i < points.size(); i++) {
+            Assert.assertTrue(points.get(i).getTime().after(points.get(i - 1).getTime()));
+        }
+
+        // Expired points are not used
+        Assert.assertFalse(cache.lookup(createRequest(start, 10), -1L).isComplete());
+    }
+
+    @Test
+    public void testMismatch() {
+        long start = (System.currentTimeMillis() / HOUR + 1) * HOUR;
+        MetocCache cache = new MetocCache(null);
+        // Along 55.05N, i.e. in the middle of the cells
+        MetocForecastRequest request = createRequest(start, 10, 0.05);
+        cache.put(forecast(request.getWaypoints(), 30L * 60L * 1000L), request.getDataTypes());
+        Assert.assertTrue(cache.lookup(createRequest(start, 10, 0.05), TTL).isComplete());
+
+        // Other data types are not served from the cache
+        MetocForecastRequest windOnly = createRequest(start, 10, 0.05);
+        windOnly.getDataTypes().clear();
+        windOnly.getDataTypes().add(MetocDataTypes.WI);
+        Assert.assertEquals(0, cache.lookup(windOnly, TTL).getHitCount());
+
+        // Samples in the same cells, but too far from the cached points, are not served from the cache
+        Assert.assertEquals(0, cache.lookup(createRequest(start + 20L * 60L * 1000L, 10, 0.05), TTL).getHitCount());
+        Assert.assertEquals(0, cache.lookup(createRequest(start, 10, 0.08), TTL).getHitCount());
+        Assert.assertTrue(cache.lookup(createRequest(start + 60L * 1000L, 10, 0.06), TTL).getHitCount() > 0);
+    }
+
+    private static MetocForecastRequest createRequest(long start, int hours) {
+        return createRequest(start, hours, 0.0);
+    }
+
+    private static MetocForecastRequest createRequest(long start, int hours, double latOffset) {
+        MetocForecastRequest request = new MetocForecastRequest();
+        request.setDt(30);
+        request.getDataTypes().add(MetocDataTypes.WI);
+        request.getDataTypes().add(MetocDataTypes.CU);
+        for (int i = 0; i <= hours; i++) {
+            MetocForecastRequestWp wp = new MetocForecastRequestWp();
+            wp.setEta(new Date(start + i * HOUR));
+            wp.setLat(55.0 + latOffset);
+            wp.setLon(10.0 + i * 0.2);
+            wp.setHeading("RL");
+            request.getWaypoints().add(wp);
+        }
+        return request;
+    }
+
+    /**
+     * Returns a forecast as generated by shore, i.e. with points at the given interval along the waypoints
+     */
+    private static MetocForecast forecast(List<MetocForecastRequestWp> wps, long dt) {
+        MetocForecast forecast = new MetocForecast();
+        forecast.setCreated(new Date());
+        long end = wps.get(wps.size() - 1).getEta().getTime();
+        int leg = 0;
+        for (long t = wps.get(0).getEta().getTime(); t <= end; t += dt) {
+            while (wps.get(leg + 1).getEta().getTime() < t) {
+                leg++;
+            }
+            MetocForecastRequestWp from = wps.get(leg);
+            MetocForecastRequestWp to = wps.get(leg + 1);
+            double f = (double) (t - from.getEta().getTime())
+                    / (to.getEta().getTime() - from.getEta().getTime());
+            MetocForecastPoint point = new MetocForecastPoint();
+            point.setTime(new Date(t));
+            point.setLat(from.getLat() + f * (to.getLat() - from.getLat()));
+            point.setLon(from.getLon() + f * (to.getLon() - from.getLon()));
+            forecast.getForecasts().add(point);
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,136 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.shoreservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import dk.dma.epd.common.prototype.communication.webservice.ShoreHttp;
+import dk.dma.epd.common.prototype.settings.EnavSettings;
+import dk.frv.enav.common.xml.ShoreServiceRequest;
+import dk.frv.enav.common.xml.msi.response.MsiResponse;
+
+public class ShoreServicesCommonTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch received = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/xml/msi", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                received.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                    byte[] body = ShoreHttp.marshal("dk.frv.enav.common.xml.msi.response", new MsiResponse());
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } catch (Exception e) {
+                    exchange.sendResponseHeaders(500, -1);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        EnavSettings enavSettings = new EnavSettings();
+        enavSettings.setServerName("localhost");
+        enavSettings.setHttpPort(server.getAddress().getPort());
+        final AtomicInteger parameters = new AtomicInteger();
+        final ShoreServicesCommon shoreServices = new ShoreServicesCommon(enavSettings) {
+            @Override
+            protected void addRequestParameters(ShoreServiceRequest request) {
+                // Added to every request, like the own-ship MMSI
+                parameters.incrementAndGet();
+                request.setMmsi(219000000L);
+            }
+        };
+
+        final MsiResponse[] responses = new MsiResponse[2];
+        final Exception[] errors = new Exception[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        responses[index] = shoreServices.msiPoll(7);
+                    } catch (Exception e) {
+                        errors[index] = e;
+                    }
+                }
+            });
+        }
+
+        // The second poll is made while the first is waiting for the response
+        threads[0].start();
+        Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+        threads[1].start();
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (threads[1].getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000L);
+        }
+
+        Assert.assertNull(errors[0]);
+        Assert.assertNull(errors[1]);
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(2, parameters.get());
+        // Each caller gets its own response object
+        Assert.assertNotNull(responses[0]);
+        Assert.assertNotNull(responses[1]);
+        Assert.assertNotSame(responses[0], responses[1]);
+
+        // A later poll is not coalesced with the completed one
+        Assert.assertNotNull(shoreServices.msiPoll(7));
+        Assert.assertEquals(2, requests.get());
+    }
+}
@@ -0,0 +1,46 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.status;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.status.ComponentStatus.Status;
+
+public class MsiNmFilterStatusTest {
+
+    @Test
+    public void testFilterUpdates() {
+        MsiNmFilterStatus status = new MsiNmFilterStatus();
+        assertEquals(Status.UNKNOWN, status.getStatus());
+        assertEquals(0L, status.getFilterUpdateCount());
+        assertEquals(0L, status.getLastFilterTime());
+        assertEquals(0, status.getLastFilterEvaluated());
+
+        status.markFilterUpdate(2500000L, 12);
+        assertEquals(Status.OK, status.getStatus());
+        assertEquals(1L, status.getFilterUpdateCount());
+        assertEquals(2500L, status.getLastFilterTime());
+        assertEquals(12, status.getLastFilterEvaluated());
+
+        // The last update replaces the duration and evaluated count
+        status.markFilterUpdate(1999L, 0);
+        assertEquals(2L, status.getFilterUpdateCount());
+        assertEquals(1L, status.getLastFilterTime());
+        assertEquals(0, status.getLastFilterEvaluated());
+        assertEquals("Last filter update: 1 us, 0 evaluated", status.getShortStatusText());
+    }
+}
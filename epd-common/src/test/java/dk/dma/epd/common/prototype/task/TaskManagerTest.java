@@ -0,0 +1,157 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
+
+public class TaskManagerTest {
+
+    @Test
+    public void testStats() throws Exception {
+        TaskManager taskManager = new TaskManager(2, 1, 1);
+        Future<Integer> result = taskManager.submit(Pool.CPU, "compute", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        });
+        assertEquals(42, result.get().intValue());
+
+        Future<?> failed = taskManager.submit(Pool.IO, "fail", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        try {
+            failed.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        TaskStats compute = taskManager.getTaskStats().get(0);
+        TaskStats fail = taskManager.getTaskStats().get(1);
+        assertEquals("compute", compute.getName());
+        assertEquals(1, compute.getRunCount());
+        assertEquals(0, compute.getFailureCount());
+        assertEquals(0, compute.getQueuedCount());
+        assertEquals(1, fail.getFailureCount());
+        assertTrue(taskManager.shutdown(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectedWhenQueueFull() throws Exception {
+        TaskManager taskManager = new TaskManager(1, 1, 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<?> running = taskManager.submit(Pool.IO, "blocking", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Shutting down
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        Future<?> queued = taskManager.submit(Pool.IO, "queued", task);
+        try {
+            taskManager.submit(Pool.IO, "queued", task);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        TaskStats stats = taskManager.getTaskStats().get(1);
+        assertEquals("queued", stats.getName());
+        assertEquals(1, stats.getQueuedCount());
+        assertEquals(1, stats.getRejectedCount());
+
+        // Queued tasks are cancelled at shutdown
+        assertTrue(taskManager.shutdown(1, TimeUnit.SECONDS));
+        assertTrue(running.isDone());
+        assertTrue(queued.isCancelled());
+        assertEquals(0, stats.getQueuedCount());
+        assertEquals(0, stats.getRunCount());
+        try {
+            taskManager.submit(Pool.CPU, "late", task);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        TaskStats late = taskManager.getTaskStats().get(1);
+        assertEquals("late", late.getName());
+        assertEquals(0, late.getQueuedCount());
+        assertEquals(1, late.getRejectedCount());
+    }
+
+    @Test
+    public void testPeriodicSurvivesExceptions() throws Exception {
+        TaskManager taskManager = new TaskManager(2, 1, 1);
+        final CountDownLatch latch = new CountDownLatch(3);
+        ScheduledFuture<?> future = taskManager.scheduleWithFixedDelay("periodic", new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+                throw new IllegalStateException();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+        assertTrue(taskManager.shutdown(1, TimeUnit.SECONDS));
+        assertTrue(taskManager.getTaskStats().get(0).getFailureCount() >= 3);
+    }
+
+    @Test
+    public void testShutdownInterruptsDedicatedThreads() throws Exception {
+        TaskManager taskManager = new TaskManager(2, 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        taskManager.startThread("sensor", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    // Shutting down
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, taskManager.getActiveCount(Pool.DEDICATED));
+        assertTrue(taskManager.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(0, taskManager.getActiveCount(Pool.DEDICATED));
+    }
+}
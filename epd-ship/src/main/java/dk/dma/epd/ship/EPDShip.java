@@ -20,6 +20,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import javax.swing.AbstractAction;
@@ -68,7 +69,9 @@ import dk.dma.epd.common.prototype.service.MaritimeCloudService;
 import dk.dma.epd.common.prototype.service.MsiNmServiceHandlerCommon;
 import dk.dma.epd.common.prototype.settings.SensorSettings;
 import dk.dma.epd.common.prototype.settings.SensorSettings.PntSourceSetting;
+import dk.dma.epd.common.prototype.shoreservice.MetocCache;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
+import dk.dma.epd.common.prototype.task.TaskManager;
 import dk.dma.epd.common.util.VersionInfo;
 import dk.dma.epd.ship.ais.AisHandler;
 import dk.dma.epd.ship.event.DragMouseMode;
@@ -217,7 +220,7 @@ public final class EPDShip extends EPD implements IOwnShipListener {
         // Start AIS target monitoring
         aisHandler = new AisHandler(settings.getSensorSettings(), settings.getAisSettings());
         aisHandler.loadView();
-        EPD.startThread(aisHandler, "AisHandler");
+        aisHandler.start();
         mapHandler.add(aisHandler);
 
         // Start own-ship handler
@@ -584,6 +587,9 @@ public final class EPDShip extends EPD implements IOwnShipListener {
     }
 
     public void startRiskHandler() {
+        if (riskHandler != null) {
+            riskHandler.stop();
+        }
         riskHandler = new RiskHandler();
     }
 
@@ -775,8 +781,10 @@ public final class EPDShip extends EPD implements IOwnShipListener {
         mainFrame.saveSettings();
         settings.saveToFile();
         routeManager.saveToFile();
+        MetocCache.saveInstance();
         msiNmHandler.saveToFile();
         aisHandler.saveView();
+        aisHandler.stop();
         ownShipHandler.saveView();
         transponderFrame.shutdown();
         falManager.saveToFile();
@@ -798,6 +806,9 @@ public final class EPDShip extends EPD implements IOwnShipListener {
 
         pluginLoader.closePlugins();
 
+        // Stop the background tasks
+        TaskManager.getInstance().shutdown(2, TimeUnit.SECONDS);
+
         LOG.info("Closing EPD-ship");
         this.restart = restart;
         System.exit(restart ? 2 : 0);
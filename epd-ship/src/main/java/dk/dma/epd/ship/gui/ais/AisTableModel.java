@@ -16,6 +16,7 @@ package dk.dma.epd.ship.gui.ais;
 
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -146,35 +147,57 @@ public class AisTableModel extends AbstractTableModel implements IAisTargetListe
             
             @Override
             public void run() {
-                
-                if(!(aisTarget instanceof VesselTarget)) {
-                    // We are only interested in vessels.
-                    return;
-                }
-                
-                VesselTarget vessel = (VesselTarget) aisTarget;
-                if(vessel.isGone() && !mappedItems.containsKey(vessel.getMmsi())) {
-                    // Vessel is gone and not managed in model, do nothing.
-                    return;
-                }
-                
-                if(vessel.isGone()) {
-                    // If target is gone but managed in model, we remove it from the model.
-                    AisTableModel.this.deleteVessel(vessel.getMmsi());
-                    return;
-                }
-                
-                // Update or add new?
-                if(mappedItems.containsKey(vessel.getMmsi())) {
-                    AisTableModel.this.updateVessel(vessel);
-                } else {
-                    AisTableModel.this.addVessel(vessel);
+                handleTargetUpdate(aisTarget);
+            }
+            
+        });
+    }
+    
+    @Override
+    public void targetsUpdated(final Collection<AisTarget> aisTargets) {
+        // Model must be updated on the EDT. Hop onto the EDT once for the entire batch.
+        SwingUtilities.invokeLater(new Runnable() {
+            
+            @Override
+            public void run() {
+                for (AisTarget aisTarget : aisTargets) {
+                    handleTargetUpdate(aisTarget);
                 }
             }
             
         });
     }
     
+    /**
+     * Updates the model with the given target. <b>Should always be called on the EDT.</b>
+     * @param aisTarget The updated target.
+     */
+    private void handleTargetUpdate(AisTarget aisTarget) {
+        if(!(aisTarget instanceof VesselTarget)) {
+            // We are only interested in vessels.
+            return;
+        }
+        
+        VesselTarget vessel = (VesselTarget) aisTarget;
+        if(vessel.isGone() && !mappedItems.containsKey(vessel.getMmsi())) {
+            // Vessel is gone and not managed in model, do nothing.
+            return;
+        }
+        
+        if(vessel.isGone()) {
+            // If target is gone but managed in model, we remove it from the model.
+            this.deleteVessel(vessel.getMmsi());
+            return;
+        }
+        
+        // Update or add new?
+        if(mappedItems.containsKey(vessel.getMmsi())) {
+            this.updateVessel(vessel);
+        } else {
+            this.addVessel(vessel);
+        }
+    }
+    
     /**
      * Adds a new vessel to the model. <b>Should always be called on the EDT.</b>
      * @param vessel The vessel to add to the model.
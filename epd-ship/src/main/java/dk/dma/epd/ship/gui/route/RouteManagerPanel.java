@@ -29,8 +29,10 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.swing.JButton;
@@ -385,16 +387,15 @@ public class RouteManagerPanel extends JPanel implements ActionListener,
             return;
         }
 
-        for (File file : fc.getSelectedFiles()) {
-            try {
-                routeManager.loadFromFile(file);
-            } catch (RouteLoadException e) {
-                JOptionPane.showMessageDialog(this, e.getMessage() + ": "
-                        + file.getName(), "Route load error",
-                        JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            lastPath = file;
+        File[] files = fc.getSelectedFiles();
+        Map<File, RouteLoadException> failures = routeManager.loadFromFiles(Arrays.asList(files));
+        for (Map.Entry<File, RouteLoadException> failure : failures.entrySet()) {
+            JOptionPane.showMessageDialog(this, failure.getValue().getMessage() + ": "
+                    + failure.getKey().getName(), "Route load error",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+        if (files.length > 0) {
+            lastPath = files[files.length - 1];
         }
 
         updateTable();
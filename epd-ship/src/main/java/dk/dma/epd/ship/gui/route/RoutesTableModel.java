@@ -20,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.route.RouteSummary;
 import dk.dma.epd.common.text.Formatter;
 import dk.dma.epd.ship.route.RouteManager;
 
@@ -57,7 +58,8 @@ public class RoutesTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Route route = routeManager.getRoutes().get(rowIndex);
+        // The summary is available without loading the route
+        RouteSummary route = routeManager.getRouteSummary(rowIndex);
         switch (columnIndex) {
         case 0: return Formatter.formatString(route.getName());
         case 1: return Formatter.formatString(route.getDestination());
@@ -296,6 +296,7 @@ public class AisLayer extends AisLayerCommon<AisHandler> implements IAisTargetLi
     @Override
     public void forceLayerUpdate() {
         // force a repaint
+        getRepaintScheduler().invalidate();
         this.doPrepare();
     }
     
@@ -175,6 +175,7 @@ public class IntendedRouteLayer extends IntendedRouteLayerCommon {
                         comparisonLine = new IntendedRouteComparisonGraphics(
                                 activeRoutePosition, intendedRoutePosition);
                         graphics.add(comparisonLine);
+                        markDirty(comparisonLine);
                         doPrepare();
 
                     }
@@ -141,8 +141,9 @@ public class RouteLayer extends RouteLayerCommon implements IOwnShipListener,
 
         int activeRouteIndex = routeManager.getActiveRouteIndex();
         for (int i = 0; i < routeManager.getRoutes().size(); i++) {
-            Route route = routeManager.getRoutes().get(i);
-            if (route.isVisible() && i != activeRouteIndex) {
+            // Check the summary first, to avoid loading invisible routes
+            if (i != activeRouteIndex && routeManager.getRouteSummary(i).isVisible()) {
+                Route route = routeManager.getRoutes().get(i);
                 RouteGraphic routeGraphic;
 
                 if (route.isStccApproved()) {
@@ -202,6 +203,10 @@ public class RouteLayer extends RouteLayerCommon implements IOwnShipListener,
         // Handle route metoc
         metocGraphics.clear();
         for (int i = 0; i < routeManager.getRoutes().size(); i++) {
+            // Check the summary first, to avoid loading routes without METOC
+            if (!routeManager.getRouteSummary(i).isMetocShown()) {
+                continue;
+            }
             Route route = routeManager.getRoutes().get(i);
             boolean activeRoute = false;
 
@@ -30,9 +30,11 @@ import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics.LineType;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationInternalGraphics;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationLines;
+import dk.dma.epd.common.prototype.layers.voct.ProbabilityGridGraphic;
 import dk.dma.epd.common.prototype.layers.voct.SarAreaGraphic;
 import dk.dma.epd.common.prototype.layers.voct.SarGraphics;
 import dk.dma.epd.common.prototype.layers.voct.SearchPatternTemp;
+import dk.dma.epd.common.prototype.model.voct.ProbabilityGrid;
 import dk.dma.epd.common.prototype.model.voct.SAR_TYPE;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
@@ -56,6 +58,7 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
 
     private OMGraphicList graphics = new OMGraphicList();
     private OMGraphic selectedGraphic;
+    private ProbabilityGridGraphic probabilityGrid;
     private boolean dragging;
     private MapBean mapBean;
     private VOCTManager voctManager;
@@ -471,12 +474,16 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
                 drawSimpleSar();
             }
             
-            
+            drawProbabilityGrid();
 
             this.setVisible(true);
 
         }
 
+        if (e == VOCTUpdateEvent.PROBABILITY_GRID_READY) {
+            drawProbabilityGrid();
+        }
+
         if (e == VOCTUpdateEvent.EFFORT_ALLOCATION_DISPLAY) {
             createEffectiveArea();
             this.setVisible(true);
@@ -532,14 +539,27 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
 
                 }
             }
-            doPrepare();
+            drawProbabilityGrid();
 
             this.setVisible(true);
         }
 
     }
 
-    
+    private void drawProbabilityGrid() {
+        if (probabilityGrid != null) {
+            graphics.remove(probabilityGrid);
+            probabilityGrid = null;
+        }
+
+        ProbabilityGrid grid = voctManager.getProbabilityGrid();
+        if (grid != null) {
+            probabilityGrid = new ProbabilityGridGraphic(grid);
+            graphics.add(probabilityGrid);
+        }
+        doPrepare();
+    }
+
     private void drawSimpleSar() {
 
         graphics.clear();
@@ -17,8 +17,6 @@ package dk.dma.epd.ship.nogo;
 import java.util.Date;
 import java.util.List;
 
-import javax.swing.JOptionPane;
-
 import net.jcip.annotations.ThreadSafe;
 
 import org.joda.time.DateTime;
@@ -48,55 +46,54 @@ public class NogoHandler extends NogoHandlerCommon {
     public synchronized void updateNogo(boolean useSlices, int minutesBetween) {
 
         if (requestInProgress) {
-            JOptionPane.showMessageDialog(EPDShip.getInstance().getMainFrame(),
-                    "Please wait for the previous NoGo request to be completed before initiating a new",
-                    "Unable to comply with NoGo request", JOptionPane.WARNING_MESSAGE);
-        } else {
-
-            LOG.info("New NoGo Requested Initiated");
-            requestInProgress = true;
-            // If the dock isn't visible should it show it?
-            if (!EPDShip.getInstance().getMainFrame().getDockableComponents().isDockVisible("NoGo")) {
-
-                // Show it display the message?
-                if (EPDShip.getInstance().getSettings().getGuiSettings().isShowDockMessage()) {
-                    new ShowDockableDialog(EPDShip.getInstance().getMainFrame(), dock_type.NOGO);
-                } else {
+            // The new request supersedes the one in progress
+            LOG.info("Cancelling the previous NoGo request");
+        }
 
-                    if (EPDShip.getInstance().getSettings().getGuiSettings().isAlwaysOpenDock()) {
-                        EPDShip.getInstance().getMainFrame().getDockableComponents().openDock("NoGo");
-                        EPDShip.getInstance().getMainFrame().getJMenuBar().refreshDockableMenu();
-                    }
+        LOG.info("New NoGo Requested Initiated");
+        requestInProgress = true;
+        // If the dock isn't visible should it show it?
+        if (!EPDShip.getInstance().getMainFrame().getDockableComponents().isDockVisible("NoGo")) {
 
-                    // It shouldn't display message but take a default action
+            // Show it display the message?
+            if (EPDShip.getInstance().getSettings().getGuiSettings().isShowDockMessage()) {
+                new ShowDockableDialog(EPDShip.getInstance().getMainFrame(), dock_type.NOGO);
+            } else {
 
+                if (EPDShip.getInstance().getSettings().getGuiSettings().isAlwaysOpenDock()) {
+                    EPDShip.getInstance().getMainFrame().getDockableComponents().openDock("NoGo");
+                    EPDShip.getInstance().getMainFrame().getJMenuBar().refreshDockableMenu();
                 }
 
-            }
-            this.useSlices = useSlices;
-            // this.minutesBetween = minutesBetween;
-
-            resetLayer();
-
-            // Setup the panel
-            if (this.useSlices) {
-                nogoPanel.activateMultiple();
-                nogoPanel.newRequestMultiple();
-            } else {
-                nogoPanel.activateSingle();
-                nogoPanel.newRequestSingle();
+                // It shouldn't display message but take a default action
 
             }
 
-            super.updateNogo(useSlices, minutesBetween);
+        }
+        this.useSlices = useSlices;
+        // this.minutesBetween = minutesBetween;
 
-            // Calculate slices
-            if (this.useSlices) {
-                nogoPanel.initializeSlider(nogoData.size());
+        resetLayer();
 
-            }
+        // Setup the panel
+        if (this.useSlices) {
+            nogoPanel.activateMultiple();
+            nogoPanel.newRequestMultiple();
+        } else {
+            nogoPanel.activateSingle();
+            nogoPanel.newRequestSingle();
 
         }
+
+        super.updateNogo(useSlices, minutesBetween);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void updatePanelSlices(int slices) {
+        nogoPanel.initializeSlider(slices);
     }
 
     /**
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,7 +44,7 @@ import dk.dma.epd.common.prototype.sensor.pnt.PntData;
 import dk.dma.epd.common.prototype.sensor.pnt.PntHandler;
 import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
 import dk.dma.epd.common.prototype.settings.AisSettings;
-import dk.dma.epd.common.util.Util;
+import dk.dma.epd.common.prototype.task.TaskManager;
 import net.jcip.annotations.ThreadSafe;
 
 /**
@@ -77,7 +78,7 @@ public class OwnShipHandler extends MapHandlerChild implements Runnable,
         initAisTarget();
         publishOwnShipChanged(null, aisTarget);
         
-        EPD.startThread(this, "OwnShipHandler");
+        TaskManager.getInstance().scheduleWithFixedDelay("OwnShipHandler", this, 10, 10, TimeUnit.SECONDS);
     }
 
     /**
@@ -383,10 +384,7 @@ public class OwnShipHandler extends MapHandlerChild implements Runnable,
      */
     @Override
     public void run() {
-        while (true) {
-            Util.sleep(10000);
-            // Update status of own-ship
-            updatePeriodic();
-        }
+        // Update status of own-ship
+        updatePeriodic();
     }
 }
@@ -18,12 +18,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
-import dk.dma.epd.common.util.Util;
+import dk.dma.epd.common.prototype.task.TaskManager;
+import dk.dma.epd.common.prototype.task.TaskManager.Pool;
 import dk.dma.epd.ship.EPDShip;
 import dk.frv.enav.common.xml.risk.response.Risk;
 import dk.frv.enav.common.xml.risk.response.RiskList;
@@ -39,15 +42,35 @@ public class RiskHandler implements Runnable {
     private Map<Long, RiskList> riskListMap = new HashMap<>();
     private static final Object MUTEX = new Object();
 
+    private volatile ScheduledFuture<?> future;
+    private volatile boolean stopped;
+
     public RiskHandler() {
         super();
-        EPDShip.startThread(this, "RiskHandler");
+        // Fetching the risk indexes blocks on the shore services
+        future = TaskManager.getInstance().scheduleWithFixedDelay(Pool.IO, "RiskHandler", this, 0, 10, TimeUnit.SECONDS);
+        if (stopped) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Stops fetching the risk indexes
+     */
+    public void stop() {
+        stopped = true;
+        ScheduledFuture<?> f = future;
+        if (f != null) {
+            f.cancel(false);
+        }
     }
 
     @Override
     public void run() {
 
-        while (EPDShip.getInstance().getSettings().getAisSettings().isShowRisk()) {
+        if (!EPDShip.getInstance().getSettings().getAisSettings().isShowRisk()) {
+            stop();
+        } else {
             List<RiskList> riskLists = new ArrayList<>();
             try {
                 riskLists = EPDShip.getInstance().getShoreServices().getRiskIndexes(54.75, 56.0, 10.65, 11.25);
@@ -60,7 +83,6 @@ public class RiskHandler implements Runnable {
                     riskListMap.put(list.getMmsi().longValue(), list);
                 }
             }
-            Util.sleep(10000);
         }
 
     }
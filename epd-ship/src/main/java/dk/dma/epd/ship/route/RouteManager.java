@@ -17,10 +17,9 @@ package dk.dma.epd.ship.route;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -36,6 +35,7 @@ import dk.dma.epd.common.prototype.model.route.ActiveRoute.ActiveWpSelectionResu
 import dk.dma.epd.common.prototype.model.route.Route;
 import dk.dma.epd.common.prototype.model.route.RouteSuggestionData;
 import dk.dma.epd.common.prototype.model.route.RoutesUpdateEvent;
+import dk.dma.epd.common.prototype.route.RouteJournal;
 import dk.dma.epd.common.prototype.route.RouteManagerCommon;
 import dk.dma.epd.common.prototype.sensor.pnt.IPntDataListener;
 import dk.dma.epd.common.prototype.sensor.pnt.PntData;
@@ -55,11 +55,15 @@ public class RouteManager extends RouteManagerCommon implements
     private static final long serialVersionUID = -9019124285849351709L;
     private static final String ROUTES_FILE = EPD.getInstance().getHomePath()
             .resolve(".routes").toString();
+    private static final Path ROUTES_JOURNAL = EPD.getInstance().getHomePath()
+            .resolve(".routes.journal");
     private static final Logger LOG = LoggerFactory
             .getLogger(RouteManager.class);
 
     private volatile PntHandler pntHandler;
 
+    private final transient RouteJournal journal = new RouteJournal(ROUTES_JOURNAL);
+
     @GuardedBy("routeSuggestions")
     private List<RouteSuggestionData> routeSuggestions = new LinkedList<>();
 
@@ -207,14 +211,27 @@ public class RouteManager extends RouteManagerCommon implements
     /**************************************/
 
     /**
-     * Loads and instantiates a {@code RouteManager} from the default routes
-     * file.
+     * Loads and instantiates a {@code RouteManager} from the route journal.
+     * <p>
+     * If there is no journal yet, the routes are migrated from the legacy
+     * routes file.
      * 
      * @return the new route manager
      */
     public static RouteManager loadRouteManager() {
         RouteManager manager = new RouteManager();
 
+        if (manager.journal.exists()) {
+            try {
+                manager.setRoutes(manager.journal.load());
+                return manager;
+            } catch (IOException e) {
+                LOG.error("Failed to load route journal: " + e.getMessage());
+                // Delete possible corrupted journal
+                new File(ROUTES_JOURNAL.toString()).delete();
+            }
+        }
+
         try (FileInputStream fileIn = new FileInputStream(ROUTES_FILE);
                 ObjectInputStream objectIn = new ObjectInputStream(fileIn);) {
             RouteStore routeStore = (RouteStore) objectIn.readObject();
@@ -229,6 +246,13 @@ public class RouteManager extends RouteManagerCommon implements
                 manager.deactivateRoute();
             }
 
+            // Migrate the routes to the journal. Keep the routes file until the journal has been written
+            if (manager.journal.save(manager.routes)) {
+                new File(ROUTES_FILE).delete();
+            } else {
+                LOG.warn("Failed to migrate routes to the route journal, keeping " + ROUTES_FILE);
+            }
+
         } catch (FileNotFoundException e) {
             // Not an error
         } catch (Exception e) {
@@ -242,16 +266,13 @@ public class RouteManager extends RouteManagerCommon implements
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Only the routes that have changed since the last save are written to
+     * the route journal.
      */
     @Override
     public synchronized void saveToFile() {
-        RouteStore routeStore = new RouteStore(this);
-        try (FileOutputStream fileOut = new FileOutputStream(ROUTES_FILE);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);) {
-            objectOut.writeObject(routeStore);
-        } catch (IOException e) {
-            LOG.error("Failed to save routes file: " + e.getMessage());
-        }
+        journal.save(routes);
     }
 
     /**
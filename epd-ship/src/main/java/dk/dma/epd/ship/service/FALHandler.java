@@ -15,6 +15,7 @@
 package dk.dma.epd.ship.service;
 
 import dk.dma.enav.model.fal.FALReport;
+import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.enavcloud.FALReportingService.FALReportMessage;
 import dk.dma.epd.common.prototype.enavcloud.FALReportingService.FALReportReply;
 import dk.dma.epd.common.prototype.enavcloud.TODO;
@@ -95,7 +96,7 @@ public class FALHandler extends FALHandlerCommon implements Runnable {
         //
         // Start thread to find recievers of FAL reports
         running = true;
-        new Thread(this).start();
+        EPD.startThread(this, "FALHandler");
     }
 
     /**
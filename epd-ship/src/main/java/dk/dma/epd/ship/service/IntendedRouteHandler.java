@@ -14,24 +14,24 @@
  */
 package dk.dma.epd.ship.service;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
-
 import net.maritimecloud.net.mms.MmsClient;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute;
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoutes;
 import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessage;
+import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteTimeline;
 import dk.dma.epd.common.prototype.model.route.ActiveRoute;
 import dk.dma.epd.common.prototype.model.route.IRoutesUpdateListener;
 import dk.dma.epd.common.prototype.model.route.IntendedRoute;
 import dk.dma.epd.common.prototype.model.route.PartialRouteFilter;
 import dk.dma.epd.common.prototype.model.route.Route;
 import dk.dma.epd.common.prototype.model.route.RoutesUpdateEvent;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
 import dk.dma.epd.common.prototype.service.IntendedRouteHandlerCommon;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.text.Formatter;
@@ -86,7 +86,7 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon implements
 
         // Start broadcasting our own active route
         running = true;
-        new Thread(this).start();
+        EPD.startThread(this, "IntendedRouteHandler");
     }
 
     /**
@@ -344,24 +344,16 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon implements
 
         FilteredIntendedRoutes filteredIntendedRoutes = new FilteredIntendedRoutes();
 
-        // Compare all intended routes against our own active route
+        // Compare the candidate intended routes of the leg index against our own active route
 
         if (routeManager.getActiveRoute() != null) {
 
             // The route we're comparing against
-            ActiveRoute activeRoute = routeManager.getActiveRoute();
-
-            Iterator<Entry<Long, IntendedRoute>> it = intendedRoutes.entrySet().iterator();
-            while (it.hasNext()) {
-                Entry<Long, IntendedRoute> intendedRoute = it.next();
+            IntendedRouteTimeline activeRoute = new IntendedRouteTimeline(getOwnShipMmsi(), routeManager.getActiveRoute());
 
-                IntendedRoute recievedRoute = intendedRoute.getValue();
+            for (IntendedRouteTimeline recievedRoute : findCandidates(activeRoute)) {
 
                 FilteredIntendedRoute filter = findTCPA(activeRoute, recievedRoute);
-                // Try other way around
-                if (!filter.include()) {
-                    filter = findTCPA(recievedRoute, activeRoute);
-                }
 
                 // No warnings, ignore it
                 if (filter.include()) {
@@ -394,14 +386,15 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon implements
     protected void applyFilter(IntendedRoute route) {
         // If previous intended route exist re-apply filter
 
-        if (routeManager.getActiveRoute() != null) {
+        IntendedRouteTimeline timeline = legIndex.get(route.getMmsi());
+        if (routeManager.getActiveRoute() != null && timeline != null) {
 
-            FilteredIntendedRoute filter = findTCPA(routeManager.getActiveRoute(), route);
+            IntendedRouteTimeline activeRoute = new IntendedRouteTimeline(getOwnShipMmsi(), routeManager.getActiveRoute());
 
-            // Try other way around or dont
-            if (!filter.include()) {
-                filter = findTCPA(route, routeManager.getActiveRoute());
-            }
+            // Skip the TCPA search if the routes cannot come close within the horizon
+            long now = PntTime.getDate().getTime();
+            FilteredIntendedRoute filter = activeRoute.mayApproach(timeline, getFilterMargin(), now, now + TCPA_HORIZON) ? findTCPA(
+                    activeRoute, timeline) : new FilteredIntendedRoute(activeRoute.getMmsi(), timeline.getMmsi());
 
             // No warnings, ignore it
             if (!filter.include()) {
@@ -103,7 +103,7 @@ public class VoctHandler extends VoctHandlerCommon implements Runnable,
             LOG.error("Error hooking up services", e);
         }
 
-        getScheduler().scheduleWithFixedDelay(new Runnable() {
+        scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
                 if (hasReconnect) {
@@ -45,7 +45,6 @@ import dk.dma.epd.common.prototype.model.voct.sardata.SimpleSAR;
 import dk.dma.epd.common.prototype.voct.VOCTManagerCommon;
 import dk.dma.epd.common.prototype.voct.VOCTUpdateEvent;
 import dk.dma.epd.common.prototype.voct.VOCTUpdateListener;
-import dk.dma.epd.common.util.Util;
 import dk.dma.epd.ship.EPDShip;
 import dk.dma.epd.ship.gui.voct.SARInput;
 import dk.dma.epd.ship.gui.voct.SARInvitationRequest;
@@ -74,7 +73,6 @@ public class VOCTManager extends VOCTManagerCommon {
     VoctLayer voctLayer;
 
     public VOCTManager() {
-        EPDShip.startThread(this, "VOCTManager");
         LOG.info("Started VOCT Manager");
     }
 
@@ -158,17 +156,6 @@ public class VOCTManager extends VOCTManagerCommon {
         }
     }
 
-    @Override
-    public void run() {
-
-        // Maintanaince routines
-        while (true) {
-            Util.sleep(10000);
-            
-        }
-
-    }
-
     public static VOCTManager loadVOCTManager() {
 
         // Where we load or serialize old VOCTS
@@ -273,6 +260,7 @@ public class VOCTManager extends VOCTManagerCommon {
     @Override
     public void updateEffectiveAreaLocation() {
         voctLayer.updateEffectiveAreaLocation(sarData);
+        updateProbabilityOfSuccess();
     }
 
     public void removeOldSARData() {
@@ -20,6 +20,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import javax.swing.JFrame;
@@ -60,7 +61,9 @@ import dk.dma.epd.common.prototype.service.MaritimeCloudService;
 import dk.dma.epd.common.prototype.service.MaritimeCloudUtils;
 import dk.dma.epd.common.prototype.service.MsiNmServiceHandlerCommon;
 import dk.dma.epd.common.prototype.settings.SensorSettings;
+import dk.dma.epd.common.prototype.shoreservice.MetocCache;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
+import dk.dma.epd.common.prototype.task.TaskManager;
 import dk.dma.epd.common.util.VersionInfo;
 import dk.dma.epd.shore.ais.AisHandler;
 import dk.dma.epd.shore.event.DragMouseMode;
@@ -187,7 +190,7 @@ public final class EPDShore extends EPD {
         // aisHandler = new AisHandlerCommon();
         aisHandler = new AisHandler(settings.getAisSettings());
         aisHandler.loadView();
-        EPD.startThread(aisHandler, "AisHandler");
+        aisHandler.start();
         beanHandler.add(aisHandler);
 
         // Add StaticImages handler
@@ -406,8 +409,10 @@ public final class EPDShore extends EPD {
         // Handler settings
         voyageManager.saveToFile();
         routeManager.saveToFile();
+        MetocCache.saveInstance();
         msiNmHandler.saveToFile();
         aisHandler.saveView();
+        aisHandler.stop();
         transponderFrame.shutdown();
         falManager.saveToFile();
 
@@ -428,6 +433,9 @@ public final class EPDShore extends EPD {
         // Close all plugins
         pluginLoader.closePlugins();
 
+        // Stop the background tasks
+        TaskManager.getInstance().shutdown(2, TimeUnit.SECONDS);
+
         LOG.info("Closing EPDShore");
         this.restart = restart;
         System.exit(restart ? 2 : 0);
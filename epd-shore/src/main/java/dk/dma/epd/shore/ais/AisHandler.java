@@ -14,8 +14,12 @@
  */
 package dk.dma.epd.shore.ais;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
+import dk.dma.epd.common.prototype.ais.TrafficDensityGrid;
 import dk.dma.epd.common.prototype.settings.AisSettings;
 
 /**
@@ -25,11 +29,24 @@ import dk.dma.epd.common.prototype.settings.AisSettings;
  */
 public class AisHandler extends AisHandlerCommon {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AisHandler.class);
+
     /**
      * Empty constructor not used
      */
     public AisHandler(AisSettings aisSettings) {
         super(aisSettings);
+
+        // Accumulate the traffic density for the density layer
+        if (aisSettings.getDensityCellSize() > 0.0) {
+            try {
+                densityGrid = new TrafficDensityGrid(aisSettings.getDensityMinLat(), aisSettings.getDensityMinLon(),
+                        aisSettings.getDensityMaxLat(), aisSettings.getDensityMaxLon(), aisSettings.getDensityCellSize(),
+                        aisSettings.getDensityHalfLife() * 60L * 1000L);
+            } catch (IllegalArgumentException e) {
+                LOG.error("Invalid traffic density settings: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -27,6 +27,8 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
 
 import javax.swing.BorderFactory;
 import javax.swing.GroupLayout;
@@ -502,14 +504,10 @@ public class RouteManagerDialog extends InternalComponentFrame implements Action
             return;
         }
 
-        for (File file : fc.getSelectedFiles()) {
-            try {
-                routeManager.loadFromFile(file);
-            } catch (RouteLoadException e) {
-                JOptionPane.showMessageDialog(this, e.getMessage() + ": " + file.getName(), "Route load error",
-                        JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+        Map<File, RouteLoadException> failures = routeManager.loadFromFiles(Arrays.asList(fc.getSelectedFiles()));
+        for (Map.Entry<File, RouteLoadException> failure : failures.entrySet()) {
+            JOptionPane.showMessageDialog(this, failure.getValue().getMessage() + ": " + failure.getKey().getName(),
+                    "Route load error", JOptionPane.ERROR_MESSAGE);
         }
 
         updateTable();
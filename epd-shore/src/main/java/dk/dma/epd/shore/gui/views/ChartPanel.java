@@ -42,6 +42,7 @@ import dk.dma.epd.shore.event.SelectMouseMode;
 import dk.dma.epd.shore.layers.EncLayerFactory;
 import dk.dma.epd.shore.layers.GeneralLayer;
 import dk.dma.epd.shore.layers.ais.AisLayer;
+import dk.dma.epd.shore.layers.ais.TrafficDensityLayer;
 import dk.dma.epd.shore.layers.msi.MsiNmLayer;
 import dk.dma.epd.shore.layers.route.RouteLayer;
 import dk.dma.epd.shore.layers.routeedit.RouteEditLayer;
@@ -274,6 +275,11 @@ public class ChartPanel extends ChartPanelCommon {
             aisLayer.setVisible(true);
             mapHandler.add(aisLayer);
 
+            // Add traffic density Layer
+            TrafficDensityLayer densityLayer = new TrafficDensityLayer();
+            densityLayer.setVisible(false);
+            mapHandler.add(densityLayer);
+
             // Add MSI Layer
             msiNmLayer = new MsiNmLayer();
             msiNmLayer.setVisible(true);
@@ -51,6 +51,7 @@ import dk.dma.epd.common.prototype.layers.wms.WMSLayer;
 import dk.dma.epd.shore.EPDShore;
 import dk.dma.epd.shore.gui.utils.ToolItemGroup;
 import dk.dma.epd.shore.layers.ais.AisLayer;
+import dk.dma.epd.shore.layers.ais.TrafficDensityLayer;
 import dk.dma.epd.shore.layers.msi.MsiNmLayer;
 import dk.dma.epd.shore.layers.route.RouteLayer;
 import dk.dma.epd.shore.layers.voyage.EmbeddedInfoPanelMoveMouseListener;
@@ -97,6 +98,7 @@ public class LayerTogglingPanel extends JPanel implements MouseListener, LayerVi
     JLabel routes;
     JLabel voyages;
     JLabel nogo;
+    JLabel density;
     private GoBackButton goBckBtn;
     private GoForwardButton goFrwrdBtn;
 
@@ -315,6 +317,25 @@ public class LayerTogglingPanel extends JPanel implements MouseListener, LayerVi
         toolItemGroups.addToolItem(nogo);
     }
 
+    private void addDensity(final Layer densityLayer) {
+        // Tool: traffic density Layer
+        density = new JLabel(toolbarIcon("images/toolbar/radar.png"));
+        density.setName("density");
+        density.addMouseListener(new MouseAdapter() {
+            public void mouseReleased(MouseEvent e) {
+                densityLayer.setVisible(!densityLayer.isVisible());
+
+                // Operation done
+                toggleLayerButton(densityLayer, density);
+
+            }
+        });
+        density.setToolTipText("Show/hide traffic density");
+        toggleLayerButton(densityLayer, density);
+
+        toolItemGroups.addToolItem(density);
+    }
+
     private void addVoyages(final Layer voyageLayer) {
         // Tool: voyage Layer
         voyages = new JLabel(toolbarIcon("images/toolbar/marker_green.png"));
@@ -511,6 +532,11 @@ public class LayerTogglingPanel extends JPanel implements MouseListener, LayerVi
             layer.addVisibilityListener(this);
         }
 
+        if (layer instanceof TrafficDensityLayer) {
+            addDensity(layer);
+            layer.addVisibilityListener(this);
+        }
+
         repaintToolbar();
     }
 
@@ -668,6 +694,9 @@ public class LayerTogglingPanel extends JPanel implements MouseListener, LayerVi
         if (layer instanceof VoyageLayer) {
             toggleLayerButton(layer, voyages);
         }
+        if (layer instanceof TrafficDensityLayer) {
+            toggleLayerButton(layer, density);
+        }
 
         if (layer != null && chartPanel != null && layer == chartPanel.getEncLayer()) {
             if (chartPanel.isEncVisible()) {
@@ -17,18 +17,20 @@ package dk.dma.epd.shore.layers.ais;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Point2D;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 import net.jcip.annotations.ThreadSafe;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 
-import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.graphics.ISelectableGraphic;
 import dk.dma.epd.common.prototype.ais.IAisTargetListener;
-import dk.dma.epd.common.prototype.ais.MobileTarget;
+import dk.dma.epd.common.prototype.ais.AisTarget;
 import dk.dma.epd.common.prototype.ais.SarTarget;
 import dk.dma.epd.common.prototype.ais.VesselPositionData;
 import dk.dma.epd.common.prototype.ais.VesselStaticData;
@@ -38,6 +40,7 @@ import dk.dma.epd.common.prototype.layers.ais.AisLayerCommon;
 import dk.dma.epd.common.prototype.layers.ais.AisTargetInfoPanelCommon;
 import dk.dma.epd.common.prototype.layers.ais.PastTrackWpCircle;
 import dk.dma.epd.common.prototype.layers.ais.SartGraphic;
+import dk.dma.epd.common.prototype.layers.ais.TargetGraphic;
 import dk.dma.epd.common.prototype.layers.ais.VesselGraphic;
 import dk.dma.epd.common.prototype.layers.ais.VesselGraphicComponentSelector;
 import dk.dma.epd.common.text.Formatter;
@@ -49,6 +52,10 @@ import dk.dma.epd.shore.gui.views.StatusArea;
 
 /**
 * The class AisLayer is the layer containing all AIS targets. The class handles the drawing of vessels on the chartPanel.
+* Only the targets within the viewport of the chartPanel are projected, as looked up in the spatial index of the AisHandler.
+* <p>
+* Rather than listening to the AisHandler, the layers of all map windows share a {@linkplain SharedAisTargetModel}, and
+* each layer only updates the graphics of the targets within its own viewport that have changed since the last repaint.
 *
 * SuppressWarnings("serial") as a layer should never be serialized.
 */
@@ -60,6 +67,17 @@ public class AisLayer extends AisLayerCommon<AisHandler> implements IAisTargetLi
     private StatusArea statusArea;
     private ChartPanel chartPanel;
 
+    private volatile SharedAisTargetModel targetModel;
+
+    /** The model version of the most recent update applied to the graphic of each target. Guarded by this */
+    private final Map<Long, Long> syncedVersions = new HashMap<>();
+
+    /** The model version when the graphics of departed targets were last removed. Guarded by this */
+    private long syncedModelVersion = -1L;
+
+    /** The MMSIs changed in the model since the last update, reused between updates. Guarded by this */
+    private final Set<Long> changedMmsis = new HashSet<>();
+
     /**
 * Create a new AisLayer that is redrawn repeatedly at a given interval.
 * @param redrawIntervalMillis The interval at which the AisLayer will redraw itself.
@@ -71,38 +89,89 @@ public class AisLayer extends AisLayerCommon<AisHandler> implements IAisTargetLi
     }
 
     /**
-* Check if vessel is near map coordinates or it's
-* sending an intended route
-* @param mobileTarget
-* @return if the target should be included
+* {@inheritDoc}
 */
-    @SuppressWarnings("unused")
-    private boolean drawTarget(MobileTarget mobileTarget) {
-        Point2D lr = chartPanel.getMap().getProjection().getLowerRight();
-        Point2D ul = chartPanel.getMap().getProjection().getUpperLeft();
-        Position pos = mobileTarget.getPositionData().getPos();
-        
-        boolean t1 = pos.getLatitude() >= lr.getY();
-        boolean t2 = pos.getLatitude() <= ul.getY();
-        boolean t3 = pos.getLongitude() >= ul.getX();
-        boolean t4 = pos.getLongitude() <= lr.getX();
-        
-        if (!(t1 && t2 && t3 && t4)) {
-            VesselTarget vesselTarget = (mobileTarget instanceof VesselTarget) ? (VesselTarget)mobileTarget : null;
-            if (vesselTarget == null) {
-                return false;
+    @Override
+    public void forceLayerUpdate() {
+        // Repaint
+        getRepaintScheduler().invalidate();
+        this.doPrepare();
+    }
+
+    /**
+     * {@inheritDoc} <br/>
+     * This sub class implementation receives the updates through the {@linkplain SharedAisTargetModel} instead.
+     */
+    @Override
+    protected void addAisTargetListener(AisHandler handler) {
+        this.targetModel = SharedAisTargetModel.getInstance(handler);
+    }
+
+    /**
+     * Updates the graphics of the visible targets that have changed in the shared model since this layer last saw
+     * them, and removes the graphics of targets that have left the model.
+     */
+    @Override
+    protected synchronized void updateVisibleTargets(Set<Long> visibleMmsis, boolean cluster) {
+        SharedAisTargetModel model = this.targetModel;
+        if (model == null) {
+            return;
+        }
+
+        long modelVersion = model.getVersion();
+        if (modelVersion != syncedModelVersion) {
+            changedMmsis.clear();
+            if (model.getChangesSince(syncedModelVersion, modelVersion, changedMmsis)) {
+                // Only the targets changed since the last update may have left the model
+                for (Long mmsi : changedMmsis) {
+                    if (!model.contains(mmsi) && syncedVersions.remove(mmsi) != null) {
+                        removeTargetGraphic(mmsi);
+                    }
+                }
+            } else {
+                // Fallen behind the change log
+                for (Iterator<Long> it = syncedVersions.keySet().iterator(); it.hasNext();) {
+                    Long mmsi = it.next();
+                    if (!model.contains(mmsi)) {
+                        it.remove();
+                        removeTargetGraphic(mmsi);
+                    }
+                }
+            }
+            syncedModelVersion = modelVersion;
+            if (cluster) {
+                invalidateClusters();
+            }
+        }
+
+        for (Long mmsi : visibleMmsis) {
+            SharedAisTargetModel.Entry entry = model.get(mmsi);
+            if (entry == null) {
+                continue;
+            }
+            AisTarget target = entry.getTarget();
+            if (cluster && target instanceof VesselTarget) {
+                // Represented by the clusters, and updated when zooming back in
+                continue;
+            }
+            Long synced = syncedVersions.get(mmsi);
+            if (synced == null || synced < entry.getVersion()) {
+                TargetGraphic tg = updateTargetGraphic(target);
+                if (tg != null) {
+                    markDirty(tg);
+                    syncedVersions.put(mmsi, entry.getVersion());
+                }
             }
         }
-        return true;
     }
 
     /**
-* {@inheritDoc}
-*/
+     * {@inheritDoc}
+     */
     @Override
-    public void forceLayerUpdate() {
-        // Repaint
-        this.doPrepare();
+    public synchronized void clearAisTargetGraphics() {
+        syncedVersions.clear();
+        super.clearAisTargetGraphics();
     }
 
     @Override
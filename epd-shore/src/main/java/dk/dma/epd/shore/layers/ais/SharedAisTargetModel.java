@@ -0,0 +1,214 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.shore.layers.ais;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.prototype.ais.IAisTargetListener;
+import dk.dma.epd.shore.ais.AisHandler;
+
+/**
+ * Per-target model shared by the {@linkplain AisLayer}'s of all map windows.
+ * <p>
+ * The model is the only listener registered with the {@linkplain AisHandler}, and is updated once per AIS update by
+ * stamping the target with a new version. The layers do not receive the updates themselves. Instead, whenever a layer
+ * is prepared, it looks up the targets within its own viewport and only updates and projects the graphics of the
+ * targets whose version has changed since the layer last saw them. Targets outside the viewport of a window thus cost
+ * that window nothing.
+ * <p>
+ * The model also keeps a bounded log of the MMSIs updated by the most recent versions, so that a layer can find the
+ * targets that have changed, e.g. left the model, since it was last prepared without checking all of its graphics.
+ */
+@ThreadSafe
+public final class SharedAisTargetModel implements IAisTargetListener {
+
+    /** The number of versions covered by the change log */
+    private static final int CHANGE_LOG_SIZE = 16384;
+
+    private static SharedAisTargetModel instance;
+
+    private final AisHandler aisHandler;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    /** The MMSI updated by each of the most recent versions, indexed by version modulo the log size */
+    @GuardedBy("this")
+    private final long[] changeLog = new long[CHANGE_LOG_SIZE];
+
+    /**
+     * Constructor
+     * 
+     * @param aisHandler
+     *            the AIS handler to receive target updates from
+     */
+    private SharedAisTargetModel(AisHandler aisHandler) {
+        this.aisHandler = aisHandler;
+    }
+
+    /**
+     * Returns the model of the given AIS handler, creating and registering it with the handler on first use
+     * 
+     * @param aisHandler
+     *            the AIS handler
+     * @return the shared model
+     */
+    public static synchronized SharedAisTargetModel getInstance(AisHandler aisHandler) {
+        if (instance == null || instance.aisHandler != aisHandler) {
+            if (instance != null) {
+                instance.aisHandler.removeListener(instance);
+            }
+            instance = new SharedAisTargetModel(aisHandler);
+            aisHandler.addListener(instance);
+            // Seed with the targets known before the first window was opened
+            instance.targetsUpdated(aisHandler.getTargetsWithin(-90.0, -180.0, 90.0, 180.0));
+        }
+        return instance;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetUpdated(AisTarget aisTarget) {
+        if (aisTarget == null) {
+            return;
+        }
+        // The entry and the change log are updated together, so that a
+        // logged version is always reflected by the entries
+        synchronized (this) {
+            long v = version.incrementAndGet();
+            changeLog[(int) (v % CHANGE_LOG_SIZE)] = aisTarget.getMmsi();
+            if (aisTarget.isGone()) {
+                entries.remove(aisTarget.getMmsi());
+            } else {
+                entries.put(aisTarget.getMmsi(), new Entry(aisTarget, v));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetsUpdated(Collection<AisTarget> aisTargets) {
+        for (AisTarget aisTarget : aisTargets) {
+            targetUpdated(aisTarget);
+        }
+    }
+
+    /**
+     * Returns the entry of the target with the given MMSI
+     * 
+     * @param mmsi
+     *            the MMSI of the target
+     * @return the entry, or null if the target is unknown or gone
+     */
+    public Entry get(Long mmsi) {
+        return entries.get(mmsi);
+    }
+
+    /**
+     * Returns if the model holds a target with the given MMSI
+     * 
+     * @param mmsi
+     *            the MMSI of the target
+     * @return if the model holds the target
+     */
+    public boolean contains(Long mmsi) {
+        return entries.containsKey(mmsi);
+    }
+
+    /**
+     * Returns the version of the model, which is incremented on every target update
+     * 
+     * @return the version of the model
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Adds the MMSIs of the targets updated after the given version, up to and including the given later version, to
+     * the collection. Fails if the older version is no longer covered by the change log, in which case the caller must
+     * check all the targets it knows of instead.
+     * 
+     * @param fromVersion
+     *            the version last seen by the caller
+     * @param toVersion
+     *            the current version, as returned by {@linkplain #getVersion()}
+     * @param mmsis
+     *            the collection to add the MMSIs of the changed targets to
+     * @return if the changes since the older version could be returned
+     */
+    public synchronized boolean getChangesSince(long fromVersion, long toVersion, Collection<Long> mmsis) {
+        if (fromVersion < 0L || toVersion - fromVersion > CHANGE_LOG_SIZE) {
+            return false;
+        }
+        for (long v = fromVersion + 1; v <= toVersion; v++) {
+            mmsis.add(changeLog[(int) (v % CHANGE_LOG_SIZE)]);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of targets in the model
+     * 
+     * @return the number of targets
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The most recent state of a target, stamped with the model version of the update
+     */
+    @Immutable
+    public static final class Entry {
+
+        private final AisTarget target;
+        private final long version;
+
+        Entry(AisTarget target, long version) {
+            this.target = target;
+            this.version = version;
+        }
+
+        /**
+         * Returns the target
+         * 
+         * @return the target
+         */
+        public AisTarget getTarget() {
+            return target;
+        }
+
+        /**
+         * Returns the model version of the most recent update of the target
+         * 
+         * @return the version
+         */
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.shore.layers.ais;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import javax.swing.ImageIcon;
+
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRaster;
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
+import dk.dma.epd.common.prototype.ais.TrafficDensityGrid;
+import dk.dma.epd.common.prototype.layers.EPDLayerCommon;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+
+/**
+ * Layer rendering the traffic density accumulated by the {@linkplain AisHandlerCommon} as a heatmap.
+ * <p>
+ * The visible part of the density grid is rendered into a single image covering the viewport, which is cached and
+ * only re-rendered when the projection changes, or when the grid has changed and the refresh interval has passed.
+ * Densities are shown on a logarithmic color scale relative to the densest pixel of the viewport.
+ * <p>
+ * SuppressWarnings("serial") as a layer should never be serialized.
+ */
+@SuppressWarnings("serial")
+public class TrafficDensityLayer extends EPDLayerCommon {
+
+    /** The interval at which the grid is checked for changes */
+    private static final int REFRESH_INTERVAL = 10000;
+
+    /** Maps a relative density (0-255) to an ARGB color */
+    private static final int[] PALETTE = createPalette();
+
+    private volatile TrafficDensityGrid densityGrid;
+
+    // The state of the cached image. Guarded by this
+    private long renderedVersion = -1L;
+    private float renderedScale;
+    private Point2D renderedCenter;
+    private int renderedWidth;
+    private int renderedHeight;
+    private float[] cellBuffer = new float[0];
+    private float[] pixelBuffer = new float[0];
+
+    /**
+     * Constructor
+     */
+    public TrafficDensityLayer() {
+        startTimer(REFRESH_INTERVAL, REFRESH_INTERVAL);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void findAndInit(Object obj) {
+        super.findAndInit(obj);
+        if (obj instanceof AisHandlerCommon) {
+            densityGrid = ((AisHandlerCommon) obj).getDensityGrid();
+        }
+    }
+
+    /**
+     * Re-renders the heatmap if the grid has changed
+     */
+    @Override
+    protected void timerAction() {
+        TrafficDensityGrid grid = densityGrid;
+        if (isVisible() && grid != null && grid.getVersion() != renderedVersion) {
+            doPrepare();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setVisible(boolean visible) {
+        super.setVisible(visible);
+        if (visible) {
+            doPrepare();
+        }
+    }
+
+    /**
+     * Returns the cached heatmap, re-rendering it first if the grid or projection has changed
+     */
+    @Override
+    public synchronized OMGraphicList prepare() {
+        Projection proj = getProjection();
+        TrafficDensityGrid grid = densityGrid;
+        if (proj == null || grid == null || !isVisible()) {
+            return graphics;
+        }
+
+        long version = grid.getVersion();
+        if (version != renderedVersion || proj.getScale() != renderedScale || !proj.getCenter().equals(renderedCenter)
+                || proj.getWidth() != renderedWidth || proj.getHeight() != renderedHeight) {
+            renderedVersion = version;
+            renderedScale = proj.getScale();
+            renderedCenter = proj.getCenter();
+            renderedWidth = proj.getWidth();
+            renderedHeight = proj.getHeight();
+
+            BufferedImage image = render(grid, proj, PntTime.getDate().getTime());
+            synchronized (graphics) {
+                graphics.clear();
+                if (image != null) {
+                    graphics.add(new OMRaster(0, 0, new ImageIcon(image)));
+                }
+            }
+        }
+        graphics.project(proj);
+        return graphics;
+    }
+
+    /**
+     * Renders the part of the grid within the viewport of the projection
+     * 
+     * @param grid
+     *            the density grid
+     * @param proj
+     *            the projection
+     * @param time
+     *            the time to decay the densities to
+     * @return the rendered image, or null if the grid is not within the viewport
+     */
+    private BufferedImage render(TrafficDensityGrid grid, Projection proj, long time) {
+        int width = proj.getWidth();
+        int height = proj.getHeight();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        // Find the block of cells within the viewport
+        Point2D ul = proj.getUpperLeft();
+        Point2D lr = proj.getLowerRight();
+        double cellSize = grid.getCellSize();
+        double minLat = grid.getLatitude(0);
+        double minLon = grid.getLongitude(0);
+        int row0 = Math.max(0, (int) Math.floor((lr.getY() - minLat) / cellSize));
+        int row1 = Math.min(grid.getRows() - 1, (int) Math.floor((ul.getY() - minLat) / cellSize));
+        int col0 = 0;
+        int col1 = grid.getCols() - 1;
+        if (ul.getX() < lr.getX()) {
+            col0 = Math.max(col0, (int) Math.floor((ul.getX() - minLon) / cellSize));
+            col1 = Math.min(col1, (int) Math.floor((lr.getX() - minLon) / cellSize));
+        }
+        if (row0 > row1 || col0 > col1) {
+            return null;
+        }
+
+        int rowCount = row1 - row0 + 1;
+        int colCount = col1 - col0 + 1;
+        if (cellBuffer.length < rowCount * colCount) {
+            cellBuffer = new float[rowCount * colCount];
+        }
+        if (grid.copyCells(row0, col0, rowCount, colCount, cellBuffer, time) <= 0f) {
+            return null;
+        }
+
+        // Accumulate the cells into pixels. When zoomed out, several cells add up in each pixel
+        if (pixelBuffer.length != width * height) {
+            pixelBuffer = new float[width * height];
+        } else {
+            Arrays.fill(pixelBuffer, 0f);
+        }
+        Point2D pt = new Point2D.Double();
+        float max = 0f;
+        for (int r = 0; r < rowCount; r++) {
+            double lat0 = grid.getLatitude(row0 + r);
+            double lat1 = lat0 + cellSize;
+            for (int c = 0; c < colCount; c++) {
+                float value = cellBuffer[r * colCount + c];
+                if (value <= 0f) {
+                    continue;
+                }
+                double lon0 = grid.getLongitude(col0 + c);
+                proj.forward(lat1, lon0, pt);
+                int x0 = (int) Math.round(pt.getX());
+                int y0 = (int) Math.round(pt.getY());
+                proj.forward(lat0, lon0 + cellSize, pt);
+                int x1 = Math.max(x0 + 1, (int) Math.round(pt.getX()));
+                int y1 = Math.max(y0 + 1, (int) Math.round(pt.getY()));
+                x0 = Math.max(0, x0);
+                y0 = Math.max(0, y0);
+                x1 = Math.min(width, x1);
+                y1 = Math.min(height, y1);
+                for (int y = y0; y < y1; y++) {
+                    int offset = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        float sum = pixelBuffer[offset + x] + value;
+                        pixelBuffer[offset + x] = sum;
+                        if (sum > max) {
+                            max = sum;
+                        }
+                    }
+                }
+            }
+        }
+        if (max <= 0f) {
+            return null;
+        }
+
+        // Color the pixels on a logarithmic scale
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        double logMax = Math.log1p(max);
+        for (int i = 0; i < argb.length; i++) {
+            float value = pixelBuffer[i];
+            if (value > 0f) {
+                argb[i] = PALETTE[(int) (255.0 * Math.log1p(value) / logMax)];
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Creates the palette, ranging from a faint blue over cyan and yellow to an opaque red
+     */
+    private static int[] createPalette() {
+        int[][] stops = { { 0, 0, 255 }, { 0, 255, 255 }, { 255, 255, 0 }, { 255, 0, 0 } };
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            double t = i / 255.0;
+            double pos = t * (stops.length - 1);
+            int stop = Math.min(stops.length - 2, (int) pos);
+            double f = pos - stop;
+            int red = (int) Math.round(stops[stop][0] + f * (stops[stop + 1][0] - stops[stop][0]));
+            int green = (int) Math.round(stops[stop][1] + f * (stops[stop + 1][1] - stops[stop][1]));
+            int blue = (int) Math.round(stops[stop][2] + f * (stops[stop + 1][2] - stops[stop][2]));
+            int alpha = (int) Math.round(40 + 180 * t);
+            palette[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+        return palette;
+    }
+}
@@ -32,8 +32,10 @@ import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics.LineType;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationInternalGraphics;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationLines;
+import dk.dma.epd.common.prototype.layers.voct.ProbabilityGridGraphic;
 import dk.dma.epd.common.prototype.layers.voct.SarAreaGraphic;
 import dk.dma.epd.common.prototype.layers.voct.SarGraphics;
+import dk.dma.epd.common.prototype.model.voct.ProbabilityGrid;
 import dk.dma.epd.common.prototype.model.voct.SAR_TYPE;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
@@ -52,6 +54,7 @@ public class VoctLayerPlanning extends VoctLayerCommon {
 
     private OMGraphicList graphics = new OMGraphicList();
     private OMGraphic selectedGraphic;
+    private ProbabilityGridGraphic probabilityGrid;
 
     private boolean dragging;
 
@@ -381,9 +384,14 @@ public class VoctLayerPlanning extends VoctLayerCommon {
                 drawSimpleSar();
             }
             
+            drawProbabilityGrid();
             this.setVisible(true);
         }
 
+        if (e == VOCTUpdateEvent.PROBABILITY_GRID_READY) {
+            drawProbabilityGrid();
+        }
+
         if (e == VOCTUpdateEvent.EFFORT_ALLOCATION_DISPLAY) {
             createEffectiveArea();
             this.setVisible(true);
@@ -396,6 +404,20 @@ public class VoctLayerPlanning extends VoctLayerCommon {
 
     }
 
+    private void drawProbabilityGrid() {
+        if (probabilityGrid != null) {
+            graphics.remove(probabilityGrid);
+            probabilityGrid = null;
+        }
+
+        ProbabilityGrid grid = voctManager.getProbabilityGrid();
+        if (grid != null) {
+            probabilityGrid = new ProbabilityGridGraphic(grid);
+            graphics.add(probabilityGrid);
+        }
+        doPrepare();
+    }
+
     private void drawSimpleSar() {
 
         graphics.clear();
@@ -18,6 +18,7 @@ import java.awt.Color;
 import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -273,15 +274,42 @@ public class VoyageLayer extends EPDLayerCommon implements VoyageUpdateListener,
     @Override
     public void targetUpdated(AisTarget aisTarget) {
 
+        if (hasNegotiationData(aisTarget)) {
+            // only run update if this vessel has negotiation data
+            this.updateDialogLocations();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetsUpdated(Collection<AisTarget> aisTargets) {
+        for (AisTarget aisTarget : aisTargets) {
+            if (hasNegotiationData(aisTarget)) {
+                // update once for the entire batch
+                this.updateDialogLocations();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns if the given AIS target has strategic route negotiation data
+     * 
+     * @param aisTarget
+     *            the AIS target to check
+     * @return if the AIS target has negotiation data
+     */
+    private boolean hasNegotiationData(AisTarget aisTarget) {
         if (strategicRouteHandler != null && strategicRouteHandler.getStrategicNegotiationData() != null) {
             for (StrategicRouteNegotiationData data : strategicRouteHandler.getStrategicNegotiationData().values()) {
                 if (data.getMmsi() == aisTarget.getMmsi()) {
-                    // only run update if this vessel has negotiation data
-                    this.updateDialogLocations();
-                    break;
+                    return true;
                 }
             }
         }
+        return false;
     }
 
     /**
@@ -123,7 +123,7 @@ public class FALHandler extends FALHandlerCommon implements Runnable {
 
         // Start broadcasting our own active route
         running = true;
-        new Thread(this).start();
+        EPD.startThread(this, "FALHandler");
         // }
     }
 
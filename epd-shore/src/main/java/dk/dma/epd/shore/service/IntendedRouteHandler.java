@@ -14,12 +14,10 @@
  */
 package dk.dma.epd.shore.service;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
-
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute;
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoutes;
 import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessage;
+import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteTimeline;
 import dk.dma.epd.common.prototype.model.route.IntendedRoute;
 import dk.dma.epd.common.prototype.service.IntendedRouteHandlerCommon;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
@@ -78,31 +76,18 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
      * Update all filters
      */
     @Override
-    protected void updateFilter() {
+    protected synchronized void updateFilter() {
 
         // Recalculate everything
-        // Compare all routes to current active route
 
         FilteredIntendedRoutes filteredIntendedRoutes = new FilteredIntendedRoutes();
 
-        // Compare all intended routes against all other intended routes
-
-        Iterator<Entry<Long, IntendedRoute>> outerIterator = intendedRoutes
-                .entrySet().iterator();
-        while (outerIterator.hasNext()) {
-            Entry<Long, IntendedRoute> intendedRoute = outerIterator.next();
-
-            IntendedRoute route1 = intendedRoute.getValue();
-
-            Iterator<Entry<Long, IntendedRoute>> innerIterator = intendedRoutes
-                    .entrySet().iterator();
-            while (innerIterator.hasNext()) {
-                Entry<Long, IntendedRoute> intendedRoute2 = innerIterator
-                        .next();
-
-                IntendedRoute route2 = intendedRoute2.getValue();
-
-                if (route1.getMmsi() != route2.getMmsi()) {
+        // Compare all intended routes against the candidate routes of the
+        // leg index. The candidates are symmetric, so each pair is only
+        // compared once
+        for (IntendedRouteTimeline route1 : legIndex.values()) {
+            for (IntendedRouteTimeline route2 : findCandidates(route1)) {
+                if (route1.getMmsi() < route2.getMmsi()) {
                     FilteredIntendedRoute filter = findTCPA(route1, route2);
 
                     // No warnings, ignore it
@@ -111,7 +96,6 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
                         filteredIntendedRoutes.add(filter);
                     }
                 }
-
             }
         }
 
@@ -124,13 +108,18 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
     }
 
     /**
-     * Update filter with new intended route
+     * Update filter with new intended route.
+     * <p>
+     * Only the route pairs involving the new intended route are re-evaluated
      * 
      * @param route
      */
     @Override
     protected void applyFilter(IntendedRoute route) {
-        updateFilter();
+        IntendedRouteTimeline timeline = legIndex.get(route.getMmsi());
+        if (timeline != null) {
+            updateFilter(timeline);
+        }
     }
 
     @Override
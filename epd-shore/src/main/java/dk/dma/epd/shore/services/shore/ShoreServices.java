@@ -87,6 +87,7 @@ public class ShoreServices extends ShoreServicesCommon implements IStatusCompone
             shoreHttp.makeRequest();
         } catch (ShoreServiceException e) {
             status.markContactError(e);
+            status.markRequestFailed(uri);
             throw e;
         }
 
@@ -97,11 +98,13 @@ public class ShoreServices extends ShoreServicesCommon implements IStatusCompone
         } catch (Exception e) {
             e.printStackTrace();
             LOG.error("Failed to unmarshal XML response: " + e.getMessage());
+            status.markRequestFailed(uri);
             throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
         }
 
         // Set last fail/contact
         status.markContactSuccess();
+        status.markRequest(uri, shoreHttp.getTotalTime(), shoreHttp.getResponseSize());
 
         // Report if an error response
         if (res.getErrorCode() != 0) {
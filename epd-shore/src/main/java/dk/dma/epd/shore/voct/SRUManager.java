@@ -42,15 +42,13 @@ import dk.dma.epd.common.prototype.model.route.IntendedRoute;
 import dk.dma.epd.common.prototype.service.EnavServiceHandlerCommon.CloudMessageStatus;
 import dk.dma.epd.common.prototype.service.IIntendedRouteListener;
 import dk.dma.epd.common.prototype.voct.VOCTManagerCommon.VoctMsgStatus;
-import dk.dma.epd.shore.EPDShore;
 import dk.dma.epd.shore.layers.voct.VoctLayerTracking;
 import dk.dma.epd.shore.service.IntendedRouteHandler;
 import dk.dma.epd.shore.service.VoctHandler;
 import dk.dma.epd.shore.voct.SRU.sru_status;
 import dma.voct.VOCTReplyStatus;
 
-public class SRUManager extends MapHandlerChild implements Runnable,
-        IIntendedRouteListener {
+public class SRUManager extends MapHandlerChild implements IIntendedRouteListener {
 
     private VOCTManager voctManager;
     private VoctHandler voctHandler;
@@ -66,7 +64,6 @@ public class SRUManager extends MapHandlerChild implements Runnable,
     private CopyOnWriteArrayList<SRUUpdateListener> listeners = new CopyOnWriteArrayList<>();
 
     public SRUManager() {
-        EPDShore.startThread(this, "sruManager");
     }
 
     public void setVoctTrackingLayer(VoctLayerTracking layer) {
@@ -99,20 +96,6 @@ public class SRUManager extends MapHandlerChild implements Runnable,
         listeners.remove(listener);
     }
 
-    @Override
-    public void run() {
-
-        // Maintanaince routines
-
-        // while (true) {
-        // EPDShore.sleep(1000);
-        // updateSRUsStatus();
-        // maintainAvailableSRUs();
-        // Maintain list of available SRUs
-        // }
-
-    }
-
     public void updateSRUsStatus() {
         System.out.println("UPDATE SRU STATUS");
         for (int i = 0; i < voctHandler.getVoctMessageList().size(); i++) {
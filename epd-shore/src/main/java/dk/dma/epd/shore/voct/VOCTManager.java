@@ -41,7 +41,6 @@ import dk.dma.epd.common.prototype.service.EnavServiceHandlerCommon.CloudMessage
 import dk.dma.epd.common.prototype.voct.VOCTManagerCommon;
 import dk.dma.epd.common.prototype.voct.VOCTUpdateEvent;
 import dk.dma.epd.common.prototype.voct.VOCTUpdateListener;
-import dk.dma.epd.common.util.Util;
 import dk.dma.epd.shore.EPDShore;
 import dk.dma.epd.shore.gui.views.JMenuWorkspaceBar;
 import dk.dma.epd.shore.gui.views.MapFrameType;
@@ -79,7 +78,6 @@ public class VOCTManager extends VOCTManagerCommon implements
     private long voctID = -1;
 
     public VOCTManager() {
-        EPDShore.startThread(this, "VOCTManager");
         LOG.info("Started VOCT Manager");
     }
 
@@ -160,17 +158,6 @@ public class VOCTManager extends VOCTManagerCommon implements
         }
     }
 
-    @Override
-    public void run() {
-
-        // Maintanaince routines
-        while (true) {
-            Util.sleep(10000);
-
-        }
-
-    }
-
     @Override
     protected void checkSRU(SARData sarData) {
         // Check SRU data
@@ -311,6 +298,7 @@ public class VOCTManager extends VOCTManagerCommon implements
         // + sarData);
 
         voctLayers.get(0).updateEffectiveAreaLocation(sarData);
+        updateProbabilityOfSuccess();
     }
 
     @Override
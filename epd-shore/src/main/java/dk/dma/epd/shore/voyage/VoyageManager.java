@@ -26,12 +26,14 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.bbn.openmap.MapHandlerChild;
 
+import dk.dma.epd.common.prototype.task.TaskManager;
 import dk.dma.epd.shore.EPDShore;
 import dk.dma.epd.shore.ais.AisHandler;
 import dk.dma.epd.shore.services.shore.ShoreServices;
@@ -54,7 +56,7 @@ public class VoyageManager extends MapHandlerChild implements Runnable, Serializ
     private Set<VoyageUpdateListener> listeners = new HashSet<VoyageUpdateListener>();
 
     public VoyageManager() {
-        EPDShore.startThread(this, "VoyageManager");
+        TaskManager.getInstance().scheduleWithFixedDelay("VoyageManager", this, 10, 10, TimeUnit.SECONDS);
     }
 
     public void notifyListeners(VoyageUpdateEvent e) {
@@ -223,10 +225,7 @@ public class VoyageManager extends MapHandlerChild implements Runnable, Serializ
     public void run() {
 
         // Maintanaince routines
-        while (true) {
-            EPDShore.sleep(10000);
-            checkForExpires();
-        }
+        checkForExpires();
 
     }
 